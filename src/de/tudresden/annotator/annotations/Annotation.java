@@ -3,8 +3,9 @@
  */
 package de.tudresden.annotator.annotations;
 
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 
 /**
@@ -15,20 +16,20 @@ import java.util.LinkedHashMap;
 public abstract class Annotation < T extends Annotation<?>>{
 	
 	/*
-	 * A hash map that organizes (buckets) annotations by class label 
+	 * An array that organizes (buckets) annotations by class. It is indexed by the ordinal of the AnnotationClass.
+	 * It is allocated on the first insert, as most annotations never get children.  
 	 */
-	protected HashMap <String, LinkedHashMap<String, T>> annotationsByClass ; 
+	protected LinkedHashMap<String, T>[] annotationsByClass ; 
 	
 	/*
 	 * A linkedhashmap that stores all the annotations that are contained by this annotation
-	 * In other words, all annotations in the linkedhashmap depend on this annotation object.  
+	 * In other words, all annotations in the linkedhashmap depend on this annotation object.
+	 * It is allocated on the first insert, as most annotations never get children.  
 	 */
 	protected LinkedHashMap <String, T> allAnnotations;
 	
 	
 	public Annotation(){
-		this.annotationsByClass =  new HashMap<String, LinkedHashMap<String, T>>();
-		this.allAnnotations =  new LinkedHashMap<String, T>();
 	}
 	
 	/**
@@ -37,7 +38,11 @@ public abstract class Annotation < T extends Annotation<?>>{
 	 * @param annotation the annotation object to add
 	 */
 	public void addAnnotation(String key, T annotation){
+		if(this.allAnnotations==null)
+			this.allAnnotations =  new LinkedHashMap<String, T>();
+		
 		this.allAnnotations.put(key, annotation);
+		markModified();
 	}
 	
 	
@@ -46,7 +51,8 @@ public abstract class Annotation < T extends Annotation<?>>{
 	 * @param key an object that is used as an id (key) for the annotation object
 	 */
 	public void removeAnnotation(String key){
-		this.allAnnotations.remove(key);
+		if(this.allAnnotations!=null && this.allAnnotations.remove(key)!=null)
+			markModified();
 	}
 	
 	/**
@@ -55,6 +61,9 @@ public abstract class Annotation < T extends Annotation<?>>{
 	 * @return the annotation object
 	 */
 	public T getAnnotation(String key){
+		if(this.allAnnotations==null)
+			return null;
+		
 		return this.allAnnotations.get(key);
 	}
 	
@@ -64,17 +73,29 @@ public abstract class Annotation < T extends Annotation<?>>{
 	 * @return a collection of annotation objects
 	 */
 	public Collection<T> getAllAnnotations(){
+		if(this.allAnnotations==null)
+			return Collections.emptyList();
+		
 		return this.allAnnotations.values();
 	}
 	
 	
 	/**
-	 * Get all the annotations that have the given class label
-	 * @param label a string that represents the label of a Annotation class
-	 * @return a collection of annotation objects
+	 * @return true if this annotation contains other annotations, false otherwise
 	 */
-	public Collection<T> getAnnotationsByClass(String classLabel){
-		HashMap<String, T> map = annotationsByClass.get(classLabel);
+	public boolean hasAnnotations(){
+		return this.allAnnotations!=null && !this.allAnnotations.isEmpty();
+	}
+	
+	
+	/**
+	 * Get all the annotations that are members of the given class
+	 * @param annotationClass the AnnotationClass
+	 * @return a collection of annotation objects, or null if there are none
+	 */
+	public Collection<T> getAnnotationsByClass(AnnotationClass annotationClass){
+		
+		LinkedHashMap<String, T> map = getBucket(annotationClass.getOrdinal());
 		if(map==null)
 			return null;
 		
@@ -84,50 +105,86 @@ public abstract class Annotation < T extends Annotation<?>>{
 	
 	/**
 	 * Add an annotation to the set containing annotations of the same class 
-	 * @param label a string that represents the label of a Annotation class
-	 * @param anntationId a string that represents the id (key) of the annotation object
+	 * @param annotationClass the AnnotationClass that the annotation is member of
+	 * @param key a string that represents the id (key) of the annotation object
 	 * @param annotation an object that represents the annotation to add
 	 */
-	public void addAnnotationToBucket(String classLabel, String key, T annotation){
-		LinkedHashMap<String, T>  map = annotationsByClass.get(classLabel);
+	public void addAnnotationToBucket(AnnotationClass annotationClass, String key, T annotation){
+		
+		int ordinal = annotationClass.getOrdinal();
+		if(ordinal<0)
+			throw new IllegalArgumentException("The annotation class \""+annotationClass.getLabel()+"\" has no ordinal");
+		
+		if(annotationsByClass==null){
+			annotationsByClass = newBuckets(ordinal+1);
+		}else if(annotationsByClass.length<=ordinal){
+			annotationsByClass = Arrays.copyOf(annotationsByClass, ordinal+1);
+		}
+		
+		LinkedHashMap<String, T>  map = annotationsByClass[ordinal];
 		if(map == null){
 			map = new LinkedHashMap<String, T>();
+			annotationsByClass[ordinal] = map;
 		}
 		
 		map.put(key, annotation);
-		
-		this.annotationsByClass.put(classLabel, map);
+		markModified();
+	}
+
+	
+	/**
+	 * Create an array of buckets. Arrays of a generic type can not be created directly.
+	 * @param size the number of buckets
+	 * @return an array of empty (null) buckets
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private static <V> LinkedHashMap<String, V>[] newBuckets(int size){
+		return new LinkedHashMap[size];
 	}
 
 	
 	/**
 	 * Remove an annotation from the set containing annotations of the same class 
-	 * @param classLabel a string that represents the label of a Annotation class
+	 * @param annotationClass the AnnotationClass that the annotation is member of
 	 * @param key a string that is used as an id (key) for the annotation object
 	 */
-	public void removeAnnotationFromBucket(String classLabel, String key){
+	public void removeAnnotationFromBucket(AnnotationClass annotationClass, String key){
 		
-		HashMap<String, T>  map = annotationsByClass.get(classLabel);
+		LinkedHashMap<String, T>  map = getBucket(annotationClass.getOrdinal());
 		if(map == null)
 			return;
 		
-		map.remove(key);		
+		if(map.remove(key)!=null)
+			markModified();
 	}
 
 	
 	/**
-	 * Remove all annotation having the given class label
-	 * @param classLabel a string that represents the label of a Annotation class
+	 * Remove all annotation that are members of the given class
+	 * @param annotationClass the AnnotationClass
 	 */
-	public void removeAllAnnotationsOfClass(String classLabel){
-		
-		LinkedHashMap<String, T>  map = annotationsByClass.get(classLabel);
+	public void removeAllAnnotationsOfClass(AnnotationClass annotationClass){
 		
+		LinkedHashMap<String, T>  map = getBucket(annotationClass.getOrdinal());
 		if(map == null)
 			return;
 		
 		map.clear();		
-		annotationsByClass.put(classLabel, map);
+		markModified();
+	}
+	
+	
+	/**
+	 * Get the bucket for the class with the given ordinal
+	 * @param ordinal the ordinal of the AnnotationClass
+	 * @return the map that holds the annotations of the class, or null if it does not exist
+	 */
+	private LinkedHashMap<String, T> getBucket(int ordinal){
+		
+		if(annotationsByClass==null || ordinal<0 || ordinal>=annotationsByClass.length)
+			return null;
+		
+		return annotationsByClass[ordinal];
 	}
 	
 	
@@ -135,8 +192,65 @@ public abstract class Annotation < T extends Annotation<?>>{
 	 * Remove all annotations 
 	 */
 	public void removeAllAnnotations(){
-		this.allAnnotations.clear();
-		this.annotationsByClass.clear();
+		this.allAnnotations = null;
+		this.annotationsByClass = null;
+		markModified();
+	}
+	
+	
+	/**
+	 * Check if this annotation contains the same annotations (by key and value) as the given one 
+	 * @param annotation the annotation object to compare this object to
+	 * @return true if both contain the same annotations, false otherwise
+	 */
+	protected boolean hasSameAnnotations(Annotation<T> annotation){
+		
+		boolean isEmpty = this.allAnnotations==null || this.allAnnotations.isEmpty();
+		boolean isOtherEmpty = annotation.allAnnotations==null || annotation.allAnnotations.isEmpty();
+		
+		if(isEmpty || isOtherEmpty)
+			return isEmpty && isOtherEmpty;
+		
+		return this.allAnnotations.equals(annotation.allAnnotations);
+	}
+	
+	
+	/**
+	 * Compute a 64 bit hash of the given string. It is used to build the content hashes of the annotations.
+	 * @param value a string, or null
+	 * @return a long hash value
+	 */
+	protected static long hashString(String value){
+		
+		if(value==null)
+			return 0;
+		
+		long hash = 1125899906842597L;
+		for (int i = 0; i < value.length(); i++) {
+			hash = 31*hash + value.charAt(i);
+		}
+		return hash;
+	}
+	
+	
+	/**
+	 * Spread the bits of the given hash value. The content hash of a parent is the sum of the mixed hashes of its children, 
+	 * so mixing keeps children that differ in a few bits from cancelling out each other.
+	 * @param hash a long hash value
+	 * @return the mixed hash value
+	 */
+	protected static long mixHash(long hash){
+		hash = (hash ^ (hash >>> 30)) * 0xbf58476d1ce4e5b9L;
+		hash = (hash ^ (hash >>> 27)) * 0x94d049bb133111ebL;
+		return hash ^ (hash >>> 31);
+	}
+	
+	
+	/**
+	 * Called by every method that modifies this annotation. 
+	 * Does nothing by default. Subclasses that track modifications override it. 
+	 */
+	protected void markModified(){
 	}
 	
 	
@@ -0,0 +1,101 @@
+/**
+ * 
+ */
+package de.tudresden.annotator.annotations;
+
+import java.util.Arrays;
+
+/**
+ * Collects the changes of a WorkbookAnnotation and notifies the registered listeners about them.
+ * The changes that are made between the outermost beginChanges() and endChanges() calls are delivered together.
+ *
+ * @author Elvis Koci
+ */
+final class AnnotationChangeBus {
+
+	/*
+	 * The listeners are kept in an array that is replaced when a listener is added or removed,
+	 * so it can be iterated without copying it on each notification
+	 */
+	private AnnotationChangeListener[] listeners = new AnnotationChangeListener[0];
+
+	private final AnnotationChangeSet pendingChanges = new AnnotationChangeSet();
+
+	/*
+	 * The number of open batches, and whether the listeners are being notified at the moment
+	 */
+	private int depth = 0;
+	private boolean isNotifying = false;
+
+
+	/**
+	 * @param listener the listener to add. Listeners are notified in the order they were added.
+	 */
+	void addListener(AnnotationChangeListener listener){
+		this.listeners = Arrays.copyOf(this.listeners, this.listeners.length+1);
+		this.listeners[this.listeners.length-1] = listener;
+	}
+
+
+	/**
+	 * @param listener the listener to remove
+	 */
+	void removeListener(AnnotationChangeListener listener){
+		for (int i = 0; i < this.listeners.length; i++) {
+			if(this.listeners[i]==listener){
+				AnnotationChangeListener[] remaining = new AnnotationChangeListener[this.listeners.length-1];
+				System.arraycopy(this.listeners, 0, remaining, 0, i);
+				System.arraycopy(this.listeners, i+1, remaining, i, remaining.length-i);
+				this.listeners = remaining;
+				return;
+			}
+		}
+	}
+
+
+	/**
+	 * Open a batch of changes
+	 * @throws IllegalStateException if it is called by a listener, while it is being notified
+	 */
+	void beginChanges(){
+		if(this.isNotifying)
+			throw new IllegalStateException("The annotations can not be modified while the change listeners are notified");
+		this.depth++;
+	}
+
+
+	/**
+	 * Close a batch of changes. When the outermost batch is closed, the listeners are notified about the changes.
+	 * @param notifyListeners false to discard the changes of the outermost batch without notifying the listeners
+	 */
+	void endChanges(boolean notifyListeners){
+
+		if(this.depth==0)
+			throw new IllegalStateException("There is no batch of changes to end");
+
+		this.depth--;
+		if(this.depth>0)
+			return;
+
+		try {
+			this.pendingChanges.prepare();
+			if(notifyListeners && !this.pendingChanges.isEmpty()){
+				this.isNotifying = true;
+				for (AnnotationChangeListener listener : this.listeners) {
+					listener.annotationsChanged(this.pendingChanges);
+				}
+			}
+		} finally {
+			this.isNotifying = false;
+			this.pendingChanges.clear();
+		}
+	}
+
+
+	/**
+	 * @return the changes of the open batch
+	 */
+	AnnotationChangeSet getPendingChanges(){
+		return this.pendingChanges;
+	}
+}
@@ -0,0 +1,20 @@
+/**
+ * 
+ */
+package de.tudresden.annotator.annotations;
+
+/**
+ * A listener that is notified about the changes in a WorkbookAnnotation. The changes are coalesced,
+ * so the listener is notified once per batch (see WorkbookAnnotation.beginChanges()), or once per modifying method
+ * when no batch is open.
+ *
+ * @author Elvis Koci
+ */
+public interface AnnotationChangeListener {
+
+	/**
+	 * Called after a batch of changes in the annotations. The listeners must not modify the annotations.
+	 * @param changes the changes in the batch. The object is re-used, so it is valid only during this call.
+	 */
+	public void annotationsChanged(AnnotationChangeSet changes);
+}
@@ -0,0 +1,235 @@
+/**
+ * 
+ */
+package de.tudresden.annotator.annotations;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * The changes that were made in a WorkbookAnnotation during a batch. The changes of each range annotation are coalesced
+ * (e.g., an annotation that is added and then removed in the same batch is not reported).
+ * A single instance is re-used for all the batches, so that notifying the listeners does not allocate new objects.
+ *
+ * @author Elvis Koci
+ */
+public final class AnnotationChangeSet {
+
+	/*
+	 * The latest (coalesced) change of a range annotation in the current batch
+	 */
+	private enum Change {
+		UNCHANGED, ADDED, REMOVED, REPARENTED
+	}
+
+	/*
+	 * The range annotations that changed, in the order they were first changed, and their latest change
+	 */
+	private final ArrayList<RangeAnnotation> changedAnnotations = new ArrayList<RangeAnnotation>();
+	private final IdentityHashMap<RangeAnnotation, Change> changes = new IdentityHashMap<RangeAnnotation, Change>();
+
+	/*
+	 * The coalesced changes, filled before the listeners are notified
+	 */
+	private final ArrayList<RangeAnnotation> added = new ArrayList<RangeAnnotation>();
+	private final ArrayList<RangeAnnotation> removed = new ArrayList<RangeAnnotation>();
+	private final ArrayList<RangeAnnotation> reparented = new ArrayList<RangeAnnotation>();
+	private final List<RangeAnnotation> addedView = Collections.unmodifiableList(added);
+	private final List<RangeAnnotation> removedView = Collections.unmodifiableList(removed);
+	private final List<RangeAnnotation> reparentedView = Collections.unmodifiableList(reparented);
+
+	/*
+	 * The ids of the worksheets that are affected by the changes, and of the ones whose status changed
+	 */
+	private final BitSet affectedSheets = new BitSet();
+	private final BitSet statusChangedSheets = new BitSet();
+
+	private boolean isWorkbookStatusChanged = false;
+	private boolean areAllAnnotationsRemoved = false;
+
+
+	AnnotationChangeSet() {
+	}
+
+	/**
+	 * Record that the given range annotation was added
+	 * @param annotation the RangeAnnotation that was added
+	 */
+	void annotationAdded(RangeAnnotation annotation){
+
+		Change change = this.changes.get(annotation);
+		if(change==null){
+			this.changedAnnotations.add(annotation);
+			this.changes.put(annotation, Change.ADDED);
+		}else if(change==Change.UNCHANGED){
+			this.changes.put(annotation, Change.ADDED);
+		}else if(change==Change.REMOVED){
+			// removed and added again. only the position in the containment tree might have changed
+			this.changes.put(annotation, Change.REPARENTED);
+		}
+		markSheetAffected(annotation.getSheetId());
+	}
+
+	/**
+	 * Record that the given range annotation was removed
+	 * @param annotation the RangeAnnotation that was removed
+	 */
+	void annotationRemoved(RangeAnnotation annotation){
+
+		Change change = this.changes.get(annotation);
+		if(change==null){
+			this.changedAnnotations.add(annotation);
+			this.changes.put(annotation, Change.REMOVED);
+		}else if(change==Change.ADDED){
+			// added and removed in the same batch. there is nothing to report
+			this.changes.put(annotation, Change.UNCHANGED);
+		}else{
+			this.changes.put(annotation, Change.REMOVED);
+		}
+		markSheetAffected(annotation.getSheetId());
+	}
+
+	/**
+	 * Record that the given range annotation was moved under another parent
+	 * @param annotation the RangeAnnotation that was moved
+	 */
+	void annotationReparented(RangeAnnotation annotation){
+
+		Change change = this.changes.get(annotation);
+		if(change==null){
+			this.changedAnnotations.add(annotation);
+			this.changes.put(annotation, Change.REPARENTED);
+		}else if(change==Change.UNCHANGED){
+			this.changes.put(annotation, Change.REPARENTED);
+		}
+		markSheetAffected(annotation.getSheetId());
+	}
+
+	/**
+	 * Record that the status (i.e., completed or not applicable) of the worksheet annotation changed
+	 * @param sheetId the id of the worksheet annotation
+	 */
+	void sheetStatusChanged(int sheetId){
+		if(sheetId>=0)
+			this.statusChangedSheets.set(sheetId);
+		markSheetAffected(sheetId);
+	}
+
+	/**
+	 * Record that the status (i.e., completed or not applicable) of the workbook annotation changed
+	 */
+	void workbookStatusChanged(){
+		this.isWorkbookStatusChanged = true;
+	}
+
+	/**
+	 * Record that all the annotations were removed. The earlier changes of the range annotations are discarded.
+	 */
+	void allAnnotationsRemoved(){
+		this.changedAnnotations.clear();
+		this.changes.clear();
+		this.areAllAnnotationsRemoved = true;
+	}
+
+	/**
+	 * @param sheetId the id of the worksheet annotation, -1 if it is not known
+	 */
+	private void markSheetAffected(int sheetId){
+		if(sheetId>=0)
+			this.affectedSheets.set(sheetId);
+	}
+
+	/**
+	 * Fill the lists of added, removed and reparented annotations, before the listeners are notified
+	 */
+	void prepare(){
+		for (RangeAnnotation annotation : this.changedAnnotations) {
+			Change change = this.changes.get(annotation);
+			if(change==Change.ADDED){
+				this.added.add(annotation);
+			}else if(change==Change.REMOVED){
+				this.removed.add(annotation);
+			}else if(change==Change.REPARENTED){
+				this.reparented.add(annotation);
+			}
+		}
+	}
+
+	/**
+	 * Discard all the changes, so the object can be re-used for the next batch
+	 */
+	void clear(){
+		this.changedAnnotations.clear();
+		this.changes.clear();
+		this.added.clear();
+		this.removed.clear();
+		this.reparented.clear();
+		this.affectedSheets.clear();
+		this.statusChangedSheets.clear();
+		this.isWorkbookStatusChanged = false;
+		this.areAllAnnotationsRemoved = false;
+	}
+
+	/**
+	 * @return true if nothing changed, false otherwise
+	 */
+	public boolean isEmpty(){
+		return this.added.isEmpty() && this.removed.isEmpty() && this.reparented.isEmpty() && 
+				this.statusChangedSheets.isEmpty() &&
+				!this.isWorkbookStatusChanged && !this.areAllAnnotationsRemoved;
+	}
+
+	/**
+	 * @return an unmodifiable list of the range annotations that were added, in the order they were added
+	 */
+	public List<RangeAnnotation> getAddedAnnotations() {
+		return addedView;
+	}
+
+	/**
+	 * @return an unmodifiable list of the range annotations that were removed, in the order they were removed
+	 */
+	public List<RangeAnnotation> getRemovedAnnotations() {
+		return removedView;
+	}
+
+	/**
+	 * @return an unmodifiable list of the range annotations that were moved under another parent
+	 */
+	public List<RangeAnnotation> getReparentedAnnotations() {
+		return reparentedView;
+	}
+
+	/**
+	 * @param sheetId the id of the worksheet annotation
+	 * @return true if the range annotations or the status of the worksheet annotation changed, false otherwise
+	 */
+	public boolean isSheetAffected(int sheetId) {
+		return this.areAllAnnotationsRemoved || (sheetId>=0 && this.affectedSheets.get(sheetId));
+	}
+
+	/**
+	 * @param sheetId the id of the worksheet annotation
+	 * @return true if the status of the worksheet annotation changed, false otherwise
+	 */
+	public boolean isSheetStatusChanged(int sheetId) {
+		return sheetId>=0 && this.statusChangedSheets.get(sheetId);
+	}
+
+	/**
+	 * @return true if the status of the workbook annotation changed, false otherwise
+	 */
+	public boolean isWorkbookStatusChanged() {
+		return isWorkbookStatusChanged;
+	}
+
+	/**
+	 * @return true if all the annotations were removed (see WorkbookAnnotation.removeAllAnnotations()), false otherwise
+	 */
+	public boolean areAllAnnotationsRemoved() {
+		return areAllAnnotationsRemoved;
+	}
+}
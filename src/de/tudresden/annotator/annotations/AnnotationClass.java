@@ -14,6 +14,13 @@ public class AnnotationClass {
 	private String label; 
 	
 	
+	/*
+	 * A dense index (0, 1, 2, ...) that is assigned by the ClassGenerator. 
+	 * It is used to index the class buckets of the annotations. 
+	 */
+	private int ordinal = -1;
+	
+	
 	/*
 	 * The annotation tool that will be used to annotate 
 	 */
@@ -78,6 +85,12 @@ public class AnnotationClass {
 	 * The type of the shape to use for the annotation. Check MsoAutoShapeType enumeration
 	 */
 	private int shapeType = 1; //default rectangle
+	
+	/*
+	 * Incremented each time a property that affects the style (format) of the annotation shapes is changed.
+	 * It is used to detect the styled template shapes that are outdated (see ShapeTemplateCache).
+	 */
+	private int styleVersion = 0;
 		
 	/**
 	 * 
@@ -169,6 +182,7 @@ public class AnnotationClass {
 		this.lineColor = lineColor;
 		this.lineWeight = lineWeight;
 		this.lineTransparency = lineTransparency;
+		this.styleVersion++;
 	}
 	
 	
@@ -190,6 +204,7 @@ public class AnnotationClass {
 		this.shadowStyle = shadowStyle;
 		this.shadowColor = shadowColor;
 		this.shadowTransparency = shadowTransparency;
+		this.styleVersion++;
 	}
 	
 	
@@ -210,6 +225,7 @@ public class AnnotationClass {
     	this.fontSize = fontSize;
     	this.textHAlignment = textHAlignment;
     	this.textVAlignment = textVAlignment;
+    	this.styleVersion++;
     }
 	
    
@@ -229,6 +245,22 @@ public class AnnotationClass {
 	}
 
 	
+	/**
+	 * @return the ordinal
+	 */
+	public int getOrdinal() {
+		return ordinal;
+	}
+
+	
+	/**
+	 * @param ordinal the ordinal to set
+	 */
+	public void setOrdinal(int ordinal) {
+		this.ordinal = ordinal;
+	}
+
+	
 	/**
 	 * @return the shortcut
 	 */
@@ -270,6 +302,7 @@ public class AnnotationClass {
 	 */
 	public void setColor(long color) {
 		this.color = color;
+		this.styleVersion++;
 	}
 
 	
@@ -286,6 +319,7 @@ public class AnnotationClass {
 	 */
 	public void setAnnotationTool(AnnotationTool annotationTool) {
 		this.annotationTool = annotationTool;
+		this.styleVersion++;
 	}
 	
 	
@@ -302,6 +336,7 @@ public class AnnotationClass {
 	 */
 	public void setShapeType(int shapeType) {
 		this.shapeType = shapeType;
+		this.styleVersion++;
 	}
 
 
@@ -318,6 +353,7 @@ public class AnnotationClass {
 	 */
 	public void setUseShadow(boolean useShadow) {
 		this.useShadow = useShadow;
+		this.styleVersion++;
 	}
 
 	
@@ -334,6 +370,7 @@ public class AnnotationClass {
 	 */
 	public void setShadowType(int shadowType) {
 		this.shadowType = shadowType;
+		this.styleVersion++;
 	}
 
 	
@@ -350,6 +387,7 @@ public class AnnotationClass {
 	 */
 	public void setShadowStyle(int shadowStyle) {
 		this.shadowStyle = shadowStyle;
+		this.styleVersion++;
 	}
 
 	
@@ -366,6 +404,7 @@ public class AnnotationClass {
 	 */
 	public void setShadowBlur(int shadowBlur) {
 		this.shadowBlur = shadowBlur;
+		this.styleVersion++;
 	}
 
 	
@@ -382,6 +421,7 @@ public class AnnotationClass {
 	 */
 	public void setShadowColor(long shadowColor) {
 		this.shadowColor = shadowColor;
+		this.styleVersion++;
 	}
 
 	
@@ -398,6 +438,7 @@ public class AnnotationClass {
 	 */
 	public void setShadowSize(int shadowSize) {
 		this.shadowSize = shadowSize;
+		this.styleVersion++;
 	}
 
 	
@@ -414,6 +455,7 @@ public class AnnotationClass {
 	 */
 	public void setShadowTransparency(double shadowTransparency) {
 		this.shadowTransparency = shadowTransparency;
+		this.styleVersion++;
 	}
 
 	
@@ -430,6 +472,7 @@ public class AnnotationClass {
 	 */
 	public void setUseText(boolean useText) {
 		this.useText = useText;
+		this.styleVersion++;
 	}
 
 	
@@ -446,6 +489,7 @@ public class AnnotationClass {
 	 */
 	public void setText(String text) {
 		this.text = text;
+		this.styleVersion++;
 	}
 
 	
@@ -462,6 +506,7 @@ public class AnnotationClass {
 	 */
 	public void setTextColor(long textColor) {
 		this.textColor = textColor;
+		this.styleVersion++;
 	}
 
 	
@@ -478,6 +523,7 @@ public class AnnotationClass {
 	 */
 	public void setBoldText(boolean boldText) {
 		this.boldText = boldText;
+		this.styleVersion++;
 	}
 
 	
@@ -494,6 +540,7 @@ public class AnnotationClass {
 	 */
 	public void setFontSize(int fontSize) {
 		this.fontSize = fontSize;
+		this.styleVersion++;
 	}
 
 	
@@ -510,6 +557,7 @@ public class AnnotationClass {
 	 */
 	public void setUseLine(boolean useLine) {
 		this.useLine = useLine;
+		this.styleVersion++;
 	}
 
 	
@@ -526,6 +574,7 @@ public class AnnotationClass {
 	 */
 	public void setLineWeight(double lineWeight) {
 		this.lineWeight = lineWeight;
+		this.styleVersion++;
 	}
 
 	
@@ -542,6 +591,7 @@ public class AnnotationClass {
 	 */
 	public void setLineColor(long lineColor) {
 		this.lineColor = lineColor;
+		this.styleVersion++;
 	}
 
 	
@@ -558,6 +608,7 @@ public class AnnotationClass {
 	 */
 	public void setLineStyle(int lineStyle) {
 		this.lineStyle = lineStyle;
+		this.styleVersion++;
 	}
 
 	
@@ -574,6 +625,7 @@ public class AnnotationClass {
 	 */
 	public void setLineTransparency(double lineTransparency) {
 		this.lineTransparency = lineTransparency;
+		this.styleVersion++;
 	}
 
 
@@ -590,6 +642,7 @@ public class AnnotationClass {
 	 */
 	public void setTextHAlignment(int textHAlignment) {
 		this.textHAlignment = textHAlignment;
+		this.styleVersion++;
 	}
 
 
@@ -606,6 +659,7 @@ public class AnnotationClass {
 	 */
 	public void setTextVAlignment(int textVAlignment) {
 		this.textVAlignment = textVAlignment;
+		this.styleVersion++;
 	}
 
 
@@ -622,6 +676,7 @@ public class AnnotationClass {
 	 */
 	public void setHasFill(boolean hasFill) {
 		this.hasFill = hasFill;
+		this.styleVersion++;
 	}
 
 
@@ -638,6 +693,7 @@ public class AnnotationClass {
 	 */
 	public void setFillTransparency(double fillTransparency) {
 		this.fillTransparency = fillTransparency;
+		this.styleVersion++;
 	}
 
 
@@ -725,4 +781,11 @@ public class AnnotationClass {
 	public void setCanBeContained(boolean canBeContained) {
 		this.canBeContained = canBeContained;
 	}
+
+	/**
+	 * @return the version of the style properties. It changes each time one of them is set.
+	 */
+	public int getStyleVersion() {
+		return styleVersion;
+	}
 }
@@ -0,0 +1,232 @@
+/**
+ * 
+ */
+package de.tudresden.annotator.annotations;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+/**
+ * Maintains the versions of the annotation state, for undo and redo. Each version is a WorkbookAnnotationSnapshot.
+ * Consecutive versions share the snapshots of the worksheets that did not change, so recording a version 
+ * only copies the worksheets that were modified by the last operation. 
+ * The memory is bounded by a maximum number of versions and by a maximum number of retained range annotation snapshots. 
+ * When one of them is exceeded, the oldest versions are evicted.
+ * 
+ * @author Elvis Koci
+ */
+public class AnnotationHistory {
+	
+	/**
+	 * The default maximum number of versions to keep 
+	 */
+	public static final int DEFAULT_MAX_VERSIONS = 100;
+	
+	/**
+	 * The default maximum number of range annotation snapshots that are retained by all the versions together
+	 */
+	public static final int DEFAULT_MAX_RETAINED_ANNOTATIONS = 200000;
+	
+	private int maxVersions;
+	private int maxRetainedAnnotations;
+	
+	/*
+	 * The recorded versions, from the oldest to the newest, and the position of the current one
+	 */
+	private final ArrayList<WorkbookAnnotationSnapshot> versions = new ArrayList<WorkbookAnnotationSnapshot>();
+	private int current = -1;
+	
+	/*
+	 * The number of versions that refer to each worksheet snapshot, 
+	 * and the number of range annotation snapshots in all the referred worksheet snapshots  
+	 */
+	private final IdentityHashMap<WorksheetAnnotationSnapshot, Integer> sheetReferences = new IdentityHashMap<WorksheetAnnotationSnapshot, Integer>();
+	private long retainedAnnotations = 0;
+	
+	
+	public AnnotationHistory() {
+		this(DEFAULT_MAX_VERSIONS, DEFAULT_MAX_RETAINED_ANNOTATIONS);
+	}
+	
+	
+	/**
+	 * @param maxVersions the maximum number of versions to keep
+	 * @param maxRetainedAnnotations the maximum number of range annotation snapshots that the versions retain together
+	 */
+	public AnnotationHistory(int maxVersions, int maxRetainedAnnotations) {
+		this.maxVersions = maxVersions;
+		this.maxRetainedAnnotations = maxRetainedAnnotations;
+	}
+	
+	
+	/**
+	 * Record a new version. The versions that were undone before are discarded, as they can not be re-done anymore.
+	 * Nothing is recorded if the given version is the current one (i.e., the annotation state did not change).
+	 * @param version a snapshot of the annotation state
+	 */
+	public void record(WorkbookAnnotationSnapshot version){
+		
+		if(current>=0 && versions.get(current)==version)
+			return;
+		
+		while(versions.size()>current+1){
+			release(versions.remove(versions.size()-1));
+		}
+		
+		versions.add(version);
+		retain(version);
+		current = versions.size()-1;
+		
+		evict();
+	}
+	
+	
+	/**
+	 * @return true if there is a previous version to go back to, false otherwise
+	 */
+	public boolean canUndo(){
+		return current>0;
+	}
+	
+	
+	/**
+	 * @return true if there is a version that was undone and can be re-done, false otherwise
+	 */
+	public boolean canRedo(){
+		return current>=0 && current<versions.size()-1;
+	}
+	
+	
+	/**
+	 * Move to the previous version
+	 * @return the previous version, or null if there is none
+	 */
+	public WorkbookAnnotationSnapshot undo(){
+		if(!canUndo())
+			return null;
+		
+		current--;
+		return versions.get(current);
+	}
+	
+	
+	/**
+	 * Move to the next version 
+	 * @return the next version, or null if there is none
+	 */
+	public WorkbookAnnotationSnapshot redo(){
+		if(!canRedo())
+			return null;
+		
+		current++;
+		return versions.get(current);
+	}
+	
+	
+	/**
+	 * @return the current version, or null if no version was recorded
+	 */
+	public WorkbookAnnotationSnapshot getCurrentVersion(){
+		if(current<0)
+			return null;
+		return versions.get(current);
+	}
+	
+	
+	/**
+	 * Discard all the versions 
+	 */
+	public void clear(){
+		versions.clear();
+		sheetReferences.clear();
+		retainedAnnotations = 0;
+		current = -1;
+	}
+	
+	
+	/**
+	 * @return the number of recorded versions
+	 */
+	public int size(){
+		return versions.size();
+	}
+	
+	
+	/**
+	 * @return the number of range annotation snapshots that are retained by all the versions together 
+	 */
+	public long getRetainedAnnotations(){
+		return retainedAnnotations;
+	}
+	
+	
+	/**
+	 * Evict the oldest versions, until the memory budget is respected. The current version is never evicted.
+	 */
+	private void evict(){
+		while(current>0 && (versions.size()>maxVersions || retainedAnnotations>maxRetainedAnnotations)){
+			release(versions.remove(0));
+			current--;
+		}
+	}
+	
+	
+	private void retain(WorkbookAnnotationSnapshot version){
+		for (WorksheetAnnotationSnapshot sheetSnapshot : version.getWorksheetSnapshots()) {
+			Integer count = sheetReferences.get(sheetSnapshot);
+			if(count==null){
+				sheetReferences.put(sheetSnapshot, 1);
+				retainedAnnotations += sheetSnapshot.getRangeAnnotations().size();
+			}else{
+				sheetReferences.put(sheetSnapshot, count+1);
+			}
+		}
+	}
+	
+	
+	private void release(WorkbookAnnotationSnapshot version){
+		for (WorksheetAnnotationSnapshot sheetSnapshot : version.getWorksheetSnapshots()) {
+			int count = sheetReferences.get(sheetSnapshot);
+			if(count==1){
+				sheetReferences.remove(sheetSnapshot);
+				retainedAnnotations -= sheetSnapshot.getRangeAnnotations().size();
+			}else{
+				sheetReferences.put(sheetSnapshot, count-1);
+			}
+		}
+	}
+	
+	
+	/**
+	 * @return the maxVersions
+	 */
+	public int getMaxVersions() {
+		return maxVersions;
+	}
+
+
+	/**
+	 * @param maxVersions the maxVersions to set
+	 */
+	public void setMaxVersions(int maxVersions) {
+		this.maxVersions = maxVersions;
+		evict();
+	}
+
+
+	/**
+	 * @return the maxRetainedAnnotations
+	 */
+	public int getMaxRetainedAnnotations() {
+		return maxRetainedAnnotations;
+	}
+
+
+	/**
+	 * @param maxRetainedAnnotations the maxRetainedAnnotations to set
+	 */
+	public void setMaxRetainedAnnotations(int maxRetainedAnnotations) {
+		this.maxRetainedAnnotations = maxRetainedAnnotations;
+		evict();
+	}
+}
@@ -0,0 +1,322 @@
+/**
+ * 
+ */
+package de.tudresden.annotator.annotations;
+
+/**
+ * An immutable, parsed representation of a rectangular range of cells (e.g., "$A$1:$C$5").
+ * The bounds are kept as 1-based row and column indices, so that containment, overlap,
+ * area and intersection between ranges are plain integer comparisons.
+ *
+ * @author Elvis Koci
+ */
+public final class CellRange {
+
+	/**
+	 * The maximum number of rows in a worksheet (Excel 2007 and later)
+	 */
+	public static final int MAX_ROW = 1048576;
+
+	/**
+	 * The maximum number of columns in a worksheet (Excel 2007 and later)
+	 */
+	public static final int MAX_COLUMN = 16384;
+
+	private final int firstRow;
+	private final int firstColumn;
+	private final int lastRow;
+	private final int lastColumn;
+
+	/**
+	 * Create a new CellRange from the given bounds. The bounds are normalized,
+	 * such that the first row (column) is never greater than the last row (column).
+	 * @param firstRow the (1-based) index of the top row
+	 * @param firstColumn the (1-based) index of the left column
+	 * @param lastRow the (1-based) index of the bottom row
+	 * @param lastColumn the (1-based) index of the right column
+	 */
+	public CellRange(int firstRow, int firstColumn, int lastRow, int lastColumn) {
+		this.firstRow = Math.min(firstRow, lastRow);
+		this.lastRow = Math.max(firstRow, lastRow);
+		this.firstColumn = Math.min(firstColumn, lastColumn);
+		this.lastColumn = Math.max(firstColumn, lastColumn);
+	}
+
+	/**
+	 * Parse the given range address. Absolute ("$A$1:$C$5") and relative ("A1:C5") addresses are accepted,
+	 * as well as single cells ("B2"), entire columns ("$A:$C") and entire rows ("$1:$3").
+	 * @param address a string that represents the address of a single area range
+	 * @return a CellRange object that represents the given address
+	 * @throws IllegalArgumentException if the address can not be parsed
+	 */
+	public static CellRange parse(String address){
+
+		if(address==null || address.isEmpty()){
+			throw new IllegalArgumentException("The range address is empty");
+		}
+
+		int colon = address.indexOf(':');
+		int end = address.length();
+
+		int[] topLeft = parseCell(address, 0, colon<0 ? end : colon);
+		int[] downRight = colon<0 ? topLeft : parseCell(address, colon+1, end);
+
+		if(topLeft==null || downRight==null){
+			throw new IllegalArgumentException("Invalid range address \""+address+"\"");
+		}
+
+		int firstRow = topLeft[0], lastRow = downRight[0];
+		int firstColumn = topLeft[1], lastColumn = downRight[1];
+
+		// entire columns (e.g., "$A:$C")
+		if(firstRow==0 && lastRow==0){
+			firstRow = 1; lastRow = MAX_ROW;
+		}
+
+		// entire rows (e.g., "$1:$3")
+		if(firstColumn==0 && lastColumn==0){
+			firstColumn = 1; lastColumn = MAX_COLUMN;
+		}
+
+		if(firstRow==0 || lastRow==0 || firstColumn==0 || lastColumn==0){
+			throw new IllegalArgumentException("Invalid range address \""+address+"\"");
+		}
+
+		return new CellRange(firstRow, firstColumn, lastRow, lastColumn);
+	}
+
+	/**
+	 * Parse the part of the address between the given positions as a cell reference
+	 * @param address a string that contains the cell reference
+	 * @param start the position where the cell reference begins (inclusive)
+	 * @param end the position where the cell reference ends (exclusive)
+	 * @return an array where the first element is the row index and the second the column index.
+	 * A zero stands for a missing row or column. Null is returned if the cell reference is invalid.
+	 */
+	private static int[] parseCell(String address, int start, int end){
+
+		int column = 0;
+		int row = 0;
+		int i = start;
+
+		if(i<end && address.charAt(i)=='$')
+			i++;
+
+		while(i<end){
+			char c = address.charAt(i);
+			if(c>='a' && c<='z')
+				c = (char) (c - 'a' + 'A');
+			if(c<'A' || c>'Z')
+				break;
+			column = column*26 + (c - 'A' + 1);
+			if(column>MAX_COLUMN)
+				return null;
+			i++;
+		}
+
+		if(i<end && address.charAt(i)=='$')
+			i++;
+
+		while(i<end){
+			char c = address.charAt(i);
+			if(c<'0' || c>'9')
+				break;
+			row = row*10 + (c - '0');
+			if(row>MAX_ROW)
+				return null;
+			i++;
+		}
+
+		if(i!=end || (row==0 && column==0))
+			return null;
+
+		return new int[]{row, column};
+	}
+
+	/**
+	 * Get the (1-based) column index from the address of a cell (e.g., "$AB$12" returns 28)
+	 * @param cellAddress a string that represents the address of a cell
+	 * @return the column index, or 0 if the address does not specify a column
+	 */
+	public static int getColumnIndex(String cellAddress){
+
+		int column = 0;
+		for (int i = 0; i < cellAddress.length(); i++) {
+			char c = cellAddress.charAt(i);
+			if(c>='a' && c<='z')
+				c = (char) (c - 'a' + 'A');
+			if(c>='A' && c<='Z')
+				column = column*26 + (c - 'A' + 1);
+		}
+		return column;
+	}
+
+	/**
+	 * Get the (1-based) row index from the address of a cell (e.g., "$AB$12" returns 12)
+	 * @param cellAddress a string that represents the address of a cell
+	 * @return the row index, or 0 if the address does not specify a row
+	 */
+	public static int getRowIndex(String cellAddress){
+
+		int row = 0;
+		for (int i = 0; i < cellAddress.length(); i++) {
+			char c = cellAddress.charAt(i);
+			if(c>='0' && c<='9')
+				row = row*10 + (c - '0');
+		}
+		return row;
+	}
+
+	/**
+	 * Convert the given (1-based) column index to column letters (e.g., 28 returns "AB")
+	 * @param columnIndex the index of the column
+	 * @return a string that represents the column letters
+	 */
+	public static String getColumnLetters(int columnIndex){
+
+		StringBuilder sb = new StringBuilder(3);
+		int index = columnIndex;
+		while(index>0){
+			int rem = (index - 1) % 26;
+			sb.append((char) ('A' + rem));
+			index = (index - 1) / 26;
+		}
+		return sb.reverse().toString();
+	}
+
+	/**
+	 * Check if this range contains completely the given range
+	 * @param other the range that might be contained by this one
+	 * @return true if this range contains the other range, false otherwise
+	 */
+	public boolean contains(CellRange other){
+		return firstRow<=other.firstRow && firstColumn<=other.firstColumn
+				&& lastRow>=other.lastRow && lastColumn>=other.lastColumn;
+	}
+
+	/**
+	 * Check if this range contains the given cell
+	 * @param row the (1-based) index of the row
+	 * @param column the (1-based) index of the column
+	 * @return true if the cell is inside this range, false otherwise
+	 */
+	public boolean contains(int row, int column){
+		return row>=firstRow && row<=lastRow && column>=firstColumn && column<=lastColumn;
+	}
+
+	/**
+	 * Check if this range shares cells with the given range
+	 * @param other the range to compare with
+	 * @return true if the ranges intersect, false otherwise
+	 */
+	public boolean intersects(CellRange other){
+		return firstRow<=other.lastRow && other.firstRow<=lastRow
+				&& firstColumn<=other.lastColumn && other.firstColumn<=lastColumn;
+	}
+
+	/**
+	 * Count the cells that this range shares with the given range
+	 * @param other the range to compare with
+	 * @return the number of common cells, 0 if the ranges do not intersect
+	 */
+	public long intersectionArea(CellRange other){
+
+		int rows = Math.min(lastRow, other.lastRow) - Math.max(firstRow, other.firstRow) + 1;
+		int columns = Math.min(lastColumn, other.lastColumn) - Math.max(firstColumn, other.firstColumn) + 1;
+
+		if(rows<=0 || columns<=0)
+			return 0;
+
+		return (long) rows * columns;
+	}
+
+	/**
+	 * @return the number of cells in this range
+	 */
+	public long getArea(){
+		return (long) getRowCount() * getColumnCount();
+	}
+
+	/**
+	 * @return the number of rows in this range
+	 */
+	public int getRowCount(){
+		return lastRow - firstRow + 1;
+	}
+
+	/**
+	 * @return the number of columns in this range
+	 */
+	public int getColumnCount(){
+		return lastColumn - firstColumn + 1;
+	}
+
+	/**
+	 * @return the firstRow
+	 */
+	public int getFirstRow() {
+		return firstRow;
+	}
+
+	/**
+	 * @return the firstColumn
+	 */
+	public int getFirstColumn() {
+		return firstColumn;
+	}
+
+	/**
+	 * @return the lastRow
+	 */
+	public int getLastRow() {
+		return lastRow;
+	}
+
+	/**
+	 * @return the lastColumn
+	 */
+	public int getLastColumn() {
+		return lastColumn;
+	}
+
+	/**
+	 * Get the absolute address of this range (e.g., "$A$1:$C$5", or "$B$2" for a single cell)
+	 * @return a string that represents the address of the range
+	 */
+	public String getAddress(){
+
+		String topLeft = "$"+getColumnLetters(firstColumn)+"$"+firstRow;
+		if(firstRow==lastRow && firstColumn==lastColumn)
+			return topLeft;
+
+		return topLeft+":$"+getColumnLetters(lastColumn)+"$"+lastRow;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+
+		if(this==obj)
+			return true;
+
+		if(!(obj instanceof CellRange))
+			return false;
+
+		CellRange other = (CellRange) obj;
+		return firstRow==other.firstRow && firstColumn==other.firstColumn
+				&& lastRow==other.lastRow && lastColumn==other.lastColumn;
+	}
+
+	@Override
+	public int hashCode() {
+		int hash = firstRow;
+		hash = 31 * hash + firstColumn;
+		hash = 31 * hash + lastRow;
+		hash = 31 * hash + lastColumn;
+		return hash;
+	}
+
+	@Override
+	public String toString() {
+		return getAddress();
+	}
+}
@@ -3,6 +3,8 @@
  */
 package de.tudresden.annotator.annotations;
 
+import java.util.Comparator;
+
 /**
  * @author Elvis Koci
  */
@@ -11,8 +13,20 @@ public class RangeAnnotation extends DependentAnnotation<DependentAnnotation<?>>
 	private String sheetName;
 	private int sheetIndex;
 	private AnnotationClass annotationClass; 	
+	
+	/*
+	 * The stable id of the worksheet annotation where this annotation is placed, -1 if it is not known yet 
+	 */
+	private int sheetId = -1;
+	
+	/*
+	 * The name is derived on first use from the sheet name, class label and range address, 
+	 * unless it is given explicitly. The range address is kept as given (it is used for the names and the stored data), 
+	 * while the parsed range is used only for the geometry (containment, overlaps, look ups).
+	 */
 	private String name;
 	private String rangeAddress;
+	private CellRange range;
 	
 	private int cells;
 	private int emptyCells;
@@ -25,21 +39,92 @@ public class RangeAnnotation extends DependentAnnotation<DependentAnnotation<?>>
 	
 	private boolean containsMergedCells;
 	
+	/*
+	 * The content version of the worksheet for which the statistics were calculated, -1 if they are not valid
+	 */
+	private long statisticsVersion = -1;
+	
+	/*
+	 * A hash of the data of this annotation and of all the annotations it contains. It is computed on demand, 
+	 * and invalidated together with the hashes of all the containers, when this annotation is modified.
+	 */
+	private long contentHash;
+	private boolean isContentHashValid = false;
+	
+	/**
+	 * Orders range annotations by sheet name, then by area (largest first), and puts containers before 
+	 * the other annotations of the same area. Adding annotations in this order guarantees that 
+	 * each annotation finds its container already in place.
+	 */
+	public static final Comparator<RangeAnnotation> CONTAINMENT_ORDER = new Comparator<RangeAnnotation>() {
+		@Override
+		public int compare(RangeAnnotation ra1, RangeAnnotation ra2) {
+			
+			int result = ra1.getSheetName().compareTo(ra2.getSheetName());
+			if(result!=0)
+				return result;
+			
+			result = Long.compare(ra2.getRange().getArea(), ra1.getRange().getArea());
+			if(result!=0)
+				return result;
+			
+			return Boolean.compare(ra2.getAnnotationClass().isContainer(), ra1.getAnnotationClass().isContainer());
+		}
+	};
+	
+	/**
+	 * Create a new RangeAnnotation. The name is generated from the other arguments.
+	 * @param sheetName the name of the sheet where the RangeAnnotation is placed 
+	 * @param sheetIndex the index of the sheet where the RangeAnnotation is placed 
+	 * @param annotationClass the AnnotationClass that this RangeAnnotation is member of
+	 * @param rangeAddress the address of the range that was annotated 
+	 */
+	public RangeAnnotation(String sheetName, int sheetIndex, AnnotationClass annotationClass, String rangeAddress ) {
+		this(sheetName, sheetIndex, annotationClass, null, rangeAddress);
+	}
+	
 	/**
 	 * Create a new RangeAnnotation
 	 * @param sheetName the name of the sheet where the RangeAnnotation is placed 
 	 * @param sheetIndex the index of the sheet where the RangeAnnotation is placed 
 	 * @param annotationClass the AnnotationClass that this RangeAnnotation is member of
-	 * @param name a string that represents the name of the RangeAnnotation
+	 * @param name a string that represents the name of the RangeAnnotation, or null to generate it
 	 * @param rangeAddress the address of the range that was annotated 
 	 */
 	public RangeAnnotation(String sheetName, int sheetIndex, AnnotationClass annotationClass, String name, String rangeAddress ) {
 		this.annotationClass = annotationClass;
 		this.name = name;
 		this.rangeAddress = rangeAddress;
+		this.range = CellRange.parse(rangeAddress);
 		this.sheetName = sheetName;
 		this.sheetIndex = sheetIndex;	
 	}
+	
+	/**
+	 * Generate the name of a range annotation 
+	 * @param sheetName the name of the worksheet that contains the annotation
+	 * @param classLabel the label of the class the annotation is member of
+	 * @param rangeAddress a string that represents the address of the range
+	 * @return a string that represents the annotation name
+	 */
+	public static String generateName(String sheetName, String classLabel, String rangeAddress){
+		
+		String endOfName = classLabel+"_"+rangeAddress.replace("$", "").replace(":", "_");
+		String formatedName = getStartOfName(sheetName)+"_"+endOfName;
+		
+		return formatedName.toUpperCase();
+	}
+	
+	/**
+	 * Get the string that the names of all range annotations from the same worksheet begin with.    
+	 * @param sheetName the name of the worksheet that contains the annotation
+	 * @return a string that is used as the beginning of the annotation name
+	 */
+	public static String getStartOfName(String sheetName){
+		
+		String name = sheetName.replace(" ", "_")+"_Annotation"; 
+		return name.toUpperCase(); 
+	}
 
 	/**
 	 * @return the sheetName
@@ -55,6 +140,20 @@ public class RangeAnnotation extends DependentAnnotation<DependentAnnotation<?>>
 		this.sheetName = sheetName;
 	}
 
+	/**
+	 * @return the stable id of the worksheet annotation where this annotation is placed, -1 if it is not known yet
+	 */
+	public int getSheetId() {
+		return sheetId;
+	}
+
+	/**
+	 * @param sheetId the sheetId to set
+	 */
+	public void setSheetId(int sheetId) {
+		this.sheetId = sheetId;
+	}
+
 	/**
 	 * @return the sheetIndex
 	 */
@@ -81,12 +180,15 @@ public class RangeAnnotation extends DependentAnnotation<DependentAnnotation<?>>
 	 */
 	public void setAnnotationClass(AnnotationClass annotationClass) {
 		this.annotationClass = annotationClass;
+		markModified();
 	}
 
 	/**
 	 * @return the name
 	 */
 	public String getName() {
+		if(name==null)
+			name = generateName(sheetName, annotationClass.getLabel(), getRangeAddress());
 		return name;
 	}
 
@@ -95,6 +197,7 @@ public class RangeAnnotation extends DependentAnnotation<DependentAnnotation<?>>
 	 */
 	public void setName(String name) {
 		this.name = name;
+		markModified();
 	}
 
 	/**
@@ -108,7 +211,16 @@ public class RangeAnnotation extends DependentAnnotation<DependentAnnotation<?>>
 	 * @param rangeAddress the rangeAddress to set
 	 */
 	public void setRangeAddress(String rangeAddress) {
+		this.range = CellRange.parse(rangeAddress);
 		this.rangeAddress = rangeAddress;
+		markModified();
+	}
+
+	/**
+	 * @return the parsed range, kept in sync with the rangeAddress
+	 */
+	public CellRange getRange() {
+		return range;
 	}
 
 	/**
@@ -122,7 +234,10 @@ public class RangeAnnotation extends DependentAnnotation<DependentAnnotation<?>>
 	 * @param cells the cells to set
 	 */
 	public void setCells(int cells) {
-		this.cells = cells;
+		if(this.cells!=cells){
+			this.cells = cells;
+			markModified();
+		}
 	}
 
 	/**
@@ -136,7 +251,10 @@ public class RangeAnnotation extends DependentAnnotation<DependentAnnotation<?>>
 	 * @param emptyCells the emptyCells to set
 	 */
 	public void setEmptyCells(int emptyCells) {
-		this.emptyCells = emptyCells;
+		if(this.emptyCells!=emptyCells){
+			this.emptyCells = emptyCells;
+			markModified();
+		}
 	}
 
 	/**
@@ -150,7 +268,10 @@ public class RangeAnnotation extends DependentAnnotation<DependentAnnotation<?>>
 	 * @param constantCells the constantCells to set
 	 */
 	public void setConstantCells(int constantCells) {
-		this.constantCells = constantCells;
+		if(this.constantCells!=constantCells){
+			this.constantCells = constantCells;
+			markModified();
+		}
 	}
 
 	/**
@@ -164,7 +285,10 @@ public class RangeAnnotation extends DependentAnnotation<DependentAnnotation<?>>
 	 * @param formulaCells the formulaCells to set
 	 */
 	public void setFormulaCells(int formulaCells) {
-		this.formulaCells = formulaCells;
+		if(this.formulaCells!=formulaCells){
+			this.formulaCells = formulaCells;
+			markModified();
+		}
 	}
 
 	/**
@@ -178,7 +302,10 @@ public class RangeAnnotation extends DependentAnnotation<DependentAnnotation<?>>
 	 * @param rows the rows to set
 	 */
 	public void setRows(int rows) {
-		this.rows = rows;
+		if(this.rows!=rows){
+			this.rows = rows;
+			markModified();
+		}
 	}
 
 	/**
@@ -192,7 +319,10 @@ public class RangeAnnotation extends DependentAnnotation<DependentAnnotation<?>>
 	 * @param nonEmptyRows the nonEmptyRows to set
 	 */
 	public void setNonEmptyRows(int nonEmptyRows) {
-		this.nonEmptyRows = nonEmptyRows;
+		if(this.nonEmptyRows!=nonEmptyRows){
+			this.nonEmptyRows = nonEmptyRows;
+			markModified();
+		}
 	}
 
 	/**
@@ -206,7 +336,10 @@ public class RangeAnnotation extends DependentAnnotation<DependentAnnotation<?>>
 	 * @param columns the columns to set
 	 */
 	public void setColumns(int columns) {
-		this.columns = columns;
+		if(this.columns!=columns){
+			this.columns = columns;
+			markModified();
+		}
 	}
 
 	/**
@@ -220,7 +353,10 @@ public class RangeAnnotation extends DependentAnnotation<DependentAnnotation<?>>
 	 * @param nonEmptyColumns the nonEmptyColumns to set
 	 */
 	public void setNonEmptyColumns(int nonEmptyColumns) {
-		this.nonEmptyColumns = nonEmptyColumns;
+		if(this.nonEmptyColumns!=nonEmptyColumns){
+			this.nonEmptyColumns = nonEmptyColumns;
+			markModified();
+		}
 	}
 
 	/**
@@ -234,12 +370,87 @@ public class RangeAnnotation extends DependentAnnotation<DependentAnnotation<?>>
 	 * @param hasMergedCells the hasMergedCells to set
 	 */
 	public void setContainsMergedCells(boolean hasMergedCells) {
-		this.containsMergedCells = hasMergedCells;
+		if(this.containsMergedCells!=hasMergedCells){
+			this.containsMergedCells = hasMergedCells;
+			markModified();
+		}
+	}
+
+	/**
+	 * @return the content version of the worksheet for which the statistics were calculated, -1 if they are not valid
+	 */
+	public long getStatisticsVersion() {
+		return statisticsVersion;
+	}
+
+	/**
+	 * @param statisticsVersion the content version of the worksheet for which the statistics were calculated
+	 */
+	public void setStatisticsVersion(long statisticsVersion) {
+		this.statisticsVersion = statisticsVersion;
+	}
+	
+	/**
+	 * Mark the statistics of this annotation as outdated, such that they are calculated again
+	 */
+	public void invalidateStatistics() {
+		this.statisticsVersion = -1;
+	}
+
+	/**
+	 * Get the hash of the data of this annotation (i.e., name, class, range, and statistics) 
+	 * and of all the annotations it contains. Only the hashes that were invalidated since the last call are computed again.
+	 * @return a long hash value
+	 */
+	public long getContentHash(){
+		
+		if(this.isContentHashValid)
+			return this.contentHash;
+		
+		long hash = hashString(getName());
+		hash = 31*hash + hashString(annotationClass.getLabel());
+		hash = 31*hash + range.hashCode();
+		hash = 31*hash + cells;
+		hash = 31*hash + emptyCells;
+		hash = 31*hash + constantCells;
+		hash = 31*hash + formulaCells;
+		hash = 31*hash + rows;
+		hash = 31*hash + nonEmptyRows;
+		hash = 31*hash + columns;
+		hash = 31*hash + nonEmptyColumns;
+		hash = 31*hash + (containsMergedCells?1:0);
+		hash = mixHash(hash);
+		
+		for (RangeAnnotation val : this.getAllAnnotations()) {
+			hash = hash + val.getContentHash();
+		}
+		
+		this.contentHash = mixHash(hash);
+		this.isContentHashValid = true;
+		return this.contentHash;
 	}
 
+	@Override
+	/**
+	 * Invalidate the content hash of this annotation and of its containers, 
+	 * and notify the WorksheetAnnotation that (indirectly) contains this annotation, if any 
+	 */
+	protected void markModified(){
+		this.isContentHashValid = false;
+		
+		DependentAnnotation<?> ancestor = getParent();
+		while(ancestor instanceof RangeAnnotation){
+			((RangeAnnotation) ancestor).isContentHashValid = false;
+			ancestor = ((RangeAnnotation) ancestor).getParent();
+		}
+		
+		if(ancestor instanceof WorksheetAnnotation)
+			((WorksheetAnnotation) ancestor).markModified();
+	}
+	
 	@Override 
 	public String toString() {
-			return this.name+" = "+this.allAnnotations.values().toString();
+			return this.getName()+" = "+this.getAllAnnotations().toString();
 	}
 
 	@Override
@@ -250,10 +461,21 @@ public class RangeAnnotation extends DependentAnnotation<DependentAnnotation<?>>
 		
 		RangeAnnotation ra = (RangeAnnotation) annotation;
 				
-		if(this.name.compareTo(ra.getName())!=0)
+		if(this.getName().compareTo(ra.getName())!=0)
+			return false;
+		
+		if(!this.hasSameAnnotations(ra))
 			return false;
 		
-		if(!(this.allAnnotations.equals(ra.getAllAnnotations())))
+		if(this.cells!=ra.getCells() || this.emptyCells!=ra.getEmptyCells() || 
+				this.constantCells!=ra.getConstantCells() || this.formulaCells!=ra.getFormulaCells())
+			return false;
+		
+		if(this.rows!=ra.getRows() || this.nonEmptyRows!=ra.getNonEmptyRows() || 
+				this.columns!=ra.getColumns() || this.nonEmptyColumns!=ra.getNonEmptyColumns())
+			return false;
+		
+		if(this.containsMergedCells!=ra.containsMergedCells())
 			return false;
 		
 		return true;	
@@ -262,13 +484,7 @@ public class RangeAnnotation extends DependentAnnotation<DependentAnnotation<?>>
 	
 	@Override
 	public int hashCode() {
-		
-		int hash = this.name.hashCode();
-		
-		for (RangeAnnotation val : this.allAnnotations.values()) {
-			hash = hash + val.hashCode();
-		}
-		
-		return hash;
+		long hash = getContentHash();
+		return (int) (hash ^ (hash >>> 32));
 	}
 }
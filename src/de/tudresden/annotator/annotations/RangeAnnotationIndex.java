@@ -0,0 +1,502 @@
+/**
+ * 
+ */
+package de.tudresden.annotator.annotations;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+
+/**
+ * A spatial index (R-tree) over the range annotations of a worksheet.
+ * It answers the queries "which annotations share cells with this range" and
+ * "which annotations contain completely this range" without scanning all the annotations of the worksheet.
+ * The index is keyed by the CellRange of each annotation, so the range of an indexed annotation
+ * must not change before the annotation is removed from the index.
+ *
+ * @author Elvis Koci
+ */
+public class RangeAnnotationIndex {
+
+	/*
+	 * The maximum and minimum number of entries per node
+	 */
+	private static final int MAX_ENTRIES = 8;
+	private static final int MIN_ENTRIES = 3;
+
+	private Node root;
+	private int size;
+
+	/**
+	 * A node of the tree. Leaf nodes hold RangeAnnotations, the other nodes hold child nodes.
+	 * The bounds of each item are stored in a flat array (firstRow, firstColumn, lastRow, lastColumn).
+	 * One extra slot is reserved for the entry that causes a node to split.
+	 */
+	private static final class Node {
+
+		private final boolean isLeaf;
+		private Node parent;
+		private int count;
+		private final Object[] items = new Object[MAX_ENTRIES+1];
+		private final int[] bounds = new int[4*(MAX_ENTRIES+1)];
+
+		private Node(boolean isLeaf) {
+			this.isLeaf = isLeaf;
+		}
+	}
+
+
+	/**
+	 * Create a new empty index
+	 */
+	public RangeAnnotationIndex() {
+		this.root = new Node(true);
+	}
+
+
+	/**
+	 * Add the given annotation to the index
+	 * @param annotation the RangeAnnotation to index
+	 */
+	public void insert(RangeAnnotation annotation){
+		insertEntry(annotation);
+		size++;
+	}
+
+
+	/**
+	 * Remove the given annotation from the index
+	 * @param annotation the RangeAnnotation to remove
+	 * @return true if the annotation was found and removed, false otherwise
+	 */
+	public boolean remove(RangeAnnotation annotation){
+
+		CellRange r = annotation.getRange();
+		Node leaf = findLeaf(root, annotation, r.getFirstRow(), r.getFirstColumn(), r.getLastRow(), r.getLastColumn());
+		if(leaf==null)
+			return false;
+
+		removeItem(leaf, indexOf(leaf, annotation));
+		condenseTree(leaf);
+		size--;
+		return true;
+	}
+
+
+	/**
+	 * Replace the content of the index with the given annotations. The tree is packed bottom-up 
+	 * (Sort-Tile-Recursive), which is much faster than inserting the annotations one at a time 
+	 * and produces nodes that overlap less.
+	 * @param annotations the RangeAnnotations to index
+	 */
+	public void load(Collection<RangeAnnotation> annotations){
+
+		clear();
+		if(annotations.isEmpty())
+			return;
+
+		Object[] items = annotations.toArray();
+		int[][] bounds = new int[items.length][];
+		for (int i = 0; i < items.length; i++) {
+			CellRange r = ((RangeAnnotation) items[i]).getRange();
+			bounds[i] = new int[]{r.getFirstRow(), r.getFirstColumn(), r.getLastRow(), r.getLastColumn()};
+		}
+
+		boolean isLeaf = true;
+		Node[] level = pack(items, bounds, isLeaf);
+		while(level.length>1){
+			bounds = new int[level.length][];
+			for (int i = 0; i < level.length; i++) {
+				bounds[i] = mbr(level[i]);
+			}
+			level = pack(level, bounds, false);
+		}
+
+		this.root = level[0];
+		this.root.parent = null;
+		this.size = items.length;
+	}
+
+
+	/**
+	 * Remove all annotations from the index
+	 */
+	public void clear(){
+		this.root = new Node(true);
+		this.size = 0;
+	}
+
+
+	/**
+	 * @return the number of indexed annotations
+	 */
+	public int size(){
+		return size;
+	}
+
+
+	/**
+	 * Find the annotations that share cells with the given range
+	 * @param range the range to search for
+	 * @param result the collection where the found annotations are added
+	 */
+	public void findIntersecting(CellRange range, Collection<RangeAnnotation> result){
+		if(size==0)
+			return;
+		searchIntersecting(root, range.getFirstRow(), range.getFirstColumn(), range.getLastRow(), range.getLastColumn(), result);
+	}
+
+
+	/**
+	 * Find the annotations that contain completely the given range
+	 * @param range the range to search for
+	 * @param result the collection where the found annotations are added
+	 */
+	public void findContaining(CellRange range, Collection<RangeAnnotation> result){
+		if(size==0)
+			return;
+		searchContaining(root, range.getFirstRow(), range.getFirstColumn(), range.getLastRow(), range.getLastColumn(), result);
+	}
+
+
+	/**
+	 * Group the given items into full nodes. The items are sorted into vertical slices by the center column, 
+	 * and each slice is sorted by the center row before it is cut into nodes.
+	 * @return the nodes of the new level
+	 */
+	private static Node[] pack(Object[] items, final int[][] bounds, boolean isLeaf){
+
+		int n = items.length;
+		int nodeCount = (n + MAX_ENTRIES - 1) / MAX_ENTRIES;
+		int sliceSize = (int) Math.ceil(Math.sqrt(nodeCount)) * MAX_ENTRIES;
+
+		Integer[] order = new Integer[n];
+		for (int i = 0; i < n; i++) {
+			order[i] = i;
+		}
+
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer i1, Integer i2) {
+				return Integer.compare(bounds[i1][1] + bounds[i1][3], bounds[i2][1] + bounds[i2][3]);
+			}
+		});
+
+		Comparator<Integer> byRow = new Comparator<Integer>() {
+			@Override
+			public int compare(Integer i1, Integer i2) {
+				return Integer.compare(bounds[i1][0] + bounds[i1][2], bounds[i2][0] + bounds[i2][2]);
+			}
+		};
+
+		ArrayList<Node> nodes = new ArrayList<Node>(nodeCount);
+		for (int start = 0; start < n; start += sliceSize) {
+
+			int end = Math.min(n, start + sliceSize);
+			Arrays.sort(order, start, end, byRow);
+
+			for (int i = start; i < end; i += MAX_ENTRIES) {
+				Node node = new Node(isLeaf);
+				for (int j = i; j < Math.min(end, i + MAX_ENTRIES); j++) {
+					int[] b = bounds[order[j]];
+					addItem(node, items[order[j]], b[0], b[1], b[2], b[3]);
+				}
+				nodes.add(node);
+			}
+		}
+		return nodes.toArray(new Node[nodes.size()]);
+	}
+
+
+	private void insertEntry(RangeAnnotation annotation){
+
+		CellRange r = annotation.getRange();
+		int fr = r.getFirstRow(), fc = r.getFirstColumn(), lr = r.getLastRow(), lc = r.getLastColumn();
+
+		// choose the leaf whose bounds need the least enlargement
+		Node node = root;
+		while(!node.isLeaf){
+			int best = 0;
+			long bestEnlargement = Long.MAX_VALUE, bestArea = Long.MAX_VALUE;
+			for (int i = 0; i < node.count; i++) {
+				int o = 4*i;
+				long area = area(node.bounds[o], node.bounds[o+1], node.bounds[o+2], node.bounds[o+3]);
+				long enlargement = area(Math.min(fr, node.bounds[o]), Math.min(fc, node.bounds[o+1]),
+										Math.max(lr, node.bounds[o+2]), Math.max(lc, node.bounds[o+3])) - area;
+				if(enlargement<bestEnlargement || (enlargement==bestEnlargement && area<bestArea)){
+					best = i; bestEnlargement = enlargement; bestArea = area;
+				}
+			}
+			node = (Node) node.items[best];
+		}
+
+		addItem(node, annotation, fr, fc, lr, lc);
+		adjustTree(node);
+	}
+
+
+	/**
+	 * Propagate the changes of the given node upwards, splitting the nodes that overflow
+	 */
+	private void adjustTree(Node node){
+
+		Node n = node;
+		while(n!=null){
+			Node sibling = null;
+			if(n.count>MAX_ENTRIES)
+				sibling = split(n);
+
+			Node parent = n.parent;
+			if(parent==null){
+				if(sibling!=null){
+					Node newRoot = new Node(false);
+					addNode(newRoot, n);
+					addNode(newRoot, sibling);
+					root = newRoot;
+				}
+				return;
+			}
+
+			updateBounds(parent, indexOf(parent, n), n);
+			if(sibling!=null)
+				addNode(parent, sibling);
+
+			n = parent;
+		}
+	}
+
+
+	/**
+	 * Split the given (overflowing) node in two, using the linear split of Guttman
+	 * @return the new sibling node
+	 */
+	private Node split(Node node){
+
+		int total = node.count;
+		Object[] items = node.items.clone();
+		int[] bounds = node.bounds.clone();
+
+		// pick the seeds as the pair with the greatest normalized separation
+		int seed1 = 0, seed2 = 1;
+		double bestSeparation = -1;
+		for (int d = 0; d < 2; d++) {
+			int highestLow = 0, lowestHigh = 0;
+			int minLow = Integer.MAX_VALUE, maxHigh = Integer.MIN_VALUE;
+			for (int i = 0; i < total; i++) {
+				int low = bounds[4*i+d], high = bounds[4*i+d+2];
+				if(low>bounds[4*highestLow+d]) highestLow = i;
+				if(high<bounds[4*lowestHigh+d+2]) lowestHigh = i;
+				minLow = Math.min(minLow, low);
+				maxHigh = Math.max(maxHigh, high);
+			}
+			double width = Math.max(1, maxHigh - minLow);
+			double separation = (bounds[4*highestLow+d] - bounds[4*lowestHigh+d+2]) / width;
+			if(highestLow!=lowestHigh && separation>bestSeparation){
+				bestSeparation = separation; seed1 = lowestHigh; seed2 = highestLow;
+			}
+		}
+
+		node.count = 0;
+		Arrays.fill(node.items, null);
+		Node sibling = new Node(node.isLeaf);
+
+		addCopy(node, items, bounds, seed1);
+		addCopy(sibling, items, bounds, seed2);
+
+		int remaining = total - 2;
+		for (int i = 0; i < total; i++) {
+			if(i==seed1 || i==seed2)
+				continue;
+
+			Node target;
+			if(node.count + remaining <= MIN_ENTRIES){
+				target = node;
+			}else if(sibling.count + remaining <= MIN_ENTRIES){
+				target = sibling;
+			}else{
+				int o = 4*i;
+				int[] b1 = mbr(node), b2 = mbr(sibling);
+				long area1 = area(b1[0], b1[1], b1[2], b1[3]);
+				long area2 = area(b2[0], b2[1], b2[2], b2[3]);
+				long enlargement1 = area(Math.min(b1[0], bounds[o]), Math.min(b1[1], bounds[o+1]),
+						Math.max(b1[2], bounds[o+2]), Math.max(b1[3], bounds[o+3])) - area1;
+				long enlargement2 = area(Math.min(b2[0], bounds[o]), Math.min(b2[1], bounds[o+1]),
+						Math.max(b2[2], bounds[o+2]), Math.max(b2[3], bounds[o+3])) - area2;
+
+				if(enlargement1!=enlargement2){
+					target = enlargement1<enlargement2 ? node : sibling;
+				}else if(area1!=area2){
+					target = area1<area2 ? node : sibling;
+				}else{
+					target = node.count<=sibling.count ? node : sibling;
+				}
+			}
+			addCopy(target, items, bounds, i);
+			remaining--;
+		}
+
+		return sibling;
+	}
+
+
+	/**
+	 * Remove the nodes that underflow after a deletion, tighten the bounds of the others
+	 * and re-insert the orphaned annotations
+	 */
+	private void condenseTree(Node leaf){
+
+		ArrayList<RangeAnnotation> orphans = new ArrayList<RangeAnnotation>();
+
+		Node n = leaf;
+		while(n.parent!=null){
+			Node parent = n.parent;
+			int index = indexOf(parent, n);
+			if(n.count<MIN_ENTRIES){
+				removeItem(parent, index);
+				collectEntries(n, orphans);
+			}else{
+				updateBounds(parent, index, n);
+			}
+			n = parent;
+		}
+
+		while(!root.isLeaf && root.count==1){
+			root = (Node) root.items[0];
+			root.parent = null;
+		}
+
+		if(!root.isLeaf && root.count==0){
+			root = new Node(true);
+		}
+
+		for (RangeAnnotation orphan : orphans) {
+			insertEntry(orphan);
+		}
+	}
+
+
+	private static Node findLeaf(Node node, RangeAnnotation annotation, int fr, int fc, int lr, int lc){
+
+		if(node.isLeaf){
+			return indexOf(node, annotation)>=0 ? node : null;
+		}
+
+		for (int i = 0; i < node.count; i++) {
+			int o = 4*i;
+			if(node.bounds[o]<=fr && node.bounds[o+1]<=fc && node.bounds[o+2]>=lr && node.bounds[o+3]>=lc){
+				Node found = findLeaf((Node) node.items[i], annotation, fr, fc, lr, lc);
+				if(found!=null)
+					return found;
+			}
+		}
+		return null;
+	}
+
+
+	private static void searchIntersecting(Node node, int fr, int fc, int lr, int lc, Collection<RangeAnnotation> result){
+
+		for (int i = 0; i < node.count; i++) {
+			int o = 4*i;
+			if(node.bounds[o]<=lr && fr<=node.bounds[o+2] && node.bounds[o+1]<=lc && fc<=node.bounds[o+3]){
+				if(node.isLeaf)
+					result.add((RangeAnnotation) node.items[i]);
+				else
+					searchIntersecting((Node) node.items[i], fr, fc, lr, lc, result);
+			}
+		}
+	}
+
+
+	private static void searchContaining(Node node, int fr, int fc, int lr, int lc, Collection<RangeAnnotation> result){
+
+		for (int i = 0; i < node.count; i++) {
+			int o = 4*i;
+			if(node.bounds[o]<=fr && node.bounds[o+1]<=fc && node.bounds[o+2]>=lr && node.bounds[o+3]>=lc){
+				if(node.isLeaf)
+					result.add((RangeAnnotation) node.items[i]);
+				else
+					searchContaining((Node) node.items[i], fr, fc, lr, lc, result);
+			}
+		}
+	}
+
+
+	private static void collectEntries(Node node, Collection<RangeAnnotation> result){
+		for (int i = 0; i < node.count; i++) {
+			if(node.isLeaf)
+				result.add((RangeAnnotation) node.items[i]);
+			else
+				collectEntries((Node) node.items[i], result);
+		}
+	}
+
+
+	private static void addItem(Node node, Object item, int fr, int fc, int lr, int lc){
+		int o = 4*node.count;
+		node.items[node.count] = item;
+		node.bounds[o] = fr; node.bounds[o+1] = fc; node.bounds[o+2] = lr; node.bounds[o+3] = lc;
+		node.count++;
+		if(item instanceof Node)
+			((Node) item).parent = node;
+	}
+
+
+	private static void addNode(Node parent, Node child){
+		int[] b = mbr(child);
+		addItem(parent, child, b[0], b[1], b[2], b[3]);
+	}
+
+
+	private static void addCopy(Node node, Object[] items, int[] bounds, int i){
+		int o = 4*i;
+		addItem(node, items[i], bounds[o], bounds[o+1], bounds[o+2], bounds[o+3]);
+	}
+
+
+	private static void removeItem(Node node, int index){
+		int last = node.count - 1;
+		node.items[index] = node.items[last];
+		System.arraycopy(node.bounds, 4*last, node.bounds, 4*index, 4);
+		node.items[last] = null;
+		node.count--;
+	}
+
+
+	private static void updateBounds(Node parent, int index, Node child){
+		int[] b = mbr(child);
+		int o = 4*index;
+		parent.bounds[o] = b[0]; parent.bounds[o+1] = b[1];
+		parent.bounds[o+2] = b[2]; parent.bounds[o+3] = b[3];
+	}
+
+
+	private static int indexOf(Node node, Object item){
+		for (int i = 0; i < node.count; i++) {
+			if(node.items[i]==item)
+				return i;
+		}
+		return -1;
+	}
+
+
+	/**
+	 * @return the minimum bounding rectangle of all the items in the node
+	 */
+	private static int[] mbr(Node node){
+		int fr = Integer.MAX_VALUE, fc = Integer.MAX_VALUE, lr = Integer.MIN_VALUE, lc = Integer.MIN_VALUE;
+		for (int i = 0; i < node.count; i++) {
+			int o = 4*i;
+			fr = Math.min(fr, node.bounds[o]);
+			fc = Math.min(fc, node.bounds[o+1]);
+			lr = Math.max(lr, node.bounds[o+2]);
+			lc = Math.max(lc, node.bounds[o+3]);
+		}
+		return new int[]{fr, fc, lr, lc};
+	}
+
+
+	private static long area(int fr, int fc, int lr, int lc){
+		return (long) (lr - fr + 1) * (lc - fc + 1);
+	}
+}
@@ -0,0 +1,500 @@
+/**
+ * 
+ */
+package de.tudresden.annotator.annotations;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+
+/**
+ * A raster over the cells of a worksheet that maps each cell to the id of the innermost range annotation
+ * that covers it. It answers the query "which annotation is under this cell" with two array look-ups,
+ * instead of scanning the annotations of the worksheet.
+ *
+ * The cells are grouped in square tiles. A tile whose cells have all the same id is kept as a single number,
+ * so large annotations (e.g., tables) and the cells that are not annotated take almost no memory.
+ * The other tiles are kept as int arrays. The innermost annotation of a cell is the one with the smallest area.
+ * For annotations with the same area, the one that is deeper in the containment tree is the innermost.
+ * The tile directory covers only the first RASTER_MAX_ROW rows and RASTER_MAX_COLUMN columns. The annotations that reach
+ * beyond them (e.g., whole columns or rows) are kept in a list, and checked after the raster look-up. Thus, the directory stays small.
+ * Like the RangeAnnotationIndex, the range of an annotation must not change while it is in the raster.
+ *
+ * @author Elvis Koci
+ */
+public class RangeAnnotationRaster {
+
+	/*
+	 * Each tile covers 64x64 cells
+	 */
+	private static final int TILE_SHIFT = 6;
+	private static final int TILE_SIZE = 1 << TILE_SHIFT;
+	private static final int TILE_MASK = TILE_SIZE - 1;
+
+	/*
+	 * The area covered by the tile directory, at most 1024x16 tiles
+	 */
+	private static final int RASTER_MAX_ROW = 65536;
+	private static final int RASTER_MAX_COLUMN = 1024;
+
+	private static final int MAX_TILE_ROWS = RASTER_MAX_ROW >> TILE_SHIFT;
+	private static final int MAX_TILE_COLUMNS = RASTER_MAX_COLUMN >> TILE_SHIFT;
+
+	/*
+	 * The id of the cells that are not covered by any annotation,
+	 * and the id that marks temporarily the cells of a removed annotation
+	 */
+	private static final int NONE = 0;
+	private static final int HOLE = -1;
+
+	/*
+	 * The ways a range of cells can be painted
+	 */
+	private static final int SET = 0;
+	private static final int INSERT = 1;
+	private static final int MARK_HOLE = 2;
+	private static final int FILL_HOLE = 3;
+	private static final int CLEAR_HOLE = 4;
+
+	/**
+	 * Orders the annotations from the outermost to the innermost.
+	 * Painting them in this order leaves in each cell the innermost annotation.
+	 */
+	private static final Comparator<RangeAnnotation> OUTER_FIRST = new Comparator<RangeAnnotation>() {
+		@Override
+		public int compare(RangeAnnotation ra1, RangeAnnotation ra2) {
+			return compareNesting(ra1, ra2);
+		}
+	};
+
+	/*
+	 * The tile directory, in row-major order. A null tile is uniform, and the id of its cells is in uniformIds.
+	 * The directory covers only the tiles that were touched so far, and grows when needed.
+	 */
+	private int[][] tiles = new int[0][];
+	private int[] uniformIds = new int[0];
+	private int tileRows = 0;
+	private int tileColumns = 0;
+
+	/*
+	 * The annotation for each id (the slot 0 is not used), the id of each annotation, and the ids that can be re-used
+	 */
+	private final ArrayList<RangeAnnotation> annotations = new ArrayList<RangeAnnotation>();
+	private final IdentityHashMap<RangeAnnotation, Integer> ids = new IdentityHashMap<RangeAnnotation, Integer>();
+	private int[] freeIds = new int[16];
+	private int freeCount = 0;
+
+	/*
+	 * The annotations that reach beyond the area of the tile directory. They have an id, but they are not painted.
+	 */
+	private final ArrayList<RangeAnnotation> outside = new ArrayList<RangeAnnotation>();
+
+	/*
+	 * The state of the annotation that is painted at the moment
+	 */
+	private RangeAnnotation painted;
+	private int paintedId;
+	private BitSet refilled = new BitSet();
+
+
+	/**
+	 * Create a new empty raster
+	 */
+	public RangeAnnotationRaster() {
+		this.annotations.add(null);
+	}
+
+
+	/**
+	 * Add the given annotation to the raster. It becomes the annotation of the cells
+	 * where it is inner to the annotation that covered them so far.
+	 * @param annotation the RangeAnnotation to add
+	 */
+	public void insert(RangeAnnotation annotation){
+
+		if(this.ids.containsKey(annotation))
+			return;
+
+		int id = assignId(annotation);
+		if(isOutside(annotation.getRange())){
+			this.outside.add(annotation);
+			return;
+		}
+		paint(annotation.getRange(), annotation, id, INSERT);
+	}
+
+
+	/**
+	 * Remove the given annotation from the raster. The cells where it was the innermost annotation
+	 * get the innermost of the remaining annotations that cover them.
+	 * @param annotation the RangeAnnotation to remove
+	 * @param intersecting the remaining annotations that share cells with the removed one (see RangeAnnotationIndex)
+	 * @return true if the annotation was found and removed, false otherwise
+	 */
+	public boolean remove(RangeAnnotation annotation, Collection<RangeAnnotation> intersecting){
+
+		Integer id = this.ids.remove(annotation);
+		if(id==null)
+			return false;
+
+		if(this.outside.remove(annotation)){
+			releaseId(id);
+			return true;
+		}
+
+		CellRange range = annotation.getRange();
+		paint(range, annotation, id, MARK_HOLE);
+
+		ArrayList<RangeAnnotation> remaining = new ArrayList<RangeAnnotation>(intersecting.size());
+		for (RangeAnnotation ra : intersecting) {
+			if(ra!=annotation && this.ids.containsKey(ra) && !isOutside(ra.getRange()))
+				remaining.add(ra);
+		}
+		Collections.sort(remaining, OUTER_FIRST);
+
+		// re-paint the cells of the removed annotation from the outermost to the innermost of the remaining ones.
+		// a cell can be re-painted only if it was a hole or it was re-painted before, so the cells of inner annotations keep their id
+		this.refilled.clear();
+		for (RangeAnnotation ra : remaining) {
+			int raId = this.ids.get(ra);
+			CellRange common = intersection(range, ra.getRange());
+			if(common!=null)
+				paint(common, ra, raId, FILL_HOLE);
+			this.refilled.set(raId);
+		}
+		paint(range, null, NONE, CLEAR_HOLE);
+
+		releaseId(id);
+		return true;
+	}
+
+
+	/**
+	 * Replace the content of the raster with the given annotations
+	 * @param annotations the RangeAnnotations to add
+	 */
+	public void load(Collection<RangeAnnotation> annotations){
+
+		clear();
+
+		ArrayList<RangeAnnotation> ordered = new ArrayList<RangeAnnotation>(annotations);
+		Collections.sort(ordered, OUTER_FIRST);
+		for (RangeAnnotation annotation : ordered) {
+			int id = assignId(annotation);
+			if(isOutside(annotation.getRange()))
+				this.outside.add(annotation);
+			else
+				paint(annotation.getRange(), annotation, id, SET);
+		}
+	}
+
+
+	/**
+	 * Remove all annotations from the raster
+	 */
+	public void clear(){
+		this.tiles = new int[0][];
+		this.uniformIds = new int[0];
+		this.tileRows = 0;
+		this.tileColumns = 0;
+
+		this.annotations.clear();
+		this.annotations.add(null);
+		this.ids.clear();
+		this.freeCount = 0;
+		this.outside.clear();
+	}
+
+
+	/**
+	 * @return the number of annotations in the raster
+	 */
+	public int size(){
+		return this.ids.size();
+	}
+
+
+	/**
+	 * Get the id of the innermost annotation that covers the given cell
+	 * @param row the (1-based) index of the row
+	 * @param column the (1-based) index of the column
+	 * @return the id of the annotation, or 0 if the cell is not annotated
+	 */
+	public int getAnnotationIdAt(int row, int column){
+
+		int id = getPaintedIdAt(row, column);
+
+		// the annotations outside the raster are inner to the painted one, if they have a smaller area (or are deeper)
+		for (RangeAnnotation annotation : this.outside) {
+			if(annotation.getRange().contains(row, column) &&
+					(id==NONE || compareNesting(annotation, this.annotations.get(id))>0)){
+				id = this.ids.get(annotation);
+			}
+		}
+		return id;
+	}
+
+
+	/**
+	 * Get the id that is painted in the raster for the given cell, without considering the annotations outside the raster
+	 */
+	private int getPaintedIdAt(int row, int column){
+
+		int tileRow = (row-1) >> TILE_SHIFT;
+		int tileColumn = (column-1) >> TILE_SHIFT;
+		if(row<1 || column<1 || tileRow>=this.tileRows || tileColumn>=this.tileColumns)
+			return NONE;
+
+		int tileIndex = tileRow*this.tileColumns + tileColumn;
+		int[] tile = this.tiles[tileIndex];
+		if(tile==null)
+			return this.uniformIds[tileIndex];
+
+		return tile[(((row-1) & TILE_MASK) << TILE_SHIFT) | ((column-1) & TILE_MASK)];
+	}
+
+
+	/**
+	 * Get the innermost annotation that covers the given cell
+	 * @param row the (1-based) index of the row
+	 * @param column the (1-based) index of the column
+	 * @return the RangeAnnotation, or null if the cell is not annotated
+	 */
+	public RangeAnnotation getAnnotationAt(int row, int column){
+		return this.annotations.get(getAnnotationIdAt(row, column));
+	}
+
+
+	/**
+	 * @param id an id that was returned by getAnnotationIdAt(int, int)
+	 * @return the RangeAnnotation that has the given id, or null if there is none
+	 */
+	public RangeAnnotation getAnnotation(int id){
+		if(id<=NONE || id>=this.annotations.size())
+			return null;
+		return this.annotations.get(id);
+	}
+
+
+	/**
+	 * Compare the given annotations by nesting
+	 * @param ra1 the first RangeAnnotation
+	 * @param ra2 the second RangeAnnotation
+	 * @return a negative number if the first annotation is outer to the second,
+	 * a positive number if it is inner, and 0 if neither is
+	 */
+	private static int compareNesting(RangeAnnotation ra1, RangeAnnotation ra2){
+
+		long area1 = ra1.getRange().getArea();
+		long area2 = ra2.getRange().getArea();
+		if(area1!=area2)
+			return area1 > area2 ? -1 : 1;
+
+		return getDepth(ra1) - getDepth(ra2);
+	}
+
+
+	/**
+	 * @param annotation a RangeAnnotation
+	 * @return the number of range annotations above the given one in the containment tree
+	 */
+	private static int getDepth(RangeAnnotation annotation){
+		int depth = 0;
+		DependentAnnotation<?> parent = annotation.getParent();
+		while(parent instanceof RangeAnnotation){
+			depth++;
+			parent = ((RangeAnnotation) parent).getParent();
+		}
+		return depth;
+	}
+
+
+	/**
+	 * @return true if the given range reaches beyond the area that is covered by the tile directory
+	 */
+	private static boolean isOutside(CellRange range){
+		return range.getLastRow() > RASTER_MAX_ROW || range.getLastColumn() > RASTER_MAX_COLUMN;
+	}
+
+
+	/**
+	 * @return the cells that the given ranges share, or null if they do not intersect
+	 */
+	private static CellRange intersection(CellRange r1, CellRange r2){
+		if(!r1.intersects(r2))
+			return null;
+		return new CellRange(Math.max(r1.getFirstRow(), r2.getFirstRow()), Math.max(r1.getFirstColumn(), r2.getFirstColumn()),
+				Math.min(r1.getLastRow(), r2.getLastRow()), Math.min(r1.getLastColumn(), r2.getLastColumn()));
+	}
+
+
+	private int assignId(RangeAnnotation annotation){
+		int id;
+		if(this.freeCount>0){
+			id = this.freeIds[--this.freeCount];
+			this.annotations.set(id, annotation);
+		}else{
+			id = this.annotations.size();
+			this.annotations.add(annotation);
+		}
+		this.ids.put(annotation, id);
+		return id;
+	}
+
+
+	private void releaseId(int id){
+		this.annotations.set(id, null);
+		if(this.freeCount==this.freeIds.length)
+			this.freeIds = Arrays.copyOf(this.freeIds, this.freeCount*2);
+		this.freeIds[this.freeCount++] = id;
+	}
+
+
+	/**
+	 * Decide if a cell that has the given id gets the id of the annotation that is painted
+	 * @param current the id of the cell
+	 * @param mode the way the range is painted
+	 * @return true if the id of the cell has to be replaced, false otherwise
+	 */
+	private boolean replaces(int current, int mode){
+		switch (mode) {
+			case SET:
+				return true;
+			case INSERT:
+				return current==NONE || compareNesting(this.painted, this.annotations.get(current))>=0;
+			case MARK_HOLE:
+				return current==this.paintedId;
+			case FILL_HOLE:
+				return current==HOLE || (current>NONE && this.refilled.get(current));
+			default:
+				return current==HOLE;
+		}
+	}
+
+
+	/**
+	 * Paint the cells of the given range
+	 * @param range the cells to paint
+	 * @param annotation the annotation that is painted, null when the holes are cleared
+	 * @param id the id of the annotation
+	 * @param mode the way the range is painted
+	 */
+	private void paint(CellRange range, RangeAnnotation annotation, int id, int mode){
+
+		this.painted = annotation;
+		this.paintedId = id;
+
+		int value = id;
+		if(mode==MARK_HOLE)
+			value = HOLE;
+		else if(mode==CLEAR_HOLE)
+			value = NONE;
+
+		if(mode==SET || mode==INSERT)
+			ensureCapacity(range.getLastRow(), range.getLastColumn());
+
+		int firstRow = range.getFirstRow()-1;
+		int firstColumn = range.getFirstColumn()-1;
+		int lastRow = Math.min(range.getLastRow(), this.tileRows << TILE_SHIFT)-1;
+		int lastColumn = Math.min(range.getLastColumn(), this.tileColumns << TILE_SHIFT)-1;
+
+		for (int tileRow = firstRow >> TILE_SHIFT; tileRow <= lastRow >> TILE_SHIFT; tileRow++) {
+
+			int rowStart = Math.max(firstRow, tileRow << TILE_SHIFT) & TILE_MASK;
+			int rowEnd = Math.min(lastRow, (tileRow << TILE_SHIFT) + TILE_MASK) & TILE_MASK;
+
+			for (int tileColumn = firstColumn >> TILE_SHIFT; tileColumn <= lastColumn >> TILE_SHIFT; tileColumn++) {
+
+				int columnStart = Math.max(firstColumn, tileColumn << TILE_SHIFT) & TILE_MASK;
+				int columnEnd = Math.min(lastColumn, (tileColumn << TILE_SHIFT) + TILE_MASK) & TILE_MASK;
+
+				paintTile(tileRow*this.tileColumns + tileColumn, rowStart, rowEnd, columnStart, columnEnd, value, mode);
+			}
+		}
+
+		this.painted = null;
+	}
+
+
+	/**
+	 * Paint the cells of a tile that lie between the given (0-based) rows and columns of the tile
+	 */
+	private void paintTile(int tileIndex, int rowStart, int rowEnd, int columnStart, int columnEnd, int value, int mode){
+
+		boolean isWholeTile = rowStart==0 && columnStart==0 && rowEnd==TILE_MASK && columnEnd==TILE_MASK;
+		int[] tile = this.tiles[tileIndex];
+
+		if(tile==null){
+			int uniformId = this.uniformIds[tileIndex];
+			if(uniformId==value || !replaces(uniformId, mode))
+				return;
+
+			if(isWholeTile){
+				this.uniformIds[tileIndex] = value;
+				return;
+			}
+
+			tile = new int[TILE_SIZE*TILE_SIZE];
+			Arrays.fill(tile, uniformId);
+			this.tiles[tileIndex] = tile;
+		}
+
+		// the decision is cached for runs of cells that have the same id
+		int last = Integer.MIN_VALUE;
+		boolean lastDecision = false;
+		boolean isUniform = isWholeTile;
+
+		for (int r = rowStart; r <= rowEnd; r++) {
+			int offset = r << TILE_SHIFT;
+			for (int c = columnStart; c <= columnEnd; c++) {
+				int current = tile[offset+c];
+				if(current!=last){
+					last = current;
+					lastDecision = replaces(current, mode);
+				}
+				if(lastDecision){
+					tile[offset+c] = value;
+				}else if(current!=value){
+					isUniform = false;
+				}
+			}
+		}
+
+		if(isUniform){
+			this.tiles[tileIndex] = null;
+			this.uniformIds[tileIndex] = value;
+		}
+	}
+
+
+	/**
+	 * Grow the tile directory, so that it covers the cell with the given (1-based) indices
+	 */
+	private void ensureCapacity(int row, int column){
+
+		int neededRows = ((row-1) >> TILE_SHIFT) + 1;
+		int neededColumns = ((column-1) >> TILE_SHIFT) + 1;
+		if(neededRows<=this.tileRows && neededColumns<=this.tileColumns)
+			return;
+
+		// grow in steps, to avoid re-allocating the directory for each new annotation
+		int newRows = Math.min(MAX_TILE_ROWS, Math.max(neededRows, this.tileRows*2));
+		int newColumns = Math.min(MAX_TILE_COLUMNS, Math.max(neededColumns, this.tileColumns*2));
+
+		int[][] newTiles = new int[newRows*newColumns][];
+		int[] newUniformIds = new int[newRows*newColumns];
+		for (int r = 0; r < this.tileRows; r++) {
+			System.arraycopy(this.tiles, r*this.tileColumns, newTiles, r*newColumns, this.tileColumns);
+			System.arraycopy(this.uniformIds, r*this.tileColumns, newUniformIds, r*newColumns, this.tileColumns);
+		}
+
+		this.tiles = newTiles;
+		this.uniformIds = newUniformIds;
+		this.tileRows = newRows;
+		this.tileColumns = newColumns;
+	}
+}
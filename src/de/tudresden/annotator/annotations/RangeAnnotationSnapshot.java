@@ -0,0 +1,210 @@
+/**
+ * 
+ */
+package de.tudresden.annotator.annotations;
+
+/**
+ * An immutable copy of the data of a RangeAnnotation, taken at a given moment. 
+ * Unlike the RangeAnnotation itself, it can be read safely from any thread. 
+ * 
+ * @author Elvis Koci
+ */
+public final class RangeAnnotationSnapshot {
+
+	private final String sheetName;
+	private final int sheetIndex;
+	private final int sheetId;
+	private final AnnotationClass annotationClass;
+	private final String name;
+	private final String rangeAddress;
+	private final CellRange range;
+	
+	/*
+	 * The name of the parent range annotation, or the sheet name for top level annotations
+	 */
+	private final String parentName;
+	
+	private final int cells;
+	private final int emptyCells;
+	private final int constantCells;
+	private final int formulaCells;
+	private final int rows;
+	private final int nonEmptyRows;
+	private final int columns; 
+	private final int nonEmptyColumns;
+	private final boolean containsMergedCells;
+	
+	
+	/**
+	 * Copy the current data of the given RangeAnnotation
+	 * @param annotation the RangeAnnotation to copy
+	 */
+	public RangeAnnotationSnapshot(RangeAnnotation annotation) {
+		
+		this.sheetName = annotation.getSheetName();
+		this.sheetIndex = annotation.getSheetIndex();
+		this.sheetId = annotation.getSheetId();
+		this.annotationClass = annotation.getAnnotationClass();
+		this.name = annotation.getName();
+		this.rangeAddress = annotation.getRangeAddress();
+		this.range = annotation.getRange();
+		
+		DependentAnnotation<?> parent = annotation.getParent();
+		this.parentName = parent instanceof RangeAnnotation ? ((RangeAnnotation) parent).getName() : annotation.getSheetName();
+		
+		this.cells = annotation.getCells();
+		this.emptyCells = annotation.getEmptyCells();
+		this.constantCells = annotation.getConstantCells();
+		this.formulaCells = annotation.getFormulaCells();
+		this.rows = annotation.getRows();
+		this.nonEmptyRows = annotation.getNonEmptyRows();
+		this.columns = annotation.getColumns();
+		this.nonEmptyColumns = annotation.getNonEmptyColumns();
+		this.containsMergedCells = annotation.containsMergedCells();
+	}
+
+	/**
+	 * @return the sheetName
+	 */
+	public String getSheetName() {
+		return sheetName;
+	}
+
+	/**
+	 * @return the sheetIndex
+	 */
+	public int getSheetIndex() {
+		return sheetIndex;
+	}
+
+	/**
+	 * @return the stable id of the worksheet annotation
+	 */
+	public int getSheetId() {
+		return sheetId;
+	}
+
+	/**
+	 * @return the annotationClass
+	 */
+	public AnnotationClass getAnnotationClass() {
+		return annotationClass;
+	}
+
+	/**
+	 * @return the name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the range
+	 */
+	public CellRange getRange() {
+		return range;
+	}
+	
+	/**
+	 * @return the rangeAddress
+	 */
+	public String getRangeAddress() {
+		return rangeAddress;
+	}
+
+	/**
+	 * @return the name of the parent range annotation, or the sheet name if the annotation is not contained by another one
+	 */
+	public String getParentName() {
+		return parentName;
+	}
+
+	/**
+	 * @return the cells
+	 */
+	public int getCells() {
+		return cells;
+	}
+
+	/**
+	 * @return the emptyCells
+	 */
+	public int getEmptyCells() {
+		return emptyCells;
+	}
+
+	/**
+	 * @return the constantCells
+	 */
+	public int getConstantCells() {
+		return constantCells;
+	}
+
+	/**
+	 * @return the formulaCells
+	 */
+	public int getFormulaCells() {
+		return formulaCells;
+	}
+
+	/**
+	 * @return the rows
+	 */
+	public int getRows() {
+		return rows;
+	}
+
+	/**
+	 * @return the nonEmptyRows
+	 */
+	public int getNonEmptyRows() {
+		return nonEmptyRows;
+	}
+
+	/**
+	 * @return the columns
+	 */
+	public int getColumns() {
+		return columns;
+	}
+
+	/**
+	 * @return the nonEmptyColumns
+	 */
+	public int getNonEmptyColumns() {
+		return nonEmptyColumns;
+	}
+
+	/**
+	 * @return the hasMergedCells
+	 */
+	public boolean containsMergedCells() {
+		return containsMergedCells;
+	}
+	
+	/**
+	 * Create a new RangeAnnotation from the data of this snapshot. 
+	 * The parent is not set, it is resolved when the annotation is added to the WorkbookAnnotation.  
+	 * @return a RangeAnnotation object
+	 */
+	public RangeAnnotation toRangeAnnotation() {
+		
+		RangeAnnotation annotation = new RangeAnnotation(sheetName, sheetIndex, annotationClass, name, rangeAddress);
+		annotation.setSheetId(sheetId);
+		annotation.setCells(cells);
+		annotation.setEmptyCells(emptyCells);
+		annotation.setConstantCells(constantCells);
+		annotation.setFormulaCells(formulaCells);
+		annotation.setRows(rows);
+		annotation.setNonEmptyRows(nonEmptyRows);
+		annotation.setColumns(columns);
+		annotation.setNonEmptyColumns(nonEmptyColumns);
+		annotation.setContainsMergedCells(containsMergedCells);
+		return annotation;
+	}
+	
+	@Override 
+	public String toString() {
+		return this.name;
+	}
+}
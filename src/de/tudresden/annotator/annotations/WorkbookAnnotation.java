@@ -3,8 +3,17 @@
  */
 package de.tudresden.annotator.annotations;
 
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
 
 /**
  * 
@@ -31,6 +40,41 @@ public class WorkbookAnnotation extends Annotation<RangeAnnotation>{
 	 */
 	private HashMap<String, WorksheetAnnotation> worksheetAnnotations;
 	
+	/*
+	 * The worksheet annotations indexed by their stable id. The name is mapped to the id only once, 
+	 * when a worksheet annotation or range annotation enters the model. Afterwards, the id is used for the lookups.
+	 */
+	private ArrayList<WorksheetAnnotation> worksheetsById = new ArrayList<WorksheetAnnotation>();
+	
+	/*
+	 * A counter that is incremented on every modification, and its value at the last save 
+	 */
+	private long modCount = 0;
+	private long savedModCount = 0;
+	
+	/*
+	 * The ids of the worksheets that were modified since the last save
+	 */
+	private BitSet dirtySheets = new BitSet();
+	
+	/*
+	 * The root of the tree of content hashes, computed on demand from the hashes of the worksheet annotations, 
+	 * and its value at the last save
+	 */
+	private long contentHash;
+	private boolean isContentHashValid = false;
+	private long savedContentHash = 0;
+	
+	/*
+	 * The last snapshot that was taken. It is re-used as long as the modification counter does not change. 
+	 */
+	private WorkbookAnnotationSnapshot snapshot;
+	
+	/*
+	 * Delivers the changes of this workbook annotation (and its worksheet annotations) to the registered listeners
+	 */
+	private final AnnotationChangeBus changeBus = new AnnotationChangeBus();
+	
 	
 	/**
 	 * @param workbookName
@@ -56,6 +100,11 @@ public class WorkbookAnnotation extends Annotation<RangeAnnotation>{
 	public WorkbookAnnotation(String workbookName, HashMap<String, WorksheetAnnotation> worksheetAnnotations) {
 		this.workbookName = workbookName;
 		this.worksheetAnnotations = worksheetAnnotations;
+		for (WorksheetAnnotation sheetAnnotation : worksheetAnnotations.values()) {
+			sheetAnnotation.setParent(this);
+			sheetAnnotation.setSheetId(this.worksheetsById.size());
+			this.worksheetsById.add(sheetAnnotation);
+		}
 	}
 	
 	
@@ -75,34 +124,259 @@ public class WorkbookAnnotation extends Annotation<RangeAnnotation>{
 	
 	
 	/**
-	 * Add a RangeAnnotation 
+	 * Add a RangeAnnotation. If the annotation does not have a parent yet, the parent is resolved by descending 
+	 * the containment tree of the worksheet. If the annotation is a container, the existing annotations 
+	 * that it contains are moved under it, so that the tree stays consistent.  
 	 * @param rangeAnnotation an object that represents a RangeAnnotation
 	 */
 	public void addRangeAnnotation(RangeAnnotation rangeAnnotation){
 		
-		String sheetKey = rangeAnnotation.getSheetName();
-		WorksheetAnnotation sheetAnnotation= this.worksheetAnnotations.get(sheetKey);
+		this.changeBus.beginChanges();
+		try {
+			WorksheetAnnotation sheetAnnotation = getOrCreateWorksheetAnnotation(rangeAnnotation);
+			linkRangeAnnotation(sheetAnnotation, rangeAnnotation, true);
+			sheetAnnotation.addToRangeIndex(rangeAnnotation);
+		} finally {
+			this.changeBus.endChanges(true);
+		}
+	}
+	
+	
+	/**
+	 * Add the given RangeAnnotations in one batch. The annotations are first ordered such that containers 
+	 * come before the annotations they contain, so the containment tree is built in a single pass.
+	 * The spatial index of each affected worksheet is re-built once at the end, instead of being updated per annotation.
+	 * @param rangeAnnotations a collection of RangeAnnotation objects
+	 */
+	public void addRangeAnnotations(Collection<RangeAnnotation> rangeAnnotations){
+		
+		if(rangeAnnotations.isEmpty())
+			return;
+		
+		this.changeBus.beginChanges();
+		try {
+			ArrayList<RangeAnnotation> ordered = new ArrayList<RangeAnnotation>(rangeAnnotations);
+			Collections.sort(ordered, RangeAnnotation.CONTAINMENT_ORDER);
+		
+			// for each affected worksheet, whether it had annotations before this batch.
+			// only then, a container might have to adopt annotations that were added earlier.
+			// the worksheet annotations are compared by identity, as their hash changes while the annotations are added
+			IdentityHashMap<WorksheetAnnotation, Boolean> affectedSheets = new IdentityHashMap<WorksheetAnnotation, Boolean>();
+		
+			for (RangeAnnotation rangeAnnotation : ordered) {
+			
+				WorksheetAnnotation sheetAnnotation = getOrCreateWorksheetAnnotation(rangeAnnotation);
+				Boolean hadAnnotations = affectedSheets.get(sheetAnnotation);
+				if(hadAnnotations==null){
+					hadAnnotations = sheetAnnotation.hasAnnotations();
+					affectedSheets.put(sheetAnnotation, hadAnnotations);
+				}
+			
+				linkRangeAnnotation(sheetAnnotation, rangeAnnotation, hadAnnotations);
+			}
+		
+			for (WorksheetAnnotation sheetAnnotation : affectedSheets.keySet()) {
+				sheetAnnotation.rebuildRangeIndex();
+			}
+		} finally {
+			this.changeBus.endChanges(true);
+		}
+	}
+	
+	
+	/**
+	 * Get the WorksheetAnnotation where the given RangeAnnotation is placed. It is created if it does not exist.
+	 * @param rangeAnnotation an object that represents a RangeAnnotation
+	 * @return the WorksheetAnnotation object
+	 */
+	private WorksheetAnnotation getOrCreateWorksheetAnnotation(RangeAnnotation rangeAnnotation){
+		
+		WorksheetAnnotation sheetAnnotation= getWorksheetAnnotation(rangeAnnotation);
 		
 		if(sheetAnnotation==null){
 			sheetAnnotation = new WorksheetAnnotation(rangeAnnotation.getSheetName(), rangeAnnotation.getSheetIndex());
-			sheetAnnotation.setParent(this);
-			this.worksheetAnnotations.put(sheetKey, sheetAnnotation);
-			
+			addWorksheetAnnotation(sheetAnnotation);
+		}
+		return sheetAnnotation;
+	}
+	
+	
+	/**
+	 * Place the given RangeAnnotation in the containment tree and in the annotation maps. 
+	 * The spatial index is not updated. An existing annotation with the same name is replaced. 
+	 * @param sheetAnnotation the WorksheetAnnotation where the RangeAnnotation is placed
+	 * @param rangeAnnotation the RangeAnnotation to add
+	 * @param adopt true to move under the annotation (if it is a container) the existing annotations that it contains 
+	 */
+	private void linkRangeAnnotation(WorksheetAnnotation sheetAnnotation, RangeAnnotation rangeAnnotation, boolean adopt){
+		
+		rangeAnnotation.setSheetId(sheetAnnotation.getSheetId());
+		
+		RangeAnnotation existing = sheetAnnotation.getAnnotation(rangeAnnotation.getName());
+		if(existing!=null){
+			this.removeRangeAnnotation(existing);
 		}
 		
 		DependentAnnotation<?> parent = rangeAnnotation.getParent();
-		if(parent!=null){
-			parent.addAnnotationToBucket(rangeAnnotation.getAnnotationClass().getLabel(), rangeAnnotation.getName(), rangeAnnotation);
+		if(parent==null){
+			parent = sheetAnnotation.resolveParent(rangeAnnotation);
+		}
+		attachToParent(sheetAnnotation, rangeAnnotation, parent);
+		
+		if(adopt && rangeAnnotation.getAnnotationClass().isContainer()){
+			adoptContainedAnnotations(sheetAnnotation, rangeAnnotation);
+		}
+		
+		sheetAnnotation.addAnnotation(rangeAnnotation.getName(), rangeAnnotation);
+		sheetAnnotation.addAnnotationToBucket(rangeAnnotation.getAnnotationClass(), rangeAnnotation.getName(), rangeAnnotation);
+		
+		this.addAnnotation(rangeAnnotation.getName(), rangeAnnotation);
+		this.addAnnotationToBucket(rangeAnnotation.getAnnotationClass(), rangeAnnotation.getName(), rangeAnnotation);
+		
+		this.changeBus.getPendingChanges().annotationAdded(rangeAnnotation);
+	}
+	
+	
+	/**
+	 * Make the given annotation a direct child of the given parent
+	 * @param sheetAnnotation the WorksheetAnnotation where the RangeAnnotation is placed
+	 * @param rangeAnnotation the RangeAnnotation to attach
+	 * @param parent the new parent. Parents that are not RangeAnnotations are replaced by the worksheet annotation 
+	 */
+	private void attachToParent(WorksheetAnnotation sheetAnnotation, RangeAnnotation rangeAnnotation, DependentAnnotation<?> parent){
+		
+		if(parent instanceof RangeAnnotation){
+			rangeAnnotation.setParent(parent);
+			parent.addAnnotationToBucket(rangeAnnotation.getAnnotationClass(), rangeAnnotation.getName(), rangeAnnotation);
 			parent.addAnnotation(rangeAnnotation.getName(), rangeAnnotation);
 		}else{
 			rangeAnnotation.setParent(sheetAnnotation);
+			sheetAnnotation.addTopLevelAnnotation(rangeAnnotation);
 		}
+	}
+	
+	
+	/**
+	 * Remove the given annotation from the child maps of its parent
+	 * @param sheetAnnotation the WorksheetAnnotation where the RangeAnnotation is placed
+	 * @param rangeAnnotation the RangeAnnotation to detach
+	 */
+	private void detachFromParent(WorksheetAnnotation sheetAnnotation, RangeAnnotation rangeAnnotation){
 		
-		sheetAnnotation.addAnnotation(rangeAnnotation.getName(), rangeAnnotation);
-		sheetAnnotation.addAnnotationToBucket(rangeAnnotation.getAnnotationClass().getLabel(), rangeAnnotation.getName(), rangeAnnotation);
+		DependentAnnotation<?> parent = rangeAnnotation.getParent();
+		if(parent instanceof RangeAnnotation){
+			parent.removeAnnotation(rangeAnnotation.getName());
+			parent.removeAnnotationFromBucket(rangeAnnotation.getAnnotationClass(), rangeAnnotation.getName());
+		}else{
+			sheetAnnotation.removeTopLevelAnnotation(rangeAnnotation.getName());
+		}
+	}
+	
+	
+	/**
+	 * Move under the given container the annotations that are siblings of it and lie completely inside its range
+	 * @param sheetAnnotation the WorksheetAnnotation where the container is placed
+	 * @param container the RangeAnnotation that acts as container
+	 */
+	private void adoptContainedAnnotations(WorksheetAnnotation sheetAnnotation, RangeAnnotation container){
 		
-		this.addAnnotation(rangeAnnotation.getName(), rangeAnnotation);
-		this.addAnnotationToBucket(rangeAnnotation.getAnnotationClass().getLabel(), rangeAnnotation.getName(), rangeAnnotation);
+		DependentAnnotation<?> parent = container.getParent();
+		Collection<RangeAnnotation> siblings;
+		if(parent instanceof RangeAnnotation){
+			siblings = parent.getAllAnnotations();
+		}else{
+			siblings = sheetAnnotation.getTopLevelAnnotations();
+		}
+		
+		AnnotationClass containerClass = container.getAnnotationClass();
+		RangeAnnotation[] candidates = siblings.toArray(new RangeAnnotation[siblings.size()]);
+		for (RangeAnnotation candidate : candidates) {
+			
+			if(candidate==container || !container.getRange().contains(candidate.getRange()))
+				continue;
+			
+			AnnotationClass candidateClass = candidate.getAnnotationClass();
+			boolean canBeContained = candidateClass.isDependent()? 
+					candidateClass.getContainer()==containerClass : candidateClass.isContainable();
+			
+			if(canBeContained){
+				detachFromParent(sheetAnnotation, candidate);
+				attachToParent(sheetAnnotation, candidate, container);
+				this.changeBus.getPendingChanges().annotationReparented(candidate);
+			}
+		}
+	}
+	
+	
+	/**
+	 * Add a WorksheetAnnotation. It replaces the existing one with the same sheet name, if any.
+	 * @param sheetAnnotation an object that represents a WorksheetAnnotation
+	 */
+	public void addWorksheetAnnotation(WorksheetAnnotation sheetAnnotation){
+		
+		WorksheetAnnotation existing = this.worksheetAnnotations.get(sheetAnnotation.getSheetName());
+		if(existing!=null){
+			sheetAnnotation.setSheetId(existing.getSheetId());
+			this.worksheetsById.set(existing.getSheetId(), sheetAnnotation);
+		}else{
+			sheetAnnotation.setSheetId(this.worksheetsById.size());
+			this.worksheetsById.add(sheetAnnotation);
+		}
+		
+		sheetAnnotation.setParent(this);
+		this.worksheetAnnotations.put(sheetAnnotation.getSheetName(), sheetAnnotation);
+		markSheetModified(sheetAnnotation);
+	}
+	
+	
+	/**
+	 * Get the WorksheetAnnotation that has the given stable id
+	 * @param sheetId the id of the worksheet annotation
+	 * @return the WorksheetAnnotation object, or null if there is none
+	 */
+	public WorksheetAnnotation getWorksheetAnnotation(int sheetId){
+		if(sheetId<0 || sheetId>=this.worksheetsById.size())
+			return null;
+		return this.worksheetsById.get(sheetId);
+	}
+	
+	
+	/**
+	 * Get the WorksheetAnnotation for the worksheet with the given name
+	 * @param sheetName the name of the worksheet
+	 * @return the WorksheetAnnotation object, or null if there is none
+	 */
+	public WorksheetAnnotation getWorksheetAnnotation(String sheetName){
+		return this.worksheetAnnotations.get(sheetName);
+	}
+	
+	
+	/**
+	 * Get the WorksheetAnnotation where the given RangeAnnotation is placed. 
+	 * The stable sheet id of the RangeAnnotation is used, if it is known. Otherwise, the sheet name is used.
+	 * @param rangeAnnotation an object that represents a RangeAnnotation
+	 * @return the WorksheetAnnotation object, or null if there is none
+	 */
+	public WorksheetAnnotation getWorksheetAnnotation(RangeAnnotation rangeAnnotation){
+		
+		WorksheetAnnotation sheetAnnotation = getWorksheetAnnotation(rangeAnnotation.getSheetId());
+		if(sheetAnnotation!=null && sheetAnnotation.getSheetName().equals(rangeAnnotation.getSheetName()))
+			return sheetAnnotation;
+		
+		return this.worksheetAnnotations.get(rangeAnnotation.getSheetName());
+	}
+	
+	
+	/**
+	 * Get the stable id of the worksheet with the given name 
+	 * @param sheetName the name of the worksheet
+	 * @return the id of the worksheet annotation, or -1 if there is none
+	 */
+	public int getSheetId(String sheetName){
+		WorksheetAnnotation sheetAnnotation = getWorksheetAnnotation(sheetName);
+		if(sheetAnnotation==null)
+			return -1;
+		return sheetAnnotation.getSheetId();
 	}
 	
 	
@@ -113,7 +387,7 @@ public class WorkbookAnnotation extends Annotation<RangeAnnotation>{
 	 * @return the RangeAnnotation object that corresponds to the given arguments  
 	 */
 	public RangeAnnotation getRangeAnnotation(String sheetKey, String annotationKey){	
-		WorksheetAnnotation sheetAnnotation= this.worksheetAnnotations.get(sheetKey);
+		WorksheetAnnotation sheetAnnotation= getWorksheetAnnotation(sheetKey);
 		
 		if(sheetAnnotation==null)
 			return null;
@@ -125,17 +399,17 @@ public class WorkbookAnnotation extends Annotation<RangeAnnotation>{
 	/**
 	 * Get the collection of RangeAnnotations for the given Worksheet key and AnnotationClass label
 	 * @param sheetKey a string that represents the id (key) of the worksheet where the RangeAnnotation is placed
-	 * @param classLabel the label of the AnnotationClass that this RangeAnnotation is member of
+	 * @param annotationClass the AnnotationClass that this RangeAnnotation is member of
 	 * @return a collection of RangeAnnotations that correspond to the given arguments
 	 */
-	public Collection<RangeAnnotation> getSheetAnnotationsByClass(String sheetKey, String classLabel){
+	public Collection<RangeAnnotation> getSheetAnnotationsByClass(String sheetKey, AnnotationClass annotationClass){
 		
-		WorksheetAnnotation sheetAnnotation= this.worksheetAnnotations.get(sheetKey);
+		WorksheetAnnotation sheetAnnotation= getWorksheetAnnotation(sheetKey);
 		
 		if(sheetAnnotation==null)
 			return null;
 		
-		return sheetAnnotation.getAnnotationsByClass(classLabel);		
+		return sheetAnnotation.getAnnotationsByClass(annotationClass);		
 	}
 	
 	
@@ -146,7 +420,7 @@ public class WorkbookAnnotation extends Annotation<RangeAnnotation>{
 	 */
 	public Collection<RangeAnnotation> getAllRangeAnnotationsForSheet(String sheetKey){
 		
-		WorksheetAnnotation sheetAnnotation= this.worksheetAnnotations.get(sheetKey);
+		WorksheetAnnotation sheetAnnotation= getWorksheetAnnotation(sheetKey);
 		
 		if(sheetAnnotation==null)
 			return null;
@@ -156,28 +430,78 @@ public class WorkbookAnnotation extends Annotation<RangeAnnotation>{
 	
 	
 	/**
-	 * Remove a RangeAnnotation 
+	 * Remove a RangeAnnotation. The children of the removed annotation are moved under its parent. 
+	 * The dependent children that would be left without their container are removed as well (see getRemovalCascade).
 	 * @param rangeAnnotation an object that represents a RangeAnnotation
 	 */
 	public void removeRangeAnnotation(RangeAnnotation rangeAnnotation){
-		String sheetKey = rangeAnnotation.getSheetName(); 
-		WorksheetAnnotation sheetAnnotation= this.worksheetAnnotations.get(sheetKey);
+		
+		WorksheetAnnotation sheetAnnotation= getWorksheetAnnotation(rangeAnnotation);
 		
 		if(sheetAnnotation==null)
 			return;
 		
-		String classLabel = rangeAnnotation.getAnnotationClass().getLabel();
+		if(sheetAnnotation.getAnnotation(rangeAnnotation.getName())!=rangeAnnotation)
+			return;
 		
-		sheetAnnotation.removeAnnotation(rangeAnnotation.getName());
-		sheetAnnotation.removeAnnotationFromBucket(classLabel, rangeAnnotation.getName());
+		removeRangeAnnotations(sheetAnnotation, Collections.singletonList(rangeAnnotation));
+	}
+	
+	
+	/**
+	 * Get the given RangeAnnotations, together with their descendants that would be left without the container they depend on 
+	 * (e.g., the headers of a removed table), if the given annotations were removed. The rest of the descendants are moved 
+	 * under their closest ancestor that is not removed. The descendants are added after the given annotations.  
+	 * @param rangeAnnotations the RangeAnnotations to remove
+	 * @return a list of all the RangeAnnotations that have to be removed 
+	 */
+	public List<RangeAnnotation> getRemovalCascade(Collection<RangeAnnotation> rangeAnnotations){
+		
+		ArrayList<RangeAnnotation> cascade = new ArrayList<RangeAnnotation>(rangeAnnotations);
+		Set<RangeAnnotation> removed = Collections.newSetFromMap(new IdentityHashMap<RangeAnnotation, Boolean>());
+		removed.addAll(rangeAnnotations);
 		
-		if(rangeAnnotation.getParent() instanceof RangeAnnotation){
-			rangeAnnotation.getParent().removeAnnotation(rangeAnnotation.getName());
-			rangeAnnotation.getParent().removeAnnotationFromBucket(classLabel, rangeAnnotation.getName());
+		// repeat until no more annotations are orphaned, as an orphan might be the closest ancestor of annotations checked before it 
+		boolean isChanged = true;
+		while(isChanged){
+			isChanged = false;
+			for (int i = 0; i < cascade.size(); i++) {
+				
+				RangeAnnotation rangeAnnotation = cascade.get(i);
+				if(!rangeAnnotation.hasAnnotations())
+					continue;
+				
+				DependentAnnotation<?> parent = rangeAnnotation.getParent();
+				while(parent instanceof RangeAnnotation && removed.contains(parent)){
+					parent = ((RangeAnnotation) parent).getParent();
+				}
+				
+				for (RangeAnnotation child : rangeAnnotation.getAllAnnotations()) {
+					if(!removed.contains(child) && !canBeAttachedTo(child, parent)){
+						removed.add(child);
+						cascade.add(child);
+						isChanged = true;
+					}
+				}
+			}
 		}
+		return cascade;
+	}
+	
+	
+	/**
+	 * @param rangeAnnotation a RangeAnnotation 
+	 * @param parent the new parent
+	 * @return true if the given annotation can be a child of the given parent, false if it depends on a container of another class 
+	 */
+	private boolean canBeAttachedTo(RangeAnnotation rangeAnnotation, DependentAnnotation<?> parent){
 		
-		this.removeAnnotation(rangeAnnotation.getName());
-		this.removeAnnotationFromBucket(classLabel, rangeAnnotation.getName());
+		AnnotationClass annotationClass = rangeAnnotation.getAnnotationClass();
+		if(!annotationClass.isDependent() || annotationClass.getContainer()==null)
+			return true;
+		
+		return parent instanceof RangeAnnotation && ((RangeAnnotation) parent).getAnnotationClass().getLabel()
+				.compareTo(annotationClass.getContainer().getLabel())==0;
 	}
 	
 	
@@ -188,24 +512,7 @@ public class WorkbookAnnotation extends Annotation<RangeAnnotation>{
 	 * @param annotationKey a string that is used as key for the annotation object 
 	 */
 	public void removeRangeAnnotation(String sheetKey, String classLabel, String annotationKey){
-		WorksheetAnnotation sheetAnnotation= this.worksheetAnnotations.get(sheetKey);
-		
-		if(sheetAnnotation==null)
-			return;
-		
-		DependentAnnotation<?> parent = sheetAnnotation.getAnnotation(annotationKey).getParent();
-		
-		if(parent instanceof RangeAnnotation){	
-			parent = (RangeAnnotation) parent;
-			parent.removeAnnotation(annotationKey);
-			parent.removeAnnotationFromBucket(classLabel, annotationKey);
-		}
-		
-		sheetAnnotation.removeAnnotation(annotationKey);
-		sheetAnnotation.removeAnnotationFromBucket(classLabel, annotationKey);
-		
-		this.removeAnnotation(annotationKey);
-		this.removeAnnotationFromBucket(classLabel, annotationKey);
+		removeRangeAnnotation(sheetKey, annotationKey);
 	}
 	
 	
@@ -215,50 +522,37 @@ public class WorkbookAnnotation extends Annotation<RangeAnnotation>{
 	 * @param rangeAnnotationKey a string that is used as key for the annotation object 
 	 */
 	public void removeRangeAnnotation(String sheetKey, String rangeAnnotationKey){
-		WorksheetAnnotation sheetAnnotation= this.worksheetAnnotations.get(sheetKey);
+		WorksheetAnnotation sheetAnnotation= getWorksheetAnnotation(sheetKey);
 		
 		if(sheetAnnotation==null)
 			return;
 		
-		String classLabel = sheetAnnotation.getAnnotation(rangeAnnotationKey).getAnnotationClass().getLabel();
-		DependentAnnotation<?> parent = sheetAnnotation.getAnnotation(rangeAnnotationKey).getParent();
-		
-		if(parent instanceof RangeAnnotation){	
-			RangeAnnotation parentAnnotation = (RangeAnnotation) parent;
-			parentAnnotation.removeAnnotation(rangeAnnotationKey);
-			parentAnnotation.removeAnnotationFromBucket(classLabel, rangeAnnotationKey);
-		}
-		
-		sheetAnnotation.removeAnnotation(rangeAnnotationKey);
-		sheetAnnotation.removeAnnotationFromBucket(classLabel, rangeAnnotationKey);
+		RangeAnnotation rangeAnnotation = sheetAnnotation.getAnnotation(rangeAnnotationKey);
+		if(rangeAnnotation==null)
+			return;
 		
-		this.removeAnnotation(rangeAnnotationKey);
-		this.removeAnnotationFromBucket(classLabel, rangeAnnotationKey);
+		removeRangeAnnotation(rangeAnnotation);
 	}
 	
 	
 	/**
 	 * Remove all RangeAnnotations belonging to the specified Workbook and AnnotationClass
 	 * @param sheetKey a string that represents the id (key) of the worksheet where the RangeAnnotation is placed
-	 * @param classLabel the label of the AnnotationClass that this RangeAnnotation is member of
+	 * @param annotationClass the AnnotationClass that this RangeAnnotation is member of
 	 * 
 	 */
-	public void emptySheetAnnotationBucket(String sheetKey, String classLabel){
+	public void emptySheetAnnotationBucket(String sheetKey, AnnotationClass annotationClass){
 		
-		WorksheetAnnotation sheetAnnotation= this.worksheetAnnotations.get(sheetKey);
+		WorksheetAnnotation sheetAnnotation= getWorksheetAnnotation(sheetKey);
 		
 		if(sheetAnnotation==null)
 			return;
 		
-		RangeAnnotation[] rangeAnnotations = 
-				sheetAnnotation.getAnnotationsByClass(classLabel).toArray(
-						new RangeAnnotation[sheetAnnotation.getAllAnnotations().size()]);
-			
-		for (RangeAnnotation rangeAnnotation : rangeAnnotations) {
-			this.removeRangeAnnotation(rangeAnnotation);
-		}
+		Collection<RangeAnnotation> bucket = sheetAnnotation.getAnnotationsByClass(annotationClass);
+		if(bucket==null)
+			return;
 		
-		sheetAnnotation.removeAllAnnotationsOfClass(classLabel);
+		removeRangeAnnotations(sheetAnnotation, new ArrayList<RangeAnnotation>(bucket));
 	}
 	
 	
@@ -267,14 +561,12 @@ public class WorkbookAnnotation extends Annotation<RangeAnnotation>{
 	 * @param sheetKey a string that represents the id (key) of the worksheet where the RangeAnnotation is placed
 	 */
 	public void removeAllRangeAnnotationsFromSheet(String sheetKey){
-		WorksheetAnnotation sheetAnnotation= this.worksheetAnnotations.get(sheetKey);
-		RangeAnnotation[] rangeAnnotations = 
-				sheetAnnotation.getAllAnnotations().toArray(
-						new RangeAnnotation[sheetAnnotation.getAllAnnotations().size()]);
+		WorksheetAnnotation sheetAnnotation= getWorksheetAnnotation(sheetKey);
 		
-		for (RangeAnnotation rangeAnnotation : rangeAnnotations) {
-			this.removeRangeAnnotation(rangeAnnotation);
-		}
+		if(sheetAnnotation==null)
+			return;
+		
+		removeAllRangeAnnotationsFromSheet(sheetAnnotation);
 	}
 	
 	/**
@@ -282,13 +574,114 @@ public class WorkbookAnnotation extends Annotation<RangeAnnotation>{
 	 * @param sheetAnnotation the WorksheetAnnotation object that contains all the range annotations to delete
 	 */
 	public void removeAllRangeAnnotationsFromSheet(WorksheetAnnotation sheetAnnotation){
+		removeRangeAnnotations(sheetAnnotation, new ArrayList<RangeAnnotation>(sheetAnnotation.getAllAnnotations()));
+	}
+	
+	
+	/**
+	 * Remove, in one batch, all the RangeAnnotations that satisfy the given condition. 
+	 * The children of the removed annotations are moved under their closest ancestor that is not removed. 
+	 * @param filter the condition that the RangeAnnotations to remove satisfy 
+	 * @return the number of removed RangeAnnotations
+	 */
+	public int removeRangeAnnotations(Predicate<? super RangeAnnotation> filter){
+		
+		this.changeBus.beginChanges();
+		try {
+			int removed = 0;
+			for (WorksheetAnnotation sheetAnnotation : this.worksheetAnnotations.values()) {
+			
+				ArrayList<RangeAnnotation> matches = new ArrayList<RangeAnnotation>();
+				for (RangeAnnotation rangeAnnotation : sheetAnnotation.getAllAnnotations()) {
+					if(filter.test(rangeAnnotation))
+						matches.add(rangeAnnotation);
+				}
+			
+				removed += removeRangeAnnotations(sheetAnnotation, matches);
+			}
+			return removed;
+		} finally {
+			this.changeBus.endChanges(true);
+		}
+	}
+	
+	
+	/**
+	 * Remove the given RangeAnnotations from the given worksheet annotation in one pass. 
+	 * The dependent descendants that would be left without their container are removed too (see getRemovalCascade).
+	 * The spatial index is re-built once, when a large part of the worksheet annotations is removed.
+	 * @param sheetAnnotation the WorksheetAnnotation where the RangeAnnotations are placed
+	 * @param rangeAnnotations the RangeAnnotations to remove
+	 * @return the number of removed RangeAnnotations, including the dependent descendants
+	 */
+	private int removeRangeAnnotations(WorksheetAnnotation sheetAnnotation, List<RangeAnnotation> rangeAnnotations){
+		
+		if(rangeAnnotations.isEmpty())
+			return 0;
+		
+		rangeAnnotations = getRemovalCascade(rangeAnnotations);
 		
-		RangeAnnotation[] rangeAnnotations = 
-				sheetAnnotation.getAllAnnotations().toArray(
-						new RangeAnnotation[sheetAnnotation.getAllAnnotations().size()]);
+		this.changeBus.beginChanges();
+		try {
+			Set<RangeAnnotation> removed = Collections.newSetFromMap(new IdentityHashMap<RangeAnnotation, Boolean>());
+			removed.addAll(rangeAnnotations);
 		
-		for (RangeAnnotation rangeAnnotation : rangeAnnotations) {
-			this.removeRangeAnnotation(rangeAnnotation);
+			boolean removesAll = removed.size()==sheetAnnotation.getAllAnnotations().size(); 
+		
+			for (RangeAnnotation rangeAnnotation : rangeAnnotations) {
+			
+				String key = rangeAnnotation.getName();
+				AnnotationClass annotationClass = rangeAnnotation.getAnnotationClass();
+			
+				this.removeAnnotation(key);
+				this.removeAnnotationFromBucket(annotationClass, key);
+			
+				if(removesAll)
+					continue;
+			
+				sheetAnnotation.removeAnnotation(key);
+				sheetAnnotation.removeAnnotationFromBucket(annotationClass, key);
+			
+				// the parent is updated here, unless it is removed too 
+				DependentAnnotation<?> parent = rangeAnnotation.getParent();
+				if(!removed.contains(parent)){
+					detachFromParent(sheetAnnotation, rangeAnnotation);
+				}
+			
+				if(!rangeAnnotation.hasAnnotations())
+					continue;
+			
+				// re-parent the remaining children to the closest ancestor that is not removed
+				while(parent instanceof RangeAnnotation && removed.contains(parent)){
+					parent = ((RangeAnnotation) parent).getParent();
+				}
+			
+				for (RangeAnnotation child : rangeAnnotation.getAllAnnotations()) {
+					if(!removed.contains(child)){
+						attachToParent(sheetAnnotation, child, parent);
+						this.changeBus.getPendingChanges().annotationReparented(child);
+					}
+				}
+			}
+		
+			for (RangeAnnotation rangeAnnotation : rangeAnnotations) {
+				rangeAnnotation.removeAllAnnotations();
+				rangeAnnotation.setParent(null);
+				this.changeBus.getPendingChanges().annotationRemoved(rangeAnnotation);
+			}
+		
+			if(removesAll){
+				sheetAnnotation.removeAllAnnotations();
+			}else if(rangeAnnotations.size() > sheetAnnotation.getAllAnnotations().size()){
+				sheetAnnotation.rebuildRangeIndex();
+			}else{
+				for (RangeAnnotation rangeAnnotation : rangeAnnotations) {
+					sheetAnnotation.removeFromRangeIndex(rangeAnnotation);
+				}
+			}
+			return rangeAnnotations.size();
+		} finally {
+			this.changeBus.endChanges(true);
 		}
 	}
 	
@@ -297,9 +690,197 @@ public class WorkbookAnnotation extends Annotation<RangeAnnotation>{
 	 * Remove all annotations 
 	 */
 	public void removeAllAnnotations(){
-		this.allAnnotations.clear();
-		this.annotationsByClass.clear();
-		this.worksheetAnnotations.clear();
+		
+		this.changeBus.beginChanges();
+		try {
+			this.allAnnotations = null;
+			this.annotationsByClass = null;
+			this.worksheetAnnotations.clear();
+			this.worksheetsById.clear();
+			markModified();
+			this.changeBus.getPendingChanges().allAnnotationsRemoved();
+		} finally {
+			this.changeBus.endChanges(true);
+		}
+	}
+	
+	
+	@Override
+	/**
+	 * Increment the modification counter and invalidate the content hash
+	 */
+	protected void markModified(){
+		this.modCount++;
+		this.isContentHashValid = false;
+	}
+	
+	
+	/**
+	 * Record that the status of the given worksheet annotation changed, and notify the change listeners 
+	 * @param sheetAnnotation the WorksheetAnnotation whose status changed
+	 */
+	protected void markSheetStatusChanged(WorksheetAnnotation sheetAnnotation){
+		this.changeBus.beginChanges();
+		this.changeBus.getPendingChanges().sheetStatusChanged(sheetAnnotation.getSheetId());
+		this.changeBus.endChanges(true);
+	}
+	
+	
+	/**
+	 * Add a listener that is notified about the changes in the annotations. 
+	 * The listeners are notified in the order they were added.
+	 * @param listener the AnnotationChangeListener to add
+	 */
+	public void addChangeListener(AnnotationChangeListener listener){
+		this.changeBus.addListener(listener);
+	}
+	
+	
+	/**
+	 * @param listener the AnnotationChangeListener to remove
+	 */
+	public void removeChangeListener(AnnotationChangeListener listener){
+		this.changeBus.removeListener(listener);
+	}
+	
+	
+	/**
+	 * Start a batch of changes. The change listeners are notified once, when the outermost batch ends, 
+	 * about all the changes in it. Each call has to be paired with a call to endChanges(), in a finally block.  
+	 */
+	public void beginChanges(){
+		this.changeBus.beginChanges();
+	}
+	
+	
+	/**
+	 * End a batch of changes, and notify the change listeners if it is the outermost batch
+	 */
+	public void endChanges(){
+		this.changeBus.endChanges(true);
+	}
+	
+	
+	/**
+	 * End a batch of changes. If it is the outermost batch, its changes are discarded without notifying the listeners. 
+	 * It is used when the annotations are loaded from the file, as the listeners should not persist them again.  
+	 */
+	public void endChangesSilently(){
+		this.changeBus.endChanges(false);
+	}
+	
+	
+	/**
+	 * Record that the given worksheet annotation was modified 
+	 * @param sheetAnnotation the WorksheetAnnotation that was modified
+	 */
+	protected void markSheetModified(WorksheetAnnotation sheetAnnotation){
+		if(sheetAnnotation.getSheetId()>=0)
+			this.dirtySheets.set(sheetAnnotation.getSheetId());
+		markModified();
+	}
+	
+	
+	/**
+	 * @return the number of modifications on this workbook annotation (including its worksheets) so far 
+	 */
+	public long getModCount() {
+		return modCount;
+	}
+	
+	
+	/**
+	 * Check if this workbook annotation has changed since it was last saved
+	 * @return true if there are unsaved changes, false otherwise
+	 */
+	public boolean isDirty(){
+		return this.modCount!=this.savedModCount;
+	}
+	
+	
+	/**
+	 * Check if the content of this workbook annotation differs from the one that was last saved. 
+	 * Unlike isDirty(), it returns false when the modifications were reverted (e.g., by undo).
+	 * @return true if the content changed since the last save, false otherwise
+	 */
+	public boolean hasChangedSinceSave(){
+		return isDirty() && getContentHash()!=this.savedContentHash;
+	}
+	
+	
+	/**
+	 * Get the root hash of the tree of content hashes over all the annotations of this workbook. 
+	 * Only the hashes of the worksheets that were modified are computed again.
+	 * @return a long hash value
+	 */
+	public long getContentHash(){
+		
+		if(this.isContentHashValid)
+			return this.contentHash;
+		
+		long hash = hashString(this.workbookName);
+		hash = 31*hash + (this.isCompleted?1:0);
+		hash = 31*hash + (this.isNotApplicable?1:0);
+		hash = mixHash(hash);
+		
+		for (WorksheetAnnotation val : this.worksheetAnnotations.values()) {
+			hash = hash + val.getContentHash();
+		}
+		
+		this.contentHash = mixHash(hash);
+		this.isContentHashValid = true;
+		return this.contentHash;
+	}
+	
+	
+	/**
+	 * Get the names of the worksheets whose content changed since the last save. 
+	 * The worksheets that were modified, but then restored to the saved content, are not included.  
+	 * @return an unmodifiable set of worksheet names
+	 */
+	public Set<String> getDirtySheets(){
+		
+		HashSet<String> sheetNames = new HashSet<String>();
+		for (int i = this.dirtySheets.nextSetBit(0); i >= 0; i = this.dirtySheets.nextSetBit(i+1)) {
+			WorksheetAnnotation sheetAnnotation = getWorksheetAnnotation(i);
+			if(sheetAnnotation!=null && sheetAnnotation.hasChangedSinceSave())
+				sheetNames.add(sheetAnnotation.getSheetName());
+		}
+		return Collections.unmodifiableSet(sheetNames);
+	}
+	
+	
+	/**
+	 * Get an immutable view of the current state of this workbook annotation. It has to be called on the thread 
+	 * that modifies the annotation model, but the returned snapshot can be read from any thread. 
+	 * Only the worksheet annotations that changed since the last call are copied again.
+	 * @return a WorkbookAnnotationSnapshot object
+	 */
+	public WorkbookAnnotationSnapshot getSnapshot(){
+		
+		if(this.snapshot!=null && this.snapshot.getModCount()==this.modCount)
+			return this.snapshot;
+		
+		LinkedHashMap<String, WorksheetAnnotationSnapshot> worksheetSnapshots = new LinkedHashMap<String, WorksheetAnnotationSnapshot>();
+		for (WorksheetAnnotation sheetAnnotation : this.worksheetAnnotations.values()) {
+			worksheetSnapshots.put(sheetAnnotation.getSheetName(), sheetAnnotation.getSnapshot());
+		}
+		
+		this.snapshot = new WorkbookAnnotationSnapshot(this, worksheetSnapshots);
+		return this.snapshot;
+	}
+	
+	
+	/**
+	 * Mark the current state of this workbook annotation, and all its worksheet annotations, as saved 
+	 */
+	public void markSaved(){
+		this.savedModCount = this.modCount;
+		this.savedContentHash = getContentHash();
+		this.dirtySheets.clear();
+		for (WorksheetAnnotation sheetAnnotation : this.worksheetAnnotations.values()) {
+			sheetAnnotation.markSaved();
+		}
 	}
 	
 	
@@ -315,6 +896,7 @@ public class WorkbookAnnotation extends Annotation<RangeAnnotation>{
 	 */
 	public void setWorkbookName(String workbookName) {
 		this.workbookName = workbookName;
+		markModified();
 	}
 	
 		
@@ -337,7 +919,13 @@ public class WorkbookAnnotation extends Annotation<RangeAnnotation>{
 	 * @param isCompleted the isCompleted to set
 	 */
 	public void setCompleted(boolean isCompleted) {
-		this.isCompleted = isCompleted;
+		if(this.isCompleted!=isCompleted){
+			this.changeBus.beginChanges();
+			this.isCompleted = isCompleted;
+			markModified();
+			this.changeBus.getPendingChanges().workbookStatusChanged();
+			this.changeBus.endChanges(true);
+		}
 	}
 
 
@@ -353,7 +941,13 @@ public class WorkbookAnnotation extends Annotation<RangeAnnotation>{
 	 * @param isNotApplicable the isNotApplicable to set
 	 */
 	public void setNotApplicable(boolean isNotApplicable) {
-		this.isNotApplicable = isNotApplicable;
+		if(this.isNotApplicable!=isNotApplicable){
+			this.changeBus.beginChanges();
+			this.isNotApplicable = isNotApplicable;
+			markModified();
+			this.changeBus.getPendingChanges().workbookStatusChanged();
+			this.changeBus.endChanges(true);
+		}
 	}
 
 
@@ -364,14 +958,8 @@ public class WorkbookAnnotation extends Annotation<RangeAnnotation>{
 	
 	@Override
 	public int hashCode() {
-		
-		int hash = this.getWorkbookName().hashCode() + (this.isCompleted?1:0) + (this.isNotApplicable?1:0);
-		
-		for (WorksheetAnnotation val : this.getWorksheetAnnotations().values()) {
-			hash = hash + val.hashCode();
-		}
-		
-		return hash;
+		long hash = getContentHash();
+		return (int) (hash ^ (hash >>> 32));
 	}
 
 	@Override
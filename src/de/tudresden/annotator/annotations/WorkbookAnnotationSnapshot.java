@@ -0,0 +1,174 @@
+/**
+ * 
+ */
+package de.tudresden.annotator.annotations;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable view of a WorkbookAnnotation, taken at a given moment. 
+ * It is created by WorkbookAnnotation.getSnapshot() on the thread that owns the annotation model (i.e., the UI thread), 
+ * and then it can be handed to background tasks (export, statistics, autosave) that read it while the annotation goes on.
+ * The snapshots of the worksheets that did not change are shared between consecutive workbook snapshots.  
+ * 
+ * @author Elvis Koci
+ */
+public final class WorkbookAnnotationSnapshot {
+	
+	private final String workbookName;
+	private final boolean isCompleted;
+	private final boolean isNotApplicable;
+	
+	/*
+	 * The value of the modification counter of the workbook annotation when this snapshot was taken
+	 */
+	private final long modCount;
+	
+	/*
+	 * The root of the tree of content hashes of the workbook annotation when this snapshot was taken
+	 */
+	private final long contentHash;
+	
+	private final Map<String, WorksheetAnnotationSnapshot> worksheetSnapshots;
+	private final WorksheetAnnotationSnapshot[] worksheetSnapshotsById;
+	private final List<RangeAnnotationSnapshot> allRangeAnnotations;
+	
+	
+	/**
+	 * @param workbookAnnotation the WorkbookAnnotation to copy
+	 * @param worksheetSnapshots the snapshots of its worksheet annotations, keyed by sheet name
+	 */
+	WorkbookAnnotationSnapshot(WorkbookAnnotation workbookAnnotation, LinkedHashMap<String, WorksheetAnnotationSnapshot> worksheetSnapshots) {
+		
+		this.workbookName = workbookAnnotation.getWorkbookName();
+		this.isCompleted = workbookAnnotation.isCompleted();
+		this.isNotApplicable = workbookAnnotation.isNotApplicable();
+		this.modCount = workbookAnnotation.getModCount();
+		this.contentHash = workbookAnnotation.getContentHash();
+		this.worksheetSnapshots = Collections.unmodifiableMap(worksheetSnapshots);
+		
+		int maxSheetId = -1;
+		for (WorksheetAnnotationSnapshot sheetSnapshot : worksheetSnapshots.values()) {
+			maxSheetId = Math.max(maxSheetId, sheetSnapshot.getSheetId());
+		}
+		this.worksheetSnapshotsById = new WorksheetAnnotationSnapshot[maxSheetId+1];
+		for (WorksheetAnnotationSnapshot sheetSnapshot : worksheetSnapshots.values()) {
+			if(sheetSnapshot.getSheetId()>=0)
+				this.worksheetSnapshotsById[sheetSnapshot.getSheetId()] = sheetSnapshot;
+		}
+		
+		int size = 0;
+		for (WorksheetAnnotationSnapshot sheetSnapshot : worksheetSnapshots.values()) {
+			size += sheetSnapshot.getRangeAnnotations().size();
+		}
+		
+		ArrayList<RangeAnnotationSnapshot> list = new ArrayList<RangeAnnotationSnapshot>(size);
+		for (WorksheetAnnotationSnapshot sheetSnapshot : worksheetSnapshots.values()) {
+			list.addAll(sheetSnapshot.getRangeAnnotations());
+		}
+		this.allRangeAnnotations = Collections.unmodifiableList(list);
+	}
+
+	/**
+	 * @return the workbookName
+	 */
+	public String getWorkbookName() {
+		return workbookName;
+	}
+
+	/**
+	 * @return the isCompleted
+	 */
+	public boolean isCompleted() {
+		return isCompleted;
+	}
+
+	/**
+	 * @return the isNotApplicable
+	 */
+	public boolean isNotApplicable() {
+		return isNotApplicable;
+	}
+
+	/**
+	 * @return the value of the modification counter of the workbook annotation when this snapshot was taken
+	 */
+	public long getModCount() {
+		return modCount;
+	}
+	
+	/**
+	 * @return the root of the tree of content hashes of the workbook annotation when this snapshot was taken
+	 */
+	public long getContentHash() {
+		return contentHash;
+	}
+	
+	/**
+	 * Get the ids of the worksheet annotations whose content differs between this snapshot and the given one. 
+	 * The worksheets are compared by their content hashes, and nothing is compared when the root hashes are equal.
+	 * @param other the snapshot to compare with
+	 * @return a list of sheet ids, in increasing order
+	 */
+	public List<Integer> getChangedWorksheets(WorkbookAnnotationSnapshot other) {
+		
+		if(other==this || other.getContentHash()==this.contentHash)
+			return Collections.emptyList();
+		
+		ArrayList<Integer> changed = new ArrayList<Integer>();
+		int maxSheetId = Math.max(this.worksheetSnapshotsById.length, other.worksheetSnapshotsById.length);
+		for (int sheetId = 0; sheetId < maxSheetId; sheetId++) {
+			WorksheetAnnotationSnapshot sheetSnapshot = getWorksheetSnapshot(sheetId);
+			WorksheetAnnotationSnapshot otherSheetSnapshot = other.getWorksheetSnapshot(sheetId);
+			
+			if(sheetSnapshot==null && otherSheetSnapshot==null)
+				continue;
+			
+			if(sheetSnapshot==null || !sheetSnapshot.hasSameContent(otherSheetSnapshot))
+				changed.add(sheetId);
+		}
+		return changed;
+	}
+	
+	/**
+	 * @param sheetName the name of the worksheet
+	 * @return the snapshot of the worksheet annotation, or null if there is none
+	 */
+	public WorksheetAnnotationSnapshot getWorksheetSnapshot(String sheetName) {
+		return worksheetSnapshots.get(sheetName);
+	}
+
+	/**
+	 * @param sheetId the stable id of the worksheet annotation
+	 * @return the snapshot of the worksheet annotation, or null if there is none
+	 */
+	public WorksheetAnnotationSnapshot getWorksheetSnapshot(int sheetId) {
+		if(sheetId<0 || sheetId>=worksheetSnapshotsById.length)
+			return null;
+		return worksheetSnapshotsById[sheetId];
+	}
+
+	/**
+	 * @return an unmodifiable collection of the snapshots of all worksheet annotations
+	 */
+	public Collection<WorksheetAnnotationSnapshot> getWorksheetSnapshots() {
+		return worksheetSnapshots.values();
+	}
+
+	/**
+	 * @return an unmodifiable list of the range annotations in all the worksheets
+	 */
+	public List<RangeAnnotationSnapshot> getAllRangeAnnotations() {
+		return allRangeAnnotations;
+	}
+	
+	@Override
+	public String toString() {
+		return this.worksheetSnapshots.values().toString();
+	}
+}
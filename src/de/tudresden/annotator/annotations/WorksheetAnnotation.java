@@ -3,6 +3,10 @@
  */
 package de.tudresden.annotator.annotations;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+
 /**
  * @author Elvis Koci
  */
@@ -11,8 +15,54 @@ public class WorksheetAnnotation extends DependentAnnotation<WorkbookAnnotation>
 	private String workbookName;
 	private String sheetName;
 	private int sheetIndex;
+	
+	/*
+	 * A stable id that is assigned by the WorkbookAnnotation. It does not change when the worksheet is renamed or moved. 
+	 */
+	private int sheetId = -1;
 	private boolean isCompleted = false;
 	private boolean isNotApplicable = false;
+	
+	/*
+	 * A spatial index over all the range annotations of this worksheet
+	 */
+	private RangeAnnotationIndex rangeIndex = new RangeAnnotationIndex();
+	
+	/*
+	 * Maps each cell of this worksheet to the innermost range annotation that covers it. It is updated together with the spatial index. 
+	 */
+	private RangeAnnotationRaster rangeRaster = new RangeAnnotationRaster();
+	
+	/*
+	 * The range annotations that have this worksheet as direct parent (i.e., the roots of the containment tree). 
+	 * The allAnnotations map, instead, holds all the range annotations of this worksheet. 
+	 */
+	private LinkedHashMap<String, RangeAnnotation> topLevelAnnotations = new LinkedHashMap<String, RangeAnnotation>();
+	
+	/*
+	 * A counter that is incremented on every modification, and its value at the last save 
+	 */
+	private long modCount = 0;
+	private long savedModCount = 0;
+	
+	/*
+	 * A counter that is incremented when the cell contents of the worksheet change in an unknown range.
+	 * The statistics of a range annotation are valid only for the content version they were calculated for. 
+	 */
+	private long contentVersion = 0;
+	
+	/*
+	 * A hash of the status of this worksheet and of the content hashes of its top level range annotations, 
+	 * which cover the whole containment tree. It is computed on demand. The value at the last save is kept as well.
+	 */
+	private long contentHash;
+	private boolean isContentHashValid = false;
+	private long savedContentHash = 0;
+	
+	/*
+	 * The last snapshot that was taken. It is re-used as long as the modification counter does not change. 
+	 */
+	private WorksheetAnnotationSnapshot snapshot;
 
 	/**
 	 * @param workbookName
@@ -59,9 +109,26 @@ public class WorksheetAnnotation extends DependentAnnotation<WorkbookAnnotation>
 	 * @param sheetName the sheetName to set
 	 */
 	public void setSheetName(String sheetName) {
-		this.sheetName = sheetName;
+		if(this.sheetName==null || !this.sheetName.equals(sheetName)){
+			this.sheetName = sheetName;
+			markModified();
+		}
 	}
 
+	/**
+	 * @return the stable id of this worksheet annotation in the WorkbookAnnotation, -1 if it is not assigned yet
+	 */
+	public int getSheetId() {
+		return sheetId;
+	}
+	
+	/**
+	 * @param sheetId the sheetId to set
+	 */
+	void setSheetId(int sheetId) {
+		this.sheetId = sheetId;
+	}
+	
 	/**
 	 * @return the sheetIndex
 	 */
@@ -87,7 +154,12 @@ public class WorksheetAnnotation extends DependentAnnotation<WorkbookAnnotation>
 	 * @param isCompleted the isCompleted to set
 	 */
 	public void setCompleted(boolean isCompleted) {
-		this.isCompleted = isCompleted;
+		if(this.isCompleted!=isCompleted){
+			this.isCompleted = isCompleted;
+			markModified();
+			if(getParent()!=null)
+				getParent().markSheetStatusChanged(this);
+		}
 	}
 
 	/**
@@ -101,12 +173,321 @@ public class WorksheetAnnotation extends DependentAnnotation<WorkbookAnnotation>
 	 * @param isNotApplicable the isNotApplicable to set
 	 */
 	public void setNotApplicable(boolean isNotApplicable) {
-		this.isNotApplicable = isNotApplicable;
+		if(this.isNotApplicable!=isNotApplicable){
+			this.isNotApplicable = isNotApplicable;
+			markModified();
+			if(getParent()!=null)
+				getParent().markSheetStatusChanged(this);
+		}
+	}
+	
+	/**
+	 * Add the given range annotation to the spatial index of this worksheet
+	 * @param annotation the RangeAnnotation to index
+	 */
+	public void addToRangeIndex(RangeAnnotation annotation){
+		this.rangeIndex.insert(annotation);
+		this.rangeRaster.insert(annotation);
+	}
+	
+	/**
+	 * Remove the given range annotation from the spatial index of this worksheet
+	 * @param annotation the RangeAnnotation to remove
+	 */
+	public void removeFromRangeIndex(RangeAnnotation annotation){
+		this.rangeIndex.remove(annotation);
+		
+		ArrayList<RangeAnnotation> intersecting = new ArrayList<RangeAnnotation>();
+		this.rangeIndex.findIntersecting(annotation.getRange(), intersecting);
+		this.rangeRaster.remove(annotation, intersecting);
+	}
+	
+	/**
+	 * Re-build the spatial index of this worksheet from all its range annotations in a single pass 
+	 */
+	public void rebuildRangeIndex(){
+		this.rangeIndex.load(getAllAnnotations());
+		this.rangeRaster.load(getAllAnnotations());
+	}
+	
+	/**
+	 * Remove all range annotations from the spatial index of this worksheet
+	 */
+	public void clearRangeIndex(){
+		this.rangeIndex.clear();
+		this.rangeRaster.clear();
+	}
+	
+	/**
+	 * Get the innermost range annotation that covers the given cell. The look-up takes constant time.
+	 * @param row the (1-based) index of the row
+	 * @param column the (1-based) index of the column
+	 * @return the RangeAnnotation, or null if the cell is not annotated
+	 */
+	public RangeAnnotation getAnnotationAt(int row, int column){
+		return this.rangeRaster.getAnnotationAt(row, column);
+	}
+	
+	
+	/**
+	 * Check if the given range overlaps with existing range annotations in this worksheet 
+	 * @param range the range to check 
+	 * @param ignoreContainers true to skip annotations that are members of classes that are marked as containers, false to consider them
+	 * @return true if there are overlaps, false otherwise
+	 */
+	public boolean hasOverlaps(CellRange range, boolean ignoreContainers){
+		
+		ArrayList<RangeAnnotation> intersecting = new ArrayList<RangeAnnotation>();
+		this.rangeIndex.findIntersecting(range, intersecting);
+		
+		for (RangeAnnotation annotation : intersecting) {
+			if(ignoreContainers && annotation.getAnnotationClass().isContainer())
+				continue;
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Check if the given range overlaps with the range annotations that have the given parent 
+	 * @param range the range to check 
+	 * @param parent the annotation whose (direct) children are considered
+	 * @return true if there are overlaps, false otherwise
+	 */
+	public boolean hasOverlaps(CellRange range, DependentAnnotation<?> parent){
+		
+		ArrayList<RangeAnnotation> intersecting = new ArrayList<RangeAnnotation>();
+		this.rangeIndex.findIntersecting(range, intersecting);
+		
+		for (RangeAnnotation annotation : intersecting) {
+			if(annotation.getParent()==parent)
+				return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Get the smallest container annotation in this worksheet that contains completely the given range
+	 * @param range the range to check 
+	 * @return the smallest container annotation, or null if there is none
+	 */
+	public RangeAnnotation getSmallestContainer(CellRange range){
+		return getSmallestContainer(range, null);
+	}
+	
+	/**
+	 * Get the smallest container annotation of the given class that contains completely the given range.
+	 * The containment tree is descended from the top level annotations of this worksheet, 
+	 * following at each level the container that contains the range.  
+	 * @param range the range to check 
+	 * @param classLabel the label of the AnnotationClass, or null to consider containers of any class
+	 * @return the smallest container annotation, or null if there is none
+	 */
+	public RangeAnnotation getSmallestContainer(CellRange range, String classLabel){
+		
+		RangeAnnotation smallest = null;
+		Collection<RangeAnnotation> children = this.topLevelAnnotations.values();
+		
+		RangeAnnotation next = findContainer(children, range);
+		while(next!=null){
+			if(classLabel==null || classLabel.compareTo(next.getAnnotationClass().getLabel())==0)
+				smallest = next;
+			next = findContainer(next.getAllAnnotations(), range);
+		}
+		return smallest;
+	}
+	
+	/**
+	 * Find the container annotation (among the given ones) that contains completely the given range
+	 * @param annotations the annotations to search
+	 * @param range the range to check
+	 * @return the first container annotation that contains the range, or null if there is none
+	 */
+	private static RangeAnnotation findContainer(Collection<RangeAnnotation> annotations, CellRange range){
+		for (RangeAnnotation annotation : annotations) {
+			if(annotation.getAnnotationClass().isContainer() && annotation.getRange().contains(range))
+				return annotation;
+		}
+		return null;
+	}
+	
+	/**
+	 * Find the annotation that should act as direct parent of the given range annotation. 
+	 * Dependent annotations are placed in the smallest container of the required class, 
+	 * containable ones in the smallest container of any class. 
+	 * @param annotation the RangeAnnotation to find the parent for
+	 * @return the parent annotation, this worksheet annotation if there is no suitable container
+	 */
+	public DependentAnnotation<?> resolveParent(RangeAnnotation annotation){
+		
+		AnnotationClass annotationClass = annotation.getAnnotationClass();
+		RangeAnnotation container = null;
+		
+		if(annotationClass.isDependent()){
+			container = getSmallestContainer(annotation.getRange(), annotationClass.getContainer().getLabel());
+		}else if(annotationClass.isContainable()){
+			container = getSmallestContainer(annotation.getRange(), null);
+		}
+		
+		if(container==null)
+			return this;
+		
+		return container;
+	}
+	
+	/**
+	 * Add a range annotation that has this worksheet as direct parent
+	 * @param annotation the RangeAnnotation to add
+	 */
+	public void addTopLevelAnnotation(RangeAnnotation annotation){
+		this.topLevelAnnotations.put(annotation.getName(), annotation);
+		markModified();
+	}
+	
+	/**
+	 * Remove the range annotation with the given key from the top level annotations 
+	 * @param key a string that is used as key for the annotation object 
+	 */
+	public void removeTopLevelAnnotation(String key){
+		if(this.topLevelAnnotations.remove(key)!=null)
+			markModified();
+	}
+	
+	/**
+	 * Get the range annotations that have this worksheet as direct parent
+	 * @return a collection of RangeAnnotations
+	 */
+	public Collection<RangeAnnotation> getTopLevelAnnotations(){
+		return this.topLevelAnnotations.values();
+	}
+	
+	@Override
+	/**
+	 * Increment the modification counter, invalidate the content hash, and notify the parent WorkbookAnnotation
+	 */
+	protected void markModified(){
+		this.modCount++;
+		this.isContentHashValid = false;
+		if(getParent()!=null)
+			getParent().markSheetModified(this);
+	}
+	
+	/**
+	 * @return the number of modifications on this worksheet annotation so far 
+	 */
+	public long getModCount() {
+		return modCount;
+	}
+	
+	/**
+	 * Check if this worksheet annotation has changed since it was last saved
+	 * @return true if there are unsaved changes, false otherwise
+	 */
+	public boolean isDirty(){
+		return this.modCount!=this.savedModCount;
+	}
+	
+	/**
+	 * Check if the content of this worksheet annotation differs from the one that was last saved. 
+	 * Unlike isDirty(), it returns false when the modifications were reverted (e.g., by undo).
+	 * @return true if the content changed since the last save, false otherwise
+	 */
+	public boolean hasChangedSinceSave(){
+		return isDirty() && getContentHash()!=this.savedContentHash;
+	}
+	
+	/**
+	 * Get the root hash of the tree of content hashes for this worksheet annotation. 
+	 * Only the hashes on the paths from the modified range annotations to the root are computed again.
+	 * @return a long hash value
+	 */
+	public long getContentHash(){
+		
+		if(this.isContentHashValid)
+			return this.contentHash;
+		
+		long hash = hashString(this.sheetName);
+		hash = 31*hash + (this.isCompleted?1:0);
+		hash = 31*hash + (this.isNotApplicable?1:0);
+		hash = mixHash(hash);
+		
+		for (RangeAnnotation val : this.topLevelAnnotations.values()) {
+			hash = hash + val.getContentHash();
+		}
+		
+		this.contentHash = mixHash(hash);
+		this.isContentHashValid = true;
+		return this.contentHash;
+	}
+	
+	/**
+	 * @return the version of the cell contents of this worksheet 
+	 */
+	public long getContentVersion() {
+		return contentVersion;
+	}
+	
+	/**
+	 * Record that the contents of the given range of cells were changed. Only the statistics of the range annotations 
+	 * that intersect the range become outdated. If the range is not known, the statistics of all range annotations do.
+	 * @param changedRange the range of cells that changed, or null if it is not known
+	 */
+	public void markContentChanged(CellRange changedRange){
+		
+		if(changedRange==null){
+			this.contentVersion++;
+			return;
+		}
+		
+		ArrayList<RangeAnnotation> intersecting = new ArrayList<RangeAnnotation>();
+		this.rangeIndex.findIntersecting(changedRange, intersecting);
+		for (RangeAnnotation annotation : intersecting) {
+			annotation.invalidateStatistics();
+		}
+	}
+	
+	/**
+	 * Check if the statistics of the given range annotation are valid for the current contents of this worksheet
+	 * @param annotation a RangeAnnotation of this worksheet
+	 * @return true if the statistics do not need to be calculated again, false otherwise
+	 */
+	public boolean hasValidStatistics(RangeAnnotation annotation){
+		return annotation.getStatisticsVersion()==this.contentVersion;
+	}
+	
+	/**
+	 * Get an immutable view of the current state of this worksheet annotation. 
+	 * A new snapshot is taken only if the worksheet annotation changed since the last call.  
+	 * @return a WorksheetAnnotationSnapshot object
+	 */
+	public WorksheetAnnotationSnapshot getSnapshot(){
+		if(this.snapshot==null || this.snapshot.getModCount()!=this.modCount)
+			this.snapshot = new WorksheetAnnotationSnapshot(this);
+		return this.snapshot;
+	}
+	
+	/**
+	 * Mark the current state of this worksheet annotation as saved 
+	 */
+	public void markSaved(){
+		this.savedModCount = this.modCount;
+		this.savedContentHash = getContentHash();
+	}
+	
+	@Override
+	/**
+	 * Remove all annotations, including the top level ones and the ones in the spatial index 
+	 */
+	public void removeAllAnnotations(){
+		super.removeAllAnnotations();
+		this.topLevelAnnotations.clear();
+		this.rangeIndex.clear();
+		this.rangeRaster.clear();
 	}
 	
 	@Override 
 	public String toString() {
-		return this.getSheetName()+" = "+this.allAnnotations.values(); 
+		return this.getSheetName()+" = "+this.getAllAnnotations(); 
 	}
 
 	@Override
@@ -120,7 +501,7 @@ public class WorksheetAnnotation extends DependentAnnotation<WorkbookAnnotation>
 		if(sa.getSheetName().compareTo(this.sheetName)!=0)
 			return false;
 		
-		if(!(sa.getAllAnnotations().equals(this.allAnnotations)))
+		if(!this.hasSameAnnotations(sa))
 			return false;
 		
 		if(sa.isCompleted()!=this.isCompleted)
@@ -134,12 +515,7 @@ public class WorksheetAnnotation extends DependentAnnotation<WorkbookAnnotation>
 
 	@Override
 	public int hashCode() {
-		int hash = this.getSheetName().hashCode() + (this.isCompleted?1:0) + (this.isNotApplicable?1:0) ;
-		
-		for (RangeAnnotation val : this.allAnnotations.values()) {
-			hash = hash + val.hashCode();
-		}
-		
-		return hash;
+		long hash = getContentHash();
+		return (int) (hash ^ (hash >>> 32));
 	}
 }
@@ -0,0 +1,128 @@
+/**
+ * 
+ */
+package de.tudresden.annotator.annotations;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An immutable view of a WorksheetAnnotation, taken at a given moment. 
+ * It is created by WorksheetAnnotation.getSnapshot() and can be read safely from any thread.
+ * 
+ * @author Elvis Koci
+ */
+public final class WorksheetAnnotationSnapshot {
+	
+	private final String sheetName;
+	private final int sheetIndex;
+	private final int sheetId;
+	private final boolean isCompleted;
+	private final boolean isNotApplicable;
+	
+	/*
+	 * The value of the modification counter of the worksheet annotation when this snapshot was taken
+	 */
+	private final long modCount;
+	
+	/*
+	 * The content hash of the worksheet annotation when this snapshot was taken
+	 */
+	private final long contentHash;
+	
+	private final List<RangeAnnotationSnapshot> rangeAnnotations;
+	
+	
+	/**
+	 * Copy the current state of the given WorksheetAnnotation
+	 * @param sheetAnnotation the WorksheetAnnotation to copy
+	 */
+	WorksheetAnnotationSnapshot(WorksheetAnnotation sheetAnnotation) {
+		
+		this.sheetName = sheetAnnotation.getSheetName();
+		this.sheetIndex = sheetAnnotation.getSheetIndex();
+		this.sheetId = sheetAnnotation.getSheetId();
+		this.isCompleted = sheetAnnotation.isCompleted();
+		this.isNotApplicable = sheetAnnotation.isNotApplicable();
+		this.modCount = sheetAnnotation.getModCount();
+		this.contentHash = sheetAnnotation.getContentHash();
+		
+		ArrayList<RangeAnnotationSnapshot> list = new ArrayList<RangeAnnotationSnapshot>(sheetAnnotation.getAllAnnotations().size());
+		for (RangeAnnotation rangeAnnotation : sheetAnnotation.getAllAnnotations()) {
+			list.add(new RangeAnnotationSnapshot(rangeAnnotation));
+		}
+		this.rangeAnnotations = Collections.unmodifiableList(list);
+	}
+
+	/**
+	 * @return the sheetName
+	 */
+	public String getSheetName() {
+		return sheetName;
+	}
+
+	/**
+	 * @return the sheetIndex
+	 */
+	public int getSheetIndex() {
+		return sheetIndex;
+	}
+
+	/**
+	 * @return the stable id of the worksheet annotation
+	 */
+	public int getSheetId() {
+		return sheetId;
+	}
+
+	/**
+	 * @return the isCompleted
+	 */
+	public boolean isCompleted() {
+		return isCompleted;
+	}
+
+	/**
+	 * @return the isNotApplicable
+	 */
+	public boolean isNotApplicable() {
+		return isNotApplicable;
+	}
+
+	/**
+	 * @return the value of the modification counter of the worksheet annotation when this snapshot was taken
+	 */
+	public long getModCount() {
+		return modCount;
+	}
+
+	/**
+	 * @return the content hash of the worksheet annotation when this snapshot was taken
+	 */
+	public long getContentHash() {
+		return contentHash;
+	}
+	
+	/**
+	 * Check if this snapshot has the same content as the given one. The content hashes are compared, 
+	 * so the check does not depend on the number of range annotations.
+	 * @param sheetSnapshot the snapshot to compare with, or null
+	 * @return true if both snapshots have the same content, false otherwise
+	 */
+	public boolean hasSameContent(WorksheetAnnotationSnapshot sheetSnapshot) {
+		return sheetSnapshot!=null && (sheetSnapshot==this || sheetSnapshot.getContentHash()==this.contentHash);
+	}
+
+	/**
+	 * @return an unmodifiable list of the range annotations in the worksheet, in insertion order
+	 */
+	public List<RangeAnnotationSnapshot> getRangeAnnotations() {
+		return rangeAnnotations;
+	}
+	
+	@Override 
+	public String toString() {
+		return this.sheetName+" = "+this.rangeAnnotations; 
+	}
+}
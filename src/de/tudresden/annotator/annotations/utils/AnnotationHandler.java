@@ -4,9 +4,13 @@
 package de.tudresden.annotator.annotations.utils;
 
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -17,17 +21,22 @@ import org.eclipse.swt.widgets.MessageBox;
 import de.tudresden.annotator.annotations.AnnotationClass;
 import de.tudresden.annotator.annotations.AnnotationTool;
 import de.tudresden.annotator.annotations.RangeAnnotation;
+import de.tudresden.annotator.annotations.RangeAnnotationSnapshot;
 import de.tudresden.annotator.annotations.WorkbookAnnotation;
+import de.tudresden.annotator.annotations.WorkbookAnnotationSnapshot;
 import de.tudresden.annotator.annotations.WorksheetAnnotation;
+import de.tudresden.annotator.annotations.WorksheetAnnotationSnapshot;
 import de.tudresden.annotator.main.GUIListeners;
 import de.tudresden.annotator.main.Launcher;
 import de.tudresden.annotator.oleutils.ApplicationUtils;
 import de.tudresden.annotator.oleutils.CharactersUtils;
+import de.tudresden.annotator.oleutils.CollectionEnumerator;
 import de.tudresden.annotator.oleutils.CollectionsUtils;
 import de.tudresden.annotator.oleutils.ColorFormatUtils;
 import de.tudresden.annotator.oleutils.FillFormatUtils;
 import de.tudresden.annotator.oleutils.FontUtils;
 import de.tudresden.annotator.oleutils.LineFormatUtils;
+import de.tudresden.annotator.oleutils.OleHandleScope;
 import de.tudresden.annotator.oleutils.RangeUtils;
 import de.tudresden.annotator.oleutils.ShadowFormatUtils;
 import de.tudresden.annotator.oleutils.ShapeUtils;
@@ -42,21 +51,12 @@ import de.tudresden.annotator.oleutils.WorksheetUtils;
  */
 public class AnnotationHandler {
 
-	/**
-	 * This object stores and provides access to all annotations that are created in the embedded workbook  
-	 */
-	private static final WorkbookAnnotation workbookAnnotation = new WorkbookAnnotation();	
-	private static int oldWorkbookAnnotationHash;
-
-	/**
-	 * Maintains the list of all range annotations that can be undone
+	/*
+	 * The session of the workbook that is shown in the application window, 
+	 * and the sessions that are bound to other threads (e.g., to process workbooks in the background)
 	 */
-	private static final LinkedList<RangeAnnotation> undoList = new LinkedList<RangeAnnotation>();
-	
-	/**
-	 * Maintains the list of all range annotations that can be re-done after they have first been undone
-	 */
-	private static final LinkedList<RangeAnnotation> redoList = new LinkedList<RangeAnnotation>();
+	private static volatile AnnotationSession activeSession = new AnnotationSession();
+	private static final ThreadLocal<AnnotationSession> boundSession = new ThreadLocal<AnnotationSession>();
 	
 	
 	private static final Logger logger = LogManager.getLogger(GUIListeners.class.getName());
@@ -68,6 +68,8 @@ public class AnnotationHandler {
 	 */
 	public static void createBaseAnnotations(OleAutomation workbookAutomation){
 		
+		WorkbookAnnotation workbookAnnotation = getWorkbookAnnotation();
+		
 		// save on memory metadata about the annotation
 		String workbookName = WorkbookUtils.getWorkbookName(workbookAutomation);
 		workbookAnnotation.setWorkbookName(workbookName);
@@ -79,23 +81,27 @@ public class AnnotationHandler {
 		if(worksheetsAutomation==null)
 			return;
 		
-		int i = 1;
-		while (true) {
-			OleAutomation worksheet = CollectionsUtils.getItemByIndex(worksheetsAutomation, i++, false);		
-			if(worksheet==null)
-				break;
+		CollectionEnumerator worksheetEnumerator = CollectionsUtils.getItems(worksheetsAutomation, false);
+		try {
+			while(worksheetEnumerator.hasNext()) {
+				OleAutomation worksheet = worksheetEnumerator.next();
 			
-			String name = WorksheetUtils.getWorksheetName(worksheet);
-			int index = WorksheetUtils.getWorksheetIndex(worksheet);
+				String name = WorksheetUtils.getWorksheetName(worksheet);
+				int index = WorksheetUtils.getWorksheetIndex(worksheet);
+				worksheet.dispose();
 			
-			if(name.compareToIgnoreCase(RangeAnnotationsSheet.getName())==0 ||
-			   name.compareToIgnoreCase(AnnotationStatusSheet.getName())==0){
-				continue;
-			}
+				if(name.compareToIgnoreCase(RangeAnnotationsSheet.getName())==0 ||
+				   name.compareToIgnoreCase(AnnotationStatusSheet.getName())==0){
+					continue;
+				}
 				
-			WorksheetAnnotation wa = new WorksheetAnnotation(name, index);
-			workbookAnnotation.getWorksheetAnnotations().put(name, wa);
-		}		
+				WorksheetAnnotation wa = new WorksheetAnnotation(name, index);
+				workbookAnnotation.addWorksheetAnnotation(wa);
+			}
+		} finally {
+			worksheetEnumerator.close();
+		}
+		worksheetsAutomation.dispose();
 	}
 	
 	/**
@@ -105,23 +111,11 @@ public class AnnotationHandler {
 	 */
 	public static void recreateRangeAnnotations(OleAutomation workbookAutomation, RangeAnnotation[] rangeAnnotations){	
 		
-		WorkbookUtils.unprotectAllWorksheets(workbookAutomation);			
-		
-		for (int i=0; i< rangeAnnotations.length; i++) {		
-			
-			boolean result = false;
-			try{
-				result = AnnotationHandler.drawRangeAnnotation(workbookAutomation, rangeAnnotations[i], true);
-			}catch (Exception ex){
-				logger.error("Generic error on drawing range annotation object", ex);
-			}
-			
-			if(result){
-				workbookAnnotation.addRangeAnnotation(rangeAnnotations[i]);
-			}
-		}
+		WorkbookAnnotation workbookAnnotation = getWorkbookAnnotation();
 		
-		WorkbookUtils.protectAllWorksheets(workbookAutomation);
+		// validate and draw the annotations, and then add all the re-created ones in one batch
+		List<RangeAnnotation> recreated = AnnotationShapeRenderer.drawAll(workbookAutomation, rangeAnnotations, true);
+		workbookAnnotation.addRangeAnnotations(recreated);
 	}
 	
 	/**
@@ -136,6 +130,8 @@ public class AnnotationHandler {
 	 */
 	public static void annotate(OleAutomation workbookAutomation, String sheetName, int sheetIndex,
 								String selectedAreas[], AnnotationClass annotationClass) {
+		
+		WorkbookAnnotation workbookAnnotation = getWorkbookAnnotation();
 	
 		if(selectedAreas==null){
 			MessageBox messageBox = Launcher.getInstance().createMessageBox(SWT.ICON_ERROR);
@@ -145,58 +141,59 @@ public class AnnotationHandler {
             return;
 		}
 		
-		// get the OleAutomation object for the worksheet using its name
-		OleAutomation sheetAutoBeforeUnprotect = WorkbookUtils.getWorksheetAutomationByName(workbookAutomation, sheetName);
+		// get the OleAutomation object for the worksheet using its name. it is used for all the areas.
+		OleAutomation sheetAutomation = getHandlePool().getWorksheet(workbookAutomation, sheetName);
 					
 		// unprotect the worksheet in order to create the annotations
-		WorksheetUtils.unprotectWorksheet(sheetAutoBeforeUnprotect);
-		sheetAutoBeforeUnprotect.dispose();
+		boolean isUnprotected = getProtectionScope().enter(sheetAutomation, sheetName);
+		if(!isUnprotected){
+			MessageBox messageBox = Launcher.getInstance().createMessageBox(SWT.ICON_ERROR);
+			messageBox.setMessage("ERROR: "+sheetName+" could not be unprotected!");
+			messageBox.open();
+			return;
+		}
 				
-		// for each area in the range create an annotation
-		for (String selectedArea : selectedAreas) {
-			
-			// get the OleAutomation object for the worksheet using its name
-			OleAutomation sheetAutomation = WorkbookUtils.getWorksheetAutomationByName(workbookAutomation, sheetName);
-			
-			// create annotation object			
-			String classLabel = annotationClass.getLabel();
-			String annotationName = generateRangeAnnotationName(sheetName, classLabel, selectedArea);
-			RangeAnnotation ra = new RangeAnnotation(sheetName, sheetIndex, annotationClass, annotationName, selectedArea);
-			
-			// validate annotation before creation
-			boolean annotationResult =validateRangeAnnotation(workbookAutomation, sheetAutomation, ra);
-			if(!annotationResult){
-			    WorksheetUtils.protectWorksheet(sheetAutomation);
-				WorksheetUtils.makeWorksheetActive(sheetAutomation);
-				sheetAutomation.dispose();
-				return;
-			}
-			
-			// range automation has to re-created here because was disposed when checked if range is empty 
-			OleAutomation rangeAutomation = WorksheetUtils.getRangeAutomation(sheetAutomation, selectedArea);
-			
-			// draw annotation
-			drawRangeAnnotation(sheetAutomation, rangeAutomation, annotationClass, annotationName);
-			
-			// calculate statistics about the contents of the annotated range
-			calculateStatistics(ra, workbookAutomation);
-			
-			// save on the AnnotationDataSheet metadata about the annotation 
-			RangeAnnotationsSheet.saveRangeAnnotationData(workbookAutomation, ra);	
-			
-			// add the annotation object in memory data structure
-			workbookAnnotation.addRangeAnnotation(ra);
-			addToUndoList(ra);
-		}		
+		// map the sheet name to the stable sheet id once, for all the new annotations 
+		int sheetId = workbookAnnotation.getSheetId(sheetName);
 		
-		
-		// get the OleAutomation object for the worksheet using its name
-	    OleAutomation sheetAutomationAfterAnnotating = WorkbookUtils.getWorksheetAutomationByName(workbookAutomation, sheetName);
+		try {
+			// the new annotations are saved in the annotation data sheet, and recorded as a new version, 
+			// by the change listeners once all of them are added
+			workbookAnnotation.beginChanges();
+			try {
+				// for each area in the range create an annotation
+				for (String selectedArea : selectedAreas) {
+				
+					// create annotation object			
+					RangeAnnotation ra = new RangeAnnotation(sheetName, sheetIndex, annotationClass, selectedArea);
+					ra.setSheetId(sheetId);
+				
+					// validate annotation before creation. the remaining areas are not annotated.
+					boolean annotationResult =validateRangeAnnotation(workbookAutomation, sheetAutomation, ra);
+					if(!annotationResult)
+						break;
+				
+					// range automation has to re-created here because was disposed when checked if range is empty 
+					OleAutomation rangeAutomation = WorksheetUtils.getRangeAutomation(sheetAutomation, selectedArea);
 				
-		// protect the worksheet to prevent user from modifying the annotations
-		WorksheetUtils.protectWorksheet(sheetAutomationAfterAnnotating);
-		WorksheetUtils.makeWorksheetActive(sheetAutomationAfterAnnotating);
-		sheetAutomationAfterAnnotating.dispose();
+					// draw annotation
+					drawRangeAnnotation(sheetAutomation, rangeAutomation, annotationClass, ra.getName());
+				
+					// calculate statistics about the contents of the annotated range
+					calculateStatistics(ra, workbookAutomation);
+				
+					// add the annotation object in memory data structure
+					workbookAnnotation.addRangeAnnotation(ra);
+				}
+			} finally {
+				workbookAnnotation.endChanges();
+			}
+		} finally {
+			// protect the worksheet to prevent user from modifying the annotations
+			getProtectionScope().exit(sheetAutomation, sheetName);
+		}
+		
+		WorksheetUtils.makeWorksheetActive(sheetAutomation);
 	}
 	
 	/**
@@ -206,11 +203,13 @@ public class AnnotationHandler {
 	 */
 	public static void calculateStatistics(RangeAnnotation ra, OleAutomation workbookAuto){
 		
+		WorkbookAnnotation workbookAnnotation = getWorkbookAnnotation();
+		
 		try {
 			
-			OleAutomation sheetAuto = WorkbookUtils.getWorksheetAutomationByName(workbookAuto, ra.getSheetName());
+			OleAutomation sheetAuto = getHandlePool().getWorksheet(workbookAuto, ra.getSheetName());
 			OleAutomation rangeAuto = WorksheetUtils.getRangeAutomation(sheetAuto, ra.getRangeAddress());
-			OleAutomation application = WorkbookUtils.getApplicationAutomation(workbookAuto);
+			OleAutomation application = getHandlePool().getApplication(workbookAuto);
 			
 			// count all cells in the range 
 			int count = RangeUtils.count(rangeAuto);
@@ -276,14 +275,21 @@ public class AnnotationHandler {
 						
 						int countBlankInFormulas = 0;
 						
-						OleAutomation formulaAreas = RangeUtils.getAreas(formulaCells);
-						int k=1;
-						while(true){
-							OleAutomation area = CollectionsUtils.getItemByIndex(formulaAreas, k++, false);
-							if(area==null)
-								break;
-							
-							countBlankInFormulas += WorksheetFunctionUtils.countBlankCells(application, area);
+						OleHandleScope scope = new OleHandleScope();
+						try {
+							OleAutomation formulaAreas = scope.add(RangeUtils.getAreas(formulaCells));
+							CollectionEnumerator areaEnumerator = CollectionsUtils.getItems(formulaAreas, false);
+							try {
+								while(areaEnumerator.hasNext()) {
+									OleAutomation area = areaEnumerator.next();
+									scope.add(area);
+									countBlankInFormulas += WorksheetFunctionUtils.countBlankCells(application, area);
+								}
+							} finally {
+								areaEnumerator.close();
+							}
+						} finally {
+							scope.dispose();
 						}
 						countFormulas = countFormulas - countBlankInFormulas;
 						
@@ -312,13 +318,33 @@ public class AnnotationHandler {
 			ra.setConstantCells(count - countBlank - countFormulas);
 			
 			rangeAuto.dispose();
-			sheetAuto.dispose();
+			
+			// the statistics are valid until the contents of the worksheet change
+			WorksheetAnnotation sheetAnnotation = workbookAnnotation.getWorksheetAnnotation(ra);
+			if(sheetAnnotation!=null)
+				ra.setStatisticsVersion(sheetAnnotation.getContentVersion());
 			
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
 	}
 	
+	/**
+	 * Calculate stats for the annotated range, only if the ones that were calculated before are outdated  
+	 * @param ra a RangeAnnotation object that contains information about the annotated range
+	 * @param workbookAuto an OleAutomation that provides access to the functionalities of the embedded workbook
+	 */
+	public static void updateStatistics(RangeAnnotation ra, OleAutomation workbookAuto){
+		
+		WorkbookAnnotation workbookAnnotation = getWorkbookAnnotation();
+		
+		WorksheetAnnotation sheetAnnotation = workbookAnnotation.getWorksheetAnnotation(ra);
+		if(sheetAnnotation!=null && sheetAnnotation.hasValidStatistics(ra))
+			return;
+		
+		calculateStatistics(ra, workbookAuto);
+	}
+	
 	/**
 	 * Generate the name of the range annotation 
 	 * @param sheetName the name of the worksheet that contains the annotation
@@ -328,11 +354,7 @@ public class AnnotationHandler {
 	 */
 	public static String generateRangeAnnotationName(String sheetName, String classLabel, String rangeAddress){	
 		 
-		 String startOfAnnotationName = getStartOfRangeAnnotationName(sheetName);
-		 String endofAnnotationName = classLabel+"_"+rangeAddress.replace("$", "").replace(":", "_");
-		 String formatedName = startOfAnnotationName+"_"+endofAnnotationName;
-		 
-		 return formatedName.toUpperCase();
+		 return RangeAnnotation.generateName(sheetName, classLabel, rangeAddress);
 	}
 	
 	
@@ -343,8 +365,7 @@ public class AnnotationHandler {
 	 */
 	public static String getStartOfRangeAnnotationName(String sheetName){
 		
-		String name = sheetName.replace(" ", "_")+"_Annotation"; 
-		return  name.toUpperCase(); 
+		return RangeAnnotation.getStartOfName(sheetName); 
 	}
 	
 	
@@ -356,6 +377,8 @@ public class AnnotationHandler {
 	public static boolean validateRangeAnnotation(OleAutomation  embeddedWorkbook, 
 														OleAutomation sheetAutomation, RangeAnnotation annotation){
 		
+		WorkbookAnnotation workbookAnnotation = getWorkbookAnnotation();
+		
 		// check if the range is valid (e.i., the OleAutomation can be created for this range)
 		OleAutomation selectedAreaAuto = WorksheetUtils.getRangeAutomation(sheetAutomation, annotation.getRangeAddress());
 		if(selectedAreaAuto==null){					
@@ -367,7 +390,7 @@ public class AnnotationHandler {
 		}
 		
 		// ensure that the range contains data (i.e., range not empty)
-		OleAutomation applicationAuto = WorkbookUtils.getApplicationAutomation(embeddedWorkbook);			
+		OleAutomation applicationAuto = getHandlePool().getApplication(embeddedWorkbook);			
 		double notEmpty = WorksheetFunctionUtils.countNotEmptyCells(applicationAuto, selectedAreaAuto);
 		// System.out.println(notEmpty);
 		if(notEmpty==0){
@@ -380,22 +403,23 @@ public class AnnotationHandler {
 		// ensure that the range annotation satisfies the dependencies and containment constrains  
 		AnnotationClass annotationClass =  annotation.getAnnotationClass();
 		String sheetName = annotation.getSheetName();
+		WorksheetAnnotation sheetAnnotation = workbookAnnotation.getWorksheetAnnotation(annotation);
 		
 		if(annotationClass.isDependent()){
 						
 			AnnotationClass  containerClass = annotationClass.getContainer();
 			String containerLabel =  containerClass.getLabel();
 			
-			Collection<RangeAnnotation> collection = workbookAnnotation.getSheetAnnotationsByClass(sheetName, containerLabel);
-			RangeAnnotation containerAnnotation = getSmallestParent(collection, annotation.getRangeAddress());
+			RangeAnnotation containerAnnotation = null;
+			if(sheetAnnotation!=null){
+				containerAnnotation = sheetAnnotation.getSmallestContainer(annotation.getRange(), containerLabel);
+			}
 			
 			if(containerAnnotation!=null){
 				annotation.setParent(containerAnnotation);
 			 
-				Collection<RangeAnnotation> containersCollection = containerAnnotation.getAllAnnotations();
-				if(containersCollection!=null){
-					ArrayList<RangeAnnotation> dependentAnnotations = new ArrayList<RangeAnnotation>(containersCollection);
-					boolean result = checkForOverlaps(dependentAnnotations, annotation.getRangeAddress(), false);
+				if(sheetAnnotation!=null){
+					boolean result = sheetAnnotation.hasOverlaps(annotation.getRange(), containerAnnotation);
 					if(result){
 						 String classLabel =annotationClass.getLabel();
 						 MessageBox messageBox = Launcher.getInstance().createMessageBox(SWT.ICON_ERROR);
@@ -421,10 +445,12 @@ public class AnnotationHandler {
 			
 			if(annotationClass.isContainable()){
 				
-				 Collection<RangeAnnotation> collection = workbookAnnotation.getAllRangeAnnotationsForSheet(sheetName);
-				 boolean result = checkForOverlaps(collection, annotation.getRangeAddress(), true);
+				 boolean result = sheetAnnotation!=null && sheetAnnotation.hasOverlaps(annotation.getRange(), true);
 				 if(!result){
-					 RangeAnnotation smallestParent = getSmallestParent(collection, annotation.getRangeAddress());
+					 RangeAnnotation smallestParent = null;
+					 if(sheetAnnotation!=null){
+						 smallestParent = sheetAnnotation.getSmallestContainer(annotation.getRange());
+					 }
 					 if(smallestParent!=null){
 							annotation.setParent(smallestParent);
 					 }
@@ -440,8 +466,7 @@ public class AnnotationHandler {
 	             return false; 
 	             
 			}else{
-				 Collection<RangeAnnotation> collection = workbookAnnotation.getAllRangeAnnotationsForSheet(sheetName);
-				 boolean result = checkForOverlaps(collection, annotation.getRangeAddress(), false);
+				 boolean result = sheetAnnotation!=null && sheetAnnotation.hasOverlaps(annotation.getRange(), false);
 				 
 				 if(result){
 					 String classLabel = annotationClass.getLabel();
@@ -458,85 +483,6 @@ public class AnnotationHandler {
 	}
 	
 	
-	/**
-	 * Check if the new range annotation overlaps with existing range annotations
-	 * @param collection the new annotation will be compared with each element of this collection for overlaps
-	 * @param newAnnotationRange a string that represents the range address of the new annotation  
-	 * @param ignoreContainers true to skip annotations that are members of classes that are marked as containers, false to consider them. 
-	 * This argument was included especially for the cases where annotations can be contained, but do not have a specific parent annotation class.
-	 * @return true if there are overlaps, false otherwise
-	 */
-	public static boolean checkForOverlaps(Collection<RangeAnnotation> collection, String newAnnotationRange, boolean ignoreContainers){
-		
-		if(collection==null){
-			 return false;
-		}
-		
-		ArrayList<RangeAnnotation> annotations = new ArrayList<RangeAnnotation>(collection);
-		for (int i = 0; i < annotations.size(); i++) {
-			String annotatedRange = annotations.get(i).getRangeAddress();
-			boolean isPartialContainment = RangeUtils.checkForPartialContainment(annotatedRange, newAnnotationRange);
-			if(isPartialContainment){
-				if(ignoreContainers){
-					boolean isContainer = annotations.get(i).getAnnotationClass().isContainer();
-					if(isContainer)
-						continue;
-				}
-				             
-				return true; 
-			}
-		}
-		return  false;
-	}
-	
-	
-	/**
-	 * Get the smallest annotated range that contains completely the given range (annotation). 
-	 * There might be several existing annotations that contain the range. These annotations 
-	 * have to be members of AnnotationClasses that are defined as containers (i.e., can contain other annotations). 
-	 * As annotations can not overlap with each other we are certain to find the smallest parent, which is also the direct
-	 * (in hierarchy) parent of the given range (annotation).
-	 * @param collection the collection of annotations to search for the smallest parent. 
-	 * @param newAnnotationRange the range address of the new annotation 
-	 * @return an annotation object that represents the smallest parent 
-	 */
-	public static RangeAnnotation getSmallestParent(Collection<RangeAnnotation> collection, String newAnnotationRange){
-		
-		if(collection==null){
-			 return null;
-		}
-		
-		ArrayList<RangeAnnotation> annotations = new ArrayList<RangeAnnotation>(collection);
-		ArrayList<RangeAnnotation> parents = new ArrayList<RangeAnnotation>();
-		for (int i = 0; i < annotations.size(); i++) {
-			String annotatedRange = annotations.get(i).getRangeAddress();
-			boolean isFullContainment = RangeUtils.checkForContainment(annotatedRange, newAnnotationRange);
-			if(isFullContainment){
-				RangeAnnotation annotation = annotations.get(i);
-				boolean isContainer = annotation.getAnnotationClass().isContainer();
-				if(isContainer)
-					parents.add(annotation);
-			}	
-		}
-		
-		if(parents.isEmpty())
-			return null;
-		
-		RangeAnnotation smallestParent = parents.get(0); 
-		for (int j = 1; j < parents.size(); j++){
-			String smallestRange = smallestParent.getRangeAddress();
-			RangeAnnotation candidate = parents.get(j);
-			String candidateRange = candidate.getRangeAddress(); 
-			
-			boolean result = RangeUtils.checkForContainment(smallestRange, candidateRange);		
-			if(result)
-				smallestParent = candidate;
-		}
-		
-		return smallestParent;
-	}
-	
-	
 	/**
 	 * Check if the sheet has cells that are not annotated yet 
 	 * @param workbookAutomation an OleAutomation that provides access to the functionalities of the embedded workbook
@@ -560,44 +506,48 @@ public class AnnotationHandler {
 	 */
 	public static OleAutomation getUnannotatedRanges(OleAutomation workbookAutomation, String sheetName){
 		
+		WorkbookAnnotation workbookAnnotation = getWorkbookAnnotation();
 		
-		WorksheetAnnotation sheetAnnotation = workbookAnnotation.getWorksheetAnnotations().get(sheetName);
+		WorksheetAnnotation sheetAnnotation = workbookAnnotation.getWorksheetAnnotation(sheetName);
 		if(sheetAnnotation == null)
 			return null;
 		
 		if(sheetAnnotation.getAllAnnotations() == null  ||  sheetAnnotation.getAllAnnotations().isEmpty())
 			return null;
 		
+		boolean isUnprotected = false;
+		OleAutomation sheetAuto = null;
+		
+		// the intermediate ranges are disposed when this method exits. the result is released from the scope, as it is returned.
+		OleHandleScope scope = new OleHandleScope();
 		try{
 		
-			OleAutomation sheetAuto = WorkbookUtils.getWorksheetAutomationByName(workbookAutomation, sheetName);
-			WorksheetUtils.unprotectWorksheet(sheetAuto);
+			sheetAuto = getHandlePool().getWorksheet(workbookAutomation, sheetName);
+			isUnprotected = getProtectionScope().enter(sheetAuto, sheetName);
 			
-			OleAutomation application = WorkbookUtils.getApplicationAutomation(workbookAutomation);	
+			OleAutomation application = getHandlePool().getApplication(workbookAutomation);	
 			OleAutomation annotatedRanges = null;
 			for (RangeAnnotation ra : sheetAnnotation.getAllAnnotations()) {
 				
 				if(!ra.getAnnotationClass().isContainer()){
 					if(annotatedRanges!=null){
-						OleAutomation range = WorksheetUtils.getRangeAutomation(sheetAuto, ra.getRangeAddress());					
-						annotatedRanges = ApplicationUtils.getUnion(application, annotatedRanges, range);
+						OleAutomation range = scope.add(WorksheetUtils.getRangeAutomation(sheetAuto, ra.getRangeAddress()));					
+						annotatedRanges = scope.add(ApplicationUtils.getUnion(application, annotatedRanges, range));
 					}else{
-						annotatedRanges = WorksheetUtils.getRangeAutomation(sheetAuto, ra.getRangeAddress());
+						annotatedRanges = scope.add(WorksheetUtils.getRangeAutomation(sheetAuto, ra.getRangeAddress()));
 					}
 				}
 			}
-			if(annotatedRanges == null){
+			if(annotatedRanges == null)
 				return null;
-			}
 			
-			OleAutomation usedRangeAuto = WorksheetUtils.getUsedRange(sheetAuto);
-			sheetAuto.dispose();
+			OleAutomation usedRangeAuto = scope.add(WorksheetUtils.getUsedRange(sheetAuto));
 
-			OleAutomation constantCells = RangeUtils.getSpecialCells(usedRangeAuto, 2); // xlCellTypeConstants = 2			
+			OleAutomation constantCells = scope.add(RangeUtils.getSpecialCells(usedRangeAuto, 2)); // xlCellTypeConstants = 2			
 			boolean hasUnannotatedRanges = false;
 			if(constantCells!=null){
 			
-				OleAutomation constanstsIntersection = ApplicationUtils.getIntersection(application, constantCells, annotatedRanges);				
+				OleAutomation constanstsIntersection = scope.add(ApplicationUtils.getIntersection(application, constantCells, annotatedRanges));				
 				String intersectionAddress = "";
 				if(constanstsIntersection!=null){
 					intersectionAddress= RangeUtils.getRangeAddress(constanstsIntersection);
@@ -609,11 +559,11 @@ public class AnnotationHandler {
 				}
 			}
 			
-			OleAutomation formulaCells = RangeUtils.getSpecialCells(usedRangeAuto, -4123); // xlCellTypeFormulas = -4123
+			OleAutomation formulaCells = scope.add(RangeUtils.getSpecialCells(usedRangeAuto, -4123)); // xlCellTypeFormulas = -4123
 			if(!hasUnannotatedRanges){			
 				if(formulaCells!=null){
 					
-					OleAutomation formulasIntersection = ApplicationUtils.getIntersection(application, formulaCells, annotatedRanges);	
+					OleAutomation formulasIntersection = scope.add(ApplicationUtils.getIntersection(application, formulaCells, annotatedRanges));	
 					String intersectionAddress = "";
 					if(formulasIntersection!=null){
 						intersectionAddress = RangeUtils.getRangeAddress(formulasIntersection);
@@ -635,29 +585,18 @@ public class AnnotationHandler {
 					notAnnotated = formulaCells;				
 				}else{
 					notAnnotated = ApplicationUtils.getUnion(application, formulaCells, constantCells);
-					formulaCells.dispose();
-					constantCells.dispose();
 				}
-			}else{
-				
-				if(formulaCells!=null)
-					formulaCells.dispose();
-				
-				if(constantCells!=null)
-					constantCells.dispose();
 			}
-									
-			usedRangeAuto.dispose();
-			annotatedRanges.dispose();
 			
-			OleAutomation sheetAutoToProtect = WorkbookUtils.getWorksheetAutomationByName(workbookAutomation, sheetName);
-			WorksheetUtils.protectWorksheet(sheetAutoToProtect);
-			sheetAutoToProtect.dispose();
-			
-			return notAnnotated;
+			return scope.release(notAnnotated);
 			
 		}catch (Exception ex){
 			logger.error("Genereric exception on check for unannotated ranges!", ex);
+		}finally{
+			// close the protection scope, so that the worksheet is protected again
+			if(isUnprotected)
+				getProtectionScope().exit(sheetAuto, sheetName);
+			scope.dispose();
 		}
 		
 		return null;
@@ -688,77 +627,30 @@ public class AnnotationHandler {
 	 * @param ra the RangeAnnotation object to draw
 	 */
 	public static boolean drawRangeAnnotation(OleAutomation workbookAutomation, RangeAnnotation ra, boolean validate){
-		OleAutomation sheetAutomation = WorkbookUtils.getWorksheetAutomationByName(workbookAutomation, ra.getSheetName());
+		OleAutomation sheetAutomation = getHandlePool().getWorksheet(workbookAutomation, ra.getSheetName());
 		OleAutomation rangeAutomation = WorksheetUtils.getRangeAutomation(sheetAutomation, ra.getRangeAddress());
 		
 		if(validate){
 			if(!validateRangeAnnotation(workbookAutomation, sheetAutomation, ra)){
-		         return false;
+				rangeAutomation.dispose();
+				return false;
 			}
 		}
 	
 		drawRangeAnnotation(sheetAutomation, rangeAutomation, ra.getAnnotationClass(), ra.getName());
 		rangeAutomation.dispose();
-		sheetAutomation.dispose();
 		return true;
 	}
 	
 	
 	/**
-	 * Draw many range annotations at once
+	 * Draw many range annotations at once. See AnnotationShapeRenderer.
 	 * @param workbookAutomation an OleAutomation for accessing the functionalities of the embedded workbook
 	 * @param rangeAnnotations the list of range annotations to draw
+	 * @param validate true to validate the annotations before drawing, false to skip validation
 	 */
 	public static void drawManyRangeAnnotations(OleAutomation workbookAutomation, RangeAnnotation[] rangeAnnotations, boolean validate){
-		
-		WorkbookUtils.unprotectAllWorksheets(workbookAutomation);			
-		
-		for (int i=0; i< rangeAnnotations.length; i++) {	
-			try{
-				AnnotationHandler.drawRangeAnnotation(workbookAutomation, rangeAnnotations[i], validate);
-			}catch (Exception ex){
-				logger.error("Generic exception on draw range annotation object", ex);
-			}
-		}
-		
-		WorkbookUtils.protectAllWorksheets(workbookAutomation);
-	}
-	
-	
-	/**
-	 * @deprecated
-	 * Draw many range annotations at once
-	 * @param workbookAutomation an OleAutomation for accessing the functionalities of the embedded workbook
-	 * @param annotations the list of range annotations to draw
-	 * @param true to validate the annotation before drawing, false to skip validation
-	 */
-	public static void drawManyRangeAnnotationsOptimized(OleAutomation workbookAutomation, RangeAnnotation[] annotations, boolean validate){
-		
-		HashMap<String, OleAutomation> shapesAutomations = new HashMap<String, OleAutomation>();
-
-		for (int i=0; i< annotations.length; i++) {	
-						
-			String currentSheetName = annotations[i].getSheetName();
-			
-			OleAutomation sheetAuto = WorkbookUtils.getWorksheetAutomationByName(workbookAutomation, currentSheetName);
-			OleAutomation rangeAuto = WorksheetUtils.getRangeAutomation(sheetAuto, annotations[i].getRangeAddress());
-			
-			if(!shapesAutomations.keySet().contains(currentSheetName)){			
-				OleAutomation shapesAuto = WorksheetUtils.getWorksheetShapes(sheetAuto);
-				shapesAutomations.put(currentSheetName, shapesAuto);
-				WorksheetUtils.unprotectWorksheet(sheetAuto);
-				sheetAuto.dispose();
-			}
-					
-			drawAnnotationShape(shapesAutomations.get(currentSheetName), rangeAuto,
-					annotations[i].getAnnotationClass(), annotations[i].getName());
-		}
-		
-		for (String sheetName : shapesAutomations.keySet()) {
-			shapesAutomations.get(sheetName).dispose();
-			OleAutomation sheetAutomation = WorkbookUtils.getWorksheetAutomationByName(workbookAutomation, sheetName);
-			WorksheetUtils.protectWorksheet(sheetAutomation);			
-		}
+		AnnotationShapeRenderer.drawAll(workbookAutomation, rangeAnnotations, validate);
 	}
 	
 	
@@ -781,7 +673,8 @@ public class AnnotationHandler {
 	
 	
 	/**
-	 * Annotate the selected range of cells (area) using a shape object
+	 * Annotate the selected range of cells (area) using a shape object. 
+	 * The shape is a duplicate of the styled template shape of the annotation class (see ShapeTemplateCache). 
 	 * @param sheetAutomation an OleAutomation for accessing the active worksheet functionalities
 	 * @param rangeAutomation rangeAutomation an OleAutomation for accessing the selected range functionalities
 	 * @param annotationClass the (annotation) class that will be used  for the annotation
@@ -797,115 +690,21 @@ public class AnnotationHandler {
 		rangeAutomation.dispose();
 		
 		String currentSheetName = WorksheetUtils.getWorksheetName(sheetAutomation);
+		OleAutomation workbookAutomation = getSession().getWorkbookAutomation();
 		
-		OleAutomation shapesAutomation = WorksheetUtils.getWorksheetShapes(sheetAutomation);
-				
-		boolean result = hasShapeAnnotationsWithLabel(shapesAutomation, currentSheetName, annotationClass.getLabel());
-		
-		Collection<RangeAnnotation> annotationsCollection = workbookAnnotation.getSheetAnnotationsByClass(currentSheetName, annotationClass.getLabel());	
-				
-		if(result && annotationsCollection!=null && !annotationsCollection.isEmpty()){
-			
-			ArrayList<RangeAnnotation> annotations= new ArrayList<RangeAnnotation>(annotationsCollection);
-			RangeAnnotation ra = annotations.get(0);				
-			
-			OleAutomation shapeAutomation = CollectionsUtils.getItemByName(shapesAutomation, ra.getName(), true);
-			OleAutomation copyShape = ShapeUtils.duplicateShape(shapeAutomation);
-			shapeAutomation.dispose();
-					
-			ShapeUtils.setShapeLeftPosition(copyShape, left);
-			ShapeUtils.setShapeTopPosition(copyShape, top);
-			ShapeUtils.setShapeHeight(copyShape, height);
-			ShapeUtils.setShapeWidth(copyShape, width);
-			ShapeUtils.setShapeName(copyShape, annotationName);
-			copyShape.dispose();
-				
-		}else{
-			
-			if(annotationClass.getAnnotationTool()==AnnotationTool.TEXTBOX){	
-				
-				OleAutomation textboxAutomation = ShapeUtils.drawTextBox(shapesAutomation, left, top, width, height); 
-				setAnnotationProperties(textboxAutomation, annotationClass);
-				ShapeUtils.setShapeName(textboxAutomation, annotationName);
-				textboxAutomation.dispose();
-				
-			}	
-			
-			if(annotationClass.getAnnotationTool()==AnnotationTool.SHAPE){		
-				
-				OleAutomation shapeAuto = ShapeUtils.drawShape(shapesAutomation, annotationClass.getShapeType(), left, top, width, height);
-			
-				setAnnotationProperties(shapeAuto, annotationClass);  
-				ShapeUtils.setShapeName(shapeAuto, annotationName);
-				shapeAuto.dispose();	
-			}			
-		}
-		shapesAutomation.dispose();
-	}
-	
-	
-	/**
-	 * 
-	 * @param shapesAutomation
-	 * @param rangeAutomation
-	 * @param annotationClass
-	 * @param annotationName
-	 */
-	public static void drawAnnotationShape(OleAutomation shapesAutomation, OleAutomation rangeAutomation, 
-													AnnotationClass annotationClass, String annotationName){
-
-		double left = RangeUtils.getRangeLeftPosition(rangeAutomation);  
-		double top = RangeUtils.getRangeTopPosition(rangeAutomation);
-		double width = RangeUtils.getRangeWidth(rangeAutomation);
-		double height = RangeUtils.getRangeHeight(rangeAutomation);
-		
-		if(annotationClass.getAnnotationTool()==AnnotationTool.TEXTBOX){	
-		
-		OleAutomation textboxAutomation = ShapeUtils.drawTextBox(shapesAutomation, left, top, width, height); 
-		setAnnotationProperties(textboxAutomation, annotationClass);
-		ShapeUtils.setShapeName(textboxAutomation, annotationName);
-		textboxAutomation.dispose();
-		}
-		
-		if(annotationClass.getAnnotationTool()==AnnotationTool.SHAPE){		
-		
-		OleAutomation shapeAuto = ShapeUtils.drawShape(shapesAutomation, annotationClass.getShapeType(), left, top, width, height);
-		setAnnotationProperties(shapeAuto, annotationClass);  
-		ShapeUtils.setShapeName(shapeAuto, annotationName);
-		shapeAuto.dispose();
+		OleAutomation shapeAutomation = getShapeTemplates().createShape(workbookAutomation, currentSheetName, 
+																	annotationClass, left, top, width, height);
+		if(shapeAutomation==null){
+			logger.error("Could not draw the shape of the annotation "+annotationName);
+			return;
 		}
-	}
-
-
-	/**
-	 * Check if there the sheet contains shape annotations with the given label
-	 * @param shapesAutomation an OleAutomation that provides access to the functionalities of the sheet Shapes 
-	 * @param sheetName a string that represents the name of the sheet to search for shape annotations
-	 * @param label a string that represents the annotation_class label
-	 * @return
-	 */
-	public static boolean hasShapeAnnotationsWithLabel(OleAutomation shapesAutomation, String sheetName, String label){
 		
-		boolean hasShapeAnnotations =false;
-		int i=1;
-		while(true){
-			OleAutomation shape = CollectionsUtils.getItemByIndex(shapesAutomation, i++, true);
-			
-			if(shape==null){
-				break;
-			}
-			
-			String shapeName = ShapeUtils.getShapeName(shape);
-			
-			if(shapeName.startsWith(getStartOfRangeAnnotationName(sheetName)) && 
-					shapeName.toLowerCase().indexOf("_"+label.toLowerCase()+"_")>0){
-				hasShapeAnnotations = true;
-				break;
-			}
-		}	
-		return hasShapeAnnotations;
+		ShapeUtils.setShapeName(shapeAutomation, annotationName);
+		shapeAutomation.dispose();
+		getShapeRegistry().register(currentSheetName, annotationName, annotationName);
 	}
 	
+	
 	/**
 	 * Format the annotation object (shape, textbox, etc) 
 	 * @param annotation an OleAutomation to access the functionalities of the annotation object
@@ -984,13 +783,17 @@ public class AnnotationHandler {
 	public static void setVisilityForAllAnnotations(OleAutomation workbookAutomation, boolean visible){
 		
 		OleAutomation worksheets = WorkbookUtils.getWorksheetsAutomation(workbookAutomation);
-		int count = CollectionsUtils.countItemsInCollection(worksheets);
-		
-		// indexing starts from 1 
-		for (int i = 1; i < count; i++) {
-			OleAutomation sheet = CollectionsUtils.getItemByIndex(worksheets, i, false);
-			setVisibilityForAnnotationsInSheet(sheet, visible);
-		}		
+		CollectionEnumerator sheetEnumerator = CollectionsUtils.getItems(worksheets, false);
+		try {
+			while(sheetEnumerator.hasNext()) {
+				OleAutomation sheet = sheetEnumerator.next();
+				// the sheet is disposed by the called method
+				setVisibilityForAnnotationsInSheet(sheet, visible);
+			}
+		} finally {
+			sheetEnumerator.close();
+		}
+		worksheets.dispose();
 	}
 	
 	
@@ -1016,45 +819,55 @@ public class AnnotationHandler {
 	
 	/**
 	 * Hide/Show all the shapes used for annotations in the sheet having the given name. 
-	 * This method will loop through the collection of shapes in the sheet and set their visibility to false or true,
-	 * if they are used for annotations. The other shapes, that were present in the original file, will not be affected.
+	 * The annotation shapes are taken from the registry (see ShapeNameRegistry), and their visibility is set with one call. 
+	 * The other shapes, that were present in the original file, will not be affected.
 	 * @param worksheetAutomation an OleAutoamtion to access the functionalities of the sheet that action will be applied on
 	 * @param visible true to make annotation shapes visible, false to hide them
 	 */
 	public static void setVisibilityForAnnotationsInSheet(OleAutomation worksheetAutomation,  boolean visible){
 		
-		String sheetName = WorksheetUtils.getWorksheetName(worksheetAutomation);
-		
-		// unprotect the worksheet in order to change the visibility of the shapes
-		boolean isUnprotected= WorksheetUtils.unprotectWorksheet(worksheetAutomation);
-		if(!isUnprotected){
-			int style = SWT.ICON_ERROR;
-			MessageBox message = Launcher.getInstance().createMessageBox(style);
-			message.setMessage("ERROR: "+sheetName+" could not be unprotected!");
-			message.open();
-			return;
-		}
-		
-		// get the collection of shapes in the worksheet
-		OleAutomation shapesAutomation = WorksheetUtils.getWorksheetShapes(worksheetAutomation);
-		
-		// all shapes that are used for annotations have names that start with the following string pattern 
-		String startString = getStartOfRangeAnnotationName(sheetName);
-		
-		int count = CollectionsUtils.countItemsInCollection(shapesAutomation);	
-		for (int i = 1; i <= count; i++) {
-			 OleAutomation shapeAutomation = CollectionsUtils.getItemByIndex(shapesAutomation, i, true);	 
-			 String name = ShapeUtils.getShapeName(shapeAutomation);
-			 if(name.indexOf(startString)== 0){
-				 ShapeUtils.setShapeVisibility(shapeAutomation, visible);
-			 }
-		}
+		// the worksheet, the shapes, and each shape are disposed when this method exits
+		OleHandleScope scope = new OleHandleScope();
+		scope.add(worksheetAutomation);
+		try {
+			String sheetName = WorksheetUtils.getWorksheetName(worksheetAutomation);
+			
+			// there is nothing to do, if no annotation shapes were created in the worksheet 
+			String[] shapeNames = getShapeRegistry().getShapeNames(sheetName);
+			if(shapeNames.length==0)
+				return;
+			
+			// unprotect the worksheet in order to change the visibility of the shapes
+			boolean isUnprotected= getProtectionScope().enter(worksheetAutomation, sheetName);
+			if(!isUnprotected){
+				int style = SWT.ICON_ERROR;
+				MessageBox message = Launcher.getInstance().createMessageBox(style);
+				message.setMessage("ERROR: "+sheetName+" could not be unprotected!");
+				message.open();
+				return;
+			}
+			
+			try {
+				// get the collection of shapes in the worksheet
+				OleAutomation shapesAutomation = scope.add(WorksheetUtils.getWorksheetShapes(worksheetAutomation));
 				
-		shapesAutomation.dispose();
-		
-		// protect the worksheet from further user manipulation 
-		WorksheetUtils.protectWorksheet(worksheetAutomation);
-		worksheetAutomation.dispose();	
+				OleAutomation shapeRangeAutomation = scope.add(ShapeUtils.getShapeRange(shapesAutomation, shapeNames));
+				if(shapeRangeAutomation!=null){
+					ShapeUtils.setShapeRangeVisibility(shapeRangeAutomation, visible);
+				}else{
+					// the registry is out of date. look for the annotation shapes by their names  
+					logger.warn("Could not get the registered annotation shapes of sheet \""+sheetName+"\". Searching all the shapes.");
+					for (OleAutomation shapeAutomation : findAnnotationShapes(shapesAutomation, sheetName, scope)) {
+						ShapeUtils.setShapeVisibility(shapeAutomation, visible);
+					}
+				}
+			} finally {
+				// protect the worksheet from further user manipulation 
+				getProtectionScope().exit(worksheetAutomation, sheetName);
+			}
+		} finally {
+			scope.dispose();
+		}
 	}
 	
 	
@@ -1065,13 +878,17 @@ public class AnnotationHandler {
 	public static void deleteAllShapeAnnotations(OleAutomation workbookAutomation){
 		
 		OleAutomation worksheets = WorkbookUtils.getWorksheetsAutomation(workbookAutomation);	
-		int i =1; 
-		while(true){
-			OleAutomation sheet = CollectionsUtils.getItemByIndex(worksheets, i++, false);
-			if(sheet==null)
-				break;
-			deleteShapeAnnotationsInSheet(sheet);
+		CollectionEnumerator sheetEnumerator = CollectionsUtils.getItems(worksheets, false);
+		try {
+			while(sheetEnumerator.hasNext()) {
+				OleAutomation sheet = sheetEnumerator.next();
+				// the sheet is disposed by the called method
+				deleteShapeAnnotationsInSheet(sheet);
+			}
+		} finally {
+			sheetEnumerator.close();
 		}
+		worksheets.dispose();
 	}
 		
 	/**
@@ -1096,49 +913,85 @@ public class AnnotationHandler {
 	 */
 	public static void deleteShapeAnnotationsInSheet(OleAutomation worksheetAutomation){
 		
-		String sheetName = WorksheetUtils.getWorksheetName(worksheetAutomation);
+		// the worksheet, the shapes, and each shape are disposed when this method exits
+		OleHandleScope scope = new OleHandleScope();
+		scope.add(worksheetAutomation);
+		try {
+			String sheetName = WorksheetUtils.getWorksheetName(worksheetAutomation);
+			
+			// there is nothing to do, if no annotation shapes (or templates) were created in the worksheet 
+			String[] shapeNames = getShapeRegistry().getShapeNames(sheetName);
+			if(shapeNames.length==0 && !getShapeTemplates().hasTemplates(sheetName))
+				return;
+			
+			// unprotect the worksheet
+			boolean isUnprotected= getProtectionScope().enter(worksheetAutomation, sheetName);
+			if(!isUnprotected){
+				int style = SWT.ICON_ERROR;
+				MessageBox message = Launcher.getInstance().createMessageBox(style);
+				message.setMessage("ERROR: "+sheetName+" could not be unprotected!");
+				message.open();
+				return;
+			}
+			
+			try {
+				// delete all shapes that are used for annotating ranges of cells
+				OleAutomation shapesAutomation = scope.add(WorksheetUtils.getWorksheetShapes(worksheetAutomation));	
 		
-		// unprotect the worksheet
-		boolean isUnprotected= WorksheetUtils.unprotectWorksheet(worksheetAutomation);
-		if(!isUnprotected){
-			int style = SWT.ICON_ERROR;
-			MessageBox message = Launcher.getInstance().createMessageBox(style);
-			message.setMessage("ERROR: "+sheetName+" could not be unprotected!");
-			message.open();
-			return;
+				// the (hidden) template shapes are deleted as well, so that they are not saved with the file 
+				getShapeTemplates().deleteTemplates(sheetName);
+			
+				if(shapeNames.length > 0){
+					OleAutomation shapeRangeAutomation = scope.add(ShapeUtils.getShapeRange(shapesAutomation, shapeNames));
+					if(shapeRangeAutomation!=null){
+						ShapeUtils.deleteShapeRange(shapeRangeAutomation);
+					}else{
+						// the registry is out of date. look for the annotation shapes by their names. 
+						// the shapes are deleted after the search, as deleting them changes the collection.
+						logger.warn("Could not get the registered annotation shapes of sheet \""+sheetName+"\". Searching all the shapes.");
+						for (OleAutomation shapeAutomation : findAnnotationShapes(shapesAutomation, sheetName, scope)) {
+							ShapeUtils.deleteShape(shapeAutomation);
+						}
+					}
+				}
+				getShapeRegistry().forget(sheetName);
+			} finally {
+				// protect the worksheet from further user manipulation 
+				getProtectionScope().exit(worksheetAutomation, sheetName);
+			}
+		} finally {
+			scope.dispose();
 		}
-		
-		// delete all shapes that are used for annotating ranges of cells
-		OleAutomation shapesAutomation = WorksheetUtils.getWorksheetShapes(worksheetAutomation);	
+	}
 	
+	/**
+	 * Find the shapes in the sheet that are used for annotations, by comparing their names. 
+	 * This method goes through all the shapes in the sheet, thus it is used only when the registry of the annotation shapes is out of date.
+	 * @param shapesAutomation an OleAutomation that provides access to the functionalities of the sheet Shapes
+	 * @param sheetName the name of the sheet
+	 * @param scope the scope where all the retrieved shapes are added, so that they are disposed by the caller
+	 * @return the annotation shapes in the sheet
+	 */
+	private static List<OleAutomation> findAnnotationShapes(OleAutomation shapesAutomation, String sheetName, OleHandleScope scope){
+		
 		// all shapes that are used for annotating have names that start with the following string pattern 
 		String startString =  getStartOfRangeAnnotationName(sheetName);
 		
-		int count = CollectionsUtils.countItemsInCollection(shapesAutomation);	
-		int processed = 0; 
-		int i = 1;
-		while (processed!=count){
-			 OleAutomation shapeAutomation = CollectionsUtils.getItemByIndex(shapesAutomation, i, true);	
-			 if(shapeAutomation==null){ // it seems that it considers comments as shapes. although, it should not
-				 processed++;
-				 continue;
-			 }
-			 
-			 String name = ShapeUtils.getShapeName(shapeAutomation);
-			 
-			 if(name.indexOf(startString)==0){
-				 ShapeUtils.deleteShape(shapeAutomation);
-			 }else{
-				 i++;
-			 }
-			 
-			 processed++;
-		}			
-		shapesAutomation.dispose();
-		
-		// protect the worksheet from further user manipulation 
-		WorksheetUtils.protectWorksheet(worksheetAutomation);
-		worksheetAutomation.dispose();	
+		ArrayList<OleAutomation> annotationShapes = new ArrayList<OleAutomation>();
+		CollectionEnumerator shapeEnumerator = CollectionsUtils.getItems(shapesAutomation, true);
+		try {
+			while(shapeEnumerator.hasNext()) {
+				OleAutomation shapeAutomation = shapeEnumerator.next();
+				scope.add(shapeAutomation);
+				String name = ShapeUtils.getShapeName(shapeAutomation);
+				if(name.indexOf(startString)==0){
+					annotationShapes.add(shapeAutomation);
+				}
+			}
+		} finally {
+			shapeEnumerator.close();
+		}
+		return annotationShapes;
 	}
 	
 	/**
@@ -1148,84 +1001,248 @@ public class AnnotationHandler {
 	 * @return true if deletion was successful, false otherwise
 	 */
 	public static boolean deleteShapeAnnotation(OleAutomation worksheetAutomation, RangeAnnotation annotation){
-				
+		
+		// the shape is looked up by the registered name, if there is one
+		String shapeName = getShapeRegistry().getShapeName(annotation.getSheetName(), annotation.getName());
+		if(shapeName==null)
+			shapeName = annotation.getName();
+		
 		OleAutomation shapesAutomation = WorksheetUtils.getWorksheetShapes(worksheetAutomation);
-		OleAutomation shapeAutomation = CollectionsUtils.getItemByName(shapesAutomation, annotation.getName(), true);	 
+		OleAutomation shapeAutomation = CollectionsUtils.getItemByName(shapesAutomation, shapeName, true);	 
 		
 		boolean result = false; 
-		if(shapeAutomation!=null)
+		if(shapeAutomation!=null){
 			result = ShapeUtils.deleteShape(shapeAutomation);
-				
-		shapeAutomation.dispose();
+			shapeAutomation.dispose();
+		}
 		shapesAutomation.dispose();
 		
+		if(result)
+			getShapeRegistry().unregister(annotation.getSheetName(), annotation.getName());
 		return result;
 	}
 	
 	
-	public static void addToUndoList(RangeAnnotation annotation){
-		undoList.add(annotation);
-		if(undoList.size()>10)
-			undoList.removeFirst();
+	/**
+	 * Record the current annotation state as a new version in the history. 
+	 * It has to be called after each operation that modifies the annotations or their statuses. 
+	 */
+	public static void recordVersion(){
+		getSession().recordVersion();
 	}
-		
-	public static void addToRedoList(RangeAnnotation annotation){
-		redoList.add(annotation);
-		if(redoList.size()>10)
-			redoList.removeFirst();
+	
+	
+	/**
+	 * Discard all the versions in the history, and make the current annotation state the first version
+	 */
+	public static void clearHistory(){
+		getSession().clearHistory();
 	}
 	
-	public static void removeLastFromUndoList(){
-		undoList.removeLast();
+	
+	/**
+	 * @return true if there is a previous version of the annotation state, false otherwise
+	 */
+	public static boolean canUndo(){
+		return getSession().getHistory().canUndo();
 	}
 	
-	public static RangeAnnotation getLastFromUndoList(){
-		if(!undoList.isEmpty()){
-			return undoList.getLast();
-		}else{
-			return null;
-		}
+	
+	/**
+	 * @return true if there is a version of the annotation state that was undone, false otherwise
+	 */
+	public static boolean canRedo(){
+		return getSession().getHistory().canRedo();
 	}
 	
-	public static void removeLastFromRedoList(){
-		redoList.removeLast();
+	
+	/**
+	 * Restore the previous version of the annotation state
+	 * @param workbookAutomation an OleAutomation for accessing the functionalities of the embedded workbook
+	 * @return the names of the worksheets that were changed, or null if there is nothing to undo 
+	 */
+	public static Set<String> undo(OleAutomation workbookAutomation){
+		
+		WorkbookAnnotationSnapshot version = getSession().undo();
+		if(version==null)
+			return null;
+		
+		return restoreVersion(workbookAutomation, version);
 	}
+	
+	
+	/**
+	 * Restore the version of the annotation state that was undone last 
+	 * @param workbookAutomation an OleAutomation for accessing the functionalities of the embedded workbook
+	 * @return the names of the worksheets that were changed, or null if there is nothing to redo
+	 */
+	public static Set<String> redo(OleAutomation workbookAutomation){
 		
-	public static RangeAnnotation getLastFromRedoList(){
-		if(!redoList.isEmpty()){
-			return redoList.getLast();
-		}else{
+		WorkbookAnnotationSnapshot version = getSession().redo();
+		if(version==null)
 			return null;
+		
+		return restoreVersion(workbookAutomation, version);
+	}
+	
+	
+	/**
+	 * Bring the annotations (in memory, as shapes, and in the annotation data sheet) to the state of the given version.
+	 * Only the worksheets whose snapshot differs from the one in the version are compared and updated.
+	 * @param workbookAutomation an OleAutomation for accessing the functionalities of the embedded workbook
+	 * @param version the version to restore
+	 * @return the names of the worksheets that were changed
+	 */
+	private static Set<String> restoreVersion(OleAutomation workbookAutomation, WorkbookAnnotationSnapshot version){
+		
+		AnnotationSession session = getSession();
+		WorkbookAnnotation workbookAnnotation = session.getWorkbookAnnotation();
+		WorkbookAnnotationSnapshot current = workbookAnnotation.getSnapshot();
+		
+		// the changes are saved in the annotation data sheet by the change listeners, but they are not recorded as a new version
+		session.setRestoringVersion(true);
+		workbookAnnotation.beginChanges();
+		try {
+			LinkedHashSet<String> changedSheets = new LinkedHashSet<String>();
+			final Set<RangeAnnotation> toRemove = Collections.newSetFromMap(new IdentityHashMap<RangeAnnotation, Boolean>());
+			ArrayList<RangeAnnotation> toAdd = new ArrayList<RangeAnnotation>();
+		
+			for (WorksheetAnnotation sheetAnnotation : workbookAnnotation.getWorksheetAnnotations().values()) {
+			
+				int sheetId = sheetAnnotation.getSheetId();
+				WorksheetAnnotationSnapshot target = version.getWorksheetSnapshot(sheetId);
+				if(target==null || target.hasSameContent(current.getWorksheetSnapshot(sheetId)))
+					continue;
+			
+				HashMap<String, RangeAnnotationSnapshot> targetAnnotations = new HashMap<String, RangeAnnotationSnapshot>();
+				for (RangeAnnotationSnapshot ras : target.getRangeAnnotations()) {
+					targetAnnotations.put(ras.getName(), ras);
+				}
+			
+				for (RangeAnnotation ra : sheetAnnotation.getAllAnnotations()) {
+					if(targetAnnotations.remove(ra.getName())==null)
+						toRemove.add(ra);
+				}
+			
+				// the worksheet might have been renamed since the version was recorded
+				for (RangeAnnotationSnapshot ras : targetAnnotations.values()) {
+					RangeAnnotation ra = ras.toRangeAnnotation();
+					ra.setSheetName(sheetAnnotation.getSheetName());
+					toAdd.add(ra);
+				}
+			
+				sheetAnnotation.setCompleted(target.isCompleted());
+				sheetAnnotation.setNotApplicable(target.isNotApplicable());
+				changedSheets.add(sheetAnnotation.getSheetName());
+			}
+		
+			boolean isUnprotected = getProtectionScope().enterAll(workbookAutomation);
+			if(!isUnprotected)
+				logger.error("Could not unprotect the worksheets to restore the annotation shapes");
+			
+			try {
+				for (RangeAnnotation ra : toRemove) {
+					OleAutomation sheetAutomation = getHandlePool().getWorksheet(workbookAutomation, ra.getSheetName());
+					deleteShapeAnnotation(sheetAutomation, ra);
+				}
+				workbookAnnotation.removeRangeAnnotations(new Predicate<RangeAnnotation>() {
+					@Override
+					public boolean test(RangeAnnotation ra) {
+						return toRemove.contains(ra);
+					}
+				});
+			
+				AnnotationShapeRenderer.drawAll(workbookAutomation, toAdd.toArray(new RangeAnnotation[toAdd.size()]), false);
+				workbookAnnotation.addRangeAnnotations(toAdd);
+			} finally {
+				if(isUnprotected)
+					getProtectionScope().exitAll(workbookAutomation);
+			}
+		
+			workbookAnnotation.setCompleted(version.isCompleted());
+			workbookAnnotation.setNotApplicable(version.isNotApplicable());
+		
+			return changedSheets;
+		} finally {
+			workbookAnnotation.endChanges();
+			session.setRestoringVersion(false);
 		}
 	}
-
-	public static void clearRedoList(){
-		redoList.clear();
+	
+	
+	/**
+	 * @return the workbookannotation of the current session
+	 */
+	public static WorkbookAnnotation getWorkbookAnnotation() {
+		return getSession().getWorkbookAnnotation();
 	}
 	
-	public static void clearUndoList(){
-		undoList.clear();
+	
+	/**
+	 * @return the manager of the worksheet protection in the current session
+	 */
+	public static ProtectionScope getProtectionScope() {
+		return getSession().getProtectionScope();
 	}
 	
 	
 	/**
-	 * @return the workbookannotation
+	 * @return the pool of the worksheet OleAutomation objects in the current session
 	 */
-	public static WorkbookAnnotation getWorkbookAnnotation() {
-		return workbookAnnotation;
+	public static WorksheetHandlePool getHandlePool() {
+		return getSession().getHandlePool();
 	}
 	
+	
 	/**
-	 * @return the oldWorkbookAnnotationHash
+	 * @return the cache of the styled template shapes in the current session
 	 */
-	public static int getOldWorkbookAnnotationHash() {
-		return oldWorkbookAnnotationHash;
+	public static ShapeTemplateCache getShapeTemplates() {
+		return getSession().getShapeTemplates();
 	}
-
+	
+	
+	/**
+	 * @return the registry of the annotation shapes in the current session
+	 */
+	public static ShapeNameRegistry getShapeRegistry() {
+		return getSession().getShapeRegistry();
+	}
+	
+	
+	/**
+	 * Get the current session. It is the session that is bound to the calling thread, if there is one, 
+	 * otherwise the session of the workbook that is shown in the application window.
+	 * @return an AnnotationSession object
+	 */
+	public static AnnotationSession getSession() {
+		AnnotationSession session = boundSession.get();
+		return session!=null ? session : activeSession;
+	}
+	
+	
+	/**
+	 * @param session the session of the workbook that is shown in the application window
+	 */
+	public static void setActiveSession(AnnotationSession session) {
+		activeSession = session;
+	}
+	
+	
+	/**
+	 * Bind the given session to the calling thread. The methods of this class that are called from the thread 
+	 * work on the given session, until unbindSession() is called. 
+	 * @param session the session to bind
+	 */
+	public static void bindSession(AnnotationSession session) {
+		boundSession.set(session);
+	}
+	
+	
 	/**
-	 * @param oldWorkbookAnnotationHash the oldWorkbookAnnotationHash to set
+	 * Unbind the session from the calling thread
 	 */
-	public static void setOldWorkbookAnnotationHash(int oldWorkbookAnnotationHash) {
-		AnnotationHandler.oldWorkbookAnnotationHash = oldWorkbookAnnotationHash;
+	public static void unbindSession() {
+		boundSession.remove();
 	}
 }
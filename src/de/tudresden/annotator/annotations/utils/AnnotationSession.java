@@ -0,0 +1,265 @@
+/**
+ * 
+ */
+package de.tudresden.annotator.annotations.utils;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+
+import org.eclipse.swt.ole.win32.OleAutomation;
+
+import de.tudresden.annotator.annotations.AnnotationChangeListener;
+import de.tudresden.annotator.annotations.AnnotationChangeSet;
+import de.tudresden.annotator.annotations.AnnotationHistory;
+import de.tudresden.annotator.annotations.WorkbookAnnotation;
+import de.tudresden.annotator.annotations.WorkbookAnnotationSnapshot;
+
+/**
+ * The state of the annotation work on one workbook (document): the annotations, the undo history,
+ * the layout of the annotation data sheet, and the OleAutomation of the workbook.
+ * Each opened workbook gets its own session, so several workbooks can be processed independently
+ * (e.g., one per thread, see AnnotationHandler.bindSession(AnnotationSession)).
+ *
+ * @author Elvis Koci
+ */
+public class AnnotationSession {
+
+	/**
+	 * This object stores and provides access to all annotations that are created in the workbook
+	 */
+	private final WorkbookAnnotation workbookAnnotation = new WorkbookAnnotation();
+
+	/**
+	 * Maintains the versions of the annotation state that can be undone and re-done
+	 */
+	private final AnnotationHistory history = new AnnotationHistory();
+
+	/*
+	 * True while a version from the history is being restored. The changes made for it are not recorded as a new version.
+	 */
+	private boolean isRestoringVersion = false;
+
+	/*
+	 * The workbook that is annotated in this session, null if it is not opened (embedded)
+	 */
+	private OleAutomation workbookAutomation;
+
+	/*
+	 * The address of the first cell of the annotation data sheet, and the position of each field in its header row.
+	 * They are updated when the header row of an existing sheet is read.
+	 */
+	private String dataStartColumn = "A";
+	private int dataStartRow = 1;
+	private final LinkedHashMap<String, Integer> fieldPositions = new LinkedHashMap<String, Integer>(RangeAnnotationsSheet.getFields());
+
+	/*
+	 * The names of the fields that were found in the header row of the annotation data sheet, when it was last read
+	 */
+	private final HashSet<String> headerFields = new HashSet<String>();
+
+	/*
+	 * Manages the protection of the worksheets of the workbook
+	 */
+	private final ProtectionScope protectionScope = new ProtectionScope();
+
+	/*
+	 * Keeps the OleAutomation objects of the worksheets of the workbook, so that they are not retrieved again for each annotation
+	 */
+	private final WorksheetHandlePool handlePool = new WorksheetHandlePool();
+
+	/*
+	 * Keeps the styled template shapes, that are duplicated for the new annotations
+	 */
+	private final ShapeTemplateCache shapeTemplates = new ShapeTemplateCache();
+
+	/*
+	 * Keeps the names of the annotation shapes that were created in the workbook
+	 */
+	private final ShapeNameRegistry shapeRegistry = new ShapeNameRegistry();
+
+
+	/**
+	 * Create a session for a workbook that is not opened yet
+	 */
+	public AnnotationSession() {
+		this(null);
+	}
+
+
+	/**
+	 * @param workbookAutomation an OleAutomation for accessing the functionalities of the workbook that is annotated
+	 */
+	public AnnotationSession(OleAutomation workbookAutomation) {
+		this.workbookAutomation = workbookAutomation;
+
+		// record a new version after each batch of changes (i.e., each user action)
+		this.workbookAnnotation.addChangeListener(new AnnotationChangeListener() {
+			@Override
+			public void annotationsChanged(AnnotationChangeSet changes) {
+				if(!isRestoringVersion)
+					recordVersion();
+			}
+		});
+	}
+
+
+	/**
+	 * Record the current annotation state as a new version in the history
+	 */
+	public void recordVersion(){
+		this.history.record(this.workbookAnnotation.getSnapshot());
+	}
+
+
+	/**
+	 * Discard all the versions in the history, and make the current annotation state the first version
+	 */
+	public void clearHistory(){
+		this.history.clear();
+		recordVersion();
+	}
+
+
+	/**
+	 * @return the previous version of the annotation state, or null if there is nothing to undo
+	 */
+	protected WorkbookAnnotationSnapshot undo(){
+		return this.history.undo();
+	}
+
+
+	/**
+	 * @return the version of the annotation state that was undone last, or null if there is nothing to redo
+	 */
+	protected WorkbookAnnotationSnapshot redo(){
+		return this.history.redo();
+	}
+
+
+	/**
+	 * @return the workbookAnnotation
+	 */
+	public WorkbookAnnotation getWorkbookAnnotation() {
+		return workbookAnnotation;
+	}
+
+
+	/**
+	 * @return the history
+	 */
+	public AnnotationHistory getHistory() {
+		return history;
+	}
+
+
+	/**
+	 * @return the workbookAutomation
+	 */
+	public OleAutomation getWorkbookAutomation() {
+		return workbookAutomation;
+	}
+
+
+	/**
+	 * @param workbookAutomation the workbookAutomation to set
+	 */
+	public void setWorkbookAutomation(OleAutomation workbookAutomation) {
+		if(this.workbookAutomation!=workbookAutomation){
+			this.protectionScope.clear();
+			this.shapeTemplates.dispose();
+			this.shapeRegistry.clear();
+			this.handlePool.dispose();
+		}
+		this.workbookAutomation = workbookAutomation;
+	}
+
+
+	/**
+	 * @return the protection scope manager for the worksheets of the workbook
+	 */
+	public ProtectionScope getProtectionScope() {
+		return protectionScope;
+	}
+
+
+	/**
+	 * @return the pool of the worksheet OleAutomation objects of the workbook
+	 */
+	public WorksheetHandlePool getHandlePool() {
+		return handlePool;
+	}
+
+
+	/**
+	 * @return the cache of the styled template shapes, one per annotation class and worksheet
+	 */
+	public ShapeTemplateCache getShapeTemplates() {
+		return shapeTemplates;
+	}
+
+
+	/**
+	 * @return the registry of the annotation shapes that were created in the workbook
+	 */
+	public ShapeNameRegistry getShapeRegistry() {
+		return shapeRegistry;
+	}
+
+
+	/**
+	 * @return true while a version from the history is being restored, false otherwise
+	 */
+	protected boolean isRestoringVersion() {
+		return isRestoringVersion;
+	}
+
+
+	/**
+	 * @param isRestoringVersion the isRestoringVersion to set
+	 */
+	protected void setRestoringVersion(boolean isRestoringVersion) {
+		this.isRestoringVersion = isRestoringVersion;
+	}
+
+
+	/**
+	 * @return the column of the first cell in the annotation data sheet
+	 */
+	protected String getDataStartColumn() {
+		return dataStartColumn;
+	}
+
+
+	/**
+	 * @return the row of the first cell (i.e., the header row) in the annotation data sheet
+	 */
+	protected int getDataStartRow() {
+		return dataStartRow;
+	}
+
+
+	/**
+	 * @param dataStartColumn the column of the first cell in the annotation data sheet
+	 * @param dataStartRow the row of the first cell in the annotation data sheet
+	 */
+	protected void setDataStart(String dataStartColumn, int dataStartRow) {
+		this.dataStartColumn = dataStartColumn;
+		this.dataStartRow = dataStartRow;
+	}
+
+
+	/**
+	 * @return the position of each field in the header row of the annotation data sheet
+	 */
+	protected LinkedHashMap<String, Integer> getFieldPositions() {
+		return fieldPositions;
+	}
+
+
+	/**
+	 * @return the names of the fields that were found in the header row of the annotation data sheet
+	 */
+	protected HashSet<String> getHeaderFields() {
+		return headerFields;
+	}
+}
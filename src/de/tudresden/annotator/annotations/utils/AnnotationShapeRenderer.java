@@ -0,0 +1,172 @@
+/**
+ * 
+ */
+package de.tudresden.annotator.annotations.utils;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.swt.ole.win32.OleAutomation;
+
+import de.tudresden.annotator.annotations.AnnotationClass;
+import de.tudresden.annotator.annotations.AnnotationTool;
+import de.tudresden.annotator.annotations.RangeAnnotation;
+import de.tudresden.annotator.oleutils.RangeUtils;
+import de.tudresden.annotator.oleutils.ShapeUtils;
+import de.tudresden.annotator.oleutils.WorksheetUtils;
+
+/**
+ * Draws many range annotations at once. The annotations are grouped by sheet, and the geometry (position and size)
+ * of all the annotated ranges in a sheet is resolved before any shape is created. The shapes of a sheet are then created
+ * one class after the other. Each shape is a duplicate of the styled template shape of its class (see ShapeTemplateCache),
+ * which is only positioned and named.
+ *
+ * @author Elvis Koci
+ */
+public class AnnotationShapeRenderer {
+
+	private static final Logger logger = LogManager.getLogger(AnnotationShapeRenderer.class.getName());
+
+	/**
+	 * Draw the given range annotations
+	 * @param workbookAutomation an OleAutomation for accessing the functionalities of the embedded workbook
+	 * @param annotations the range annotations to draw
+	 * @param validate true to validate each annotation before drawing it, false to skip validation
+	 * @return the annotations that were drawn, i.e., excluding those that did not pass the validation or could not be drawn
+	 */
+	public static List<RangeAnnotation> drawAll(OleAutomation workbookAutomation, RangeAnnotation[] annotations, boolean validate){
+
+		// group the annotations by sheet, keeping their order
+		LinkedHashMap<String, List<RangeAnnotation>> annotationsBySheet = new LinkedHashMap<String, List<RangeAnnotation>>();
+		for (RangeAnnotation ra : annotations) {
+			List<RangeAnnotation> sheetAnnotations = annotationsBySheet.get(ra.getSheetName());
+			if(sheetAnnotations==null){
+				sheetAnnotations = new ArrayList<RangeAnnotation>();
+				annotationsBySheet.put(ra.getSheetName(), sheetAnnotations);
+			}
+			sheetAnnotations.add(ra);
+		}
+
+		List<RangeAnnotation> drawn = new ArrayList<RangeAnnotation>(annotations.length);
+		for (String sheetName : annotationsBySheet.keySet()) {
+			try{
+				drawInSheet(workbookAutomation, sheetName, annotationsBySheet.get(sheetName), validate, drawn);
+			}catch (Exception ex){
+				logger.error("Generic exception on drawing the range annotations of sheet \""+sheetName+"\"", ex);
+			}
+		}
+		return drawn;
+	}
+
+
+	/**
+	 * Draw the range annotations of one sheet
+	 * @param workbookAutomation an OleAutomation for accessing the functionalities of the embedded workbook
+	 * @param sheetName the name of the sheet
+	 * @param annotations the range annotations of the sheet
+	 * @param validate true to validate each annotation before drawing it, false to skip validation
+	 * @param drawn the list where the annotations that are drawn are added
+	 */
+	private static void drawInSheet(OleAutomation workbookAutomation, String sheetName, List<RangeAnnotation> annotations,
+																			boolean validate, List<RangeAnnotation> drawn){
+
+		WorksheetHandlePool handlePool = AnnotationHandler.getHandlePool();
+		OleAutomation sheetAutomation = handlePool.getWorksheet(workbookAutomation, sheetName);
+		if(sheetAutomation==null){
+			logger.error("Could not find the sheet \""+sheetName+"\". Its range annotations are not drawn.");
+			return;
+		}
+
+		ProtectionScope protection = AnnotationHandler.getProtectionScope();
+		if(!protection.enter(sheetAutomation, sheetName)){
+			logger.error("Could not unprotect the sheet \""+sheetName+"\". Its range annotations are not drawn.");
+			return;
+		}
+
+		try{
+			// resolve the geometry of all the ranges. the ranges annotated with a border are drawn right away.
+			LinkedHashMap<AnnotationClass, List<ShapeGeometry>> shapesByClass = new LinkedHashMap<AnnotationClass, List<ShapeGeometry>>();
+			for (RangeAnnotation ra : annotations) {
+
+				if(validate && !AnnotationHandler.validateRangeAnnotation(workbookAutomation, sheetAutomation, ra))
+					continue;
+
+				OleAutomation rangeAutomation = WorksheetUtils.getRangeAutomation(sheetAutomation, ra.getRangeAddress());
+				if(rangeAutomation==null){
+					logger.error("Could not get the range "+ra.getRangeAddress()+" of the annotation "+ra.getName());
+					continue;
+				}
+
+				AnnotationClass annotationClass = ra.getAnnotationClass();
+				ShapeGeometry geometry;
+				try{
+					if(annotationClass.getAnnotationTool()==AnnotationTool.BORDERAROUND){
+						AnnotationHandler.annotateByBorderAround(rangeAutomation, annotationClass, ra.getName());
+						drawn.add(ra);
+						continue;
+					}
+
+					geometry = new ShapeGeometry(ra,
+							RangeUtils.getRangeLeftPosition(rangeAutomation), RangeUtils.getRangeTopPosition(rangeAutomation),
+							RangeUtils.getRangeWidth(rangeAutomation), RangeUtils.getRangeHeight(rangeAutomation));
+				}finally{
+					// disposing twice has no effect, thus the range is released here even if the called method did it already
+					rangeAutomation.dispose();
+				}
+
+				List<ShapeGeometry> classShapes = shapesByClass.get(annotationClass);
+				if(classShapes==null){
+					classShapes = new ArrayList<ShapeGeometry>();
+					shapesByClass.put(annotationClass, classShapes);
+				}
+				classShapes.add(geometry);
+			}
+
+			// create the shapes, one class after the other. each shape is a duplicate of the styled template of its class.
+			ShapeTemplateCache shapeTemplates = AnnotationHandler.getShapeTemplates();
+			ShapeNameRegistry shapeRegistry = AnnotationHandler.getShapeRegistry();
+			for (AnnotationClass annotationClass : shapesByClass.keySet()) {
+				for (ShapeGeometry geometry : shapesByClass.get(annotationClass)) {
+
+					OleAutomation shapeAutomation = shapeTemplates.createShape(workbookAutomation, sheetName, annotationClass,
+																	geometry.left, geometry.top, geometry.width, geometry.height);
+					if(shapeAutomation==null){
+						logger.error("Could not draw the shape of the annotation "+geometry.annotation.getName());
+						continue;
+					}
+
+					ShapeUtils.setShapeName(shapeAutomation, geometry.annotation.getName());
+					shapeAutomation.dispose();
+					shapeRegistry.register(sheetName, geometry.annotation.getName(), geometry.annotation.getName());
+					drawn.add(geometry.annotation);
+				}
+			}
+		}finally{
+			protection.exit(sheetAutomation, sheetName);
+		}
+	}
+
+
+	/**
+	 * The position and size, in points, of the shape of a range annotation
+	 */
+	private static final class ShapeGeometry {
+
+		private final RangeAnnotation annotation;
+		private final double left;
+		private final double top;
+		private final double width;
+		private final double height;
+
+		private ShapeGeometry(RangeAnnotation annotation, double left, double top, double width, double height){
+			this.annotation = annotation;
+			this.left = left;
+			this.top = top;
+			this.width = width;
+			this.height = height;
+		}
+	}
+}
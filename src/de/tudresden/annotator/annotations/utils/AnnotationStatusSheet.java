@@ -5,6 +5,8 @@ package de.tudresden.annotator.annotations.utils;
 
 import java.util.Collection;
 
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.ole.win32.OleAutomation;
 import org.eclipse.swt.widgets.MessageBox;
@@ -12,7 +14,6 @@ import org.eclipse.swt.widgets.MessageBox;
 import de.tudresden.annotator.annotations.WorkbookAnnotation;
 import de.tudresden.annotator.annotations.WorksheetAnnotation;
 import de.tudresden.annotator.main.Launcher;
-import de.tudresden.annotator.oleutils.CollectionsUtils;
 import de.tudresden.annotator.oleutils.RangeUtils;
 import de.tudresden.annotator.oleutils.WorkbookUtils;
 import de.tudresden.annotator.oleutils.WorksheetUtils;
@@ -22,6 +23,8 @@ import de.tudresden.annotator.oleutils.WorksheetUtils;
  */
 public class AnnotationStatusSheet {
 	
+	private static final Logger logger = LogManager.getLogger(AnnotationStatusSheet.class.getName());
+	
 	protected static final String name = "Annotation_Status_Data";
 	private static final String startColumnChar = "A";
 	private static final int startColumnIndex = 1;
@@ -35,26 +38,43 @@ public class AnnotationStatusSheet {
 			
 		OleAutomation annotationStatusSheet =  WorkbookUtils.getWorksheetAutomationByName(workbookAutomation, name);
 		
+		boolean isNewSheet = false;
 		if(annotationStatusSheet==null){		
-			annotationStatusSheet = createAnnotationStatusSheet(workbookAutomation);	
-		}else{
-			
-			WorksheetUtils.unprotectWorksheet(annotationStatusSheet);
-			
-			// delete all the existing data from the worksheet. 
-			// by removing all existing data we ensure that the "new" data will have
-			// the right format. So, they are not effected by the existing data.
-			OleAutomation usedRange = WorksheetUtils.getUsedRange(annotationStatusSheet);		
-			RangeUtils.deleteRange(usedRange);	
-			usedRange.dispose();
+			annotationStatusSheet = createAnnotationStatusSheet(workbookAutomation);
+			isNewSheet = true;
+		}else if(!AnnotationHandler.getWorkbookAnnotation().hasChangedSinceSave()){
 			
-			// re-create the header
-			createHeaderRow(annotationStatusSheet);
-			WorksheetUtils.protectWorksheet(annotationStatusSheet);	
+			// the saved statuses are still up to date
+			annotationStatusSheet.dispose();
+			return;
 		}
 		
-		writeStatuses(annotationStatusSheet);		
-		annotationStatusSheet.dispose();
+		// the sheet stays unprotected until the statuses are written
+		ProtectionScope protection = AnnotationHandler.getProtectionScope();
+		if(!protection.enter(annotationStatusSheet, name)){
+			logger.error("Could not unprotect the sheet \""+name+"\". The annotation statuses are not saved.");
+			annotationStatusSheet.dispose();
+			return;
+		}
+		
+		try {
+			if(!isNewSheet){
+				// delete all the existing data from the worksheet. 
+				// by removing all existing data we ensure that the "new" data will have
+				// the right format. So, they are not effected by the existing data.
+				OleAutomation usedRange = WorksheetUtils.getUsedRange(annotationStatusSheet);		
+				RangeUtils.deleteRange(usedRange);	
+				usedRange.dispose();
+				
+				// re-create the header
+				createHeaderRow(annotationStatusSheet);
+			}
+			
+			writeStatuses(annotationStatusSheet);
+		} finally {
+			protection.exit(annotationStatusSheet, name);
+			annotationStatusSheet.dispose();
+		}
 	}
 	
 	/**
@@ -75,18 +95,27 @@ public class AnnotationStatusSheet {
 			return;
 		}
 		
+		// read all the status data (the header and the data rows) at once
+		String[][] values = null;
+		OleAutomation usedRange = WorksheetUtils.getUsedRange(annotationStatusSheet);
+		if(usedRange!=null){
+			values = RangeUtils.getRangeValues2D(usedRange);
+			usedRange.dispose();
+		}
+		annotationStatusSheet.dispose();
+		
 		// ensure that the annotation_status sheet has the expected format
-		if(!validateAnnotationStatusSheet(annotationStatusSheet)){
+		if(!validateAnnotationStatusSheet(values)){
 			return;
 		}
 		
 		// read the workbook annotation status data 
-		if(!readWorkbookAnnotationStatus(annotationStatusSheet)){
+		if(!readWorkbookAnnotationStatus(values)){
 			return;
 		}
 		
 		// read the annotation status data for each sheet
-		readWorksheetAnnotationsStatuses(annotationStatusSheet);
+		readWorksheetAnnotationsStatuses(values);
 	}
 	
 	/**
@@ -100,6 +129,9 @@ public class AnnotationStatusSheet {
 		
 		OleAutomation annotationStatusSheet = WorkbookUtils.addWorksheetAsLast(workbookAutomation);
 		WorksheetUtils.setWorksheetName(annotationStatusSheet, name);
+		// a new sheet is not protected. discard the state (and the handles) that might be known for an older sheet with the same name
+		AnnotationHandler.getProtectionScope().forget(name);
+		AnnotationHandler.getHandlePool().invalidate(name);
 		
 		createHeaderRow(annotationStatusSheet);
 		
@@ -116,20 +148,8 @@ public class AnnotationStatusSheet {
 	 */
 	private static void createHeaderRow(OleAutomation annotationStatusSheet){
 		
-		OleAutomation field1 = WorksheetUtils.getCell(annotationStatusSheet, startRow, startColumnIndex);
-		RangeUtils.formatCells(field1, "@");
-		RangeUtils.setValue(field1, "Name");
-		field1.dispose();
-		
-		OleAutomation field2 = WorksheetUtils.getCell(annotationStatusSheet, startRow, startColumnIndex+1);
-		RangeUtils.formatCells(field2, "@");
-		RangeUtils.setValue(field2, "Completed");
-		field2.dispose();
-		
-		OleAutomation field3 = WorksheetUtils.getCell(annotationStatusSheet, startRow, startColumnIndex+2);
-		RangeUtils.formatCells(field3, "@");
-		RangeUtils.setValue(field3, "NotApplicable");
-		field3.dispose();
+		Object[][] header = new Object[][]{{"Name", "Completed", "NotApplicable"}};
+		WorksheetUtils.writeValues(annotationStatusSheet, startRow, startColumnIndex, header, new String[]{"@", "@", "@"});
 	}
 	
 	
@@ -145,22 +165,27 @@ public class AnnotationStatusSheet {
 	private static void writeNewDataRow(OleAutomation annotationStatusSheet, int row, String name, 
 														boolean isCompleted, boolean isNotApplicable){		
 		
-		WorksheetUtils.unprotectWorksheet(annotationStatusSheet);
-		
-		OleAutomation field1 = WorksheetUtils.getCell(annotationStatusSheet, startRow, startColumnIndex);
-		RangeUtils.formatCells(field1, "@");
-		RangeUtils.setValue(field1, name);
-		field1.dispose();
-		
-		OleAutomation field2 = WorksheetUtils.getCell(annotationStatusSheet, startRow, startColumnIndex+1);
-		RangeUtils.setValue(field2, String.valueOf(isCompleted));
-		field2.dispose();
-		
-		OleAutomation field3 = WorksheetUtils.getCell(annotationStatusSheet, startRow, startColumnIndex+2);
-		RangeUtils.setValue(field3, String.valueOf(isNotApplicable));
-		field3.dispose();
+		if(!AnnotationHandler.getProtectionScope().enter(annotationStatusSheet, AnnotationStatusSheet.name)){
+			logger.error("Could not unprotect the sheet \""+AnnotationStatusSheet.name+"\". The status is not saved.");
+			return;
+		}
 		
-		WorksheetUtils.protectWorksheet(annotationStatusSheet);	
+		try {
+			OleAutomation field1 = WorksheetUtils.getCell(annotationStatusSheet, startRow, startColumnIndex);
+			RangeUtils.formatCells(field1, "@");
+			RangeUtils.setValue(field1, name);
+			field1.dispose();
+			
+			OleAutomation field2 = WorksheetUtils.getCell(annotationStatusSheet, startRow, startColumnIndex+1);
+			RangeUtils.setValue(field2, String.valueOf(isCompleted));
+			field2.dispose();
+			
+			OleAutomation field3 = WorksheetUtils.getCell(annotationStatusSheet, startRow, startColumnIndex+2);
+			RangeUtils.setValue(field3, String.valueOf(isNotApplicable));
+			field3.dispose();
+		} finally {
+			AnnotationHandler.getProtectionScope().exit(annotationStatusSheet, AnnotationStatusSheet.name);	
+		}
 	}
 	
 	/**
@@ -172,25 +197,30 @@ public class AnnotationStatusSheet {
 	@SuppressWarnings("unused")
 	private static void writeManyWorksheetAnnotationStatuses(OleAutomation annotationStatusSheet, int row, WorksheetAnnotation[] worksheetAnnotations){
 		
-		WorksheetUtils.unprotectWorksheet(annotationStatusSheet);
-		
-		int rowIndex = row;
-		for (WorksheetAnnotation worksheetAnnotation : worksheetAnnotations) {
-			
-			OleAutomation field1 = WorksheetUtils.getCell(annotationStatusSheet, rowIndex, startColumnIndex);
-			RangeUtils.formatCells(field1, "@");
-			RangeUtils.setValue(field1, worksheetAnnotation.getSheetName());
-			
-			OleAutomation field2 = WorksheetUtils.getCell(annotationStatusSheet, rowIndex, startColumnIndex+1);
-			RangeUtils.setValue(field2, String.valueOf(worksheetAnnotation.isCompleted()));
-			
-			OleAutomation field3 = WorksheetUtils.getCell(annotationStatusSheet, rowIndex, startColumnIndex+2);
-			RangeUtils.setValue(field3, String.valueOf(worksheetAnnotation.isNotApplicable()));
-			
-			rowIndex++;
+		if(!AnnotationHandler.getProtectionScope().enter(annotationStatusSheet, name)){
+			logger.error("Could not unprotect the sheet \""+name+"\". The statuses are not saved.");
+			return;
 		}
 		
-		WorksheetUtils.protectWorksheet(annotationStatusSheet);
+		try {
+			int rowIndex = row;
+			for (WorksheetAnnotation worksheetAnnotation : worksheetAnnotations) {
+				
+				OleAutomation field1 = WorksheetUtils.getCell(annotationStatusSheet, rowIndex, startColumnIndex);
+				RangeUtils.formatCells(field1, "@");
+				RangeUtils.setValue(field1, worksheetAnnotation.getSheetName());
+				
+				OleAutomation field2 = WorksheetUtils.getCell(annotationStatusSheet, rowIndex, startColumnIndex+1);
+				RangeUtils.setValue(field2, String.valueOf(worksheetAnnotation.isCompleted()));
+				
+				OleAutomation field3 = WorksheetUtils.getCell(annotationStatusSheet, rowIndex, startColumnIndex+2);
+				RangeUtils.setValue(field3, String.valueOf(worksheetAnnotation.isNotApplicable()));
+				
+				rowIndex++;
+			}
+		} finally {
+			AnnotationHandler.getProtectionScope().exit(annotationStatusSheet, name);
+		}
 	}
 	
 	/**
@@ -199,56 +229,43 @@ public class AnnotationStatusSheet {
 	 */
 	private static void writeStatuses(OleAutomation annotationStatusSheet){
 		
-		WorksheetUtils.unprotectWorksheet(annotationStatusSheet);
+		ProtectionScope protection = AnnotationHandler.getProtectionScope();
+		if(!protection.enter(annotationStatusSheet, name)){
+			logger.error("Could not unprotect the sheet \""+name+"\". The statuses are not written.");
+			return;
+		}
 		
-		// write the annotation status (data) of the workbook annotation
-		WorkbookAnnotation workbookAnnotation = AnnotationHandler.getWorkbookAnnotation();
-
-		OleAutomation bookName = WorksheetUtils.getCell(annotationStatusSheet, startRow+1, startColumnIndex);
-		RangeUtils.formatCells(bookName, "@");
-		RangeUtils.setValue(bookName, "Workbook");
-		bookName.dispose();
-		
-		OleAutomation isBookCompleted = WorksheetUtils.getCell(annotationStatusSheet, startRow+1, startColumnIndex+1);
-		RangeUtils.setValue(isBookCompleted, String.valueOf(workbookAnnotation.isCompleted()));
-		isBookCompleted.dispose();
-		
-		OleAutomation isBookNotApplicable = WorksheetUtils.getCell(annotationStatusSheet, startRow+1, startColumnIndex+2);
-		RangeUtils.setValue(isBookNotApplicable, String.valueOf(workbookAnnotation.isNotApplicable()));
-		isBookNotApplicable.dispose();
-				
-		// write the annotation status (data) of each worksheet annotation
-		Collection<WorksheetAnnotation> collection = workbookAnnotation.getWorksheetAnnotations().values(); 
-		WorksheetAnnotation[] worksheetAnnotations = collection.toArray(new WorksheetAnnotation[collection.size()]);
+		try {
+			// the first row holds the annotation status (data) of the workbook annotation,
+			// and the following rows hold the annotation status (data) of each worksheet annotation
+			WorkbookAnnotation workbookAnnotation = AnnotationHandler.getWorkbookAnnotation();
+			Collection<WorksheetAnnotation> worksheetAnnotations = workbookAnnotation.getWorksheetAnnotations().values(); 
 		
-		int rowIndex = startRow+2;
-		for (WorksheetAnnotation worksheetAnnotation : worksheetAnnotations) {
-			
-			OleAutomation sheetName = WorksheetUtils.getCell(annotationStatusSheet, rowIndex, startColumnIndex);
-			RangeUtils.formatCells(sheetName, "@");
-			RangeUtils.setValue(sheetName, worksheetAnnotation.getSheetName());
-			
-			OleAutomation isSheetCompleted = WorksheetUtils.getCell(annotationStatusSheet, rowIndex, startColumnIndex+1);
-			RangeUtils.setValue(isSheetCompleted, String.valueOf(worksheetAnnotation.isCompleted()));
-			
-			OleAutomation isSheetNotApplicable = WorksheetUtils.getCell(annotationStatusSheet, rowIndex, startColumnIndex+2);
-			RangeUtils.setValue(isSheetNotApplicable, String.valueOf(worksheetAnnotation.isNotApplicable()));
-			
-			rowIndex++;
-		}
+			Object[][] values = new Object[worksheetAnnotations.size()+1][];
+			values[0] = new Object[]{"Workbook", workbookAnnotation.isCompleted(), workbookAnnotation.isNotApplicable()};
+		
+			int rowIndex = 1;
+			for (WorksheetAnnotation worksheetAnnotation : worksheetAnnotations) {
+				values[rowIndex] = new Object[]{worksheetAnnotation.getSheetName(), 
+									worksheetAnnotation.isCompleted(), worksheetAnnotation.isNotApplicable()};
+				rowIndex++;
+			}
 		
-		WorksheetUtils.protectWorksheet(annotationStatusSheet);
+			// the names are stored as text. the statuses are stored as (excel) booleans
+			WorksheetUtils.writeValues(annotationStatusSheet, startRow+1, startColumnIndex, values, new String[]{"@", null, null});
+		} finally {
+			protection.exit(annotationStatusSheet, name);
+		}
 	}
 	
 	/**
 	 * Validate the "Annotation_Status" sheet to ensure that the data are in the expected format. 
-	 * @param annotationStatusSheet an OleAutomation that provides access to the sheet that maintains the annotation status data
+	 * @param values a 2D array of string values that were read from the used range of the sheet, indexed by [row][column]
 	 * @return true if the status data are in the expected format, false otherwise
 	 */
-	private static boolean validateAnnotationStatusSheet(OleAutomation annotationStatusSheet){
+	private static boolean validateAnnotationStatusSheet(String[][] values){
 		
-		OleAutomation usedRange = WorksheetUtils.getUsedRange(annotationStatusSheet);
-		if(usedRange==null){
+		if(values==null || values.length==0){
 			int style = SWT.ICON_WARNING;
 			MessageBox message = Launcher.getInstance().createMessageBox(style);
 			message.setMessage("Could not recover the annotation status from the previous session. "
@@ -258,12 +275,9 @@ public class AnnotationStatusSheet {
 		}
 		
 		
-		OleAutomation rangeColumns = RangeUtils.getRangeColumns(usedRange);
-		int countColumns = CollectionsUtils.countItemsInCollection(rangeColumns);
-		rangeColumns.dispose();
+		int countColumns = values[0].length;
 		
 		if(countColumns!=3){
-			usedRange.dispose();
 						
 			int style = SWT.ICON_WARNING;
 			MessageBox message = Launcher.getInstance().createMessageBox(style);
@@ -274,16 +288,11 @@ public class AnnotationStatusSheet {
 			return false;
 		}
 				
-		OleAutomation rangeRows = RangeUtils.getRangeRows(usedRange);
-		OleAutomation headerRow = CollectionsUtils.getItemByIndex(rangeRows, 1, false);
-		rangeRows.dispose();
-		usedRange.dispose();
-		
-		String values[] = RangeUtils.getRangeValues(headerRow);
+		String headerRow[] = values[0];
 		
-		if(!(values[0].compareToIgnoreCase("Name")==0 &&
-			values[1].compareToIgnoreCase("Completed")==0 &&
-			values[2].compareToIgnoreCase("NotApplicable")==0)){
+		if(!(headerRow[0].compareToIgnoreCase("Name")==0 &&
+			headerRow[1].compareToIgnoreCase("Completed")==0 &&
+			headerRow[2].compareToIgnoreCase("NotApplicable")==0)){
 			
 			int style = SWT.ICON_WARNING;
 			MessageBox message = Launcher.getInstance().createMessageBox(style);
@@ -299,20 +308,15 @@ public class AnnotationStatusSheet {
 	
 	/**
 	 * Read the workbook annotation status data
-	 * @param annotationStatusSheet an OleAutomation that provides access to the sheet that maintains the annotation status data
+	 * @param statusData a 2D array of string values that were read from the used range of the sheet, indexed by [row][column]
 	 * @return true if the status data were successfully read, false otherwise
 	 */
-	private static boolean readWorkbookAnnotationStatus(OleAutomation annotationStatusSheet){
+	private static boolean readWorkbookAnnotationStatus(String[][] statusData){
 		
 		WorkbookAnnotation wa = AnnotationHandler.getWorkbookAnnotation();
-		String startCell = "$"+startColumnChar+"$"+(startRow+1);
-		OleAutomation endCellAuto = WorksheetUtils.getCell(annotationStatusSheet, (startRow+1), startColumnIndex+2);
-		String endCell = RangeUtils.getRangeAddress(endCellAuto);
-		endCellAuto.dispose();
 		
-		OleAutomation workbookStatusRow = WorksheetUtils.getRangeAutomation(annotationStatusSheet, startCell, endCell);
-		String[] values= RangeUtils.getRangeValues(workbookStatusRow);
-		workbookStatusRow.dispose();
+		// the workbook status is in the first row after the header
+		String[] values = statusData.length > 1 ? statusData[1] : new String[0];
 		
 		if(!validateRowData(values)){
 			return false;
@@ -328,37 +332,25 @@ public class AnnotationStatusSheet {
 
 	/**
 	 * Read the status data for the worksheet annotations
-	 * @param annotationStatusSheet an OleAutomation that provides access to the sheet that maintains the annotation status data
+	 * @param statusData a 2D array of string values that were read from the used range of the sheet, indexed by [row][column]
 	 * @return true if the status data were successfully read, false otherwise
 	 */
-	private static boolean readWorksheetAnnotationsStatuses(OleAutomation annotationStatusSheet){
+	private static boolean readWorksheetAnnotationsStatuses(String[][] statusData){
 		
-		OleAutomation usedRange = WorksheetUtils.getUsedRange(annotationStatusSheet);		
-		OleAutomation rangeRows = RangeUtils.getRangeRows(usedRange);
-		int countRows = CollectionsUtils.countItemsInCollection(rangeRows);		
-		usedRange.dispose();
-		
-		OleAutomation topRightCellAuto = WorksheetUtils.getCell(annotationStatusSheet, (startRow), startColumnIndex+2);
-		String topRightCell= RangeUtils.getRangeAddress(topRightCellAuto);
-		topRightCellAuto.dispose();
-		String endColumnChar = topRightCell.replaceAll("[0-9\\$]+",""); 
-		
-		int rowIndex = startRow+2;
+		// the worksheet statuses follow the header and the workbook status rows
+		int rowIndex = 2;
 
 		WorkbookAnnotation wa = AnnotationHandler.getWorkbookAnnotation();
-		while(rowIndex<=countRows) {
+		while(rowIndex<statusData.length) {
 			
-			String startCell = "$"+startColumnChar+"$"+rowIndex;
-			String endCell = "$"+endColumnChar+"$"+rowIndex;
-			OleAutomation sheetStatusRow = WorksheetUtils.getRangeAutomation(annotationStatusSheet, startCell, endCell);
-			String[] values= RangeUtils.getRangeValues(sheetStatusRow);
+			String[] values= statusData[rowIndex];
 
 			if(!validateRowData(values)){
 				return false;
 			}
 			
 			String sheetName = values[0];
-			WorksheetAnnotation sheetAnnotation = wa.getWorksheetAnnotations().get(sheetName);
+			WorksheetAnnotation sheetAnnotation = wa.getWorksheetAnnotation(sheetName);
 			if(sheetAnnotation!=null){
 				boolean isCompleted = Integer.valueOf(values[1])==-1;
 				sheetAnnotation.setCompleted(isCompleted);
@@ -442,7 +434,7 @@ public class AnnotationStatusSheet {
 		if(annotationStatusSheet==null)
 			return false; 
 		
-		boolean result = WorksheetUtils.protectWorksheet(annotationStatusSheet);
+		boolean result = AnnotationHandler.getProtectionScope().protect(annotationStatusSheet, name);
 		annotationStatusSheet.dispose();
 		return result;
 	}
@@ -459,7 +451,7 @@ public class AnnotationStatusSheet {
 		if(annotationStatusSheet==null)
 			return false; 
 		
-		boolean result = WorksheetUtils.unprotectWorksheet(annotationStatusSheet);
+		boolean result = AnnotationHandler.getProtectionScope().unprotect(annotationStatusSheet, name);
 		annotationStatusSheet.dispose();
 		return result;
 	}
@@ -473,6 +465,10 @@ public class AnnotationStatusSheet {
 		
 		boolean result = WorksheetUtils.deleteWorksheet(annotationStatusSheet);
 		annotationStatusSheet.dispose();
+		if(result){
+			AnnotationHandler.getProtectionScope().forget(name);
+			AnnotationHandler.getHandlePool().invalidate(name);
+		}
 		return result;	
 	}
 	
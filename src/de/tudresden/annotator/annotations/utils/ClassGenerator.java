@@ -16,11 +16,18 @@ public class ClassGenerator {
 	
 	private static final LinkedHashMap<String, AnnotationClass> annotationClasses;
 	
+	/*
+	 * The annotation classes indexed by their ordinal
+	 */
+	private static final AnnotationClass[] classesByOrdinal;
+	
 	static{
 		annotationClasses = new LinkedHashMap<String, AnnotationClass>();
 		AnnotationClass[] classes = createAnnotationClasses();
-		for (AnnotationClass annotationClass : classes) {
-			annotationClasses.put(annotationClass.getLabel(), annotationClass);
+		classesByOrdinal = classes;
+		for (int i = 0; i < classes.length; i++) {
+			classes[i].setOrdinal(i);
+			annotationClasses.put(classes[i].getLabel(), classes[i]);
 		}
 	}
 		
@@ -119,4 +126,24 @@ public class ClassGenerator {
 		return annotationClasses;
 	}
 	
+	
+	/**
+	 * Get the annotation class that has the given ordinal
+	 * @param ordinal the ordinal of the annotation class
+	 * @return the AnnotationClass object, or null if the ordinal is out of range
+	 */
+	public static AnnotationClass getAnnotationClassByOrdinal(int ordinal) {
+		if(ordinal<0 || ordinal>=classesByOrdinal.length)
+			return null;
+		return classesByOrdinal[ordinal];
+	}
+	
+	
+	/**
+	 * @return the number of annotation classes
+	 */
+	public static int getAnnotationClassCount() {
+		return classesByOrdinal.length;
+	}
+	
 }
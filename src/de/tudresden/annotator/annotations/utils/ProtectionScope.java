@@ -0,0 +1,291 @@
+/**
+ * 
+ */
+package de.tudresden.annotator.annotations.utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.swt.ole.win32.OleAutomation;
+
+import de.tudresden.annotator.oleutils.CollectionEnumerator;
+import de.tudresden.annotator.oleutils.CollectionsUtils;
+import de.tudresden.annotator.oleutils.WorkbookUtils;
+import de.tudresden.annotator.oleutils.WorksheetUtils;
+
+/**
+ * Manages the protection of the worksheets of a workbook. The code that has to modify a worksheet enters a (protection) scope
+ * for it, and exits the scope when done. The scopes can be nested: the worksheet is unprotected only when the first scope is entered,
+ * and protected again only when the last (outermost) scope exits.
+ * The current protection state of each worksheet is tracked, thus redundant calls to Protect and Unprotect are skipped.
+ *
+ * @author Elvis Koci
+ */
+public class ProtectionScope {
+
+	private static final Logger logger = LogManager.getLogger(ProtectionScope.class.getName());
+
+	/*
+	 * The number of scopes that are currently open (entered) for each worksheet, keyed by the worksheet name
+	 */
+	private final HashMap<String, Integer> depths = new HashMap<String, Integer>();
+
+	/*
+	 * The known protection state of each worksheet, keyed by the worksheet name.
+	 * Worksheets that are not in the map have an unknown state.
+	 */
+	private final HashMap<String, Boolean> protectionStates = new HashMap<String, Boolean>();
+
+
+	/**
+	 * Enter a protection scope for the given worksheet. The worksheet is unprotected, if this is the first (outermost) scope.
+	 * Every successful call has to be matched by a call to exit(OleAutomation).
+	 * @param worksheetAutomation an OleAutomation for accessing the Worksheet OLE object
+	 * @return true if the worksheet is unprotected, false otherwise. On failure the scope is not entered.
+	 */
+	public boolean enter(OleAutomation worksheetAutomation){
+		return enter(worksheetAutomation, WorksheetUtils.getWorksheetName(worksheetAutomation));
+	}
+
+
+	/**
+	 * Enter a protection scope for the given worksheet
+	 * @param worksheetAutomation an OleAutomation for accessing the Worksheet OLE object
+	 * @param sheetName the name of the worksheet
+	 * @return true if the worksheet is unprotected, false otherwise. On failure the scope is not entered.
+	 * @see #enter(OleAutomation)
+	 */
+	public boolean enter(OleAutomation worksheetAutomation, String sheetName){
+
+		int depth = getDepth(sheetName);
+		if(depth==0 && !unprotect(worksheetAutomation, sheetName))
+			return false;
+
+		depths.put(sheetName, depth+1);
+		return true;
+	}
+
+
+	/**
+	 * Exit a protection scope for the given worksheet. The worksheet is protected, if this was the last (outermost) scope.
+	 * @param worksheetAutomation an OleAutomation for accessing the Worksheet OLE object
+	 * @return true if the operation succeeded, false otherwise
+	 */
+	public boolean exit(OleAutomation worksheetAutomation){
+		return exit(worksheetAutomation, WorksheetUtils.getWorksheetName(worksheetAutomation));
+	}
+
+
+	/**
+	 * Exit a protection scope for the given worksheet.
+	 * @param worksheetAutomation an OleAutomation for accessing the Worksheet OLE object
+	 * @param sheetName the name of the worksheet
+	 * @return true if the operation succeeded, false otherwise
+	 * @see #exit(OleAutomation)
+	 */
+	public boolean exit(OleAutomation worksheetAutomation, String sheetName){
+
+		int depth = getDepth(sheetName);
+		if(depth>1){
+			depths.put(sheetName, depth-1);
+			return true;
+		}
+
+		if(depth==0)
+			logger.warn("Exiting a protection scope that was not entered for sheet \""+sheetName+"\"");
+
+		depths.remove(sheetName);
+		return protect(worksheetAutomation, sheetName);
+	}
+
+
+	/**
+	 * Enter a protection scope for each worksheet in the workbook
+	 * @param workbookAutomation an OleAutomation that provides access to the functionalities of the workbook
+	 * @return true if the scope was entered for all the worksheets, false otherwise.
+	 * On failure, the scopes that were already entered by this call are exited.
+	 */
+	public boolean enterAll(OleAutomation workbookAutomation){
+
+		OleAutomation worksheetsAutomation = WorkbookUtils.getWorksheetsAutomation(workbookAutomation);
+
+		// the worksheets are kept until the end, in case the scopes have to be exited
+		ArrayList<OleAutomation> entered = new ArrayList<OleAutomation>();
+		boolean isSuccess=true;
+		CollectionEnumerator worksheetEnumerator = CollectionsUtils.getItems(worksheetsAutomation, false);
+		try {
+			while(worksheetEnumerator.hasNext()) {
+				OleAutomation nextWorksheetAutomation = worksheetEnumerator.next();
+				if(isSuccess && enter(nextWorksheetAutomation)){
+					entered.add(nextWorksheetAutomation);
+				}else{
+					isSuccess = false;
+					nextWorksheetAutomation.dispose();
+				}
+			}
+		} finally {
+			worksheetEnumerator.close();
+		}
+
+		for (OleAutomation worksheetAutomation : entered) {
+			if(!isSuccess)
+				exit(worksheetAutomation);
+			worksheetAutomation.dispose();
+		}
+		worksheetsAutomation.dispose();
+		return isSuccess;
+	}
+
+
+	/**
+	 * Exit a protection scope for each worksheet in the workbook
+	 * @param workbookAutomation an OleAutomation that provides access to the functionalities of the workbook
+	 * @return true if the operation succeeded for all the worksheets, false otherwise
+	 */
+	public boolean exitAll(OleAutomation workbookAutomation){
+
+		OleAutomation worksheetsAutomation = WorkbookUtils.getWorksheetsAutomation(workbookAutomation);
+
+		boolean isSuccess=true;
+		CollectionEnumerator worksheetEnumerator = CollectionsUtils.getItems(worksheetsAutomation, false);
+		try {
+			while(worksheetEnumerator.hasNext()) {
+				OleAutomation nextWorksheetAutomation = worksheetEnumerator.next();
+				isSuccess &= exit(nextWorksheetAutomation);
+				nextWorksheetAutomation.dispose();
+			}
+		} finally {
+			worksheetEnumerator.close();
+		}
+
+		worksheetsAutomation.dispose();
+		return isSuccess;
+	}
+
+
+	/**
+	 * Protect the given worksheet, unless it is already protected.
+	 * This method does not consider the scopes, thus it should be used only for worksheets that are not in a scope.
+	 * @param worksheetAutomation an OleAutomation for accessing the Worksheet OLE object
+	 * @param sheetName the name of the worksheet
+	 * @return true if the worksheet is protected, false otherwise
+	 */
+	public boolean protect(OleAutomation worksheetAutomation, String sheetName){
+
+		if(Boolean.TRUE.equals(protectionStates.get(sheetName)))
+			return true;
+
+		boolean isProtected = WorksheetUtils.protectWorksheet(worksheetAutomation);
+		if(isProtected){
+			protectionStates.put(sheetName, true);
+		}else{
+			protectionStates.remove(sheetName);
+		}
+		return isProtected;
+	}
+
+
+	/**
+	 * Unprotect the given worksheet, unless it is already unprotected.
+	 * This method does not consider the scopes, thus it should be used only for worksheets that are not in a scope.
+	 * @param worksheetAutomation an OleAutomation for accessing the Worksheet OLE object
+	 * @param sheetName the name of the worksheet
+	 * @return true if the worksheet is unprotected, false otherwise
+	 */
+	public boolean unprotect(OleAutomation worksheetAutomation, String sheetName){
+
+		if(Boolean.FALSE.equals(protectionStates.get(sheetName)))
+			return true;
+
+		boolean isUnprotected = WorksheetUtils.unprotectWorksheet(worksheetAutomation);
+		if(isUnprotected){
+			protectionStates.put(sheetName, false);
+		}else{
+			protectionStates.remove(sheetName);
+		}
+		return isUnprotected;
+	}
+
+
+	/**
+	 * Protect all the worksheets in the workbook, unless they are already protected
+	 * @param workbookAutomation an OleAutomation that provides access to the functionalities of the workbook
+	 * @return true if all the worksheets are protected, false otherwise
+	 */
+	public boolean protectAll(OleAutomation workbookAutomation){
+		return setProtectionForAll(workbookAutomation, true);
+	}
+
+
+	/**
+	 * Unprotect all the worksheets in the workbook, unless they are already unprotected
+	 * @param workbookAutomation an OleAutomation that provides access to the functionalities of the workbook
+	 * @return true if all the worksheets are unprotected, false otherwise
+	 */
+	public boolean unprotectAll(OleAutomation workbookAutomation){
+		return setProtectionForAll(workbookAutomation, false);
+	}
+
+
+	/**
+	 * Protect or unprotect all the worksheets in the workbook
+	 * @param workbookAutomation an OleAutomation that provides access to the functionalities of the workbook
+	 * @param protect true to protect the worksheets, false to unprotect them
+	 * @return true if the operation succeeded for all the worksheets, false otherwise
+	 */
+	private boolean setProtectionForAll(OleAutomation workbookAutomation, boolean protect){
+
+		OleAutomation worksheetsAutomation = WorkbookUtils.getWorksheetsAutomation(workbookAutomation);
+
+		boolean isSuccess=true;
+		CollectionEnumerator worksheetEnumerator = CollectionsUtils.getItems(worksheetsAutomation, false);
+		try {
+			while(worksheetEnumerator.hasNext()) {
+				OleAutomation nextWorksheetAutomation = worksheetEnumerator.next();
+				String sheetName = WorksheetUtils.getWorksheetName(nextWorksheetAutomation);
+				if(protect){
+					isSuccess &= protect(nextWorksheetAutomation, sheetName);
+				}else{
+					isSuccess &= unprotect(nextWorksheetAutomation, sheetName);
+				}
+				nextWorksheetAutomation.dispose();
+			}
+		} finally {
+			worksheetEnumerator.close();
+		}
+
+		worksheetsAutomation.dispose();
+		return isSuccess;
+	}
+
+
+	/**
+	 * Discard the information for the given worksheet, e.g., after it was deleted or renamed
+	 * @param sheetName the name of the worksheet
+	 */
+	public void forget(String sheetName){
+		depths.remove(sheetName);
+		protectionStates.remove(sheetName);
+	}
+
+
+	/**
+	 * Discard the information for all the worksheets. Their protection state becomes unknown.
+	 */
+	public void clear(){
+		depths.clear();
+		protectionStates.clear();
+	}
+
+
+	/**
+	 * @param sheetName the name of the worksheet
+	 * @return the number of scopes that are currently open (entered) for the given worksheet
+	 */
+	public int getDepth(String sheetName){
+		Integer depth = depths.get(sheetName);
+		return depth==null ? 0 : depth;
+	}
+}
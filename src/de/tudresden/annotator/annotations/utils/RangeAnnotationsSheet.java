@@ -4,19 +4,29 @@
 package de.tudresden.annotator.annotations.utils;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.Map;
 
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.ole.win32.OleAutomation;
 import org.eclipse.swt.widgets.MessageBox;
 
 import de.tudresden.annotator.annotations.AnnotationClass;
+import de.tudresden.annotator.annotations.CellRange;
 import de.tudresden.annotator.annotations.RangeAnnotation;
+import de.tudresden.annotator.annotations.RangeAnnotationSnapshot;
 import de.tudresden.annotator.annotations.WorkbookAnnotation;
-import de.tudresden.annotator.annotations.WorksheetAnnotation;
 import de.tudresden.annotator.main.Launcher;
+import de.tudresden.annotator.oleutils.CollectionEnumerator;
 import de.tudresden.annotator.oleutils.CollectionsUtils;
+import de.tudresden.annotator.oleutils.OleHandleScope;
 import de.tudresden.annotator.oleutils.RangeUtils;
 import de.tudresden.annotator.oleutils.WorkbookUtils;
 import de.tudresden.annotator.oleutils.WorksheetUtils;
@@ -26,30 +36,32 @@ import de.tudresden.annotator.oleutils.WorksheetUtils;
  */
 public class RangeAnnotationsSheet {
 	
+	private static final Logger logger = LogManager.getLogger(RangeAnnotationsSheet.class.getName());
+	
 	protected static final String name = "Range_Annotations_Data";
-	private static String startColumn = "A";
-	private static int startRow = 1; 
 	
 	/**
 	 * This linked hash map stores the names of the fields used in the Annotation Data Sheet and their default order. 
+	 * The order that is found in the header row of an existing sheet is kept by the AnnotationSession.
 	 */
-	private static final LinkedHashMap<String, Integer> fields;
+	private static final Map<String, Integer> fields;
 	static
     {
-		fields = new LinkedHashMap<String,Integer>();
-		fields.put("Sheet.Name", 0); // required 
-		fields.put("Sheet.Index", 1); // required
-		fields.put("Annotation.Label", 2); // required
-		fields.put("Annotation.Name", 3); // required
-		fields.put("Annotation.Range", 4); // required
-		fields.put("Annotation.Parent", 5); // required
-		fields.put("TotalCells", 6); // optional
-		fields.put("EmptyCells", 7); // optional
-		fields.put("ConstantCells", 8); // optional
-		fields.put("FormulaCells", 9); // optional
-		fields.put("HasMergedCells", 10); // optional
-		fields.put("Rows", 11); // optional
-		fields.put("Columns", 12); // optional
+		LinkedHashMap<String, Integer> defaultFields = new LinkedHashMap<String,Integer>();
+		defaultFields.put("Sheet.Name", 0); // required 
+		defaultFields.put("Sheet.Index", 1); // required
+		defaultFields.put("Annotation.Label", 2); // required
+		defaultFields.put("Annotation.Name", 3); // required
+		defaultFields.put("Annotation.Range", 4); // required
+		defaultFields.put("Annotation.Parent", 5); // required
+		defaultFields.put("TotalCells", 6); // optional
+		defaultFields.put("EmptyCells", 7); // optional
+		defaultFields.put("ConstantCells", 8); // optional
+		defaultFields.put("FormulaCells", 9); // optional
+		defaultFields.put("HasMergedCells", 10); // optional
+		defaultFields.put("Rows", 11); // optional
+		defaultFields.put("Columns", 12); // optional
+		fields = Collections.unmodifiableMap(defaultFields);
     }
 	
 	
@@ -59,6 +71,20 @@ public class RangeAnnotationsSheet {
 	 * @param annotation a RangeAnnotation object that maintains (contains) the annotation data to be saved
 	 */
 	public static void saveRangeAnnotationData(OleAutomation workbookAutomation, RangeAnnotation annotation){
+		saveRangeAnnotationData(workbookAutomation, Collections.singletonList(annotation));
+	}
+	
+	
+	/**
+	 * Append the data of the given range annotations to the annotation data sheet. 
+	 * The sheet and its used range are looked up only once, and the annotations are written in consecutive rows.
+	 * @param workbookAutomation an OleAutomation to access the embedded workbook
+	 * @param annotations a collection of RangeAnnotation objects that maintain (contain) the annotation data to be saved
+	 */
+	public static void saveRangeAnnotationData(OleAutomation workbookAutomation, Collection<RangeAnnotation> annotations){
+		
+		if(annotations.isEmpty())
+			return;
 			
 		OleAutomation annotationDataSheet =  WorkbookUtils.getWorksheetAutomationByName(workbookAutomation, name);
 		
@@ -71,11 +97,26 @@ public class RangeAnnotationsSheet {
 		usedRange.dispose();
 				
 		String[] cells = usedAddress.split(":");		
-		int endRow = Integer.valueOf(cells[1].replaceAll("[^0-9]+",""));
+		int endRow = Integer.valueOf(cells[cells.length-1].replaceAll("[^0-9]+",""));
 		int row = endRow + 1;
-					
-		writeNewDataRow(annotationDataSheet, row, annotation);		
-		annotationDataSheet.dispose();
+		
+		ArrayList<RangeAnnotationSnapshot> snapshots = new ArrayList<RangeAnnotationSnapshot>(annotations.size());
+		for (RangeAnnotation annotation : annotations) {
+			snapshots.add(new RangeAnnotationSnapshot(annotation));
+		}
+		
+		ProtectionScope protection = AnnotationHandler.getProtectionScope();
+		if(!protection.enter(annotationDataSheet, name)){
+			logger.error("Could not unprotect the sheet \""+name+"\". The range annotations are not saved.");
+			annotationDataSheet.dispose();
+			return;
+		}
+		try {
+			writeDataRows(annotationDataSheet, row, snapshots);
+		} finally {
+			protection.exit(annotationDataSheet, name);
+			annotationDataSheet.dispose();
+		}
 	}
 	
 	
@@ -84,6 +125,10 @@ public class RangeAnnotationsSheet {
 	 * @param workbookAutomation an OleAutomation to access the embedded workbook
 	 */
 	public static void saveManyRangeAnnotations(OleAutomation workbookAutomation){
+		
+		AnnotationSession session = AnnotationHandler.getSession();
+		String startColumn = session.getDataStartColumn();
+		int startRow = session.getDataStartRow();
 			
 		OleAutomation rangeAnnotationsDataSheet =  WorkbookUtils.getWorksheetAutomationByName(workbookAutomation, name);
 		
@@ -91,36 +136,35 @@ public class RangeAnnotationsSheet {
 			rangeAnnotationsDataSheet = createRangeAnnotationsSheet(workbookAutomation);
 		}
 			
-		WorksheetUtils.unprotectWorksheet(rangeAnnotationsDataSheet);
-		
-		// delete all the existing data from the sheet. 
-		// by removing all existing data we ensure that the "new" data will have
-		// the right format. So, they are not effected by the existing data.
-		OleAutomation usedRange = WorksheetUtils.getUsedRange(rangeAnnotationsDataSheet);		
-		RangeUtils.deleteRange(usedRange);	
-		usedRange.dispose();
-		
-		// re-create the header	
-		OleAutomation rangeAuto = WorksheetUtils.getRangeAutomation(rangeAnnotationsDataSheet, startColumn+""+startRow, null);
-		int colNum = RangeUtils.getFirstColumnIndex(rangeAuto);
-		rangeAuto.dispose();
-		
-		Iterator<String> itr = fields.keySet().iterator();
-		int i = 0;	
-		while (itr.hasNext()) {
-			OleAutomation cell = WorksheetUtils.getCell(rangeAnnotationsDataSheet, startRow, colNum+i);
-			RangeUtils.setValue(cell, itr.next());
-			i++;
+		ProtectionScope protection = session.getProtectionScope();
+		if(!protection.enter(rangeAnnotationsDataSheet, name)){
+			logger.error("Could not unprotect the sheet \""+name+"\". The range annotations are not saved.");
+			rangeAnnotationsDataSheet.dispose();
+			return;
 		}
 		
-		// write the data for each range annotation
-		WorksheetUtils.protectWorksheet(rangeAnnotationsDataSheet);	
-		int j=startRow+1;
-		for(RangeAnnotation ra: AnnotationHandler.getWorkbookAnnotation().getAllAnnotations()){
-			AnnotationHandler.calculateStatistics(ra,workbookAutomation);
-			writeNewDataRow(rangeAnnotationsDataSheet, j++, ra);				
+		try {
+			// delete all the existing data from the sheet. 
+			// by removing all existing data we ensure that the "new" data will have
+			// the right format. So, they are not effected by the existing data.
+			OleAutomation usedRange = WorksheetUtils.getUsedRange(rangeAnnotationsDataSheet);		
+			RangeUtils.deleteRange(usedRange);	
+			usedRange.dispose();
+			
+			// re-create the header	
+			writeHeaderRow(rangeAnnotationsDataSheet, startColumn, startRow);
+			
+			// update the outdated statistics, and then write the data for all range annotations from a snapshot
+			WorkbookAnnotation workbookAnnotation = session.getWorkbookAnnotation();
+			for(RangeAnnotation ra: workbookAnnotation.getAllAnnotations()){
+				AnnotationHandler.updateStatistics(ra,workbookAutomation);
+			}
+			
+			writeDataRows(rangeAnnotationsDataSheet, startRow+1, workbookAnnotation.getSnapshot().getAllRangeAnnotations());
+		} finally {
+			protection.exit(rangeAnnotationsDataSheet, name);	
+			rangeAnnotationsDataSheet.dispose();
 		}
-		rangeAnnotationsDataSheet.dispose();
 	}
 	
 	/**
@@ -134,18 +178,12 @@ public class RangeAnnotationsSheet {
 		
 		OleAutomation newWorksheet = WorkbookUtils.addWorksheetAsLast(workbookAutomation);
 		WorksheetUtils.setWorksheetName(newWorksheet, name);
-				
-		OleAutomation rangeAuto = WorksheetUtils.getRangeAutomation(newWorksheet, startColumn+""+startRow, null);
-		int colNum = RangeUtils.getFirstColumnIndex(rangeAuto);
-		rangeAuto.dispose();
+		// a new sheet is not protected. discard the state (and the handles) that might be known for an older sheet with the same name
+		AnnotationHandler.getProtectionScope().forget(name);
+		AnnotationHandler.getHandlePool().invalidate(name);
 		
-		Iterator<String> itr = fields.keySet().iterator();
-		int i = 0;	
-		while (itr.hasNext()) {
-			OleAutomation cell = WorksheetUtils.getCell(newWorksheet, startRow, colNum+i);
-			RangeUtils.setValue(cell, itr.next());
-			i++;
-		}
+		AnnotationSession session = AnnotationHandler.getSession();
+		writeHeaderRow(newWorksheet, session.getDataStartColumn(), session.getDataStartRow());
 				
 		//WorksheetUtils.setWorksheetVisibility(newWorksheet, false);		
 		WorkbookUtils.protectWorkbook(workbookAutomation, true, false);
@@ -155,39 +193,60 @@ public class RangeAnnotationsSheet {
 	
 	
 	/**
-	 * Write new row of annotation data
+	 * Write the header row, i.e., the names of the fields
 	 * @param annotationDataSheet an OleAutomation that provides access to the sheet that maintains the annotation data
-	 * @param row an integer that represents the index of the row to write the data
-	 * @param annotation a RangeAutomation object that maintains (contains) the annotation data to write  
+	 * @param startColumn a string that represents the column of the first field 
+	 * @param startRow an integer that represents the index of the header row
 	 */
-	private static void writeNewDataRow(OleAutomation annotationDataSheet, int row, RangeAnnotation annotation){		
+	private static void writeHeaderRow(OleAutomation annotationDataSheet, String startColumn, int startRow){
 		
-		WorksheetUtils.unprotectWorksheet(annotationDataSheet);
+		Object[][] header = new Object[1][];
+		header[0] = fields.keySet().toArray();
+		WorksheetUtils.writeValues(annotationDataSheet, startRow, CellRange.getColumnIndex(startColumn), header, null);
+	}
+	
+	
+	/**
+	 * Write new rows of annotation data, one per range annotation. All the rows are written with a few calls (i.e., as a block).
+	 * The sheet is expected to be unprotected.  
+	 * @param annotationDataSheet an OleAutomation that provides access to the sheet that maintains the annotation data
+	 * @param row an integer that represents the index of the row to write the data of the first annotation
+	 * @param annotations a collection of RangeAnnotationSnapshot objects that maintain (contain) the annotation data to write  
+	 */
+	private static void writeDataRows(OleAutomation annotationDataSheet, int row, Collection<RangeAnnotationSnapshot> annotations){		
 		
-		OleAutomation topLeftCell = WorksheetUtils.getRangeAutomation(annotationDataSheet, startColumn+""+row, null);
-		int colNum = RangeUtils.getFirstColumnIndex(topLeftCell);
-		topLeftCell.dispose();
+		if(annotations.isEmpty())
+			return;
 		
-		Iterator<String> itr = fields.keySet().iterator();
-		int i = 0;	
-		while (itr.hasNext()) {
-			OleAutomation cell = WorksheetUtils.getCell(annotationDataSheet, row, colNum+i);
-			RangeUtils.formatCells(cell, "@");
-			RangeUtils.setValue(cell, getFieldValue(itr.next(), annotation));	
-			i++;
+		Object[][] values = new Object[annotations.size()][];
+		int r = 0;
+		for (RangeAnnotationSnapshot annotation : annotations) {
+			values[r] = new Object[fields.size()];
+			Iterator<String> itr = fields.keySet().iterator();
+			int i = 0;	
+			while (itr.hasNext()) {
+				values[r][i] = getFieldValue(itr.next(), annotation);
+				i++;
+			}
+			r++;
 		}
 		
-		WorksheetUtils.protectWorksheet(annotationDataSheet);	
+		// all the fields are stored as text
+		String[] formats = new String[fields.size()];
+		Arrays.fill(formats, "@");
+		
+		String startColumn = AnnotationHandler.getSession().getDataStartColumn();
+		WorksheetUtils.writeValues(annotationDataSheet, row, CellRange.getColumnIndex(startColumn), values, formats);
 	}
 	
 	
 	/**
 	 * Get the value for the field from the corresponding attribute/s of the RangeAnnotation object 
 	 * @param fieldName a string that represents the name of a field from the header row in the annotation data sheet 
-	 * @param annotation a RangeAutomation object that maintains (contains) the annotation data to be retrieved  
+	 * @param annotation a RangeAnnotationSnapshot object that maintains (contains) the annotation data to be retrieved  
 	 * @return a string that represents the value of the specified (given) field
 	 */
-	private static String getFieldValue(String fieldName, RangeAnnotation annotation){
+	private static String getFieldValue(String fieldName, RangeAnnotationSnapshot annotation){
 		
 		String value = null;		
 		switch (fieldName) {
@@ -198,8 +257,7 @@ public class RangeAnnotationsSheet {
 			case "AnnotationTool.Name"  : value = annotation.getAnnotationClass().getAnnotationTool().name(); break;
 			case "AnnotationTool.Code"  : value = String.valueOf(annotation.getAnnotationClass().getAnnotationTool().getCode()); break;
 			case "Annotation.Range"  : value = annotation.getRangeAddress(); break;
-			case "Annotation.Parent" : value = annotation.getParent() instanceof  RangeAnnotation ? 
-											   ((RangeAnnotation) annotation.getParent()).getName() : annotation.getSheetName(); break;
+			case "Annotation.Parent" : value = annotation.getParentName(); break;
 			case "TotalCells" : value =  String.valueOf(annotation.getCells()); break;
 			case "EmptyCells" : value =  String.valueOf(annotation.getEmptyCells()); break;
 			case "ConstantCells" : value =  String.valueOf(annotation.getConstantCells()); break;
@@ -217,7 +275,7 @@ public class RangeAnnotationsSheet {
 	 * Read all annotation data from the "Annotation Data" Sheet 
 	 * @param workbookAutomation an OleAutomation that provides access to the embedded workbook
 	 * @return null if the range annotations data could not be read, otherwise an array of 
-	 * all recovered range annotations and their dependences 
+	 * all recovered range annotations, ordered such that containers come before the annotations they contain
 	 */
 	public static RangeAnnotation[] readRangeAnnotations(OleAutomation workbookAutomation){
 		
@@ -257,75 +315,71 @@ public class RangeAnnotationsSheet {
 			return null;
 		}
 		
-		// get the bounding rows and columns 
+		// get the address of the top left cell 
 		String usedRangeAddress = RangeUtils.getRangeAddress(usedRange);
-		usedRange.dispose();
 		
 		String boundingCells[] = usedRangeAddress.split(":"); 
 		String topLeftCell = boundingCells[0];
 		String topLeftColumn = topLeftCell.replaceAll("[0-9\\$]+","");
 		int topLeftRow = Integer.valueOf(topLeftCell.replaceAll("[^0-9]+",""));
-		String downRightCell = boundingCells[1];
-		String downRightColumn = downRightCell.replaceAll("[0-9\\$]+","");
-		int downRightRow = Integer.valueOf(downRightCell.replaceAll("[^0-9]+",""));
+		
+		// read the values of all the rows (the header and the data) at once
+		String[][] values = RangeUtils.getRangeValues2D(usedRange);
+		usedRange.dispose();
 		
 		// ensure that the header row contains all the expected fields
 		// if all required fields are present, save their order
-		if(!validateHeaderRow(annotationDataSheet, topLeftRow, topLeftColumn, downRightColumn))
+		if(!validateHeaderRow(values[0], topLeftRow, topLeftColumn))
 			return null;
 		
-		// read all the data rows and re-create the range annotations and their dependencies
-		LinkedHashMap<String, RangeAnnotation> rangeAnnotations = new LinkedHashMap<String, RangeAnnotation>();	
-		WorkbookAnnotation wa = AnnotationHandler.getWorkbookAnnotation();
-		for (int i = (topLeftRow + 1); i <=downRightRow; i++) {
+		// re-create the range annotations from the data rows
+		ArrayList<RangeAnnotation> rangeAnnotations = new ArrayList<RangeAnnotation>();	
+		WorkbookAnnotation wa = AnnotationHandler.getSession().getWorkbookAnnotation();
+		for (int i = 1; i < values.length; i++) {
 			
-			String[] rangeAnnotationData = readDataRow(annotationDataSheet, i, topLeftColumn, downRightColumn);
+			String[] rangeAnnotationData = readDataRow(values[i]);
 			
-			//re-create the range annotation object
+			//re-create the range annotation object. if the row is malformed (e.g., the range address can not be parsed), 
+			// discard the range annotation
 			AnnotationClass annotationClass = ClassGenerator.getAnnotationClasses().get(rangeAnnotationData[2]);	
-			RangeAnnotation annotation = new RangeAnnotation(rangeAnnotationData[0], Integer.valueOf(rangeAnnotationData[1]), 
+			RangeAnnotation annotation;
+			try {
+				annotation = new RangeAnnotation(rangeAnnotationData[0], Integer.valueOf(rangeAnnotationData[1]), 
 									annotationClass, rangeAnnotationData[3], rangeAnnotationData[4]); 
-			
-			// set the parent annotation
-			boolean hasParent = false;
-			RangeAnnotation parentAnnotation = rangeAnnotations.get(rangeAnnotationData[5]);
-			if(parentAnnotation != null){
-				annotation.setParent(parentAnnotation);
-				hasParent = true;
-			}else{
-				WorksheetAnnotation sa = wa.getWorksheetAnnotations().get(annotation.getSheetName());
-				if(sa!=null){
-					annotation.setParent(sa);
-					hasParent = true;
-				}
+			} catch (IllegalArgumentException ex) {
+				logger.error("Could not read the range annotation in row "+(topLeftRow+i)+" of the sheet \""+name+"\"", ex);
+				continue;
 			}
 			
-			// if parent not found, discard the range annotation
-			if(hasParent){
-				rangeAnnotations.put(annotation.getName(), annotation);
+			// if the worksheet annotation is not found, discard the range annotation
+			int sheetId = wa.getSheetId(annotation.getSheetName());
+			if(sheetId>=0){
+				annotation.setSheetId(sheetId);
+				
+				// the saved statistics are reused, until the contents of the worksheet change
+				if(readStatistics(annotation, rangeAnnotationData))
+					annotation.setStatisticsVersion(wa.getWorksheetAnnotation(sheetId).getContentVersion());
+				
+				rangeAnnotations.add(annotation);
 			}
 		}
+		
+		// order the annotations such that containers come before the annotations they contain. 
+		// this way, the containment tree is re-built in a single pass, as each annotation finds its parent already in place.
+		Collections.sort(rangeAnnotations, RangeAnnotation.CONTAINMENT_ORDER);
 			
-		return rangeAnnotations.values().toArray(new RangeAnnotation[rangeAnnotations.size()]);
+		return rangeAnnotations.toArray(new RangeAnnotation[rangeAnnotations.size()]);
 	}
 	
 	
 	/**
 	 * Validate header row. It should contain all the expected (predefined) fields  
-	 * @param annotationDataSheet an OleAutomation to access the functionalities of the sheet that stores the annotation data
+	 * @param values an array of string values that were read from the header row
 	 * @param topLeftRow an integer that represents the address of the top left row
 	 * @param topLeftColumn a string that represents the address of the column on the top left
-	 * @param downRightColumn a string that represents the address of the column on the down right
 	 * @return true if the header row passes all checks, false if validation fails. 
 	 */
-	protected static boolean validateHeaderRow(OleAutomation annotationDataSheet, int topLeftRow, String topLeftColumn, String downRightColumn){
-		
-		// get all the values from the range that represents the header
-		String topLeftCell = topLeftColumn+topLeftRow;
-		String downRightCell = downRightColumn+topLeftRow;		
-		OleAutomation rangeAutomation = WorksheetUtils.getRangeAutomation(annotationDataSheet, topLeftCell, downRightCell);
-		String values[] = RangeUtils.getRangeValues(rangeAutomation);
-		rangeAutomation.dispose();
+	protected static boolean validateHeaderRow(String values[], int topLeftRow, String topLeftColumn){
 		
 		// check if the number of fields in the sheet match with the pre-defined (expected) ones.  
 		if(values.length > fields.size()){
@@ -337,6 +391,10 @@ public class RangeAnnotationsSheet {
 		}
 
 		// check that the header row contains recognizable fields. update their order
+		AnnotationSession session = AnnotationHandler.getSession();
+		LinkedHashMap<String, Integer> fieldPositions = session.getFieldPositions();
+		HashSet<String> headerFields = session.getHeaderFields();
+		headerFields.clear();
 		for (int i = 0; i< values.length; i++) {
 			
 			String val = values[i];
@@ -356,12 +414,12 @@ public class RangeAnnotationsSheet {
 				return false;
 			}
 			
-			fields.put(val, i);
+			fieldPositions.put(val, i);
+			headerFields.add(val);
 		} 
 		
 		// update the start column and row (e.i., the address of the first cell) of the range that contains the annotation data
-		startColumn = topLeftColumn;
-		startRow = topLeftRow;
+		session.setDataStart(topLeftColumn, topLeftRow);
 				
 		return true;
 	}
@@ -369,35 +427,75 @@ public class RangeAnnotationsSheet {
 	
 	/**
 	 * Read a row of range annotation data.
-	 * @param annotationDataSheet an OleAutomation to access the functionalities of the worksheet that stores the annotation data
-	 * @param row an integer that represents the row to be read
-	 * @param startColumn a string that represents the column to start the reading
-	 * @param endColumn a string that represents the column to end the reading
+	 * @param values an array of string values that were read from the row, in the order of the fields in the header row
 	 * @return an array of string values that represent the range annotation data in the standard order.
 	 */
-	protected static String[] readDataRow(OleAutomation annotationDataSheet, int row, String startColumn, String endColumn){		
-		
-		// get the values of the cells in the given row, bounded by the start and the end column.   
-		String topLeftCell = startColumn+row;
-		String downRightCell = endColumn+row;		
-		OleAutomation rangeAutomation = WorksheetUtils.getRangeAutomation(annotationDataSheet, topLeftCell, downRightCell);
-		String values[] = RangeUtils.getRangeValues(rangeAutomation);
-		rangeAutomation.dispose();
+	protected static String[] readDataRow(String values[]){		
 	
 		// create an array of values in the standard order
+		AnnotationSession session = AnnotationHandler.getSession();
+		LinkedHashMap<String, Integer> fieldPositions = session.getFieldPositions();
+		HashSet<String> headerFields = session.getHeaderFields();
 		String [] rangeAnnotationData = new String[fields.size()];
 		
-		rangeAnnotationData[0] = values[fields.get("Sheet.Name")];
-		rangeAnnotationData[1] = values[fields.get("Sheet.Index")];
-		rangeAnnotationData[2] = values[fields.get("Annotation.Label")];
-		rangeAnnotationData[3] = values[fields.get("Annotation.Name")];
-		rangeAnnotationData[4] = values[fields.get("Annotation.Range")];
-		rangeAnnotationData[5] = values[fields.get("Annotation.Parent")];
+		rangeAnnotationData[0] = values[fieldPositions.get("Sheet.Name")];
+		rangeAnnotationData[1] = values[fieldPositions.get("Sheet.Index")];
+		rangeAnnotationData[2] = values[fieldPositions.get("Annotation.Label")];
+		rangeAnnotationData[3] = values[fieldPositions.get("Annotation.Name")];
+		rangeAnnotationData[4] = values[fieldPositions.get("Annotation.Range")];
+		rangeAnnotationData[5] = values[fieldPositions.get("Annotation.Parent")];
+		
+		// the statistics are optional. they are read only if the header row contains them
+		Iterator<String> itr = fields.keySet().iterator();
+		int i = 0;
+		while (itr.hasNext()) {
+			String field = itr.next();
+			if(i>5 && headerFields.contains(field))
+				rangeAnnotationData[i] = values[fieldPositions.get(field)];
+			i++;
+		}
 		
 		return rangeAnnotationData;
 	
 	}
 	
+	/**
+	 * Set the statistics of the range annotation from the values of a data row
+	 * @param annotation the range annotation to update
+	 * @param rangeAnnotationData an array of string values that represent the range annotation data in the standard order
+	 * @return true if all the statistics were found and read, false otherwise
+	 */
+	private static boolean readStatistics(RangeAnnotation annotation, String[] rangeAnnotationData){
+		
+		for (int i = 6; i < rangeAnnotationData.length; i++) {
+			if(rangeAnnotationData[i]==null || rangeAnnotationData[i].compareTo("")==0)
+				return false;
+		}
+		
+		try {
+			annotation.setCells(parseCount(rangeAnnotationData[6]));
+			annotation.setEmptyCells(parseCount(rangeAnnotationData[7]));
+			annotation.setConstantCells(parseCount(rangeAnnotationData[8]));
+			annotation.setFormulaCells(parseCount(rangeAnnotationData[9]));
+			annotation.setContainsMergedCells(Boolean.parseBoolean(rangeAnnotationData[10]));
+			annotation.setRows(parseCount(rangeAnnotationData[11]));
+			annotation.setColumns(parseCount(rangeAnnotationData[12]));
+		} catch (NumberFormatException e) {
+			return false;
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Parse a count from the annotation data sheet. Excel might return whole numbers as decimals (e.g., "12.0").
+	 * @param value a string that represents the count
+	 * @return the count as an integer
+	 */
+	private static int parseCount(String value){
+		return (int) Double.parseDouble(value);
+	}
+	
 	/**
 	 * Delete the annotation data for the sheet with the given name 
 	 * This method will clear all the rows in the annotation (meta-)data sheet 
@@ -433,75 +531,100 @@ public class RangeAnnotationsSheet {
 		OleAutomation annotationDataSheetBeforeFilter = WorkbookUtils.getWorksheetAutomationByName(workbookAutomation, name);
 		
 		// unprotect the annotation data sheet
-		WorksheetUtils.unprotectWorksheet(annotationDataSheetBeforeFilter);
-		
-		// determine the position of the field that represents the name of the annotation
-		OleAutomation topLeftCellAuto = WorksheetUtils.getRangeAutomation(annotationDataSheetBeforeFilter, startColumn+""+startRow, null);
-		int columnIndex = RangeUtils.getFirstColumnIndex(topLeftCellAuto);
-		topLeftCellAuto.dispose();
-		int fieldRelativePosition = fields.get(fieldToFilter);
-		int fieldIndex = columnIndex + fieldRelativePosition;
-		
-		// get the range that contains the annotation data together with the header row
-		OleAutomation usedRange = WorksheetUtils.getUsedRange(annotationDataSheetBeforeFilter);
-		annotationDataSheetBeforeFilter.dispose();	// TODO: It seems this line occasionally throws SWTError native exception: 0xc0000005
-		
-		// filter this range to get only those rows relevant to the specified sheet 
-		RangeUtils.filterRange(usedRange, fieldIndex, value); 
-				
-		// get the range OleAutomation for the filtered results. This range still includes the header row.  
-		OleAutomation filteredRange = RangeUtils.getSpecialCells(usedRange, 12); // xlCellTypeVisible = 12  (visible cells)
-		usedRange.dispose();
+		if(!AnnotationHandler.getProtectionScope().enter(annotationDataSheetBeforeFilter, name)){
+			logger.error("Could not unprotect the sheet \""+name+"\". The rows are not deleted.");
+			annotationDataSheetBeforeFilter.dispose();
+			return;
+		}
 		
-		// get all the areas in the filtered range 
-		OleAutomation areasAuto = RangeUtils.getAreas(filteredRange);
-		filteredRange.dispose();
-		int countAreas = CollectionsUtils.countItemsInCollection(areasAuto);
+		try {
+			// determine the position of the field that represents the name of the annotation
+			AnnotationSession session = AnnotationHandler.getSession();
+			String topLeftCell = session.getDataStartColumn()+""+session.getDataStartRow();
+			OleAutomation topLeftCellAuto = WorksheetUtils.getRangeAutomation(annotationDataSheetBeforeFilter, topLeftCell, null);
+			int columnIndex = RangeUtils.getFirstColumnIndex(topLeftCellAuto);
+			topLeftCellAuto.dispose();
+			int fieldRelativePosition = session.getFieldPositions().get(fieldToFilter);
+			int fieldIndex = columnIndex + fieldRelativePosition;
+		
+			// get the range that contains the annotation data together with the header row
+			OleAutomation usedRange = WorksheetUtils.getUsedRange(annotationDataSheetBeforeFilter);
+			annotationDataSheetBeforeFilter.dispose();	// TODO: It seems this line occasionally throws SWTError native exception: 0xc0000005
+		
+			// filter this range to get only those rows relevant to the specified sheet 
+			RangeUtils.filterRange(usedRange, fieldIndex, value); 
 				
-		// get all rows (indices) in the filtered range. exclude the header row 
-		ArrayList<Integer> filteredRows = new ArrayList<Integer>();
-		for (int j = 1; j <=countAreas; j++) {
-			OleAutomation area = CollectionsUtils.getItemByIndex(areasAuto, j, false);
-			OleAutomation rowsAuto = RangeUtils.getRangeRows(area);
-			int countRows = CollectionsUtils.countItemsInCollection(rowsAuto);
-			for (int i = 1; i <=countRows; i++) {				
-				if(!(j==1 && i==1)){ // j==1 && i==1 corresponds to the header row
-					OleAutomation row =  CollectionsUtils.getItemByIndex(rowsAuto, i, false);
-					int rowIndex = RangeUtils.getFirstRowIndex(row);
-					filteredRows.add(rowIndex);
+			// get the range OleAutomation for the filtered results. This range still includes the header row.  
+			OleAutomation filteredRange = RangeUtils.getSpecialCells(usedRange, 12); // xlCellTypeVisible = 12  (visible cells)
+			usedRange.dispose();
+		
+			// the areas, rows, and the sheet after filtering are disposed when this method exits
+			OleHandleScope scope = new OleHandleScope();
+			try {
+				// get all the areas in the filtered range 
+				OleAutomation areasAuto = scope.add(RangeUtils.getAreas(filteredRange));
+				filteredRange.dispose();
+					
+				// get all rows (indices) in the filtered range. exclude the header row 
+				ArrayList<Integer> filteredRows = new ArrayList<Integer>();
+				boolean isHeaderRow = true; // the first row of the first area is the header row
+				CollectionEnumerator areaEnumerator = CollectionsUtils.getItems(areasAuto, false);
+				try {
+					while(areaEnumerator.hasNext()) {
+						OleAutomation area = areaEnumerator.next();
+						scope.add(area);
+						OleAutomation rowsAuto = scope.add(RangeUtils.getRangeRows(area));
+						CollectionEnumerator rowEnumerator = CollectionsUtils.getItems(rowsAuto, false);
+						try {
+							while(rowEnumerator.hasNext()) {
+								OleAutomation row = rowEnumerator.next();
+								scope.add(row);
+								if(!isHeaderRow){
+									int rowIndex = RangeUtils.getFirstRowIndex(row);
+									filteredRows.add(rowIndex);
+								}
+								isHeaderRow = false;
+							}
+						} finally {
+							rowEnumerator.close();
+						}
+					}
+				} finally {
+					areaEnumerator.close();
 				}
-			}			
-		}
-		areasAuto.dispose();
-		
-		// OleAutomation after filtering the range 
-		OleAutomation annotationDataSheetAfterFilter = WorkbookUtils.getWorksheetAutomationByName(workbookAutomation, name);
-		
-		// remove filtered rows 
-		// if permanentDelete is set true the delete method is used, else hide the rows
-		WorksheetUtils.showAllWorksheetData(annotationDataSheetAfterFilter);
-		if(!permanentDelete){ 
-			for (int i = 0; i < filteredRows.size(); i++) {
-				int rowIndex = filteredRows.get(i);
-				OleAutomation rowAuto= WorksheetUtils.getRow(annotationDataSheetAfterFilter, rowIndex);	
-				RangeUtils.setRangeVisibility(rowAuto, false);
-			}
-		}else{
-			String multiSelectionRange = "";
-			for (int i = 0; i < filteredRows.size(); i++) {
-				int rowIndex = filteredRows.get(i);
-				String rowAddress = "$"+rowIndex+":$"+rowIndex;
-				multiSelectionRange = multiSelectionRange.concat(rowAddress+",");
+			
+				// OleAutomation after filtering the range 
+				OleAutomation annotationDataSheetAfterFilter = scope.add(WorkbookUtils.getWorksheetAutomationByName(workbookAutomation, name));
+			
+				// remove filtered rows 
+				// if permanentDelete is set true the delete method is used, else hide the rows
+				WorksheetUtils.showAllWorksheetData(annotationDataSheetAfterFilter);
+				if(!permanentDelete){ 
+					for (int i = 0; i < filteredRows.size(); i++) {
+						int rowIndex = filteredRows.get(i);
+						OleAutomation rowAuto = scope.add(WorksheetUtils.getRow(annotationDataSheetAfterFilter, rowIndex));	
+						RangeUtils.setRangeVisibility(rowAuto, false);
+					}
+				}else{
+					String multiSelectionRange = "";
+					for (int i = 0; i < filteredRows.size(); i++) {
+						int rowIndex = filteredRows.get(i);
+						String rowAddress = "$"+rowIndex+":$"+rowIndex;
+						multiSelectionRange = multiSelectionRange.concat(rowAddress+",");
+					}
+					multiSelectionRange = multiSelectionRange.substring(0, (multiSelectionRange.length()-1));
+	
+					OleAutomation filteredRowsAuto = scope.add(WorksheetUtils.getMultiSelectionRangeAutomation(annotationDataSheetAfterFilter, multiSelectionRange));
+					RangeUtils.deleteRange(filteredRowsAuto);
+				}
+			} finally {
+				scope.dispose();
 			}
-			multiSelectionRange = multiSelectionRange.substring(0, (multiSelectionRange.length()-1));
-
-			OleAutomation filteredRowsAuto = WorksheetUtils.getMultiSelectionRangeAutomation(annotationDataSheetAfterFilter, multiSelectionRange);
-			RangeUtils.deleteRange(filteredRowsAuto);
+		} finally {
+			// protect the worksheet from further user manipulation. the sheet handle from the pool is not disposed. 
+			OleAutomation annotationDataSheet = AnnotationHandler.getHandlePool().getWorksheet(workbookAutomation, name);
+			AnnotationHandler.getProtectionScope().exit(annotationDataSheet, name);
 		}
-		
-		// protect the worksheet from further user manipulation 
-		WorksheetUtils.protectWorksheet(annotationDataSheetAfterFilter);
-		annotationDataSheetAfterFilter.dispose();
 	}
 
 	/**
@@ -515,7 +638,7 @@ public class RangeAnnotationsSheet {
 		OleAutomation annotationDataSheetBeforeDelete = WorkbookUtils.getWorksheetAutomationByName(workbookAutomation, name);
 		
 		// unprotect the worksheet in order to perform the following actions
-		boolean isUnprotected= WorksheetUtils.unprotectWorksheet(annotationDataSheetBeforeDelete);
+		boolean isUnprotected= AnnotationHandler.getProtectionScope().enter(annotationDataSheetBeforeDelete, name);
 		if(!isUnprotected){
 			int style = SWT.ICON_ERROR;
 			MessageBox message = Launcher.getInstance().createMessageBox(style);
@@ -524,24 +647,28 @@ public class RangeAnnotationsSheet {
 			return;
 		}
 		
-		// find the last row that contains data
-		OleAutomation usedRange = WorksheetUtils.getUsedRange(annotationDataSheetBeforeDelete);
-		String address = RangeUtils.getRangeAddress(usedRange);
-		int position = address.indexOf(":");
-		String downRightCell = address.substring(position+1).replace("$", "");
-		usedRange.dispose();
-		
-		// delete all the rows except of the one header
-		OleAutomation rangeToDelete = WorksheetUtils.getRangeAutomation(annotationDataSheetBeforeDelete, startColumn+""+(startRow+1), downRightCell);
-		RangeUtils.deleteRange(rangeToDelete);
-		rangeToDelete.dispose();
-		
-		annotationDataSheetBeforeDelete.dispose();
-		
-		// protect the worksheet from further user manipulation 
-		OleAutomation annotationDataSheetAfterDelete = WorkbookUtils.getWorksheetAutomationByName(workbookAutomation, name);
-		WorksheetUtils.protectWorksheet(annotationDataSheetAfterDelete);
-		annotationDataSheetAfterDelete.dispose();		
+		try {
+			// find the last row that contains data
+			OleAutomation usedRange = WorksheetUtils.getUsedRange(annotationDataSheetBeforeDelete);
+			String address = RangeUtils.getRangeAddress(usedRange);
+			int position = address.indexOf(":");
+			String downRightCell = address.substring(position+1).replace("$", "");
+			usedRange.dispose();
+			
+			// delete all the rows except of the one header
+			AnnotationSession session = AnnotationHandler.getSession();
+			String firstDataCell = session.getDataStartColumn()+""+(session.getDataStartRow()+1);
+			OleAutomation rangeToDelete = WorksheetUtils.getRangeAutomation(annotationDataSheetBeforeDelete, firstDataCell, downRightCell);
+			RangeUtils.deleteRange(rangeToDelete);
+			rangeToDelete.dispose();
+		} finally {
+			annotationDataSheetBeforeDelete.dispose();
+			
+			// protect the worksheet from further user manipulation 
+			OleAutomation annotationDataSheetAfterDelete = WorkbookUtils.getWorksheetAutomationByName(workbookAutomation, name);
+			AnnotationHandler.getProtectionScope().exit(annotationDataSheetAfterDelete, name);
+			annotationDataSheetAfterDelete.dispose();		
+		}
 	}
 	
 	
@@ -581,16 +708,22 @@ public class RangeAnnotationsSheet {
 		rows.dispose();
 		
 		// unprotect worksheet in order allow export
-		WorksheetUtils.unprotectWorksheet(annotationDataSheet);
-		
-		// export annotation data
-		int index = fileName.lastIndexOf('.');		
-		String nameWithoutExtension = fileName.substring(0, index);
-		String annotationDataFile = directoryPath+"\\"+nameWithoutExtension+"_annotation_data";
-		boolean isSuccess = WorksheetUtils.saveAsCSV(annotationDataSheet, annotationDataFile);
+		if(!AnnotationHandler.getProtectionScope().enter(annotationDataSheet, name)){
+			logger.error("Could not unprotect the sheet \""+name+"\". The annotation data are not exported.");
+			return false;
+		}
 		
-		// protect worksheet from further user manipulation
-		WorksheetUtils.protectWorksheet(annotationDataSheet);
+		boolean isSuccess;
+		try {
+			// export annotation data
+			int index = fileName.lastIndexOf('.');		
+			String nameWithoutExtension = fileName.substring(0, index);
+			String annotationDataFile = directoryPath+"\\"+nameWithoutExtension+"_annotation_data";
+			isSuccess = WorksheetUtils.saveAsCSV(annotationDataSheet, annotationDataFile);
+		} finally {
+			// protect worksheet from further user manipulation
+			AnnotationHandler.getProtectionScope().exit(annotationDataSheet, name);
+		}
 		
 		return isSuccess;
 	}
@@ -627,7 +760,7 @@ public class RangeAnnotationsSheet {
 		if(rangeAnnotationsDataSheet==null)
 			return false; 
 		
-		boolean result = WorksheetUtils.protectWorksheet(rangeAnnotationsDataSheet);
+		boolean result = AnnotationHandler.getProtectionScope().protect(rangeAnnotationsDataSheet, name);
 		rangeAnnotationsDataSheet.dispose();
 		return result;
 	}
@@ -644,7 +777,7 @@ public class RangeAnnotationsSheet {
 		if(rangeAnnotationsDataSheet==null)
 			return false; 
 		
-		boolean result = WorksheetUtils.unprotectWorksheet(rangeAnnotationsDataSheet);
+		boolean result = AnnotationHandler.getProtectionScope().unprotect(rangeAnnotationsDataSheet, name);
 		rangeAnnotationsDataSheet.dispose();
 		return result;
 	}
@@ -659,6 +792,10 @@ public class RangeAnnotationsSheet {
 		
 		boolean result = WorksheetUtils.deleteWorksheet(rangeAnnotationsDataSheet);
 		rangeAnnotationsDataSheet.dispose();
+		if(result){
+			AnnotationHandler.getProtectionScope().forget(name);
+			AnnotationHandler.getHandlePool().invalidate(name);
+		}
 		return result;	
 	}
 	
@@ -672,25 +809,25 @@ public class RangeAnnotationsSheet {
 
 
 	/**
-	 * @return the startColumn
+	 * @return the startColumn of the annotation data sheet in the current session
 	 */
 	public static String getStartColumn() {
-		return startColumn;
+		return AnnotationHandler.getSession().getDataStartColumn();
 	}
 
 
 	/**
-	 * @return the startRow
+	 * @return the startRow of the annotation data sheet in the current session
 	 */
 	public static int getStartRow() {
-		return startRow;
+		return AnnotationHandler.getSession().getDataStartRow();
 	}
 
 
 	/**
-	 * @return the fields
+	 * @return an unmodifiable map of the fields and their default order
 	 */
-	public static LinkedHashMap<String, Integer> getFields() {
+	public static Map<String, Integer> getFields() {
 		return fields;
 	}
 	
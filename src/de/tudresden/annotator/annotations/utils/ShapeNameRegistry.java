@@ -0,0 +1,108 @@
+/**
+ * 
+ */
+package de.tudresden.annotator.annotations.utils;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+
+/**
+ * Keeps the names of the shapes that were created for the range annotations, grouped by worksheet.
+ * Thus, the annotation shapes of a worksheet can be accessed all at once (see ShapeUtils.getShapeRange),
+ * without going through all the shapes in the worksheet and comparing their names.
+ * The shapes that were in the original file, or that are not created by this tool, are not registered.
+ *
+ * @author Elvis Koci
+ */
+public class ShapeNameRegistry {
+
+	/*
+	 * The name of the shape of each range annotation, keyed by the annotation name, and grouped by the worksheet name
+	 */
+	private final HashMap<String, LinkedHashMap<String, String>> shapeNamesBySheet = new HashMap<String, LinkedHashMap<String, String>>();
+
+
+	/**
+	 * Register the shape that was created for the given annotation
+	 * @param sheetName the name of the worksheet that contains the shape
+	 * @param annotationName the name of the range annotation
+	 * @param shapeName the name of the shape
+	 */
+	public void register(String sheetName, String annotationName, String shapeName){
+
+		LinkedHashMap<String, String> shapeNames = shapeNamesBySheet.get(sheetName);
+		if(shapeNames==null){
+			shapeNames = new LinkedHashMap<String, String>();
+			shapeNamesBySheet.put(sheetName, shapeNames);
+		}
+		shapeNames.put(annotationName, shapeName);
+	}
+
+
+	/**
+	 * Remove the shape of the given annotation from the registry, e.g., after the shape was deleted
+	 * @param sheetName the name of the worksheet that contains the shape
+	 * @param annotationName the name of the range annotation
+	 */
+	public void unregister(String sheetName, String annotationName){
+
+		LinkedHashMap<String, String> shapeNames = shapeNamesBySheet.get(sheetName);
+		if(shapeNames==null)
+			return;
+
+		shapeNames.remove(annotationName);
+		if(shapeNames.isEmpty())
+			shapeNamesBySheet.remove(sheetName);
+	}
+
+
+	/**
+	 * @param sheetName the name of the worksheet that contains the shape
+	 * @param annotationName the name of the range annotation
+	 * @return the name of the shape of the given annotation, or null if it is not registered
+	 */
+	public String getShapeName(String sheetName, String annotationName){
+		LinkedHashMap<String, String> shapeNames = shapeNamesBySheet.get(sheetName);
+		return shapeNames==null ? null : shapeNames.get(annotationName);
+	}
+
+
+	/**
+	 * @param sheetName the name of the worksheet
+	 * @return the names of all the registered shapes in the given worksheet, in the order they were registered.
+	 * An empty array if there are none.
+	 */
+	public String[] getShapeNames(String sheetName){
+		LinkedHashMap<String, String> shapeNames = shapeNamesBySheet.get(sheetName);
+		return shapeNames==null ? new String[0] : shapeNames.values().toArray(new String[shapeNames.size()]);
+	}
+
+
+	/**
+	 * Remove all the shapes of the given worksheet from the registry, e.g., after they were deleted
+	 * @param sheetName the name of the worksheet
+	 */
+	public void forget(String sheetName){
+		shapeNamesBySheet.remove(sheetName);
+	}
+
+
+	/**
+	 * Remove all the shapes from the registry
+	 */
+	public void clear(){
+		shapeNamesBySheet.clear();
+	}
+
+
+	/**
+	 * @return the number of registered shapes
+	 */
+	public int size(){
+		int size = 0;
+		for (LinkedHashMap<String, String> shapeNames : shapeNamesBySheet.values()) {
+			size += shapeNames.size();
+		}
+		return size;
+	}
+}
@@ -0,0 +1,240 @@
+/**
+ * 
+ */
+package de.tudresden.annotator.annotations.utils;
+
+import java.util.HashMap;
+import java.util.Iterator;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.swt.ole.win32.OleAutomation;
+
+import de.tudresden.annotator.annotations.AnnotationClass;
+import de.tudresden.annotator.annotations.AnnotationTool;
+import de.tudresden.annotator.oleutils.CollectionsUtils;
+import de.tudresden.annotator.oleutils.ShapeUtils;
+
+/**
+ * Keeps one hidden, fully styled (template) shape per annotation class and worksheet. The shapes of new annotations
+ * are duplicates of the template, which only have to be positioned, named, and made visible. Thus, the style properties
+ * (fill, line, shadow, text) are set once per class and worksheet, instead of for every annotation.
+ * A template is recreated when the style of its annotation class has changed (see AnnotationClass.getStyleVersion()).
+ * The template shapes have to be deleted together with the annotation shapes of the worksheet (e.g., before the file is saved),
+ * see deleteTemplates(String). The OleAutomation objects of the templates are owned by the cache.
+ *
+ * @author Elvis Koci
+ */
+public class ShapeTemplateCache {
+
+	private static final Logger logger = LogManager.getLogger(ShapeTemplateCache.class.getName());
+
+	/*
+	 * The names of all the template shapes start with this string, followed by the start of the annotation names of the worksheet.
+	 * The names of the annotation shapes start with the name of the worksheet, thus the templates are not mistaken for annotations.
+	 */
+	private static final String TEMPLATE_NAME_PREFIX = "TEMPLATE_";
+
+	/*
+	 * The workbook the templates belong to
+	 */
+	private OleAutomation workbookAutomation;
+
+	/*
+	 * The templates, keyed by their shape name (i.e., by worksheet and annotation class)
+	 */
+	private final HashMap<String, Template> templates = new HashMap<String, Template>();
+
+
+	/**
+	 * Create a new shape for an annotation of the given class, by duplicating the template of the class.
+	 * The template is created if it does not exist yet, or if it is outdated.
+	 * The worksheet has to be unprotected.
+	 * @param workbookAutomation an OleAutomation that provides access to the functionalities of the workbook
+	 * @param sheetName the name of the worksheet where the shape is created
+	 * @param annotationClass the class of the annotation
+	 * @param left the position of the shape from the left edge of the worksheet, in points
+	 * @param top the position of the shape from the top edge of the worksheet, in points
+	 * @param width the width of the shape, in points
+	 * @param height the height of the shape, in points
+	 * @return an OleAutomation for accessing the new (visible) shape, or null if it could not be created. It has to be disposed by the caller.
+	 */
+	public OleAutomation createShape(OleAutomation workbookAutomation, String sheetName, AnnotationClass annotationClass,
+																	double left, double top, double width, double height){
+
+		OleAutomation templateAutomation = getTemplate(workbookAutomation, sheetName, annotationClass);
+		if(templateAutomation==null)
+			return null;
+
+		OleAutomation shapeAutomation = ShapeUtils.duplicateShape(templateAutomation);
+		if(shapeAutomation==null)
+			return null;
+
+		ShapeUtils.setShapeLeftPosition(shapeAutomation, left);
+		ShapeUtils.setShapeTopPosition(shapeAutomation, top);
+		ShapeUtils.setShapeWidth(shapeAutomation, width);
+		ShapeUtils.setShapeHeight(shapeAutomation, height);
+		// the duplicate inherits the visibility of the template
+		ShapeUtils.setShapeVisibility(shapeAutomation, true);
+		return shapeAutomation;
+	}
+
+
+	/**
+	 * Get the template shape of the given class, in the given worksheet. It is created if it does not exist, or if it is outdated.
+	 * @param workbookAutomation an OleAutomation that provides access to the functionalities of the workbook
+	 * @param sheetName the name of the worksheet
+	 * @param annotationClass the annotation class
+	 * @return an OleAutomation for accessing the template shape, or null if it could not be created.
+	 * It is owned by the cache, thus it must not be disposed.
+	 */
+	public OleAutomation getTemplate(OleAutomation workbookAutomation, String sheetName, AnnotationClass annotationClass){
+
+		if(this.workbookAutomation!=workbookAutomation){
+			dispose();
+			this.workbookAutomation = workbookAutomation;
+		}
+
+		String templateName = getTemplateName(sheetName, annotationClass.getLabel());
+		Template template = templates.get(templateName);
+		if(template!=null && template.styleVersion==annotationClass.getStyleVersion())
+			return template.shapeAutomation;
+
+		OleAutomation shapesAutomation = AnnotationHandler.getHandlePool().getShapes(workbookAutomation, sheetName);
+		if(shapesAutomation==null)
+			return null;
+
+		// delete the outdated template, or the one left from a previous session
+		OleAutomation oldTemplateAutomation;
+		if(template!=null){
+			templates.remove(templateName);
+			oldTemplateAutomation = template.shapeAutomation;
+		}else{
+			oldTemplateAutomation = CollectionsUtils.getItemByName(shapesAutomation, templateName, true);
+		}
+		if(oldTemplateAutomation!=null){
+			ShapeUtils.deleteShape(oldTemplateAutomation);
+			oldTemplateAutomation.dispose();
+		}
+
+		OleAutomation templateAutomation = null;
+		if(annotationClass.getAnnotationTool()==AnnotationTool.TEXTBOX){
+			templateAutomation = ShapeUtils.drawTextBox(shapesAutomation, 0, 0, 100, 50);
+		}else if(annotationClass.getAnnotationTool()==AnnotationTool.SHAPE){
+			templateAutomation = ShapeUtils.drawShape(shapesAutomation, annotationClass.getShapeType(), 0, 0, 100, 50);
+		}else{
+			logger.fatal("Option "+annotationClass.getAnnotationTool()+" not recognized.");
+		}
+
+		if(templateAutomation==null){
+			logger.error("Could not create the template shape \""+templateName+"\"");
+			return null;
+		}
+
+		AnnotationHandler.setAnnotationProperties(templateAutomation, annotationClass);
+		ShapeUtils.setShapeName(templateAutomation, templateName);
+		ShapeUtils.setShapeVisibility(templateAutomation, false);
+
+		templates.put(templateName, new Template(templateAutomation, sheetName, annotationClass.getStyleVersion()));
+		return templateAutomation;
+	}
+
+
+	/**
+	 * Delete the template shapes of the given worksheet, and dispose them. The worksheet has to be unprotected.
+	 * @param sheetName the name of the worksheet
+	 */
+	public void deleteTemplates(String sheetName){
+
+		Iterator<Template> iterator = templates.values().iterator();
+		while(iterator.hasNext()){
+			Template template = iterator.next();
+			if(template.sheetName.compareTo(sheetName)==0){
+				ShapeUtils.deleteShape(template.shapeAutomation);
+				template.shapeAutomation.dispose();
+				iterator.remove();
+			}
+		}
+	}
+
+
+	/**
+	 * @param sheetName the name of the worksheet
+	 * @return true if there are cached templates for the given worksheet, false otherwise
+	 */
+	public boolean hasTemplates(String sheetName){
+
+		for (Template template : templates.values()) {
+			if(template.sheetName.compareTo(sheetName)==0)
+				return true;
+		}
+		return false;
+	}
+
+
+	/**
+	 * Dispose the templates of the given worksheet, without deleting their shapes.
+	 * This method has to be called after the template shapes were deleted, or when the worksheet is deleted or renamed.
+	 * @param sheetName the name of the worksheet
+	 */
+	public void forget(String sheetName){
+
+		Iterator<Template> iterator = templates.values().iterator();
+		while(iterator.hasNext()){
+			Template template = iterator.next();
+			if(template.sheetName.compareTo(sheetName)==0){
+				template.shapeAutomation.dispose();
+				iterator.remove();
+			}
+		}
+	}
+
+
+	/**
+	 * Dispose all the templates, without deleting their shapes
+	 */
+	public void dispose(){
+
+		for (Template template : templates.values()) {
+			template.shapeAutomation.dispose();
+		}
+		templates.clear();
+		workbookAutomation = null;
+	}
+
+
+	/**
+	 * @return the number of cached templates
+	 */
+	public int size(){
+		return templates.size();
+	}
+
+
+	/**
+	 * Get the name of the template shape for the given worksheet and annotation class
+	 * @param sheetName the name of the worksheet
+	 * @param classLabel the label of the annotation class
+	 * @return the name of the template shape
+	 */
+	public static String getTemplateName(String sheetName, String classLabel){
+		return (TEMPLATE_NAME_PREFIX+AnnotationHandler.getStartOfRangeAnnotationName(sheetName)+"_"+classLabel).toUpperCase();
+	}
+
+
+	/**
+	 * A template shape, the worksheet that contains it, and the version of the class style it was created with
+	 */
+	private static final class Template {
+
+		private final OleAutomation shapeAutomation;
+		private final String sheetName;
+		private final int styleVersion;
+
+		private Template(OleAutomation shapeAutomation, String sheetName, int styleVersion){
+			this.shapeAutomation = shapeAutomation;
+			this.sheetName = sheetName;
+			this.styleVersion = styleVersion;
+		}
+	}
+}
@@ -0,0 +1,167 @@
+/**
+ * 
+ */
+package de.tudresden.annotator.annotations.utils;
+
+import java.util.HashMap;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.swt.ole.win32.OleAutomation;
+
+import de.tudresden.annotator.oleutils.WorkbookUtils;
+import de.tudresden.annotator.oleutils.WorksheetUtils;
+
+/**
+ * Keeps the OleAutomation objects of the Worksheets, their Shapes collections, and the Application,
+ * for the workbook that is annotated in a session. Thus, they are retrieved only once, instead of for every annotation.
+ * The pooled OleAutomation objects are owned by the pool: they must not be disposed by the code that uses them.
+ * The entries of a worksheet have to be invalidated when the worksheet is added, deleted, or renamed.
+ * All the entries are disposed when the workbook is closed (i.e., when the session gets another workbook).
+ *
+ * @author Elvis Koci
+ */
+public class WorksheetHandlePool {
+
+	private static final Logger logger = LogManager.getLogger(WorksheetHandlePool.class.getName());
+
+	/*
+	 * The workbook the pooled objects belong to
+	 */
+	private OleAutomation workbookAutomation;
+
+	/*
+	 * The Worksheet and Shapes automations, keyed by the worksheet name
+	 */
+	private final HashMap<String, OleAutomation> worksheets = new HashMap<String, OleAutomation>();
+	private final HashMap<String, OleAutomation> shapes = new HashMap<String, OleAutomation>();
+
+	/*
+	 * The automation of the Application (excel) that hosts the workbook
+	 */
+	private OleAutomation application;
+
+
+	/**
+	 * Get the worksheet that has the given name
+	 * @param workbookAutomation an OleAutomation that provides access to the functionalities of the workbook
+	 * @param sheetName the name of the worksheet
+	 * @return an OleAutomation for accessing the Worksheet OLE object, or null if the worksheet was not found.
+	 * It is owned by the pool, thus it must not be disposed.
+	 */
+	public OleAutomation getWorksheet(OleAutomation workbookAutomation, String sheetName){
+
+		bind(workbookAutomation);
+
+		OleAutomation worksheetAutomation = worksheets.get(sheetName);
+		if(worksheetAutomation==null){
+			worksheetAutomation = WorkbookUtils.getWorksheetAutomationByName(workbookAutomation, sheetName);
+			// failed look ups are not pooled, thus they are retried the next time
+			if(worksheetAutomation!=null)
+				worksheets.put(sheetName, worksheetAutomation);
+		}
+		return worksheetAutomation;
+	}
+
+
+	/**
+	 * Get the collection of shapes of the worksheet that has the given name
+	 * @param workbookAutomation an OleAutomation that provides access to the functionalities of the workbook
+	 * @param sheetName the name of the worksheet
+	 * @return an OleAutomation for accessing the Shapes OLE object, or null if it could not be retrieved.
+	 * It is owned by the pool, thus it must not be disposed.
+	 */
+	public OleAutomation getShapes(OleAutomation workbookAutomation, String sheetName){
+
+		OleAutomation shapesAutomation = shapes.get(sheetName);
+		if(shapesAutomation==null || this.workbookAutomation!=workbookAutomation){
+			OleAutomation worksheetAutomation = getWorksheet(workbookAutomation, sheetName);
+			if(worksheetAutomation==null)
+				return null;
+
+			shapesAutomation = WorksheetUtils.getWorksheetShapes(worksheetAutomation);
+			if(shapesAutomation!=null)
+				shapes.put(sheetName, shapesAutomation);
+		}
+		return shapesAutomation;
+	}
+
+
+	/**
+	 * Get the application that hosts the workbook
+	 * @param workbookAutomation an OleAutomation that provides access to the functionalities of the workbook
+	 * @return an OleAutomation for accessing the Application OLE object, or null if it could not be retrieved.
+	 * It is owned by the pool, thus it must not be disposed.
+	 */
+	public OleAutomation getApplication(OleAutomation workbookAutomation){
+
+		bind(workbookAutomation);
+
+		if(application==null)
+			application = WorkbookUtils.getApplicationAutomation(workbookAutomation);
+		return application;
+	}
+
+
+	/**
+	 * Dispose the pooled objects of the worksheet that has the given name.
+	 * This method has to be called when a worksheet is added, deleted, or renamed (both for the old and the new name).
+	 * @param sheetName the name of the worksheet
+	 */
+	public void invalidate(String sheetName){
+
+		OleAutomation shapesAutomation = shapes.remove(sheetName);
+		if(shapesAutomation!=null)
+			shapesAutomation.dispose();
+
+		OleAutomation worksheetAutomation = worksheets.remove(sheetName);
+		if(worksheetAutomation!=null)
+			worksheetAutomation.dispose();
+	}
+
+
+	/**
+	 * Dispose all the pooled objects
+	 */
+	public void dispose(){
+
+		if(!worksheets.isEmpty() || application!=null)
+			logger.debug("Disposing "+worksheets.size()+" pooled worksheet(s)");
+
+		for (OleAutomation shapesAutomation : shapes.values()) {
+			shapesAutomation.dispose();
+		}
+		shapes.clear();
+
+		for (OleAutomation worksheetAutomation : worksheets.values()) {
+			worksheetAutomation.dispose();
+		}
+		worksheets.clear();
+
+		if(application!=null){
+			application.dispose();
+			application = null;
+		}
+		workbookAutomation = null;
+	}
+
+
+	/**
+	 * @return the number of pooled worksheets
+	 */
+	public int size(){
+		return worksheets.size();
+	}
+
+
+	/**
+	 * Bind the pool to the given workbook. The objects that were pooled for another workbook are disposed.
+	 * @param workbookAutomation an OleAutomation that provides access to the functionalities of the workbook
+	 */
+	private void bind(OleAutomation workbookAutomation){
+		if(this.workbookAutomation!=workbookAutomation){
+			dispose();
+			this.workbookAutomation = workbookAutomation;
+		}
+	}
+}
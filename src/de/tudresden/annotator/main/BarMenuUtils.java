@@ -18,7 +18,7 @@ import de.tudresden.annotator.oleutils.WindowUtils;
  */
 public class BarMenuUtils {
 	
-	protected static void adjustBarMenuForSheet(String sheetName){
+	protected static void adjustBarMenuForSheet(WorksheetAnnotation sheetAnnotation){
 					
 		BarMenu  menuBar = Launcher.getInstance().getMenuBar();
 		MenuItem[] menuItems = menuBar.getMenuItems();
@@ -36,18 +36,12 @@ public class BarMenuUtils {
 		}
 		MenuItem[] annotationsMenuItems = annotationsMenu.getMenu().getItems();
 		
-		// the active worksheet annotation
-		//String sheetName = MainWindow.getInstance().getActiveWorksheetName();
-		WorkbookAnnotation workbookAnnotation = AnnotationHandler.getWorkbookAnnotation();
-		WorksheetAnnotation  sheetAnnotation = workbookAnnotation.getWorksheetAnnotations().get(sheetName);
-		
-		
 		// if annotation data sheet is the active sheet disable all annotation menus
 		// if sheet annotation does not exist, do the same.
 		// normally sheet annotation should always exist, but when the 
 		// range annotations sheet is initially created its name is auto generated by excel. 
 		// it is after creation that its name is updated to "Range_Annotations_Data"
-		if(sheetAnnotation==null || sheetName.compareTo(RangeAnnotationsSheet.getName())==0){
+		if(sheetAnnotation==null || sheetAnnotation.getSheetName().compareTo(RangeAnnotationsSheet.getName())==0){
 			for (MenuItem menuItem : annotationsMenuItems) {
 				if(menuItem.getID()!=2030000){ // File as
 					menuItem.setEnabled(false);
@@ -147,12 +141,19 @@ public class BarMenuUtils {
 					if(!hasAnnotations){
 						for (MenuItem menuItem : annotationsMenuItems) { 
 							if(menuItem.getID() == 2040000 || menuItem.getID() == 2050000 || 
-							   menuItem.getID() == 2070000 || menuItem.getID() == 2080000 ){
-							   // &Hide, &Delete, &Show Annotations, Undo Annotation
+							   menuItem.getID() == 2070000 ){
+							   // &Hide, &Delete, &Show Annotations
 							   menuItem.setEnabled(false);
 							   disableAllSubMenus(menuItem.getMenu());
+							}else if(menuItem.getID() == 2080000){ // Undo last annotation
+								if(!AnnotationHandler.canUndo()){
+										menuItem.setEnabled(false);
+								}else{
+										menuItem.setEnabled(true);
+								}
+								
 							}else if(menuItem.getID() == 2090000){ // Redo last annotation
-								if(AnnotationHandler.getLastFromRedoList()==null){
+								if(!AnnotationHandler.canRedo()){
 										menuItem.setEnabled(false);
 								}else{
 										menuItem.setEnabled(true);
@@ -177,7 +178,7 @@ public class BarMenuUtils {
 					}else{
 						for (MenuItem menuItem : annotationsMenuItems) { 
 							if( menuItem.getID() == 2080000){	// Undo last annotations				
-								if(AnnotationHandler.getLastFromUndoList()==null){
+								if(!AnnotationHandler.canUndo()){
 									menuItem.setEnabled(false);
 								}else{
 									menuItem.setEnabled(true);
@@ -185,7 +186,7 @@ public class BarMenuUtils {
 								
 							}else if(menuItem.getID() == 2090000){ // Redo last annotation
 								
-								if(AnnotationHandler.getLastFromRedoList()==null){
+								if(!AnnotationHandler.canRedo()){
 									menuItem.setEnabled(false);
 								}else{
 									menuItem.setEnabled(true);
@@ -313,8 +314,7 @@ public class BarMenuUtils {
 						}
 					}
 				}							
-				String activeSheetName = Launcher.getInstance().getActiveWorksheetName();
-				adjustBarMenuForSheet(activeSheetName);
+				adjustBarMenuForSheet(Launcher.getInstance().getActiveWorksheetAnnotation());
 			}			
 		}		
 	}
@@ -119,7 +119,7 @@ public class FileUtils {
 			// unprotect the workbook structure
 			WorkbookUtils.unprotectWorkbook(embeddedWorkbook);
 			// unprotect all the sheets
-		    WorkbookUtils.unprotectAllWorksheets(embeddedWorkbook);
+		    AnnotationHandler.getProtectionScope().unprotectAll(embeddedWorkbook);
 						
 			// protect and hide the range_annotations sheet before save
 			RangeAnnotationsSheet.protect(embeddedWorkbook);
@@ -139,7 +139,7 @@ public class FileUtils {
 			AnnotationStatusSheet.delete(embeddedWorkbook);
 			
 			// unprotect all the sheets
-			WorkbookUtils.unprotectAllWorksheets(embeddedWorkbook);
+			AnnotationHandler.getProtectionScope().unprotectAll(embeddedWorkbook);
 		}
 							
 		// save the file
@@ -172,7 +172,6 @@ public class FileUtils {
 				
 				// update workbook annotation and re-draw all the range annotations  	
 				AnnotationHandler.drawManyRangeAnnotations(reopenedWorkbook, rangeAnnotations, false);
-//				AnnotationHandler.drawManyRangeAnnotationsOptimized(reopenedWorkbook, rangeAnnotations, false);
 			}
 			
 			// make range_annotations sheet again visible
@@ -7,6 +7,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Set;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -24,11 +25,15 @@ import org.eclipse.swt.widgets.Event;
 import org.eclipse.swt.widgets.Listener;
 import org.eclipse.swt.widgets.MessageBox;
 
+import de.tudresden.annotator.annotations.AnnotationChangeListener;
+import de.tudresden.annotator.annotations.AnnotationChangeSet;
 import de.tudresden.annotator.annotations.AnnotationClass;
+import de.tudresden.annotator.annotations.CellRange;
 import de.tudresden.annotator.annotations.RangeAnnotation;
 import de.tudresden.annotator.annotations.WorkbookAnnotation;
 import de.tudresden.annotator.annotations.WorksheetAnnotation;
 import de.tudresden.annotator.annotations.utils.AnnotationHandler;
+import de.tudresden.annotator.annotations.utils.AnnotationSession;
 import de.tudresden.annotator.annotations.utils.AnnotationStatusSheet;
 import de.tudresden.annotator.annotations.utils.RangeAnnotationsSheet;
 import de.tudresden.annotator.oleutils.ApplicationUtils;
@@ -58,7 +63,7 @@ public class GUIListeners {
 	        	Launcher.getInstance().setExcelPanelEnabled(false);
 	        	
 	        	if(!Launcher.getInstance().isControlSiteNull() && 
-						AnnotationHandler.getWorkbookAnnotation().hashCode()!= AnnotationHandler.getOldWorkbookAnnotationHash()){
+						AnnotationHandler.getWorkbookAnnotation().isDirty()){
 	    			
 		    		Launcher wm = Launcher.getInstance();
 		    		String directoryPath = wm.getDirectoryPath();
@@ -144,10 +149,15 @@ public class GUIListeners {
 				 * the second argument is a Worksheet object. Get the name and index of the worksheet.
 				 */
 	        	OleAutomation worksheetAutomation = args[1].getAutomation();		        
-	        	Launcher.getInstance().setActiveWorksheetName(WorksheetUtils.getWorksheetName(worksheetAutomation));
-	        	Launcher.getInstance().setActiveWorksheetIndex(WorksheetUtils.getWorksheetIndex(worksheetAutomation));
+	        	Launcher.getInstance().setActiveWorksheet(WorksheetUtils.getWorksheetName(worksheetAutomation), 
+	        			WorksheetUtils.getWorksheetIndex(worksheetAutomation));
 				args[1].dispose();	
 				worksheetAutomation.dispose();
+				
+				/*
+				 * find and display the innermost annotation under the first selected cell
+				 */
+				Launcher.getInstance().updateSelectedAnnotation();
 						
 				Launcher.getInstance().setFocusToShell();
 				Launcher.getInstance().setFocusToShell();
@@ -181,32 +191,27 @@ public class GUIListeners {
 				worksheetAutomation.dispose();
 				
 				String previousSheetName =Launcher.getInstance().getActiveWorksheetName();
+				int previousSheetId = Launcher.getInstance().getActiveWorksheetId();
 	        	
 				// update the information about the active sheet
-				Launcher.getInstance().setActiveWorksheetName(activeSheetName);
-				Launcher.getInstance().setActiveWorksheetIndex(activeSheetIndex);				
+				Launcher.getInstance().setActiveWorksheet(activeSheetName, activeSheetIndex);
 				
 				// hide any existing tooltip, before showing new one about the active (current) sheet
 	            Launcher.getInstance().getTooltip().setVisible(false);
 				
 	            if(!skipActionsOnSheetActivation){
 					
-					// when a new sheet is activate the redo and undo list are cleared.  
-					WorksheetAnnotation activeSheetAnnotation = AnnotationHandler.getWorkbookAnnotation()
-							.getWorksheetAnnotations().get(activeSheetName);
+					// when a new sheet is activated, the selection in the previous sheet is discarded.
+					WorksheetAnnotation activeSheetAnnotation = Launcher.getInstance().getActiveWorksheetAnnotation();
 					
 					WorksheetAnnotation previousSheetAnnotation = AnnotationHandler.getWorkbookAnnotation()
-							.getWorksheetAnnotations().get(previousSheetName);
+							.getWorksheetAnnotation(previousSheetId);
 									
 					if(!Launcher.getInstance().isControlSiteNull() && ((activeSheetAnnotation!=null && 
 							!activeSheetAnnotation.getAllAnnotations().isEmpty()) || 
 							activeSheetName.compareTo(RangeAnnotationsSheet.getName())==0) && 
 							previousSheetAnnotation!=null ){ 		
 							
-							// Keep Redo and Undo list per sheet. Erase when sheet changes
-							AnnotationHandler.clearRedoList();
-							AnnotationHandler.clearUndoList();
-							
 							// should not remember selection from previous sheet
 							Launcher.getInstance().setCurrentSelection(null);						
 		        	}
@@ -229,6 +234,145 @@ public class GUIListeners {
 	    return listener;
 	}
 	
+	/**
+	 * Create a SheetChange OLE event listener. It marks the statistics of the affected range annotations as outdated.
+	 * @return an OleListener
+	 */
+	protected static OleListener createSheetChangeEventListener(){
+		
+		OleListener listener = new OleListener() {
+	        public void handleEvent (OleEvent e) {
+	        	
+	        	Variant[] args = e.arguments;
+	        	
+	        	/*
+	        	 * the first argument is a Worksheet object. Get the name of the worksheet that changed.
+	        	 */
+	        	OleAutomation worksheetAutomation = args[0].getAutomation();        
+				String sheetName = WorksheetUtils.getWorksheetName(worksheetAutomation);
+				args[0].dispose();
+				worksheetAutomation.dispose();
+				
+				/*
+	        	 * the second argument is a Range object. Get the address of the changed cells.
+	        	 */
+				OleAutomation rangeAutomation = args[1].getAutomation();
+				String[] areas = RangeUtils.getRangeAddress(rangeAutomation).split(",");
+				args[1].dispose();
+				rangeAutomation.dispose();
+				
+				WorksheetAnnotation sheetAnnotation = AnnotationHandler.getWorkbookAnnotation().getWorksheetAnnotation(sheetName);
+				if(sheetAnnotation==null)
+					return;
+				
+				for (String area : areas) {
+					try {
+						sheetAnnotation.markContentChanged(CellRange.parse(area));
+					} catch (IllegalArgumentException ex) {
+						// the changed range is not known. all the statistics of this sheet are outdated
+						logger.debug("Could not parse the changed range \""+area+"\"", ex);
+						sheetAnnotation.markContentChanged(null);
+						break;
+					}
+				}
+	        }
+	    };	       
+	    return listener;
+	}
+	
+	/**
+	 * Create a listener that keeps the annotation data sheet in sync with the changes in the annotations. 
+	 * The rows of the removed range annotations are deleted, and rows are appended for the added ones. 
+	 * @param session the session whose annotations are observed
+	 * @return an AnnotationChangeListener
+	 */
+	protected static AnnotationChangeListener createAnnotationDataChangeListener(final AnnotationSession session){
+		
+		return new AnnotationChangeListener() {
+			@Override
+			public void annotationsChanged(AnnotationChangeSet changes) {
+				
+				OleAutomation workbookAutomation = session.getWorkbookAutomation();
+				if(workbookAutomation==null)
+					return;
+				
+				if(changes.areAllAnnotationsRemoved()){
+					RangeAnnotationsSheet.deleteAllRangeAnnotationData(workbookAutomation);
+				}
+				
+				WorkbookAnnotation workbookAnnotation = session.getWorkbookAnnotation();
+				HashSet<String> clearedSheets = new HashSet<String>();
+				for (RangeAnnotation ra : changes.getRemovedAnnotations()) {
+					
+					if(clearedSheets.contains(ra.getSheetName()))
+						continue;
+					
+					// delete the rows of a sheet that has no annotations anymore at once
+					WorksheetAnnotation sheetAnnotation = workbookAnnotation.getWorksheetAnnotation(ra);
+					if(sheetAnnotation==null || sheetAnnotation.getAllAnnotations().isEmpty()){
+						RangeAnnotationsSheet.deleteRangeAnnotationDataFromSheet(workbookAutomation, ra.getSheetName(), true);
+						clearedSheets.add(ra.getSheetName());
+					}else{
+						RangeAnnotationsSheet.deleteRangeAnnotationData(workbookAutomation, ra, true);
+					}
+				}
+				
+				RangeAnnotationsSheet.saveRangeAnnotationData(workbookAutomation, changes.getAddedAnnotations());
+			}
+		};
+	}
+	
+	/**
+	 * Create a listener that updates the annotation under the current selection (shown in the title of the window), 
+	 * after the annotations of the active sheet change. It is updated only while the session is the one of the application window.
+	 * @param session the session whose annotations are observed
+	 * @return an AnnotationChangeListener
+	 */
+	protected static AnnotationChangeListener createSelectedAnnotationChangeListener(final AnnotationSession session){
+		
+		return new AnnotationChangeListener() {
+			@Override
+			public void annotationsChanged(AnnotationChangeSet changes) {
+				
+				if(session.getWorkbookAutomation()==null || AnnotationHandler.getSession()!=session)
+					return;
+				
+				int sheetId = Launcher.getInstance().getActiveWorksheetId();
+				if(changes.areAllAnnotationsRemoved() || (sheetId>=0 && changes.isSheetAffected(sheetId))){
+					Launcher.getInstance().updateSelectedAnnotation();
+				}
+			}
+		};
+	}
+	
+	/**
+	 * Create a listener that adjusts the menu items in the bar menu, after the annotations or their statuses change. 
+	 * The menu is adjusted only while the session is the one of the application window.
+	 * @param session the session whose annotations are observed
+	 * @return an AnnotationChangeListener
+	 */
+	protected static AnnotationChangeListener createBarMenuChangeListener(final AnnotationSession session){
+		
+		return new AnnotationChangeListener() {
+			@Override
+			public void annotationsChanged(AnnotationChangeSet changes) {
+				
+				if(session.getWorkbookAutomation()==null || AnnotationHandler.getSession()!=session)
+					return;
+				
+				if(changes.isWorkbookStatusChanged() || changes.areAllAnnotationsRemoved()){
+					BarMenuUtils.adjustBarMenuForWorkbook();
+					return;
+				}
+				
+				WorksheetAnnotation sheetAnnotation = Launcher.getInstance().getActiveWorksheetAnnotation();
+				if(sheetAnnotation!=null && changes.isSheetAffected(sheetAnnotation.getSheetId())){
+					BarMenuUtils.adjustBarMenuForSheet(sheetAnnotation);
+				}
+			}
+		};
+	}
+	
 	/**
 	 * 
 	 * @return
@@ -275,8 +419,7 @@ public class GUIListeners {
 				// warn the user user if there exist an opened file
 				// and offer them to save their progress
 				if(!Launcher.getInstance().isControlSiteNull()  && 
-					AnnotationHandler.getWorkbookAnnotation().hashCode()!=
-						AnnotationHandler.getOldWorkbookAnnotationHash()){
+					AnnotationHandler.getWorkbookAnnotation().isDirty()){
 									
 	        		int style = SWT.YES | SWT.NO | SWT.CANCEL | SWT.ICON_WARNING ;
 	        		MessageBox messageBox = Launcher.getInstance().createMessageBox(style);
@@ -322,33 +465,43 @@ public class GUIListeners {
 				}
 				
 						
-				// clear all existing annotations in memory structure, 
-				// if they exist from the previously opened file 
-				AnnotationHandler.getWorkbookAnnotation().removeAllAnnotations();
+				// start a new session for the opened file. the annotations of the previous file are discarded with its session
+				AnnotationSession session = Launcher.getInstance().startAnnotationSession(workbookAutomation);
+				
+				// the annotations are loaded from the file. the change listeners do not need to be notified, 
+				// as the data are already stored in the file, and the history is cleared below
+				WorkbookAnnotation workbookAnnotation = session.getWorkbookAnnotation();
+				workbookAnnotation.beginChanges();
 				
 				// turn off screen updating to speed the following actions.  
 				OleAutomation application = WorkbookUtils.getApplicationAutomation(workbookAutomation);
 				ApplicationUtils.setScreenUpdating(application, false);
-	
-				// create the base in memory structure for storing annotation data
-				// retrieve the annotation statuses from previous session
-				AnnotationStatusSheet.readAnnotationStatuses(workbookAutomation);
-				
-				// read the data and re-create the range annotation objects
-				RangeAnnotation[] rangeAnnotations = RangeAnnotationsSheet.readRangeAnnotations(workbookAutomation);				
-				if(rangeAnnotations!=null){		
-					// update workbook annotation and re-draw all the range annotations  
-					AnnotationHandler.recreateRangeAnnotations(workbookAutomation, rangeAnnotations);	
+				
+				try{
+					// create the base in memory structure for storing annotation data
+					// retrieve the annotation statuses from previous session
+					AnnotationStatusSheet.readAnnotationStatuses(workbookAutomation);
+					
+					// read the data and re-create the range annotation objects
+					RangeAnnotation[] rangeAnnotations = RangeAnnotationsSheet.readRangeAnnotations(workbookAutomation);				
+					if(rangeAnnotations!=null){		
+						// update workbook annotation and re-draw all the range annotations  
+						AnnotationHandler.recreateRangeAnnotations(workbookAutomation, rangeAnnotations);	
+					}
+				}finally{
+					workbookAnnotation.endChangesSilently();
 				}
 				
 				// turn on screen updating after all previous annotations are restored
 				ApplicationUtils.setScreenUpdating(application, true);
 				
-				// save the current hash of the workbook annotation
+				// mark the current state of the workbook annotation as saved
 				// will be used later to determine if user has made some changes 
 				// and the file needs to be saved
-				AnnotationHandler.setOldWorkbookAnnotationHash(
-						AnnotationHandler.getWorkbookAnnotation().hashCode()); 
+				AnnotationHandler.getWorkbookAnnotation().markSaved(); 
+				
+				// the restored annotations are the first version in the undo history
+				AnnotationHandler.clearHistory();
 				
 				// Move to the first sheet in the workbook
 				OleAutomation sheetAuto = 
@@ -396,12 +549,8 @@ public class GUIListeners {
 					WorksheetUtils.makeWorksheetActive(firstSheet);
 					firstSheet.dispose();
 					
-					AnnotationHandler.clearRedoList();
-					AnnotationHandler.clearUndoList();
-					
 					// to check if the workbook has changed since last save
-					int hash = AnnotationHandler.getWorkbookAnnotation().hashCode();
-					AnnotationHandler.setOldWorkbookAnnotationHash(hash);
+					AnnotationHandler.getWorkbookAnnotation().markSaved();
 					
 					BarMenuUtils.adjustBarMenuForWorkbook();
 					
@@ -433,8 +582,7 @@ public class GUIListeners {
 				
 				Launcher.getInstance().setExcelPanelEnabled(false);
 				
-				if(AnnotationHandler.getWorkbookAnnotation().hashCode()!=
-						AnnotationHandler.getOldWorkbookAnnotationHash()){
+				if(AnnotationHandler.getWorkbookAnnotation().isDirty()){
 									
 	        		int style = SWT.YES | SWT.NO | SWT.CANCEL | SWT.ICON_WARNING ;
 	        		MessageBox messageBox = Launcher.getInstance().createMessageBox(style);
@@ -562,7 +710,7 @@ public class GUIListeners {
 				Launcher.getInstance().setExcelPanelEnabled(false);
 				
 				if(!Launcher.getInstance().isControlSiteNull() && 
-					AnnotationHandler.getWorkbookAnnotation().hashCode()!= AnnotationHandler.getOldWorkbookAnnotationHash()){
+					AnnotationHandler.getWorkbookAnnotation().isDirty()){
 								
 	        		int style = SWT.YES | SWT.NO | SWT.CANCEL | SWT.ICON_WARNING ;
 	        		MessageBox messageBox = Launcher.getInstance().createMessageBox(style);
@@ -628,7 +776,7 @@ public class GUIListeners {
 				
 				String sheetName = Launcher.getInstance().getActiveWorksheetName();
 				WorkbookAnnotation workbookAnnotation = AnnotationHandler.getWorkbookAnnotation();
-				WorksheetAnnotation  sheetAnnotation = workbookAnnotation.getWorksheetAnnotations().get(sheetName);
+				WorksheetAnnotation  sheetAnnotation = Launcher.getInstance().getActiveWorksheetAnnotation();
 				
 				if(sheetAnnotation==null){
 					Launcher.getInstance().setExcelPanelEnabled(true);
@@ -716,13 +864,8 @@ public class GUIListeners {
 					sheetAnnotation.setCompleted(false);
 					wasUpdated=true;
 				}
-								
-				BarMenuUtils.adjustBarMenuForSheet(sheetName);
 				
 				if(wasUpdated){
-					AnnotationHandler.clearRedoList();
-					AnnotationHandler.clearUndoList();
-									
 					int style = SWT.ICON_INFORMATION;
 					MessageBox mb = Launcher.getInstance().createMessageBox(style);
 					String value = String.valueOf((sheetAnnotation.isCompleted())).toUpperCase();
@@ -748,7 +891,7 @@ public class GUIListeners {
 				
 				String sheetName = Launcher.getInstance().getActiveWorksheetName();
 				WorkbookAnnotation workbookAnnotation = AnnotationHandler.getWorkbookAnnotation();
-				WorksheetAnnotation  sheetAnnotation = workbookAnnotation.getWorksheetAnnotations().get(sheetName);
+				WorksheetAnnotation  sheetAnnotation = Launcher.getInstance().getActiveWorksheetAnnotation();
 				
 				if(sheetAnnotation==null){
 					Launcher.getInstance().setExcelPanelEnabled(true);
@@ -769,14 +912,15 @@ public class GUIListeners {
 						if(option == SWT.YES){
 							OleAutomation embeddedWorkbook = Launcher.getInstance().getEmbeddedWorkbook();
 							AnnotationHandler.deleteShapeAnnotationsInSheet(embeddedWorkbook, sheetName);
-							RangeAnnotationsSheet.deleteRangeAnnotationDataFromSheet(embeddedWorkbook, sheetName, true);
 							
-							AnnotationHandler.clearRedoList();
-							AnnotationHandler.clearUndoList();
-							
-							workbookAnnotation.removeAllRangeAnnotationsFromSheet(sheetName);
-							
-							sheetAnnotation.setNotApplicable(true);
+							// the stored data are deleted by the change listeners, when the batch ends
+							workbookAnnotation.beginChanges();
+							try{
+								workbookAnnotation.removeAllRangeAnnotationsFromSheet(sheetAnnotation);
+								sheetAnnotation.setNotApplicable(true);
+							}finally{
+								workbookAnnotation.endChanges();
+							}
 							wasUpdated = true;
 						}
 					}else{
@@ -788,14 +932,8 @@ public class GUIListeners {
 					sheetAnnotation.setNotApplicable(false);
 					wasUpdated = true;
 				}
-
-				
-				BarMenuUtils.adjustBarMenuForSheet(sheetName);
 				
 				if(wasUpdated){
-					AnnotationHandler.clearRedoList();
-					AnnotationHandler.clearUndoList();
-					
 					int style = SWT.ICON_INFORMATION;
 					MessageBox mb = Launcher.getInstance().createMessageBox(style);
 					String value = String.valueOf((sheetAnnotation.isNotApplicable())).toUpperCase();
@@ -867,8 +1005,6 @@ public class GUIListeners {
 									if(option == SWT.NO){
 										wasUpdated = false;
 										wa.setCompleted(false);
-										AnnotationHandler.clearRedoList();
-										AnnotationHandler.clearUndoList();
 										break;
 									}		
 									
@@ -926,8 +1062,6 @@ public class GUIListeners {
 										if(option == SWT.NO){
 											wasUpdated = false;
 											wa.setCompleted(false);
-											AnnotationHandler.clearRedoList();
-											AnnotationHandler.clearUndoList();
 											break;
 										}										
 									}
@@ -945,14 +1079,7 @@ public class GUIListeners {
 					wasUpdated=true;
 				}
 				
-				BarMenuUtils.adjustBarMenuForWorkbook();
-				
-				if(wasUpdated){			
-					AnnotationHandler.clearRedoList();
-					AnnotationHandler.clearUndoList();
-					
-					BarMenuUtils.adjustBarMenuForWorkbook();
-					
+				if(wasUpdated){
 					int style = SWT.ICON_INFORMATION;
 					MessageBox mb = Launcher.getInstance().createMessageBox(style);
 					String value = String.valueOf((wa.isCompleted())).toUpperCase();
@@ -992,13 +1119,15 @@ public class GUIListeners {
 						if(option == SWT.YES){
 							OleAutomation embeddedWorkbook = Launcher.getInstance().getEmbeddedWorkbook();
 							AnnotationHandler.deleteAllShapeAnnotations(embeddedWorkbook);
-							RangeAnnotationsSheet.deleteAllRangeAnnotationData(embeddedWorkbook);
 							
-							AnnotationHandler.clearRedoList();
-							AnnotationHandler.clearUndoList();
-							AnnotationHandler.getWorkbookAnnotation().removeAllAnnotations();
-							
-							workbookAnnotation.setNotApplicable(true);
+							// the stored data are deleted by the change listeners, when the batch ends
+							workbookAnnotation.beginChanges();
+							try{
+								workbookAnnotation.removeAllAnnotations();
+								workbookAnnotation.setNotApplicable(true);
+							}finally{
+								workbookAnnotation.endChanges();
+							}
 							wasUpdated = true;
 						}
 					}else{
@@ -1011,10 +1140,7 @@ public class GUIListeners {
 					wasUpdated = true;
 				}
 				
-				BarMenuUtils.adjustBarMenuForWorkbook();
-				
 				if(wasUpdated){
-					
 					int style = SWT.ICON_INFORMATION;
 					MessageBox mb = Launcher.getInstance().createMessageBox(style);
 					String value = String.valueOf((workbookAnnotation.isNotApplicable())).toUpperCase();
@@ -1058,12 +1184,9 @@ public class GUIListeners {
 					 logger.error("Generic exception on create new annotation", ex);
 				 }
 				 
-				 // turn on screen updating after annotating
+				 // turn on screen updating after annotating. 
+				 // the menu is updated by the change listeners, if the sheet had no annotations before
 				 ApplicationUtils.setScreenUpdating(application, true);
-				 		 
-				 // if the sheet was empty, had no annotations, 
-				 // the menu needs to be updated
-				 BarMenuUtils.adjustBarMenuForSheet(sheetName);
 				 
 				 if(Launcher.getInstance().isControlSiteFocusControl())
 					 	Launcher.getInstance().setFocusToShell();	
@@ -1082,49 +1205,34 @@ public class GUIListeners {
 			@Override
 			public void widgetSelected(SelectionEvent e) {
 				
-				Launcher.getInstance().setExcelPanelEnabled(false);
-				
-				RangeAnnotation  ra = AnnotationHandler.getLastFromUndoList();	
-				if(ra==null){
-					Launcher.getInstance().setExcelPanelEnabled(true);
+				if(!AnnotationHandler.canUndo())
 					return;
-				}
+				
+				Launcher.getInstance().setExcelPanelEnabled(false);
 				
 				OleAutomation workbookAutomation = Launcher.getInstance().getEmbeddedWorkbook(); 
-				OleAutomation sheetAutomation = 
-						WorkbookUtils.getWorksheetAutomationByName(workbookAutomation, ra.getSheetName());
 				OleAutomation application = WorksheetUtils.getApplicationAutomation(workbookAutomation);
 				
 				// turn off screen updating to speed up the following actions
+				ApplicationUtils.setScreenUpdating(application, false);
+				
+				Set<String> changedSheets = null;
+				try{
+					changedSheets = AnnotationHandler.undo(workbookAutomation);
+				}catch (Exception ex){			
+					logger.error("Generic exception on undo last annotation", ex);
+				}
+				
+				// turn on screen updating after all range annotations are re-drawn
 				ApplicationUtils.setScreenUpdating(application, true);
-										 
-				WorksheetUtils.unprotectWorksheet(sheetAutomation);		
-				boolean isSuccess = AnnotationHandler.deleteShapeAnnotation(sheetAutomation, ra);
-				WorksheetUtils.protectWorksheet(sheetAutomation);
-				sheetAutomation.dispose();
 				
-				if(isSuccess){
-					AnnotationHandler.removeLastFromUndoList();
-					AnnotationHandler.addToRedoList(ra);
-						
-					RangeAnnotationsSheet.deleteRangeAnnotationData(workbookAutomation, ra, true);
-					
-					AnnotationHandler.getWorkbookAnnotation().removeRangeAnnotation(ra);
-						
-					Launcher.getInstance().setActiveWorksheetIndex(ra.getSheetIndex());
-					Launcher.getInstance().setActiveWorksheetName(ra.getSheetName());
-					Launcher.getInstance().setCurrentSelection(new String[]{ra.getRangeAddress()});
-									
-				}else{
+				if(changedSheets==null){
 					MessageBox messageBox = Launcher.getInstance().createMessageBox(SWT.ICON_ERROR);
 	 	            messageBox.setMessage("Could not undo the last range annotation!!!");
 	 	            messageBox.open();
 				}
 				
-				// turn on screen updating after all range annotations are re-drawn
-				ApplicationUtils.setScreenUpdating(application, true);
-				
-				BarMenuUtils.adjustBarMenuForSheet(ra.getSheetName());
+				adjustBarMenuAfterUndoRedo(changedSheets);
 				
 				Launcher.getInstance().setExcelPanelEnabled(true);
 			}
@@ -1140,59 +1248,55 @@ public class GUIListeners {
 			@Override
 			public void widgetSelected(SelectionEvent e) {
 				
-				Launcher.getInstance().setExcelPanelEnabled(false);
-				
-				RangeAnnotation  ra = AnnotationHandler.getLastFromRedoList();		
-				if(ra==null){
-					Launcher.getInstance().setExcelPanelEnabled(true);
+				if(!AnnotationHandler.canRedo())
 					return;
-				}
+				
+				Launcher.getInstance().setExcelPanelEnabled(false);
 				
 				OleAutomation workbookAutomation = Launcher.getInstance().getEmbeddedWorkbook(); 
-				OleAutomation worksheetAutomation = 
-						WorkbookUtils.getWorksheetAutomationByName(workbookAutomation, ra.getSheetName());
 				OleAutomation application = WorksheetUtils.getApplicationAutomation(workbookAutomation);
 			
 				// turn off screen updating to speed up the following actions
-				ApplicationUtils.setScreenUpdating(application, true);
+				ApplicationUtils.setScreenUpdating(application, false);
 				
-				WorksheetUtils.unprotectWorksheet(worksheetAutomation);						
-				Boolean result = false;
+				Set<String> changedSheets = null;
 				try{
-					result = AnnotationHandler.drawRangeAnnotation(workbookAutomation, ra, true);
+					changedSheets = AnnotationHandler.redo(workbookAutomation);
 				}catch (Exception ex){			
 					logger.error("Generic exception on redo last annotation", ex);
 				}
 				
-				WorksheetUtils.protectWorksheet(worksheetAutomation);
-				worksheetAutomation.dispose();
-				
-				AnnotationHandler.removeLastFromRedoList();
-				if(!result){
-					AnnotationHandler.getWorkbookAnnotation().removeRangeAnnotation(ra);
-					ApplicationUtils.setScreenUpdating(application, true);
-					
-					BarMenuUtils.adjustBarMenuForSheet(ra.getSheetName());
-					Launcher.getInstance().setExcelPanelEnabled(true);
-					
-					return;
-				}
-				
-				RangeAnnotationsSheet.saveRangeAnnotationData(workbookAutomation, ra);
-				
 				// turn on screen updating after all range annotations are re-drawn
 				ApplicationUtils.setScreenUpdating(application, true);
 				
-				AnnotationHandler.addToUndoList(ra);			
-				AnnotationHandler.getWorkbookAnnotation().addRangeAnnotation(ra);
-							
-				BarMenuUtils.adjustBarMenuForSheet(ra.getSheetName());			
+				if(changedSheets==null){
+					MessageBox messageBox = Launcher.getInstance().createMessageBox(SWT.ICON_ERROR);
+	 	            messageBox.setMessage("Could not redo the last range annotation!!!");
+	 	            messageBox.open();
+				}
+				
+				adjustBarMenuAfterUndoRedo(changedSheets);
 				
 				Launcher.getInstance().setExcelPanelEnabled(true);
 			}
 		};
 	}	
 	
+	/**
+	 * Adjust the bar menu after an undo or redo. The menu is adjusted for the active sheet, 
+	 * if it was changed, otherwise for the workbook.
+	 * @param changedSheets the names of the sheets that were changed by the undo or redo
+	 */
+	private static void adjustBarMenuAfterUndoRedo(Set<String> changedSheets){
+		
+		String activeSheetName = Launcher.getInstance().getActiveWorksheetName();
+		if(changedSheets!=null && activeSheetName!=null && changedSheets.contains(activeSheetName)){
+			BarMenuUtils.adjustBarMenuForSheet(Launcher.getInstance().getActiveWorksheetAnnotation());
+		}else{
+			BarMenuUtils.adjustBarMenuForWorkbook();
+		}
+	}
+	
 	/**
 	 * 
 	 * @return
@@ -1292,20 +1396,18 @@ public class GUIListeners {
 // 	            	Launcher.getInstance().disposeShell();
  	            	
 					OleAutomation workbookAutomation = Launcher.getInstance().getEmbeddedWorkbook();	
-					String sheetName = Launcher.getInstance().getActiveWorksheetName();
 					
 					AnnotationHandler.deleteAllShapeAnnotations(workbookAutomation);
 					
+					// the stored data are deleted by the change listeners, when the batch ends
 					WorkbookAnnotation workbookAnnotation = AnnotationHandler.getWorkbookAnnotation();
-					workbookAnnotation.removeAllAnnotations();
-					AnnotationHandler.createBaseAnnotations(workbookAutomation);
-					
-					RangeAnnotationsSheet.deleteAllRangeAnnotationData(workbookAutomation);
-					
-					AnnotationHandler.clearRedoList();
-					AnnotationHandler.clearUndoList();
-					
-					BarMenuUtils.adjustBarMenuForSheet(sheetName);
+					workbookAnnotation.beginChanges();
+					try{
+						workbookAnnotation.removeAllAnnotations();
+						AnnotationHandler.createBaseAnnotations(workbookAutomation);
+					}finally{
+						workbookAnnotation.endChanges();
+					}
  	            }
  	    	    
 				Launcher.getInstance().setExcelPanelEnabled(true);
@@ -1337,16 +1439,10 @@ public class GUIListeners {
 					
 					AnnotationHandler.deleteShapeAnnotationsInSheet(workbookAutomation, sheetName);
 					
-					WorkbookAnnotation workbookAnnotation = AnnotationHandler.getWorkbookAnnotation();
-					workbookAnnotation.removeAllRangeAnnotationsFromSheet(sheetName);
-					
-					RangeAnnotationsSheet.deleteRangeAnnotationDataFromSheet(workbookAutomation, 
-							sheetName, true);		
-					
-					AnnotationHandler.clearRedoList();
-					AnnotationHandler.clearUndoList();
-					
-					BarMenuUtils.adjustBarMenuForSheet(sheetName);
+					// the stored data are deleted by the change listeners
+					WorksheetAnnotation sheetAnnotation = Launcher.getInstance().getActiveWorksheetAnnotation();
+					if(sheetAnnotation!=null)
+						AnnotationHandler.getWorkbookAnnotation().removeAllRangeAnnotationsFromSheet(sheetAnnotation);
 					
  	            }
 				Launcher.getInstance().setExcelPanelEnabled(true);
@@ -1378,7 +1474,7 @@ public class GUIListeners {
 					String[] selection = Launcher.getInstance().getCurrentSelection();
 					
 					WorkbookAnnotation wa = AnnotationHandler.getWorkbookAnnotation();
-					WorksheetAnnotation sa = wa.getWorksheetAnnotations().get(sheetName);
+					WorksheetAnnotation sa = Launcher.getInstance().getActiveWorksheetAnnotation();
 					ArrayList<RangeAnnotation> annotations = new ArrayList<RangeAnnotation>(sa.getAllAnnotations());
 					
 					HashSet<RangeAnnotation> contained = new HashSet<RangeAnnotation>();
@@ -1394,22 +1490,28 @@ public class GUIListeners {
 					if(!contained.isEmpty()){
 					
 						OleAutomation sheetAuto = WorkbookUtils.getWorksheetAutomationByName(workbookAutomation, sheetName);
-						WorksheetUtils.unprotectWorksheet(sheetAuto);
-						
-						for (RangeAnnotation cra : contained) {
-							
-							AnnotationHandler.deleteShapeAnnotation(sheetAuto, cra);		
-							wa.removeRangeAnnotation(cra);
-							RangeAnnotationsSheet.deleteRangeAnnotationData(workbookAutomation, cra, true);
+						if(AnnotationHandler.getProtectionScope().enter(sheetAuto, sheetName)){
+							try{
+								// the stored data are deleted by the change listeners, when the batch ends
+								wa.beginChanges();
+								try{
+									// the dependent annotations that lose their container are deleted too
+									for (RangeAnnotation cra : wa.getRemovalCascade(contained)) {
+										AnnotationHandler.deleteShapeAnnotation(sheetAuto, cra);		
+										wa.removeRangeAnnotation(cra);
+									}
+								}finally{
+									wa.endChanges();
+								}
+							}finally{
+								AnnotationHandler.getProtectionScope().exit(sheetAuto, sheetName);
+							}
+						}else{
+							MessageBox message = Launcher.getInstance().createMessageBox(SWT.ICON_ERROR);
+							message.setMessage("ERROR: "+sheetName+" could not be unprotected!");
+							message.open();
 						}
-						
-						WorksheetUtils.protectWorksheet(sheetAuto);
 						sheetAuto.dispose();
-						
-						AnnotationHandler.clearRedoList();
-						AnnotationHandler.clearUndoList();
-						
-						BarMenuUtils.adjustBarMenuForSheet(sheetName);				
 					}			
 				}
  	            
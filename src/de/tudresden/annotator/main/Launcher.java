@@ -27,9 +27,12 @@ import org.eclipse.swt.widgets.MessageBox;
 import org.eclipse.swt.widgets.Shell;
 import org.eclipse.swt.widgets.ToolTip;
 
+import de.tudresden.annotator.annotations.CellRange;
+import de.tudresden.annotator.annotations.RangeAnnotation;
 import de.tudresden.annotator.annotations.WorkbookAnnotation;
 import de.tudresden.annotator.annotations.WorksheetAnnotation;
 import de.tudresden.annotator.annotations.utils.AnnotationHandler;
+import de.tudresden.annotator.annotations.utils.AnnotationSession;
 import de.tudresden.annotator.annotations.utils.RangeAnnotationsSheet;
 import de.tudresden.annotator.oleutils.ApplicationUtils;
 import de.tudresden.annotator.oleutils.CommandBarUtils;
@@ -49,6 +52,7 @@ public class Launcher {
 	// Event IDs
 	private final int SheetSelectionChange = 0x00000616;
 	private final int SheetActivate        = 0x00000619;
+	private final int SheetChange          = 0x0000061C;
 		
 	private final Display display = new Display();
 	private final Shell shell = new Shell(display);
@@ -69,8 +73,10 @@ public class Launcher {
 	
 	private String activeWorksheetName;
 	private int activeWorksheetIndex;
+	private int activeWorksheetId = -1;
 	
 	private String currentSelection[];
+	private RangeAnnotation selectedAnnotation;
 	
 	private SashForm mainSash;
 	private SashForm rightSash;
@@ -168,6 +174,26 @@ public class Launcher {
 	}
 	
 	
+	/**
+	 * Start a new annotation session for the given workbook, and make it the session of the application window. 
+	 * The annotation data sheet and the bar menu are kept in sync with the changes in the annotations of the session.
+	 * @param workbookAutomation an OleAutomation for accessing the functionalities of the embedded workbook
+	 * @return the new AnnotationSession
+	 */
+	protected AnnotationSession startAnnotationSession(OleAutomation workbookAutomation){
+		
+		AnnotationSession session = new AnnotationSession(workbookAutomation);
+		
+		WorkbookAnnotation workbookAnnotation = session.getWorkbookAnnotation();
+		workbookAnnotation.addChangeListener(GUIListeners.createAnnotationDataChangeListener(session));
+		workbookAnnotation.addChangeListener(GUIListeners.createBarMenuChangeListener(session));
+		workbookAnnotation.addChangeListener(GUIListeners.createSelectedAnnotationChangeListener(session));
+		
+		AnnotationHandler.setActiveSession(session);
+		return session;
+	}
+	
+	
 	/**
 	 * Embed the specified excel file to the application window
 	 * @param excelFile the excel file to embed
@@ -282,6 +308,9 @@ public class Launcher {
         
         OleListener sheetActivationlistener = GUIListeners.createSheetActivationEventListener();
         getControlSite().addEventListener(application, IID_AppEvents, SheetActivate, sheetActivationlistener);
+        
+        OleListener sheetChangeListener = GUIListeners.createSheetChangeEventListener();
+        getControlSite().addEventListener(application, IID_AppEvents, SheetChange, sheetChangeListener);
                 
 		// minimize ribbon.	
 	    ApplicationUtils.hideRibbon(application);	
@@ -323,7 +352,7 @@ public class Launcher {
 		}
 	    
 		// protect all the worksheet in the embedded workbook 
-		boolean areProtected = WorkbookUtils.protectAllWorksheets(workbook);
+		boolean areProtected = AnnotationHandler.getProtectionScope().protectAll(workbook);
 		if(!areProtected){
 			int style = SWT.ERROR;
 			MessageBox message = Launcher.getInstance().createMessageBox(style);
@@ -341,7 +370,7 @@ public class Launcher {
 	protected void updateActiveSheetDisplay(){
 		
 		WorkbookAnnotation wa = AnnotationHandler.getWorkbookAnnotation();		
-		WorksheetAnnotation sa= wa.getWorksheetAnnotations().get(this.activeWorksheetName);
+		WorksheetAnnotation sa= getActiveWorksheetAnnotation();
 		
 		// set up display for activated sheet
 		if(wa!=null && sa!=null){
@@ -393,19 +422,23 @@ public class Launcher {
 						
 				OleAutomation cells = WorksheetUtils.getCells(sheetAutomation);
 				if(cells!=null){
-					WorksheetUtils.unprotectWorksheet(sheetAutomation);
-					OleAutomation formulaCells = RangeUtils.getSpecialCells(cells, -4123);
-					if(formulaCells!=null){
-						if(RangeUtils.count(formulaCells)>0){
-							recreateToolTipWithStyle(SWT.ICON_WARNING);
-							this.tooltip.setText("Warning");
-							this.tooltip.setMessage("This sheet contains formulas!");
-							placeToolTipOnExcelPanel();
-							// this.tooltip.setAutoHide(false);
-							this.tooltip.setVisible(true);						
+					if(AnnotationHandler.getProtectionScope().enter(sheetAutomation, activeWorksheetName)){
+						try{
+							OleAutomation formulaCells = RangeUtils.getSpecialCells(cells, -4123);
+							if(formulaCells!=null){
+								if(RangeUtils.count(formulaCells)>0){
+									recreateToolTipWithStyle(SWT.ICON_WARNING);
+									this.tooltip.setText("Warning");
+									this.tooltip.setMessage("This sheet contains formulas!");
+									placeToolTipOnExcelPanel();
+									// this.tooltip.setAutoHide(false);
+									this.tooltip.setVisible(true);						
+								}
+							}
+						}finally{
+							AnnotationHandler.getProtectionScope().exit(sheetAutomation, activeWorksheetName);
 						}
 					}
-					WorksheetUtils.protectWorksheet(sheetAutomation);
 					cells.dispose();
 				}
 			}		
@@ -609,6 +642,9 @@ public class Launcher {
 	 * Dispose control site 
 	 */
 	protected void disposeControlSite() {
+		// release the pooled worksheet handles before the OLE objects are disposed
+		AnnotationHandler.getShapeTemplates().dispose();
+		AnnotationHandler.getHandlePool().dispose();
 		if (controlSite != null){
 			controlSite.dispose();
 		}
@@ -659,6 +695,8 @@ public class Launcher {
 	 */
 	protected void setEmbeddedWorkbook(OleAutomation embeddedWorkbook) {
 		this.embeddedWorkbook = embeddedWorkbook;
+		// the session of the application window follows the embedded workbook (e.g., when it is re-opened after save)
+		AnnotationHandler.getSession().setWorkbookAutomation(embeddedWorkbook);
 	}
 	
 	/**
@@ -728,8 +766,49 @@ public class Launcher {
 	 * @param activeWorksheetName the activeWorksheetName to set
 	 */
 	protected void setActiveWorksheetName(String activeWorksheetName) {
+		if(activeWorksheetName==null || !activeWorksheetName.equals(this.activeWorksheetName))
+			this.activeWorksheetId = -1;
 		this.activeWorksheetName = activeWorksheetName;
 	}
+	
+	/**
+	 * Update the information about the active worksheet, after a worksheet event. The stable id of the worksheet annotation 
+	 * is resolved once here, and used by the listeners afterwards (see getActiveWorksheetAnnotation()). 
+	 * The worksheets cannot be renamed, since the structure of the workbook is protected during the annotation.
+	 * @param sheetName the name of the active worksheet
+	 * @param sheetIndex the (1-based) index of the active worksheet
+	 */
+	protected void setActiveWorksheet(String sheetName, int sheetIndex){
+		
+		setActiveWorksheetName(sheetName);
+		setActiveWorksheetIndex(sheetIndex);
+		this.activeWorksheetId = AnnotationHandler.getWorkbookAnnotation().getSheetId(sheetName);
+	}
+	
+	/**
+	 * Get the WorksheetAnnotation of the active worksheet, by its stable id. The id is resolved again by name, 
+	 * if the worksheet annotation was created after the worksheet was activated.
+	 * @return the WorksheetAnnotation of the active worksheet, or null if there is none
+	 */
+	protected WorksheetAnnotation getActiveWorksheetAnnotation() {
+		
+		WorkbookAnnotation workbookAnnotation = AnnotationHandler.getWorkbookAnnotation();
+		WorksheetAnnotation sheetAnnotation = workbookAnnotation.getWorksheetAnnotation(this.activeWorksheetId);
+		if(sheetAnnotation!=null && sheetAnnotation.getSheetName().equals(this.activeWorksheetName))
+			return sheetAnnotation;
+		
+		sheetAnnotation = workbookAnnotation.getWorksheetAnnotation(this.activeWorksheetName);
+		this.activeWorksheetId = sheetAnnotation==null ? -1 : sheetAnnotation.getSheetId();
+		return sheetAnnotation;
+	}
+	
+	/**
+	 * @return the stable id of the active worksheet annotation, or -1 if there is none
+	 */
+	protected int getActiveWorksheetId() {
+		WorksheetAnnotation sheetAnnotation = getActiveWorksheetAnnotation();
+		return sheetAnnotation==null ? -1 : sheetAnnotation.getSheetId();
+	}
 
 	/**
 	 * @return the activeWorksheetIndex
@@ -758,6 +837,45 @@ public class Launcher {
 	protected void setCurrentSelection(String[] currentSelection) {
 		this.currentSelection = currentSelection;
 	}
+	
+	/**
+	 * @return the innermost range annotation under the first cell of the current selection, or null if there is none
+	 */
+	protected RangeAnnotation getSelectedAnnotation() {
+		return selectedAnnotation;
+	}
+
+	/**
+	 * @param selectedAnnotation the selectedAnnotation to set
+	 */
+	protected void setSelectedAnnotation(RangeAnnotation selectedAnnotation) {
+		this.selectedAnnotation = selectedAnnotation;
+	}
+	
+	/**
+	 * Find the innermost range annotation under the first cell of the current selection, 
+	 * and show its class and range in the title of the window
+	 */
+	protected void updateSelectedAnnotation(){
+		
+		setSelectedAnnotation(null);
+		WorksheetAnnotation sheetAnnotation = getActiveWorksheetAnnotation();
+		if(sheetAnnotation!=null && getCurrentSelection()!=null){
+			String firstArea = getCurrentSelection()[0];
+			try {
+				CellRange selected = CellRange.parse(firstArea);
+				setSelectedAnnotation(sheetAnnotation.getAnnotationAt(selected.getFirstRow(), selected.getFirstColumn()));
+			} catch (IllegalArgumentException ex) {
+				logger.debug("Could not parse the selected range \""+firstArea+"\"", ex);
+			}
+		}
+		
+		String title = "Annotator - "+getFileName();
+		RangeAnnotation annotation = getSelectedAnnotation();
+		if(annotation!=null)
+			title = title+"  ["+annotation.getAnnotationClass().getLabel()+": "+annotation.getRangeAddress()+"]";
+		getShell().setText(title);
+	}
 
 	/**
 	 * @return the menuBar
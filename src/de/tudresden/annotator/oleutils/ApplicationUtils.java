@@ -72,7 +72,7 @@ public class ApplicationUtils {
 			logger.debug("Method getActiveWorkbookAutomation received null application OleAutomation object");
 		}
 		
-		int[] workbookIds = application.getIDsOfNames(new String[]{"ActiveWorkbook"});	
+		int[] workbookIds = DispatchIdCache.getIds(application, "Application", "ActiveWorkbook");	
 		if (workbookIds == null){			
 			logger.error("Could not get \"ActiveWorkbook\" property ids for \"Application\" object!");
 			return null;
@@ -104,7 +104,7 @@ public class ApplicationUtils {
 			logger.debug("Method getActiveWindowAutomation received a null Application OleAutomation object");
 		}
 		
-		int[] workbookIds = application.getIDsOfNames(new String[]{"ActiveWindow"});	
+		int[] workbookIds = DispatchIdCache.getIds(application, "Application", "ActiveWindow");	
 		if (workbookIds == null){			
 			logger.error("Could not get \"ActiveWindow\" property ids for \"Application\" object! \n"+application.getLastError());
 			return null;
@@ -131,7 +131,7 @@ public class ApplicationUtils {
 	 */
 	public static OleAutomation getEmbeddedWorkbookAutomation(OleAutomation application, String workbookName){
 		
-		int[] workbooksIds = application.getIDsOfNames(new String[]{"Workbooks"});	
+		int[] workbooksIds = DispatchIdCache.getIds(application, "Application", "Workbooks");	
 		if (workbooksIds == null){			
 			System.out.println("\"Workbooks\" property not found for \"Application\" object!");
 			return null;
@@ -160,7 +160,7 @@ public class ApplicationUtils {
 	 */
 	public static OleAutomation getThisWorkbookAutomation(OleAutomation application){
 		
-		int[] thisWorkbookIds = application.getIDsOfNames(new String[]{"ThisWorkbook"});	
+		int[] thisWorkbookIds = DispatchIdCache.getIds(application, "Application", "ThisWorkbook");	
 		if (thisWorkbookIds == null){			
 			System.out.println("\"ThisWorkbook\" property not found for \"Application\" object!");
 			return null;
@@ -186,7 +186,7 @@ public class ApplicationUtils {
 	public static OleAutomation getWorksheetsAutomation(OleAutomation application){
 		
 		// get ID of Worksheets property
-		int[] worksheetsObjectIds = application.getIDsOfNames(new String[]{"Worksheets"});
+		int[] worksheetsObjectIds = DispatchIdCache.getIds(application, "Application", "Worksheets");
 		if (worksheetsObjectIds == null) {
 			System.out.println("Property \"Worksheets\" was not found for the given Application OLE object!");
 			return null;
@@ -213,7 +213,7 @@ public class ApplicationUtils {
 	 */
 	public static OleAutomation getActiveWorksheetAutomation(OleAutomation applicationAutomation){
 		
-		int[] worksheetIds = applicationAutomation.getIDsOfNames(new String[]{"ActiveSheet"});	
+		int[] worksheetIds = DispatchIdCache.getIds(applicationAutomation, "Application", "ActiveSheet");	
 		if (worksheetIds == null){			
 			System.out.println("\"ActiveSheet\" property not found for the given OleAutomation object!");
 			return null;
@@ -236,7 +236,7 @@ public class ApplicationUtils {
 	 */
 	public static  OleAutomation getWorksheetFunctionAutomation(OleAutomation applicationAutomation){
 		
-		int[] wfIds = applicationAutomation.getIDsOfNames(new String[]{"WorksheetFunction"});	
+		int[] wfIds = DispatchIdCache.getIds(applicationAutomation, "Application", "WorksheetFunction");	
 		if (wfIds == null){			
 			System.out.println("\"WorksheetFunction\" property not found for the given Application OleAutomation object!");
 			return null;
@@ -263,7 +263,7 @@ public class ApplicationUtils {
 	 */
 	public static OleAutomation getIntersection(OleAutomation applicationAutomation, OleAutomation range1, OleAutomation range2){
 		
-		int[] intersectMethodIds = applicationAutomation.getIDsOfNames(new String[]{"Intersect"});
+		int[] intersectMethodIds = DispatchIdCache.getIds(applicationAutomation, "Application", "Intersect");
 		if (intersectMethodIds == null){			
 			System.out.println("Could not get the ids of the \"Intersect\" method using the given "
 					+ "Application OleAutomation object! \n"+applicationAutomation.getLastError());
@@ -305,7 +305,7 @@ public class ApplicationUtils {
 	 */
 	public static OleAutomation getUnion(OleAutomation applicationAutomation, OleAutomation range1, OleAutomation range2){
 		
-		int[] unionMethodIds = applicationAutomation.getIDsOfNames(new String[]{"Union"});
+		int[] unionMethodIds = DispatchIdCache.getIds(applicationAutomation, "Application", "Union");
 		if (unionMethodIds == null){			
 			System.out.println("Could not get the ids of the \"Union\" method using the given "
 					+ "Application OleAutomation object! \n"+applicationAutomation.getLastError());
@@ -344,7 +344,7 @@ public class ApplicationUtils {
 	 */
 	public static boolean setDisplayAlerts(OleAutomation applicationAutomation, boolean display){
 		
-		int[] displayAlertsPropertyIds = applicationAutomation.getIDsOfNames(new String[]{"DisplayAlerts"});
+		int[] displayAlertsPropertyIds = DispatchIdCache.getIds(applicationAutomation, "Application", "DisplayAlerts");
 		Variant valueVariant = new Variant(display);
 		boolean isSuccess = applicationAutomation.setProperty(displayAlertsPropertyIds[0], valueVariant);
 		valueVariant.dispose();
@@ -361,7 +361,7 @@ public class ApplicationUtils {
 	 */
 	public static boolean setScreenUpdating(OleAutomation applicationAutomation, boolean update){
 		
-		int[] screenUpdatingPropertyIds = applicationAutomation.getIDsOfNames(new String[]{"ScreenUpdating"});
+		int[] screenUpdatingPropertyIds = DispatchIdCache.getIds(applicationAutomation, "Application", "ScreenUpdating");
 		Variant valueVariant = new Variant(update);
 		boolean isSuccess = applicationAutomation.setProperty(screenUpdatingPropertyIds[0], valueVariant);
 		valueVariant.dispose();
@@ -377,7 +377,7 @@ public class ApplicationUtils {
 	 */
 	public static boolean hideRibbon(OleAutomation application){
 		
-		int[] ee4mIds = application.getIDsOfNames(new String[]{"ExecuteExcel4Macro"});
+		int[] ee4mIds = DispatchIdCache.getIds(application, "Application", "ExecuteExcel4Macro");
 		
 		Variant[] parameters = new Variant[1];
 	    parameters[0] = new Variant("SHOW.TOOLBAR(\"Ribbon\",False)");
@@ -396,7 +396,7 @@ public class ApplicationUtils {
 	
 	
 	public static boolean setVisibilityStatusBar(OleAutomation application, boolean visible){
-		int[] displayStatusBarMethodIds = application.getIDsOfNames(new String[]{"DisplayStatusBar"});
+		int[] displayStatusBarMethodIds = DispatchIdCache.getIds(application, "Application", "DisplayStatusBar");
 		return  application.setProperty(displayStatusBarMethodIds[0], new Variant(visible));
 	}
 	
@@ -411,7 +411,7 @@ public class ApplicationUtils {
 			return false;
 		}
 			
-		int[] quitMethodIds = application.getIDsOfNames(new String[]{"Quit"});
+		int[] quitMethodIds = DispatchIdCache.getIds(application, "Application", "Quit");
 		if (quitMethodIds == null){			
 			System.err.println("\"Quit\" method not found for \"Application\" object!");
 			return false;
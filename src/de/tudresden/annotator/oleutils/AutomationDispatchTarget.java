@@ -0,0 +1,38 @@
+/**
+ * 
+ */
+package de.tudresden.annotator.oleutils;
+
+import org.eclipse.swt.ole.win32.OleAutomation;
+
+/**
+ * Adapts an OleAutomation to the DispatchTarget interface. The interface name is retrieved from the type information of the OLE object.
+ * 
+ * @author Elvis Koci
+ */
+public class AutomationDispatchTarget implements DispatchTarget {
+	
+	/*
+	 * The member id that refers to the type itself, rather than to one of its members (MEMBERID_NIL)
+	 */
+	private static final int MEMBERID_NIL = -1;
+	
+	private final OleAutomation automation;
+	
+	/**
+	 * @param automation an OleAutomation that provides access to an OLE object
+	 */
+	public AutomationDispatchTarget(OleAutomation automation) {
+		this.automation = automation;
+	}
+	
+	@Override
+	public int[] getIDsOfNames(String... names) {
+		return automation.getIDsOfNames(names);
+	}
+	
+	@Override
+	public String getInterfaceName() {
+		return automation.getName(MEMBERID_NIL);
+	}
+}
@@ -25,7 +25,7 @@ public class CharactersUtils {
 		
 		logger.debug("Is character oleautomation null? ".concat(String.valueOf(charactersAutomation==null)));
 		
-		int[] textPropertyIds = charactersAutomation.getIDsOfNames(new String[]{"Text"}); 
+		int[] textPropertyIds = DispatchIdCache.getIds(charactersAutomation, "Characters", "Text"); 
 		if(textPropertyIds==null)
 			logger.error("Could not get id of property \"Text\" for \"Character\" ole object");
 		
@@ -42,7 +42,7 @@ public class CharactersUtils {
 		
 		logger.debug("Is character oleautomation null? ".concat(String.valueOf(charactersAutomation==null)));
 		
-		int[] fontPropertyIds = charactersAutomation.getIDsOfNames(new String[]{"Font"});
+		int[] fontPropertyIds = DispatchIdCache.getIds(charactersAutomation, "Characters", "Font");
 		if(fontPropertyIds==null)
 			logger.error("Could not get id of property \"Font\" for \"Character\" ole object");
 		
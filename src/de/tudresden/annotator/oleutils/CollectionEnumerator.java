@@ -0,0 +1,230 @@
+/**
+ * 
+ */
+package de.tudresden.annotator.oleutils;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.swt.ole.win32.OleAutomation;
+import org.eclipse.swt.ole.win32.Variant;
+import org.eclipse.swt.internal.ole.win32.COM;
+import org.eclipse.swt.internal.ole.win32.GUID;
+import org.eclipse.swt.internal.ole.win32.IEnum;
+import org.eclipse.swt.internal.ole.win32.IUnknown;
+import org.eclipse.swt.internal.win32.OS;
+
+/**
+ * Iterates over the items of an OLE collection (e.g., Worksheets, Shapes, Areas, Rows) using the enumerator of the collection,
+ * i.e., the IEnumVARIANT that is returned by its "_NewEnum" property. The items are fetched in batches, with one call to Next(n)
+ * per batch, instead of one call to "Item" per item. The SWT library does not wrap IEnumVARIANT, thus it is accessed through
+ * the generic IEnum interface, which has the same layout.
+ * If the collection does not provide an enumerator, the items are retrieved one by one using "Item".
+ * The returned items have to be disposed by the caller. The enumerator is released when all the items have been returned,
+ * or when close() is called. Thus, close() has to be called in a finally block, in case the iteration does not reach the end.
+ *
+ * @author Elvis Koci
+ */
+public class CollectionEnumerator implements Iterator<OleAutomation>, Closeable {
+
+	private static final Logger logger = LogManager.getLogger(CollectionEnumerator.class.getName());
+
+	/*
+	 * The dispatch id of the "_NewEnum" property (DISPID_NEWENUM), and the interface id of IEnumVARIANT
+	 */
+	private static final int DISPID_NEWENUM = -4;
+	private static final String IID_IENUMVARIANT = "{00020404-0000-0000-C000-000000000046}";
+
+	/**
+	 * The number of items that are fetched with one call to Next(n), if not specified otherwise
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 64;
+
+	private final OleAutomation collectionAutomation;
+	private final boolean useMethod;
+	private final int batchSize;
+
+	/*
+	 * The enumerator of the collection, and the (native) buffer that receives a batch of items.
+	 * The enumerator is null if it was released, or if the collection does not provide one.
+	 */
+	private IEnum enumVariant;
+	private long pBatch;
+
+	/*
+	 * The items that were fetched, but not yet returned
+	 */
+	private final ArrayDeque<OleAutomation> fetched = new ArrayDeque<OleAutomation>();
+	private boolean isExhausted = false;
+
+	/*
+	 * Used when the items are retrieved with "Item", i.e., the collection does not provide an enumerator
+	 */
+	private int nextIndex = 1;
+	private int count = -1;
+
+
+	/**
+	 * @param collectionAutomation an OleAutomation of an OLE collection
+	 * @param useMethod used only if the collection does not provide an enumerator. See CollectionsUtils.getItemByIndex
+	 */
+	public CollectionEnumerator(OleAutomation collectionAutomation, boolean useMethod){
+		this(collectionAutomation, useMethod, DEFAULT_BATCH_SIZE);
+	}
+
+
+	/**
+	 * @param collectionAutomation an OleAutomation of an OLE collection
+	 * @param useMethod used only if the collection does not provide an enumerator. See CollectionsUtils.getItemByIndex
+	 * @param batchSize the number of items to fetch with one call
+	 */
+	public CollectionEnumerator(OleAutomation collectionAutomation, boolean useMethod, int batchSize){
+		this.collectionAutomation = collectionAutomation;
+		this.useMethod = useMethod;
+		this.batchSize = batchSize > 0 ? batchSize : DEFAULT_BATCH_SIZE;
+
+		if(collectionAutomation==null){
+			isExhausted = true;
+		}else{
+			openEnumerator();
+		}
+	}
+
+
+	@Override
+	public boolean hasNext() {
+		while(fetched.isEmpty() && !isExhausted){
+			if(enumVariant!=null){
+				fetchBatch();
+			}else{
+				fetchByIndex();
+			}
+		}
+		return !fetched.isEmpty();
+	}
+
+
+	@Override
+	public OleAutomation next() {
+		if(!hasNext())
+			throw new NoSuchElementException();
+		return fetched.poll();
+	}
+
+
+	/**
+	 * Release the enumerator, and dispose the items that were fetched but not returned
+	 */
+	@Override
+	public void close(){
+		isExhausted = true;
+		releaseEnumerator();
+
+		OleAutomation item;
+		while((item = fetched.poll())!=null){
+			item.dispose();
+		}
+	}
+
+
+	/**
+	 * Get the enumerator of the collection, via the "_NewEnum" property
+	 */
+	private void openEnumerator(){
+
+		Variant newEnum = null;
+		try {
+			newEnum = collectionAutomation.getProperty(DISPID_NEWENUM);
+			if(newEnum==null)
+				newEnum = collectionAutomation.invoke(DISPID_NEWENUM);
+			if(newEnum==null)
+				return;
+
+			IUnknown unknown = newEnum.getUnknown();
+			GUID iid = new GUID();
+			if(COM.IIDFromString((IID_IENUMVARIANT+"\0").toCharArray(), iid)!=COM.S_OK)
+				return;
+
+			long[] ppvObject = new long[1];
+			if(unknown.QueryInterface(iid, ppvObject)!=COM.S_OK || ppvObject[0]==0)
+				return;
+
+			enumVariant = new IEnum(ppvObject[0]);
+			pBatch = OS.GlobalAlloc(OS.GMEM_FIXED | OS.GMEM_ZEROINIT, batchSize * Variant.sizeof);
+
+		} catch (Throwable e) {
+			// e.g., the internal api of the SWT library has changed. the items are retrieved with "Item"
+			logger.debug("Could not get the enumerator of the collection", e);
+			releaseEnumerator();
+		} finally {
+			if(newEnum!=null)
+				newEnum.dispose();
+		}
+	}
+
+
+	/**
+	 * Fetch the next batch of items from the enumerator
+	 */
+	private void fetchBatch(){
+
+		int[] countFetched = new int[1];
+		int result = enumVariant.Next(batchSize, pBatch, countFetched);
+
+		for (int i = 0; i < countFetched[0]; i++) {
+			long pElement = pBatch + (long) i * Variant.sizeof;
+			Variant itemVariant = Variant.win32_new(pElement);
+			COM.VariantClear(pElement);
+
+			// the items that are not OLE objects are skipped
+			OleAutomation itemAutomation = itemVariant.getAutomation();
+			itemVariant.dispose();
+			if(itemAutomation!=null)
+				fetched.add(itemAutomation);
+		}
+
+		// S_FALSE, i.e., fewer items than requested, marks the end of the collection
+		if(result!=COM.S_OK || countFetched[0] < batchSize){
+			isExhausted = true;
+			releaseEnumerator();
+		}
+	}
+
+
+	/**
+	 * Fetch the next item using "Item". Indices of items that can not be retrieved are skipped.
+	 */
+	private void fetchByIndex(){
+
+		if(count<0)
+			count = CollectionsUtils.countItemsInCollection(collectionAutomation);
+
+		if(nextIndex > count){
+			isExhausted = true;
+			return;
+		}
+
+		OleAutomation itemAutomation = CollectionsUtils.getItemByIndex(collectionAutomation, nextIndex++, useMethod);
+		if(itemAutomation!=null)
+			fetched.add(itemAutomation);
+	}
+
+
+	/**
+	 * Release the enumerator and free the buffer
+	 */
+	private void releaseEnumerator(){
+		if(enumVariant!=null){
+			enumVariant.Release();
+			enumVariant = null;
+		}
+		if(pBatch!=0){
+			OS.GlobalFree(pBatch);
+			pBatch = 0;
+		}
+	}
+}
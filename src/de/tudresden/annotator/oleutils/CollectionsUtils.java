@@ -3,6 +3,7 @@
  */
 package de.tudresden.annotator.oleutils;
 
+
 import org.eclipse.swt.ole.win32.OleAutomation;
 import org.eclipse.swt.ole.win32.Variant;
 
@@ -21,7 +22,7 @@ public class CollectionsUtils {
 	 */
 	public static OleAutomation getItemByName(OleAutomation automation, String itemName, boolean useMethod){
 		
-		int[] itemPropertyIds = automation.getIDsOfNames(new String[]{"Item"});
+		int[] itemPropertyIds = DispatchIdCache.getIdsByTypeInfo(automation, "Item");
 		if(itemPropertyIds == null){
 			System.out.println("Property \"Item\" not found for the give Ole object");
 			return null;
@@ -60,7 +61,7 @@ public class CollectionsUtils {
 	 */
 	public static OleAutomation getItemByIndex(OleAutomation automation, int index, boolean useMethod){
 		
-		int[] itemPropertyIds = automation.getIDsOfNames(new String[]{"Item"});
+		int[] itemPropertyIds = DispatchIdCache.getIdsByTypeInfo(automation, "Item");
 		if(itemPropertyIds == null){
 			if(!useMethod){
 				System.out.println("Property \"Item\" not found for the give Ole object");
@@ -101,7 +102,7 @@ public class CollectionsUtils {
 	 */
 	public static int countItemsInCollection(OleAutomation automation){
 		
-		int[] countProperyIds = automation.getIDsOfNames(new String[]{"Count"});
+		int[] countProperyIds = DispatchIdCache.getIdsByTypeInfo(automation, "Count");
 		if(countProperyIds == null){
 			System.out.println("Property \"Count\" not found for the given OleAutomation object!");
 			return -1;
@@ -118,5 +119,19 @@ public class CollectionsUtils {
 		
 		return count;
 	}
+	
+	
+	/**
+	 * Get the items of an OleAutomation that is (represents) a collection of OLE objects. 
+	 * The items are retrieved in batches through the enumerator of the collection (see CollectionEnumerator), 
+	 * instead of calling "Item" for each index. The items have to be disposed by the caller.
+	 * The returned enumerator has to be closed by the caller in a finally block, so that it is released even if the iteration stops early.
+	 * @param automation an OleAutomation of an OLE collection
+	 * @param useMethod used only if the collection does not provide an enumerator. See getItemByIndex(OleAutomation, int, boolean)
+	 * @return a CollectionEnumerator over the items of the collection
+	 */
+	public static CollectionEnumerator getItems(OleAutomation automation, boolean useMethod){
+		return new CollectionEnumerator(automation, useMethod);
+	}
 
 }
@@ -25,7 +25,7 @@ public class ColorFormatUtils {
 		
 		logger.debug("Is oleautomation null? ".concat(String.valueOf(automation==null)));
 		
-		int[] foreColorPropertyIds = automation.getIDsOfNames(new String[]{"ForeColor"}); 
+		int[] foreColorPropertyIds = DispatchIdCache.getIdsByTypeInfo(automation, "ForeColor"); 
 		
 		if(foreColorPropertyIds==null)	{		
 			logger.error("Could not retrieve id of property \"ForeColor\"");
@@ -36,7 +36,7 @@ public class ColorFormatUtils {
 		logger.debug("Invoking get property \"ForeColor\" returned variant: "+foreColorVariant);
 		OleAutomation foreColorAutomation = foreColorVariant.getAutomation();
 
-		int[] rgbPropertyIds = foreColorAutomation.getIDsOfNames(new String[]{"RGB"}); //alternatively use "SchemeColor" 
+		int[] rgbPropertyIds = DispatchIdCache.getIds(foreColorAutomation, "ColorFormat", "RGB"); //alternatively use "SchemeColor" 
 		if(rgbPropertyIds==null)	{		
 			logger.error("Could not retrieve id of property \"RGB\" for \"ForeColor\" ole object");
 			return false;
@@ -67,7 +67,7 @@ public class ColorFormatUtils {
 	
 		logger.debug("Is oleautomation null? ".concat(String.valueOf(automation==null)));
 		
-		int[] backColorPropertyIds = automation.getIDsOfNames(new String[]{"BackColor"}); 
+		int[] backColorPropertyIds = DispatchIdCache.getIdsByTypeInfo(automation, "BackColor"); 
 		
 		if(backColorPropertyIds==null)	{		
 			logger.error("Could not retrieve id of property \"BackColor\"");
@@ -78,7 +78,7 @@ public class ColorFormatUtils {
 		logger.debug("Invoking get property \"BackColor\" returned variant: "+backColorVariant);
 		OleAutomation backColorAutomation = backColorVariant.getAutomation();
 	
-		int[] rgbPropertyIds = backColorAutomation.getIDsOfNames(new String[]{"RGB"}); //alternatively use "SchemeColor" 
+		int[] rgbPropertyIds = DispatchIdCache.getIds(backColorAutomation, "ColorFormat", "RGB"); //alternatively use "SchemeColor" 
 		if(rgbPropertyIds==null)	{		
 			logger.error("Could not retrieve id of property \"RGB\" for \"BackColor\" ole object");
 			return false;
@@ -20,7 +20,7 @@ public class CommandBarUtils {
 	 */
 	public static OleAutomation getCommandBarByName(OleAutomation application, String commandBarName) {
 		
-		int[] commandBarsPropertyIds = application.getIDsOfNames(new String[]{"CommandBars"});
+		int[] commandBarsPropertyIds = DispatchIdCache.getIds(application, "Application", "CommandBars");
 		if (commandBarsPropertyIds == null) {
 			System.out.println("Property \"CommandBars\" of \"Application\" OLE Object is null!");
 			return null;
@@ -34,7 +34,7 @@ public class CommandBarUtils {
 		OleAutomation commandBarsAutomation = commandBarsVariant.getAutomation();
 		commandBarsVariant.dispose();
 			
-		int[] itemPropertyIds = commandBarsAutomation.getIDsOfNames(new String[]{"Item"});
+		int[] itemPropertyIds = DispatchIdCache.getIds(commandBarsAutomation, "CommandBars", "Item");
 		if(itemPropertyIds == null){
 			System.out.println("Property \"Item\" of \"CommandBars\" OLE object not found!");
 			return null;
@@ -64,7 +64,7 @@ public class CommandBarUtils {
 	 */
 	public static boolean printListOfCommandBars(OleAutomation excelApplication) {
 		
-		int[] commandBarsObjectIds = excelApplication.getIDsOfNames(new String[]{"CommandBars"});
+		int[] commandBarsObjectIds = DispatchIdCache.getIds(excelApplication, "Application", "CommandBars");
 		if (commandBarsObjectIds == null) {
 			System.out.println("Property \"CommandBars\" of \"Application\" OLE Object is null!");
 			return false;
@@ -78,7 +78,7 @@ public class CommandBarUtils {
 		OleAutomation commandBarsAutomation = commandBarsVariant.getAutomation();
 		commandBarsVariant.dispose();
 		
-		int[] countProperyIds = commandBarsAutomation.getIDsOfNames(new String[]{"Count"});
+		int[] countProperyIds = DispatchIdCache.getIds(commandBarsAutomation, "CommandBars", "Count");
 		if(countProperyIds == null){
 			System.out.println("Property \"Count\" of \"CommandBars\" OLE object is null!");
 			return false;
@@ -93,7 +93,7 @@ public class CommandBarUtils {
 		int count = countPropertyVariant.getInt();
 		countPropertyVariant.dispose();
 		
-		int[] itemPropertyIds = commandBarsAutomation.getIDsOfNames(new String[]{"Item"});
+		int[] itemPropertyIds = DispatchIdCache.getIds(commandBarsAutomation, "CommandBars", "Item");
 		if(itemPropertyIds == null){
 			System.out.println("Property \"Item\" of \"CommandBars\" is not found!");
 			return false;
@@ -124,7 +124,7 @@ public class CommandBarUtils {
 	 */
 	public static String getCommandBarName(OleAutomation commandBarAutomation){
 		
-		int[] namePropertyIds = commandBarAutomation.getIDsOfNames(new String[]{"Name"});
+		int[] namePropertyIds = DispatchIdCache.getIds(commandBarAutomation, "CommandBar", "Name");
 		if(namePropertyIds == null){
 			System.out.println("Property \"Name\" of \"CommandBar\" is not found!");
 			return null;
@@ -148,7 +148,7 @@ public class CommandBarUtils {
 	 */
 	public static OleAutomation getCommandBarControls(OleAutomation commandBarAutomation){
 		
-		int[] controlsPropertyIds = commandBarAutomation.getIDsOfNames(new String[]{"Controls"});
+		int[] controlsPropertyIds = DispatchIdCache.getIds(commandBarAutomation, "CommandBar", "Controls");
 		Variant controlsVariant = commandBarAutomation.getProperty(controlsPropertyIds[0]);
 		OleAutomation contolsAutomation = controlsVariant.getAutomation();
 		controlsVariant.dispose();
@@ -166,7 +166,7 @@ public class CommandBarUtils {
 	 */
 	public static boolean setVisibilityOfControls(OleAutomation commandBarControls, boolean visible){
 
-		int[] itemPropertyIds = commandBarControls.getIDsOfNames(new String[]{"Item"});
+		int[] itemPropertyIds = DispatchIdCache.getIds(commandBarControls, "CommandBarControls", "Item");
 	
 		Variant[] parameters = new Variant[1];
 		parameters[0] = new Variant(1);
@@ -176,7 +176,7 @@ public class CommandBarUtils {
 		int i=1;
 		while (controlItemVariant!=null) {			
 			OleAutomation controlItemAutomation = controlItemVariant.getAutomation();
-			int[] visiblePropertyIds = controlItemAutomation.getIDsOfNames(new String[]{"Visible"});
+			int[] visiblePropertyIds = DispatchIdCache.getIdsByTypeInfo(controlItemAutomation, "Visible");
 			controlItemAutomation.setProperty(visiblePropertyIds[0],new Variant(visible));
 			parameters[0] = new Variant(i++);
 			controlItemVariant.dispose();
@@ -194,7 +194,7 @@ public class CommandBarUtils {
 	 */
 	public static boolean deleteControlsTemporary(OleAutomation commandBarContols){
 
-		int[] itemPropertyIds = commandBarContols.getIDsOfNames(new String[]{"Item"});
+		int[] itemPropertyIds = DispatchIdCache.getIds(commandBarContols, "CommandBarControls", "Item");
 	
 		Variant[] itemParams = new Variant[1];
 		itemParams[0] = new Variant(1);
@@ -205,7 +205,7 @@ public class CommandBarUtils {
 		while (controlItemVariant!=null) {			
 			OleAutomation controlItemAutomation = controlItemVariant.getAutomation();
 			
-			int[] deleteMethodIds = controlItemAutomation.getIDsOfNames(new String[]{"Delete"});
+			int[] deleteMethodIds = DispatchIdCache.getIdsByTypeInfo(controlItemAutomation, "Delete");
 			Variant[]  args = new Variant[1];
 			args[0] = new Variant(true);
 			controlItemAutomation.invoke(deleteMethodIds[0],args);
@@ -230,7 +230,7 @@ public class CommandBarUtils {
 	 */
 	public static boolean deleteCustomControlsByTag(OleAutomation commandBarContols, String tag){
 
-		int[] itemPropertyIds = commandBarContols.getIDsOfNames(new String[]{"Item"});
+		int[] itemPropertyIds = DispatchIdCache.getIds(commandBarContols, "CommandBarControls", "Item");
 	
 		Variant[] parameters = new Variant[1];
 		parameters[0] = new Variant(1);
@@ -240,11 +240,11 @@ public class CommandBarUtils {
 		int i=1;
 		while (controlItemVariant!=null) {			
 			OleAutomation controlItemAutomation = controlItemVariant.getAutomation();
-			int[] tagPropertyIds = controlItemAutomation.getIDsOfNames(new String[]{"Tag"});
+			int[] tagPropertyIds = DispatchIdCache.getIdsByTypeInfo(controlItemAutomation, "Tag");
 			Variant tagVariant = controlItemAutomation.getProperty(tagPropertyIds[0]);
 			
 			if(tagVariant.getString().compareToIgnoreCase(tag)==0){
-				int[] deleteMethodIds = controlItemAutomation.getIDsOfNames(new String[]{"Delete"});
+				int[] deleteMethodIds = DispatchIdCache.getIdsByTypeInfo(controlItemAutomation, "Delete");
 				controlItemAutomation.invoke(deleteMethodIds[0]);
 			}
 			tagVariant.dispose();
@@ -271,7 +271,7 @@ public class CommandBarUtils {
 		if(tabsCBAutomation==null)
 			return false;
 			
-		int[] visiblePropertyIds = tabsCBAutomation.getIDsOfNames(new String[]{"Visible"});	
+		int[] visiblePropertyIds = DispatchIdCache.getIds(tabsCBAutomation, "CommandBar", "Visible");	
 		boolean isSuccess = tabsCBAutomation.setProperty(visiblePropertyIds[0], new Variant(visible));
 		return isSuccess;
 	}
@@ -288,7 +288,7 @@ public class CommandBarUtils {
 		if(tabsCBAutomation==null)
 			return false;
 		
-		int[] enabledPropertyIds = tabsCBAutomation.getIDsOfNames(new String[]{"Enabled"});		
+		int[] enabledPropertyIds = DispatchIdCache.getIds(tabsCBAutomation, "CommandBar", "Enabled");		
 		boolean isSuccess = tabsCBAutomation.setProperty(enabledPropertyIds[0], new Variant(enabled));
 		
 		tabsCBAutomation.dispose();
@@ -303,7 +303,7 @@ public class CommandBarUtils {
 	 */
 	public static boolean hideFormulaBar(OleAutomation excelApplication){
 			
-		int[] displayFormulaBarIds = excelApplication.getIDsOfNames(new String[]{"DisplayFormulaBar"});
+		int[] displayFormulaBarIds = DispatchIdCache.getIds(excelApplication, "Application", "DisplayFormulaBar");
 		Boolean isUpdated = excelApplication.setProperty(displayFormulaBarIds[0],new Variant(false));
 		
 		return isUpdated;
@@ -318,7 +318,7 @@ public class CommandBarUtils {
 	 */
 	public static boolean setShowMenuFloaties(OleAutomation excelApplication, boolean option){
 		
-		int[] showMenuFloatiesIds = excelApplication.getIDsOfNames(new String[]{"ShowMenuFloaties"});	
+		int[] showMenuFloatiesIds = DispatchIdCache.getIds(excelApplication, "Application", "ShowMenuFloaties");	
 		if (showMenuFloatiesIds == null){			
 			System.out.println("\"ShowMenuFloaties\" property not found for \"Application\" OLE object!");
 			return false;
@@ -0,0 +1,147 @@
+/**
+ * 
+ */
+package de.tudresden.annotator.oleutils;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.swt.ole.win32.OleAutomation;
+
+/**
+ * Caches the dispatch ids (DISPIDs) of the properties, methods, and named arguments of the OLE objects.
+ * The ids are fixed by the type library of the OLE interface (e.g., Excel "Range"), thus they are looked up
+ * (i.e., getIDsOfNames) only once per interface and tuple of names, and then shared by all the oleutils helpers.
+ *
+ * @author Elvis Koci
+ */
+public class DispatchIdCache {
+
+	/*
+	 * The dispatch ids, keyed by the interface name and the tuple of names that were looked up
+	 */
+	private static final ConcurrentHashMap<DispatchKey, int[]> ids = new ConcurrentHashMap<DispatchKey, int[]>();
+
+
+	/**
+	 * Get the dispatch ids for the given names. The first name is the property or method, the rest (if any)
+	 * are the names of its arguments. The returned array is shared, and must not be modified.
+	 * @param automation an OleAutomation that provides access to an OLE object of the given interface
+	 * @param interfaceName a string that represents the name of the interface of the OLE object (e.g., "Range", "Worksheet")
+	 * @param names the names to look up
+	 * @return an array of integers that represent the dispatch ids, in the same order as the names,
+	 * or null if they could not be retrieved.
+	 */
+	public static int[] getIds(OleAutomation automation, String interfaceName, String... names){
+		return getIds(new AutomationDispatchTarget(automation), interfaceName, names);
+	}
+
+
+	/**
+	 * Get the dispatch ids for the given names, looking them up from the given target only if they are not cached yet. 
+	 * @param target the DispatchTarget that looks up the dispatch ids (i.e., the OLE object of the given interface)
+	 * @param interfaceName a string that represents the name of the interface of the target. If it is null, the ids are not cached.
+	 * @param names the names to look up
+	 * @return an array of integers that represent the dispatch ids, in the same order as the names,
+	 * or null if they could not be retrieved.
+	 * @see #getIds(OleAutomation, String, String...)
+	 */
+	public static int[] getIds(DispatchTarget target, String interfaceName, String... names){
+
+		if(interfaceName==null)
+			return target.getIDsOfNames(names);
+
+		DispatchKey key = new DispatchKey(interfaceName, names);
+		int[] dispIds = ids.get(key);
+		if(dispIds==null){
+			dispIds = target.getIDsOfNames(names);
+			// failed look ups are not cached, thus they are retried the next time
+			if(dispIds!=null)
+				ids.putIfAbsent(key, dispIds);
+		}
+		return dispIds;
+	}
+
+
+	/**
+	 * Get the dispatch ids for the given names, for an OLE object of which the interface is not known in advance
+	 * (e.g., the "Item" of a generic OLE collection). The interface name is retrieved from the type information of the object.
+	 * @param automation an OleAutomation that provides access to an OLE object
+	 * @param names the names to look up
+	 * @return an array of integers that represent the dispatch ids, or null if they could not be retrieved.
+	 * @see #getIds(OleAutomation, String, String...)
+	 */
+	public static int[] getIdsByTypeInfo(OleAutomation automation, String... names){
+		return getIdsByTypeInfo(new AutomationDispatchTarget(automation), names);
+	}
+
+
+	/**
+	 * Get the dispatch ids for the given names, using the interface name of the given target as the key of the cache
+	 * @param target the DispatchTarget that looks up the dispatch ids
+	 * @param names the names to look up
+	 * @return an array of integers that represent the dispatch ids, or null if they could not be retrieved.
+	 * @see #getIds(DispatchTarget, String, String...)
+	 */
+	public static int[] getIdsByTypeInfo(DispatchTarget target, String... names){
+		return getIds(target, target.getInterfaceName(), names);
+	}
+
+
+	/**
+	 * Get the name of the interface of the OLE object, as given by its type information
+	 * @param automation an OleAutomation that provides access to an OLE object
+	 * @return a string that represents the name of the interface, or null if the type information is not available
+	 */
+	public static String getInterfaceName(OleAutomation automation){
+		return new AutomationDispatchTarget(automation).getInterfaceName();
+	}
+
+
+	/**
+	 * Discard all the cached dispatch ids
+	 */
+	public static void clear(){
+		ids.clear();
+	}
+
+
+	/**
+	 * @return the number of cached (interface, names) tuples
+	 */
+	public static int size(){
+		return ids.size();
+	}
+
+
+	/**
+	 * The key of a cache entry, i.e., the interface name and the tuple of names
+	 */
+	private static final class DispatchKey {
+
+		private final String interfaceName;
+		private final String[] names;
+		private final int hash;
+
+		private DispatchKey(String interfaceName, String[] names){
+			this.interfaceName = interfaceName;
+			this.names = names;
+			this.hash = 31 * interfaceName.hashCode() + Arrays.hashCode(names);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof DispatchKey))
+				return false;
+			DispatchKey other = (DispatchKey) obj;
+			return hash == other.hash && interfaceName.equals(other.interfaceName) && Arrays.equals(names, other.names);
+		}
+	}
+}
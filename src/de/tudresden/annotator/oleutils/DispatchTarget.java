@@ -0,0 +1,28 @@
+/**
+ * 
+ */
+package de.tudresden.annotator.oleutils;
+
+/**
+ * An OLE object from which the dispatch ids (DISPIDs) of its members can be looked up. 
+ * It is the seam between the DispatchIdCache and the OLE object, see AutomationDispatchTarget.
+ * 
+ * @author Elvis Koci
+ */
+public interface DispatchTarget {
+	
+	/**
+	 * Look up the dispatch ids for the given names. The first name is the property or method, the rest (if any)
+	 * are the names of its arguments.
+	 * @param names the names to look up
+	 * @return an array of integers that represent the dispatch ids, in the same order as the names, 
+	 * or null if they could not be retrieved.
+	 */
+	public int[] getIDsOfNames(String... names);
+	
+	/**
+	 * @return a string that represents the name of the interface of the OLE object (e.g., "Range", "Worksheet"), 
+	 * or null if it is not available
+	 */
+	public String getInterfaceName();
+}
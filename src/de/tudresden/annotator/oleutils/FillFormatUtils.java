@@ -25,7 +25,7 @@ public class FillFormatUtils {
 		
 		logger.debug("Is FillFormat oleautomation null? ".concat(String.valueOf(fillFormatAutomation==null)));
 		
-		int[] visiblePropertyIds = fillFormatAutomation.getIDsOfNames(new String[]{"Visible"});
+		int[] visiblePropertyIds = DispatchIdCache.getIds(fillFormatAutomation, "FillFormat", "Visible");
 		if(visiblePropertyIds==null)
 			logger.error("Could not get id of property \"Visible\" for \"FillFormat\" ole object");
 		
@@ -50,7 +50,7 @@ public class FillFormatUtils {
 		
 		logger.debug("Is FillFormat oleautomation null? ".concat(String.valueOf(fillFormatAutomation==null)));
 		
-		int[] transparencyPropertyIds = fillFormatAutomation.getIDsOfNames(new String[]{"Transparency"}); 
+		int[] transparencyPropertyIds = DispatchIdCache.getIds(fillFormatAutomation, "FillFormat", "Transparency"); 
 		if(transparencyPropertyIds==null)
 			logger.error("Could not get id of property \"Transparency\" for \"FillFormat\" ole object");
 		
@@ -25,7 +25,7 @@ public class FontUtils {
 		
 		logger.debug("Is Font oleautomation null? ".concat(String.valueOf(fontAutomation==null)));
 		
-		int[] sizePropertyIds = fontAutomation.getIDsOfNames(new String[]{"Size"}); 
+		int[] sizePropertyIds = DispatchIdCache.getIds(fontAutomation, "Font", "Size"); 
 		if(sizePropertyIds==null)
 			logger.error("Could not get id of property \"Size\" for \"Font\" ole object");
 		
@@ -42,7 +42,7 @@ public class FontUtils {
 	public static boolean setBoldFont(OleAutomation fontAutomation, boolean bold){		
 		logger.debug("Is Font oleautomation null? ".concat(String.valueOf(fontAutomation==null)));
 		
-		int[] boldPropertyIds = fontAutomation.getIDsOfNames(new String[]{"Bold"});
+		int[] boldPropertyIds = DispatchIdCache.getIds(fontAutomation, "Font", "Bold");
 		if(boldPropertyIds==null)
 			logger.error("Could not get id of property \"Bold\" for \"Font\" ole object");
 		
@@ -59,7 +59,7 @@ public class FontUtils {
 	public static boolean setFontColor(OleAutomation fontAutomation, long color){	
 		logger.debug("Is Font oleautomation null? ".concat(String.valueOf(fontAutomation==null)));
 		
-		int[] longPropertyIds = fontAutomation.getIDsOfNames(new String[]{"Color"}); 
+		int[] longPropertyIds = DispatchIdCache.getIds(fontAutomation, "Font", "Color"); 
 		if(longPropertyIds==null)
 			logger.error("Could not get id of property \"Color\" for \"Font\" ole object");
 		
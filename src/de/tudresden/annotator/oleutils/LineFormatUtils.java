@@ -25,7 +25,7 @@ public class LineFormatUtils {
 		
 		logger.debug("Is LineFormat oleautomation null? ".concat(String.valueOf(lineFormatAuto==null)));
 		
-		int stylePropertyIds[] = lineFormatAuto.getIDsOfNames(new String[] {"Style"});
+		int stylePropertyIds[] = DispatchIdCache.getIds(lineFormatAuto, "LineFormat", "Style");
 		if(stylePropertyIds==null)
 			logger.error("Could not get id of property \"Style\" for \"LineFormat\" ole object");
 		
@@ -49,7 +49,7 @@ public class LineFormatUtils {
 		
 		logger.debug("Is LineFormat oleautomation null? ".concat(String.valueOf(lineFormatAuto==null)));
 		
-		int weightPropertyIds[] = lineFormatAuto.getIDsOfNames(new String[] {"Weight"});
+		int weightPropertyIds[] = DispatchIdCache.getIds(lineFormatAuto, "LineFormat", "Weight");
 		if(weightPropertyIds==null)
 			logger.error("Could not get id of property \"Weight\" for \"LineFormat\" ole object");
 		
@@ -73,7 +73,7 @@ public class LineFormatUtils {
 		
 		logger.debug("Is LineFormat oleautomation null? ".concat(String.valueOf(lineFormatAuto==null)));
 		
-		int visiblePropertyIds[] = lineFormatAuto.getIDsOfNames(new String[] {"Visible"});
+		int visiblePropertyIds[] = DispatchIdCache.getIds(lineFormatAuto, "LineFormat", "Visible");
 		if(visiblePropertyIds==null)
 			logger.error("Could not get id of property \"Visible\" for \"LineFormat\" ole object");
 		
@@ -98,7 +98,7 @@ public class LineFormatUtils {
 		
 		logger.debug("Is LineFormat oleautomation null? ".concat(String.valueOf(lineFormatAuto==null)));
 		
-		int transparencyPropertyIds[] = lineFormatAuto.getIDsOfNames(new String[] {"Transparency"});
+		int transparencyPropertyIds[] = DispatchIdCache.getIds(lineFormatAuto, "LineFormat", "Transparency");
 		if(transparencyPropertyIds==null)
 			logger.error("Could not get id of property \"Transparency\" for \"LineFormat\" ole object");
 		
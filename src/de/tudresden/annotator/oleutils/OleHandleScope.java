@@ -0,0 +1,107 @@
+/**
+ * 
+ */
+package de.tudresden.annotator.oleutils;
+
+import java.util.ArrayList;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.swt.ole.win32.OleAutomation;
+import org.eclipse.swt.ole.win32.Variant;
+
+/**
+ * Collects the OleAutomation and Variant objects that are created inside a block of code, and disposes them all at once
+ * when the block exits. Each of them holds a reference to a native (COM) object, which is released only when it is disposed.
+ * The intended usage is:
+ * <pre>
+ * OleHandleScope scope = new OleHandleScope();
+ * try {
+ *     OleAutomation cells = scope.add(RangeUtils.getCells(range));
+ *     ...
+ * } finally {
+ *     scope.dispose();
+ * }
+ * </pre>
+ *
+ * @author Elvis Koci
+ */
+public class OleHandleScope {
+
+	private static final Logger logger = LogManager.getLogger(OleHandleScope.class.getName());
+
+	/*
+	 * The OleAutomation and Variant objects in the order they were added
+	 */
+	private final ArrayList<Object> handles = new ArrayList<Object>();
+
+
+	/**
+	 * Add the given OleAutomation to this scope
+	 * @param automation an OleAutomation object, can be null
+	 * @return the given OleAutomation, so that the call can wrap the one that creates it
+	 */
+	public OleAutomation add(OleAutomation automation){
+		if(automation!=null)
+			handles.add(automation);
+		return automation;
+	}
+
+
+	/**
+	 * Add the given Variant to this scope
+	 * @param variant a Variant object, can be null
+	 * @return the given Variant, so that the call can wrap the one that creates it
+	 */
+	public Variant add(Variant variant){
+		if(variant!=null)
+			handles.add(variant);
+		return variant;
+	}
+
+
+	/**
+	 * Remove the given OleAutomation from this scope, without disposing it (e.g., because it is returned to the caller)
+	 * @param automation an OleAutomation that was added to this scope
+	 * @return the given OleAutomation
+	 */
+	public OleAutomation release(OleAutomation automation){
+		for (int i = handles.size()-1; i >= 0; i--) {
+			if(handles.get(i)==automation){
+				handles.remove(i);
+				break;
+			}
+		}
+		return automation;
+	}
+
+
+	/**
+	 * Dispose all the objects in this scope, in the reverse order they were added. The scope can be used again afterwards.
+	 */
+	public void dispose(){
+
+		for (int i = handles.size()-1; i >= 0; i--) {
+			Object handle = handles.get(i);
+			try {
+				if(handle instanceof OleAutomation){
+					((OleAutomation) handle).dispose();
+				}else{
+					((Variant) handle).dispose();
+				}
+			} catch (Exception e) {
+				// continue with the others, so that all of them are released
+				logger.error("Could not dispose the native handle", e);
+			}
+		}
+		handles.clear();
+	}
+
+
+	/**
+	 * @return the number of objects in this scope
+	 */
+	public int size(){
+		return handles.size();
+	}
+}
@@ -8,6 +8,8 @@ import java.util.Arrays;
 import org.eclipse.swt.ole.win32.OleAutomation;
 import org.eclipse.swt.ole.win32.Variant;
 
+import de.tudresden.annotator.annotations.CellRange;
+
 /**
  * @author Elvis Koci
  */
@@ -21,7 +23,7 @@ public class RangeUtils {
 	 */
 	public static String getRangeAddress(OleAutomation rangeAutomation){
 		
-		int[] addressIds = rangeAutomation.getIDsOfNames(new String[]{"Address"}); 
+		int[] addressIds = DispatchIdCache.getIds(rangeAutomation, "Range", "Address"); 
 		Variant addressVariant = rangeAutomation.getProperty(addressIds[0]);	
 		String address = addressVariant.getString();
 		addressVariant.dispose();
@@ -37,7 +39,7 @@ public class RangeUtils {
 	 */
 	public static long countLarge(OleAutomation rangeAutomation){
 		
-		int[] countLargeProperyIds = rangeAutomation.getIDsOfNames(new String[]{"CountLarge"});
+		int[] countLargeProperyIds = DispatchIdCache.getIds(rangeAutomation, "Range", "CountLarge");
 				
 		Variant countLargePropertyVariant =  rangeAutomation.getProperty(countLargeProperyIds[0]);			
 				
@@ -55,7 +57,7 @@ public class RangeUtils {
 	 */
 	public static int count(OleAutomation rangeAutomation){
 		
-		int[] countProperyIds = rangeAutomation.getIDsOfNames(new String[]{"Count"});
+		int[] countProperyIds = DispatchIdCache.getIds(rangeAutomation, "Range", "Count");
 				
 		Variant countPropertyVariant =  rangeAutomation.getProperty(countProperyIds[0]);			
 				
@@ -73,7 +75,7 @@ public class RangeUtils {
 	 */
 	public static OleAutomation getAreas(OleAutomation rangeAutomation){
 		
-		int[] areasPropertyIds = rangeAutomation.getIDsOfNames(new String[]{"Areas"}); 
+		int[] areasPropertyIds = DispatchIdCache.getIds(rangeAutomation, "Range", "Areas"); 
 		Variant areasVariant = rangeAutomation.getProperty(areasPropertyIds[0]);	
 		OleAutomation areasAutomation = areasVariant.getAutomation();
 		areasVariant.dispose();
@@ -89,7 +91,7 @@ public class RangeUtils {
 	 */
 	public static OleAutomation getCells(OleAutomation rangeAutomation){
 		
-		int[] cellsPropertyIds = rangeAutomation.getIDsOfNames(new String[]{"Cells"}); 
+		int[] cellsPropertyIds = DispatchIdCache.getIds(rangeAutomation, "Range", "Cells"); 
 		Variant cellsVariant = rangeAutomation.getProperty(cellsPropertyIds[0]);	
 		OleAutomation cellsAutomation = cellsVariant.getAutomation();
 		cellsVariant.dispose();
@@ -104,7 +106,7 @@ public class RangeUtils {
 	 * @return a string that represents the value of the range
 	 */
 	public static String getValue(OleAutomation rangeAutomation){
-		int[] valuePropertyIds = rangeAutomation.getIDsOfNames(new String[]{"Value"});
+		int[] valuePropertyIds = DispatchIdCache.getIds(rangeAutomation, "Range", "Value");
 		
 		Variant valueVariant =  rangeAutomation.getProperty(valuePropertyIds[0]);
 			
@@ -126,7 +128,7 @@ public class RangeUtils {
 	 */
 	public static boolean setValue(OleAutomation rangeAutomation, String value){
 		
-		int[] valuePropertyIds = rangeAutomation.getIDsOfNames(new String[]{"Value"});
+		int[] valuePropertyIds = DispatchIdCache.getIds(rangeAutomation, "Range", "Value");
 		
 		Variant valueVariant = new Variant(value);
 		boolean isSuccess = rangeAutomation.setProperty(valuePropertyIds[0], valueVariant);
@@ -143,21 +145,104 @@ public class RangeUtils {
 	 */
 	public static String[] getRangeValues(OleAutomation rangeAutomation){
 		
-		OleAutomation cells = RangeUtils.getCells(rangeAutomation);
-		int countCells = CollectionsUtils.countItemsInCollection(cells); 
-		
-		String[] values = new String[countCells];
-		int i = 1; 
-		while(i<=countCells){
-			OleAutomation cellAutomation = CollectionsUtils.getItemByIndex(cells, i, false);
-			values[i-1]= RangeUtils.getValue(cellAutomation);
-			i++;
+		OleHandleScope scope = new OleHandleScope();
+		try {
+			OleAutomation cells = scope.add(RangeUtils.getCells(rangeAutomation));
+			int countCells = CollectionsUtils.countItemsInCollection(cells); 
+			
+			String[] values = new String[countCells];
+			int i = 1; 
+			while(i<=countCells){
+				OleAutomation cellAutomation = scope.add(CollectionsUtils.getItemByIndex(cells, i, false));
+				values[i-1]= RangeUtils.getValue(cellAutomation);
+				i++;
+			}
+			
+			return values;
+		} finally {
+			scope.dispose();
 		}
-		
+	}
+
+
+	/**
+	 * Get the value of each cell in the range, as a 2D array. The values of all the cells are read with a single call,
+	 * i.e., the "Value2" of the range is retrieved as one array. This method assumes single area ranges.
+	 * @param rangeAutomation an OleAutomation to access a Range of cells
+	 * @return a 2D array of strings, indexed by [row][column]. Empty cells have the value "".
+	 */
+	public static String[][] getRangeValues2D(OleAutomation rangeAutomation){
+
+		int[] value2PropertyIds = DispatchIdCache.getIds(rangeAutomation, "Range", "Value2");
+
+		Variant[][] variants = null;
+		if(value2PropertyIds!=null)
+			variants = SafeArrayUtils.getProperty2D(rangeAutomation, value2PropertyIds[0]);
+
+		// fall back to reading the cells one by one
+		if(variants==null){
+			OleAutomation rows = RangeUtils.getRangeRows(rangeAutomation);
+			int countRows = CollectionsUtils.countItemsInCollection(rows);
+			rows.dispose();
+
+			String[] values = RangeUtils.getRangeValues(rangeAutomation);
+			int countColumns = countRows > 0 ? values.length / countRows : 0;
+
+			String[][] values2D = new String[countRows][countColumns];
+			for (int r = 0; r < countRows; r++) {
+				System.arraycopy(values, r * countColumns, values2D[r], 0, countColumns);
+			}
+			return values2D;
+		}
+
+		String[][] values = new String[variants.length][];
+		for (int r = 0; r < variants.length; r++) {
+			values[r] = new String[variants[r].length];
+			for (int c = 0; c < variants[r].length; c++) {
+				Variant valueVariant = variants[r][c];
+				String value = "";
+				if(valueVariant!=null && valueVariant.getType() != 0){
+					value = valueVariant.getString();
+					valueVariant.dispose();
+				}
+				values[r][c] = value;
+			}
+		}
+
 		return values;
 	}
-	
-	
+
+
+	/**
+	 * Set the values of all the cells in the range with a single call, i.e., the given 2D array is assigned to the "Value2" of the range.
+	 * The dimensions of the array have to match the dimensions of the range. This method assumes single area ranges.
+	 * @param rangeAutomation an OleAutomation to access a Range of cells
+	 * @param values a 2D array of values (strings, numbers, booleans, or null for empty), indexed by [row][column]
+	 * @return true if the operation was successful, false otherwise
+	 */
+	public static boolean setRangeValues2D(OleAutomation rangeAutomation, Object[][] values){
+
+		int[] value2PropertyIds = DispatchIdCache.getIds(rangeAutomation, "Range", "Value2");
+		if(value2PropertyIds!=null && SafeArrayUtils.setProperty2D(rangeAutomation, value2PropertyIds[0], values))
+			return true;
+
+		// fall back to writing the cells one by one
+		OleAutomation cells = RangeUtils.getCells(rangeAutomation);
+		boolean isSuccess = true;
+		int i = 1;
+		for (Object[] row : values) {
+			for (Object value : row) {
+				OleAutomation cellAutomation = CollectionsUtils.getItemByIndex(cells, i++, false);
+				isSuccess &= RangeUtils.setValue(cellAutomation, value==null ? "" : String.valueOf(value));
+				cellAutomation.dispose();
+			}
+		}
+		cells.dispose();
+
+		return isSuccess;
+	}
+
+
 	/**
 	 * Get the number of the first column in the first area in the specified range
 	 * @param rangeAutomation an OleAutomation to access a Range of cells
@@ -165,7 +250,7 @@ public class RangeUtils {
 	 */
 	public static int getFirstColumnIndex(OleAutomation rangeAutomation){
 		
-		int[] columnPropertyIds = rangeAutomation.getIDsOfNames(new String[]{"Column"}); 
+		int[] columnPropertyIds = DispatchIdCache.getIds(rangeAutomation, "Range", "Column"); 
 		Variant columnPropertyVariant = rangeAutomation.getProperty(columnPropertyIds[0]);	
 		int column = columnPropertyVariant.getInt();
 		columnPropertyVariant.dispose();
@@ -181,7 +266,7 @@ public class RangeUtils {
 	 */
 	public static OleAutomation getRangeColumns(OleAutomation rangeAutomation){
 				
-		int[] columnsPropertyIds = rangeAutomation.getIDsOfNames(new String[]{"Columns"}); 
+		int[] columnsPropertyIds = DispatchIdCache.getIds(rangeAutomation, "Range", "Columns"); 
 		Variant columnsPropertyVariant = rangeAutomation.getProperty(columnsPropertyIds[0]);	
 		
 		OleAutomation columnsAutomation =  columnsPropertyVariant.getAutomation();
@@ -197,7 +282,7 @@ public class RangeUtils {
 	 */
 	public static OleAutomation getRangeColumn(OleAutomation rangeAutomation, String column){
 				
-		int[] columnsPropertyIds = rangeAutomation.getIDsOfNames(new String[]{"Columns"}); 
+		int[] columnsPropertyIds = DispatchIdCache.getIds(rangeAutomation, "Range", "Columns"); 
 		
 		Variant[] args= new Variant[1];
 		args[0] = new Variant(column);
@@ -219,7 +304,7 @@ public class RangeUtils {
 	 */
 	public static int getFirstRowIndex(OleAutomation rangeAutomation){
 		
-		int[] rowPropertyIds = rangeAutomation.getIDsOfNames(new String[]{"Row"}); 
+		int[] rowPropertyIds = DispatchIdCache.getIds(rangeAutomation, "Range", "Row"); 
 		Variant rowPropertyVariant = rangeAutomation.getProperty(rowPropertyIds[0]);	
 		int row = rowPropertyVariant.getInt();
 		rowPropertyVariant.dispose();
@@ -234,7 +319,7 @@ public class RangeUtils {
 	 */
 	public static OleAutomation getRangeRows(OleAutomation rangeAutomation){
 		
-		int[] rowsPropertyIds = rangeAutomation.getIDsOfNames(new String[]{"Rows"}); 
+		int[] rowsPropertyIds = DispatchIdCache.getIds(rangeAutomation, "Range", "Rows"); 
 		Variant rowsPropertyVariant = rangeAutomation.getProperty(rowsPropertyIds[0]);	
 		OleAutomation rowsAutomation = rowsPropertyVariant.getAutomation();
 		rowsPropertyVariant.dispose();
@@ -250,7 +335,7 @@ public class RangeUtils {
 	 */
 	public static OleAutomation getRangeRow(OleAutomation rangeAutomation, int row){
 		
-		int[] rowsPropertyIds = rangeAutomation.getIDsOfNames(new String[]{"Rows"}); 
+		int[] rowsPropertyIds = DispatchIdCache.getIds(rangeAutomation, "Range", "Rows"); 
 
 		Variant[] args= new Variant[1];
 		args[0] = new Variant(row);
@@ -271,7 +356,7 @@ public class RangeUtils {
 	 */
 	public static void setRangeVisibility(OleAutomation rangeAutomation, boolean visible){
 		
-		int[] hiddenPropertyIds = rangeAutomation.getIDsOfNames(new String[]{"Hidden"});
+		int[] hiddenPropertyIds = DispatchIdCache.getIds(rangeAutomation, "Range", "Hidden");
 		Variant hiddenVariant = new Variant(!visible);
 
 		rangeAutomation.setProperty(hiddenPropertyIds[0], hiddenVariant);
@@ -286,7 +371,7 @@ public class RangeUtils {
 	 */
 	public static double getRangeLeftPosition(OleAutomation rangeAutomation){
 
-		int[] leftPropertyIds = rangeAutomation.getIDsOfNames(new String[]{"Left"});
+		int[] leftPropertyIds = DispatchIdCache.getIds(rangeAutomation, "Range", "Left");
 		Variant leftVariant=rangeAutomation.getProperty(leftPropertyIds[0]);
 		double left = leftVariant.getDouble();
 		leftVariant.dispose();
@@ -301,7 +386,7 @@ public class RangeUtils {
 	 */
 	public static double getRangeTopPosition(OleAutomation rangeAutomation){
 		
-		int[] topPropertyIds = rangeAutomation.getIDsOfNames(new String[]{"Top"});
+		int[] topPropertyIds = DispatchIdCache.getIds(rangeAutomation, "Range", "Top");
 		Variant topVariant=rangeAutomation.getProperty(topPropertyIds[0]);
 		double top = topVariant.getDouble();
 		topVariant.dispose();
@@ -317,7 +402,7 @@ public class RangeUtils {
 	 */
 	public static double getRangeHeight(OleAutomation rangeAutomation){
 		
-		int[] heightPropertyIds = rangeAutomation.getIDsOfNames(new String[]{"Height"});
+		int[] heightPropertyIds = DispatchIdCache.getIds(rangeAutomation, "Range", "Height");
 		Variant heightVariant=rangeAutomation.getProperty(heightPropertyIds[0]);
 		double height = heightVariant.getDouble();
 		heightVariant.dispose();
@@ -333,7 +418,7 @@ public class RangeUtils {
 	 */
 	public static double getRangeWidth(OleAutomation rangeAutomation){
 		
-		int[] widthPropertyIds = rangeAutomation.getIDsOfNames(new String[]{"Width"});
+		int[] widthPropertyIds = DispatchIdCache.getIds(rangeAutomation, "Range", "Width");
 		
 		Variant widthVariant=rangeAutomation.getProperty(widthPropertyIds[0]);
 		double width = widthVariant.getDouble();
@@ -349,7 +434,7 @@ public class RangeUtils {
 	 */
 	public static boolean selectRange(OleAutomation rangeAutomation){
 		
-		int[] selectMethodIds = rangeAutomation.getIDsOfNames(new String[]{"Select"});
+		int[] selectMethodIds = DispatchIdCache.getIds(rangeAutomation, "Range", "Select");
 		Variant result = rangeAutomation.invoke(selectMethodIds[0]);
 		
 		if(result==null)
@@ -369,7 +454,7 @@ public class RangeUtils {
 	 */
 	public static boolean filterRange(OleAutomation rangeAutomation, int field, String criteria1){
 		
-		int[] autoFilterMethodIds = rangeAutomation.getIDsOfNames(new String[]{"AutoFilter", "Field", "Criteria1"});
+		int[] autoFilterMethodIds = DispatchIdCache.getIds(rangeAutomation, "Range", "AutoFilter", "Field", "Criteria1");
 		
 		Variant[] args = new Variant[2];
 		args[0] = new Variant(field);
@@ -398,7 +483,7 @@ public class RangeUtils {
 	 */
 	public static boolean formatCells(OleAutomation rangeAutomation, String format){
 		
-		int[] numberFormatMethodIds = rangeAutomation.getIDsOfNames(new String[]{"NumberFormat"});
+		int[] numberFormatMethodIds = DispatchIdCache.getIds(rangeAutomation, "Range", "NumberFormat");
 		
 		Variant formatVariant = new Variant(format);
 		boolean isSuccess = rangeAutomation.setProperty(numberFormatMethodIds[0], formatVariant);
@@ -415,7 +500,7 @@ public class RangeUtils {
 	 */
 	public static int getMergeCells(OleAutomation rangeAutomation){
 		
-		int[] mergeCellsPropertyIds = rangeAutomation.getIDsOfNames(new String[]{"MergeCells"});
+		int[] mergeCellsPropertyIds = DispatchIdCache.getIds(rangeAutomation, "Range", "MergeCells");
 		
 		Variant result = rangeAutomation.getProperty(mergeCellsPropertyIds[0]);
 				
@@ -440,7 +525,7 @@ public class RangeUtils {
 	 */
 	public static OleAutomation getMergeArea(OleAutomation rangeAutomation){
 		
-		int[] mergeAreaPropertyIds = rangeAutomation.getIDsOfNames(new String[]{"MergeArea"});
+		int[] mergeAreaPropertyIds = DispatchIdCache.getIds(rangeAutomation, "Range", "MergeArea");
 		
 		Variant result = rangeAutomation.getProperty(mergeAreaPropertyIds[0]);
 		
@@ -462,7 +547,7 @@ public class RangeUtils {
 	 */
 	public static int hasFormula(OleAutomation rangeAutomation){
 		
-		int[] hasFormulaPropertyIds = rangeAutomation.getIDsOfNames(new String[]{"HasFormula"});
+		int[] hasFormulaPropertyIds = DispatchIdCache.getIds(rangeAutomation, "Range", "HasFormula");
 		
 		Variant result = rangeAutomation.getProperty(hasFormulaPropertyIds[0]);
 		
@@ -488,7 +573,7 @@ public class RangeUtils {
 	 */
 	public static OleAutomation getSpecialCells(OleAutomation rangeAutomation, int type){
 		
-		int[] specialCellsMethodIds = rangeAutomation.getIDsOfNames(new String[]{"SpecialCells", "Type"});
+		int[] specialCellsMethodIds = DispatchIdCache.getIds(rangeAutomation, "Range", "SpecialCells", "Type");
 		
 		Variant[] args = new Variant[1];
 		args[0] = new Variant(type);
@@ -518,7 +603,7 @@ public class RangeUtils {
 	 */
 	public static boolean  drawBorderAroundRange(OleAutomation rangeAutomation, int lineStyle, double weight, long color){
 		
-		int[] borderAroundMethodIds = rangeAutomation.getIDsOfNames(new String[]{"BorderAround","LineStyle", "Weight", "Color"}); // "ColorIndex" 
+		int[] borderAroundMethodIds = DispatchIdCache.getIds(rangeAutomation, "Range", "BorderAround", "LineStyle", "Weight", "Color"); // "ColorIndex" 
 		Variant methodParams[] = new Variant[3];
 		methodParams[0] = new Variant(lineStyle); // line style (e.g., continuous, dashed ) 
 		methodParams[1] = new Variant(weight); // border weight  (e.g., thick, thin )
@@ -547,7 +632,7 @@ public class RangeUtils {
 	 */
 	public static boolean removeBorderAroundRange(OleAutomation rangeAutomation){
 		 
-		int[] borderAroundMethodIds = rangeAutomation.getIDsOfNames(new String[]{"BorderAround", "LineStyle"});
+		int[] borderAroundMethodIds = DispatchIdCache.getIds(rangeAutomation, "Range", "BorderAround", "LineStyle");
 		Variant methodParams[] = new Variant[1];
 		
 		int xlLineStyleNone = -4142; // no line
@@ -576,7 +661,7 @@ public class RangeUtils {
 	 */
 	public static boolean deleteRange(OleAutomation rangeAutomation){
 		
-		int[] deleteMethodIds = rangeAutomation.getIDsOfNames(new String[]{"Delete"});		
+		int[] deleteMethodIds = DispatchIdCache.getIds(rangeAutomation, "Range", "Delete");		
 		Variant result = rangeAutomation.invoke(deleteMethodIds[0]);
 		
 		if(result == null){
@@ -595,38 +680,7 @@ public class RangeUtils {
 	 * @return true if the first range contains the second range, false otherwise. 
 	 */
 	public static boolean checkForContainment(String rangeAddress1 , String rangeAddress2){
-		
-		String r1Cells[] = rangeAddress1.split(":");
-		String r2Cells[] = rangeAddress2.split(":");
-		
-		String r1TopLeft = null, r1DownRight = null, r2TopLeft = null, r2DownRight = null;	
-		r1TopLeft =  r1Cells[0];
-		if(r1Cells.length == 1){
-			r1DownRight = r1Cells[0];
-		}else{
-			r1DownRight = r1Cells[1];
-		}
-		
-		r2TopLeft = r2Cells[0];	
-		if(r2Cells.length == 1){
-			r2DownRight = r2Cells[0];
-		}else{
-			r2DownRight = r2Cells[1];
-		}
-			
-		int topColComp = compareCellsByColumn(r1TopLeft, r2TopLeft);
-		int topRowComp = compareCellsByRow(r1TopLeft, r2TopLeft);
-			
-		int downColComp = compareCellsByColumn(r1DownRight, r2DownRight);
-		int downRowComp = compareCellsByRow(r1DownRight, r2DownRight);
-				
-		boolean downRightCellContained =  topColComp<=0 && topRowComp<=0;
-		boolean topLeftCellContained = downColComp>=0 && downRowComp>=0; 
-		
-		if(downRightCellContained && topLeftCellContained)
-			return true;
-		
-		return false;
+		return CellRange.parse(rangeAddress1).contains(CellRange.parse(rangeAddress2));
 	}
 	
 	
@@ -638,38 +692,7 @@ public class RangeUtils {
 	 * @return true if the first range shares cells with the second range, false otherwise. 
 	 */
 	public static boolean checkForPartialContainment(String rangeAddress1 , String rangeAddress2){
-		
-		String r1Cells[] = rangeAddress1.split(":");
-		String r2Cells[] = rangeAddress2.split(":");
-		
-		String r1TopLeft = null, r1DownRight = null, r2TopLeft = null, r2DownRight = null;	
-		r1TopLeft =  r1Cells[0];	
-		if(r1Cells.length == 1){
-			r1DownRight = r1Cells[0];
-		}else{
-			r1DownRight = r1Cells[1];
-		}
-		
-		r2TopLeft = r2Cells[0];	
-		if(r2Cells.length == 1){
-			r2DownRight = r2Cells[0];
-		}else{
-			r2DownRight = r2Cells[1];
-		}
-					
-		int topDownColComp = compareCellsByColumn(r1TopLeft, r2DownRight);
-		int topDownRowComp = compareCellsByRow(r1TopLeft, r2DownRight);
-		
-		int downTopColComp = compareCellsByColumn(r1DownRight, r2TopLeft);
-		int downTopRowComp = compareCellsByRow(r1DownRight, r2TopLeft);
-		
-		boolean rowsNotItersecting =  downTopRowComp<0 || topDownRowComp>0; 
-		boolean colsNotIntersecting =  downTopColComp<0 || topDownColComp>0; 
-		
-		if(!(rowsNotItersecting || colsNotIntersecting))
-			return true;
-		
-		return false; 
+		return CellRange.parse(rangeAddress1).intersects(CellRange.parse(rangeAddress2));
 	}
 	
 	/**
@@ -682,16 +705,10 @@ public class RangeUtils {
 	 */
 	public static int compareCellsByColumn(String cell1Address, String cell2Address){
 		
-		String col1 =  cell1Address.replaceAll("[0-9\\$]+","");
-		String col2 =  cell2Address.replaceAll("[0-9\\$]+","");
+		int col1 =  CellRange.getColumnIndex(cell1Address);
+		int col2 =  CellRange.getColumnIndex(cell2Address);
 		
-		if(col1.length()>col2.length())
-			return 1;
-		
-		if(col1.length()<col2.length())
-			return -1;
-			
-		return col1.compareTo(col2);
+		return col1 - col2;
 	}
 	
 	/**
@@ -704,8 +721,8 @@ public class RangeUtils {
 	 */
 	public static int compareCellsByRow(String cell1Address, String cell2Address){
 		
-		int row1 =  Integer.valueOf(cell1Address.replaceAll("[^0-9]+",""));
-		int row2 =  Integer.valueOf(cell2Address.replaceAll("[^0-9]+",""));
+		int row1 =  CellRange.getRowIndex(cell1Address);
+		int row2 =  CellRange.getRowIndex(cell2Address);
 				
 		return row1 - row2;
 	}
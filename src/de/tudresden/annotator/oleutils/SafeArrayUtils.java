@@ -0,0 +1,321 @@
+/**
+ * 
+ */
+package de.tudresden.annotator.oleutils;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.swt.ole.win32.OLE;
+import org.eclipse.swt.ole.win32.OleAutomation;
+import org.eclipse.swt.ole.win32.Variant;
+import org.eclipse.swt.internal.C;
+import org.eclipse.swt.internal.ole.win32.COM;
+import org.eclipse.swt.internal.ole.win32.DISPPARAMS;
+import org.eclipse.swt.internal.ole.win32.GUID;
+import org.eclipse.swt.internal.ole.win32.IDispatch;
+import org.eclipse.swt.internal.win32.OS;
+
+/**
+ * Reads and writes OLE properties that take a SAFEARRAY (e.g., the "Value2" of a multi-cell Range), 
+ * and invokes OLE methods that take a SAFEARRAY argument (e.g., the "Range" of a Shapes collection).
+ * The SWT Variant does not support arrays, thus these properties are accessed by calling IDispatch::Invoke directly.
+ * The elements of the array are decoded from, or encoded into, Variant objects one by one.
+ *
+ * @author Elvis Koci
+ */
+public class SafeArrayUtils {
+
+	private static final Logger logger = LogManager.getLogger(SafeArrayUtils.class.getName());
+
+	/*
+	 * The offset of the data (e.g., the pointer to the SAFEARRAY) in a VARIANT structure
+	 */
+	private static final int VARIANT_DATA_OFFSET = 8;
+
+	/*
+	 * The offsets of the fields of the SAFEARRAY structure (cDims, fFeatures, cbElements, pvData, rgsabound)
+	 */
+	private static final int SAFEARRAY_CDIMS_OFFSET = 0;
+	private static final int SAFEARRAY_FFEATURES_OFFSET = 2;
+	private static final int SAFEARRAY_CBELEMENTS_OFFSET = 4;
+	private static final int SAFEARRAY_PVDATA_OFFSET = C.PTR_SIZEOF==8 ? 16 : 12;
+	private static final int SAFEARRAY_RGSABOUND_OFFSET = SAFEARRAY_PVDATA_OFFSET + C.PTR_SIZEOF;
+
+	/*
+	 * The features of the SAFEARRAYs that are created here: the elements are VARIANTs, and
+	 * the memory is allocated (and released) by this class, rather than by the SafeArray api
+	 * (FADF_VARIANT | FADF_FIXEDSIZE | FADF_STATIC)
+	 */
+	private static final short SAFEARRAY_FEATURES = 0x0800 | 0x0010 | 0x0002;
+
+
+	/**
+	 * Get the value of a property that is returned as a 2D array (e.g., the "Value2" of a Range).
+	 * A property that returns a single value (e.g., the "Value2" of a single cell range) is returned as a 1x1 array.
+	 * @param automation an OleAutomation that provides access to the OLE object
+	 * @param dispId the dispatch id of the property
+	 * @return a 2D array of variants, indexed by [row][column]. The caller has to dispose them.
+	 * Null if the property could not be retrieved or decoded.
+	 */
+	public static Variant[][] getProperty2D(OleAutomation automation, int dispId){
+
+		long pVarResult = 0;
+		try {
+			// the variant does not take ownership of the dispatch, thus it is not disposed
+			IDispatch dispatch = new Variant(automation).getDispatch();
+
+			pVarResult = OS.GlobalAlloc(OS.GMEM_FIXED | OS.GMEM_ZEROINIT, Variant.sizeof);
+			int result = dispatch.Invoke(dispId, new GUID(), COM.LOCALE_USER_DEFAULT, COM.DISPATCH_PROPERTYGET,
+															new DISPPARAMS(), pVarResult, null, null);
+			if(result!=COM.S_OK){
+				logger.error("Could not get the property with id "+dispId+". The error code is "+result);
+				return null;
+			}
+
+			short[] type = new short[1];
+			OS.MoveMemory(type, pVarResult, 2);
+
+			if((type[0] & OLE.VT_ARRAY) == 0){
+				return new Variant[][]{{Variant.win32_new(pVarResult)}};
+			}
+
+			if(type[0] != (OLE.VT_ARRAY | OLE.VT_VARIANT)){
+				logger.error("Arrays of type "+(type[0] & ~OLE.VT_ARRAY)+" are not supported");
+				return null;
+			}
+
+			long[] pSafeArray = new long[1];
+			OS.MoveMemory(pSafeArray, pVarResult + VARIANT_DATA_OFFSET, C.PTR_SIZEOF);
+			return readArray2D(pSafeArray[0]);
+
+		} catch (Throwable e) {
+			// e.g., the internal api of the SWT library has changed
+			logger.error("Could not read the property with id "+dispId+" as an array", e);
+			return null;
+		} finally {
+			if(pVarResult!=0){
+				COM.VariantClear(pVarResult);
+				OS.GlobalFree(pVarResult);
+			}
+		}
+	}
+
+
+	/**
+	 * Decode the elements of a 2D SAFEARRAY of VARIANTs
+	 * @param pSafeArray a pointer to the SAFEARRAY
+	 * @return a 2D array of variants, indexed by [row][column], or null if the SAFEARRAY is not 2D
+	 */
+	private static Variant[][] readArray2D(long pSafeArray){
+
+		short[] dims = new short[1];
+		OS.MoveMemory(dims, pSafeArray + SAFEARRAY_CDIMS_OFFSET, 2);
+		if(dims[0]!=2){
+			logger.error("Expected a 2D array. The array has "+dims[0]+" dimensions");
+			return null;
+		}
+
+		int[] elementSize = new int[1];
+		OS.MoveMemory(elementSize, pSafeArray + SAFEARRAY_CBELEMENTS_OFFSET, 4);
+
+		long[] pData = new long[1];
+		OS.MoveMemory(pData, pSafeArray + SAFEARRAY_PVDATA_OFFSET, C.PTR_SIZEOF);
+
+		// the bounds are stored in reverse order, i.e., the columns come first. each bound is {cElements, lLbound}
+		int[] bounds = new int[4];
+		OS.MoveMemory(bounds, pSafeArray + SAFEARRAY_RGSABOUND_OFFSET, 16);
+		int columns = bounds[0];
+		int rows = bounds[2];
+
+		// the elements are stored in column-major order
+		Variant[][] values = new Variant[rows][columns];
+		for (int c = 0; c < columns; c++) {
+			for (int r = 0; r < rows; r++) {
+				long pElement = pData[0] + ((long) c * rows + r) * elementSize[0];
+				values[r][c] = Variant.win32_new(pElement);
+			}
+		}
+		return values;
+	}
+
+
+	/**
+	 * Set the value of a property that accepts a 2D array (e.g., the "Value2" of a Range).
+	 * The elements can be strings, numbers, booleans, or null (i.e., empty).
+	 * @param automation an OleAutomation that provides access to the OLE object
+	 * @param dispId the dispatch id of the property
+	 * @param values a 2D array of values, indexed by [row][column]. All the rows have to be of the same length.
+	 * @return true if the operation was successful, false otherwise
+	 */
+	public static boolean setProperty2D(OleAutomation automation, int dispId, Object[][] values){
+
+		int rows = values.length;
+		int columns = rows > 0 ? values[0].length : 0;
+		if(rows==0 || columns==0)
+			return true;
+
+		long pSafeArray = 0, pData = 0, pArgument = 0, pNamedArgument = 0;
+		try {
+			// the variant does not take ownership of the dispatch, thus it is not disposed
+			IDispatch dispatch = new Variant(automation).getDispatch();
+
+			// encode the elements in column-major order
+			pData = OS.GlobalAlloc(OS.GMEM_FIXED | OS.GMEM_ZEROINIT, rows * columns * Variant.sizeof);
+			for (int c = 0; c < columns; c++) {
+				for (int r = 0; r < rows; r++) {
+					Variant element = toVariant(values[r][c]);
+					if(element!=null){
+						Variant.win32_copy(pData + ((long) c * rows + r) * Variant.sizeof, element);
+						element.dispose();
+					}
+				}
+			}
+
+			// the bounds are stored in reverse order, i.e., the columns come first. each bound is {cElements, lLbound}
+			pSafeArray = OS.GlobalAlloc(OS.GMEM_FIXED | OS.GMEM_ZEROINIT, SAFEARRAY_RGSABOUND_OFFSET + 16);
+			OS.MoveMemory(pSafeArray + SAFEARRAY_CDIMS_OFFSET, new short[]{2}, 2);
+			OS.MoveMemory(pSafeArray + SAFEARRAY_FFEATURES_OFFSET, new short[]{SAFEARRAY_FEATURES}, 2);
+			OS.MoveMemory(pSafeArray + SAFEARRAY_CBELEMENTS_OFFSET, new int[]{Variant.sizeof}, 4);
+			OS.MoveMemory(pSafeArray + SAFEARRAY_PVDATA_OFFSET, new long[]{pData}, C.PTR_SIZEOF);
+			OS.MoveMemory(pSafeArray + SAFEARRAY_RGSABOUND_OFFSET, new int[]{columns, 0, rows, 0}, 16);
+
+			// the argument is a VARIANT that refers to the SAFEARRAY
+			pArgument = OS.GlobalAlloc(OS.GMEM_FIXED | OS.GMEM_ZEROINIT, Variant.sizeof);
+			OS.MoveMemory(pArgument, new short[]{(short) (OLE.VT_ARRAY | OLE.VT_VARIANT)}, 2);
+			OS.MoveMemory(pArgument + VARIANT_DATA_OFFSET, new long[]{pSafeArray}, C.PTR_SIZEOF);
+
+			pNamedArgument = OS.GlobalAlloc(OS.GMEM_FIXED | OS.GMEM_ZEROINIT, 4);
+			OS.MoveMemory(pNamedArgument, new int[]{COM.DISPID_PROPERTYPUT}, 4);
+
+			DISPPARAMS dispParams = new DISPPARAMS();
+			dispParams.cArgs = 1;
+			dispParams.rgvarg = pArgument;
+			dispParams.cNamedArgs = 1;
+			dispParams.rgdispidNamedArgs = pNamedArgument;
+
+			int result = dispatch.Invoke(dispId, new GUID(), COM.LOCALE_USER_DEFAULT, COM.DISPATCH_PROPERTYPUT,
+															dispParams, 0, null, null);
+			if(result!=COM.S_OK){
+				logger.error("Could not set the property with id "+dispId+". The error code is "+result);
+				return false;
+			}
+			return true;
+
+		} catch (Throwable e) {
+			// e.g., the internal api of the SWT library has changed
+			logger.error("Could not set the property with id "+dispId+" as an array", e);
+			return false;
+		} finally {
+			// the SAFEARRAY and the argument are not cleared, as their memory is not owned by the SafeArray api
+			if(pData!=0){
+				for (long i = 0; i < (long) rows * columns; i++) {
+					COM.VariantClear(pData + i * Variant.sizeof);
+				}
+				OS.GlobalFree(pData);
+			}
+			if(pSafeArray!=0)
+				OS.GlobalFree(pSafeArray);
+			if(pArgument!=0)
+				OS.GlobalFree(pArgument);
+			if(pNamedArgument!=0)
+				OS.GlobalFree(pNamedArgument);
+		}
+	}
+
+
+	/**
+	 * Invoke a method (or get a parameterized property) that takes a 1D array as its only argument
+	 * (e.g., the "Range" of a Shapes collection, which takes an array of shape names).
+	 * The elements can be strings, numbers, booleans, or null (i.e., empty).
+	 * @param automation an OleAutomation that provides access to the OLE object
+	 * @param dispId the dispatch id of the method
+	 * @param values a 1D array of values
+	 * @return the Variant that is returned by the method, or null if the invocation failed. The caller has to dispose it.
+	 */
+	public static Variant invoke1D(OleAutomation automation, int dispId, Object[] values){
+
+		int count = values.length;
+		long pSafeArray = 0, pData = 0, pArgument = 0, pVarResult = 0;
+		try {
+			// the variant does not take ownership of the dispatch, thus it is not disposed
+			IDispatch dispatch = new Variant(automation).getDispatch();
+
+			pData = OS.GlobalAlloc(OS.GMEM_FIXED | OS.GMEM_ZEROINIT, Math.max(count, 1) * Variant.sizeof);
+			for (int i = 0; i < count; i++) {
+				Variant element = toVariant(values[i]);
+				if(element!=null){
+					Variant.win32_copy(pData + (long) i * Variant.sizeof, element);
+					element.dispose();
+				}
+			}
+
+			// the bound is {cElements, lLbound}
+			pSafeArray = OS.GlobalAlloc(OS.GMEM_FIXED | OS.GMEM_ZEROINIT, SAFEARRAY_RGSABOUND_OFFSET + 8);
+			OS.MoveMemory(pSafeArray + SAFEARRAY_CDIMS_OFFSET, new short[]{1}, 2);
+			OS.MoveMemory(pSafeArray + SAFEARRAY_FFEATURES_OFFSET, new short[]{SAFEARRAY_FEATURES}, 2);
+			OS.MoveMemory(pSafeArray + SAFEARRAY_CBELEMENTS_OFFSET, new int[]{Variant.sizeof}, 4);
+			OS.MoveMemory(pSafeArray + SAFEARRAY_PVDATA_OFFSET, new long[]{pData}, C.PTR_SIZEOF);
+			OS.MoveMemory(pSafeArray + SAFEARRAY_RGSABOUND_OFFSET, new int[]{count, 0}, 8);
+
+			// the argument is a VARIANT that refers to the SAFEARRAY
+			pArgument = OS.GlobalAlloc(OS.GMEM_FIXED | OS.GMEM_ZEROINIT, Variant.sizeof);
+			OS.MoveMemory(pArgument, new short[]{(short) (OLE.VT_ARRAY | OLE.VT_VARIANT)}, 2);
+			OS.MoveMemory(pArgument + VARIANT_DATA_OFFSET, new long[]{pSafeArray}, C.PTR_SIZEOF);
+
+			DISPPARAMS dispParams = new DISPPARAMS();
+			dispParams.cArgs = 1;
+			dispParams.rgvarg = pArgument;
+
+			pVarResult = OS.GlobalAlloc(OS.GMEM_FIXED | OS.GMEM_ZEROINIT, Variant.sizeof);
+			int result = dispatch.Invoke(dispId, new GUID(), COM.LOCALE_USER_DEFAULT, COM.DISPATCH_METHOD | COM.DISPATCH_PROPERTYGET,
+																dispParams, pVarResult, null, null);
+			if(result!=COM.S_OK){
+				logger.error("Could not invoke the method with id "+dispId+". The error code is "+result);
+				return null;
+			}
+			return Variant.win32_new(pVarResult);
+
+		} catch (Throwable e) {
+			// e.g., the internal api of the SWT library has changed
+			logger.error("Could not invoke the method with id "+dispId+" with an array argument", e);
+			return null;
+		} finally {
+			// the SAFEARRAY and the argument are not cleared, as their memory is not owned by the SafeArray api
+			if(pData!=0){
+				for (long i = 0; i < count; i++) {
+					COM.VariantClear(pData + i * Variant.sizeof);
+				}
+				OS.GlobalFree(pData);
+			}
+			if(pSafeArray!=0)
+				OS.GlobalFree(pSafeArray);
+			if(pArgument!=0)
+				OS.GlobalFree(pArgument);
+			if(pVarResult!=0){
+				COM.VariantClear(pVarResult);
+				OS.GlobalFree(pVarResult);
+			}
+		}
+	}
+
+
+	/**
+	 * Convert the given value to a Variant
+	 * @param value a String, Integer, Long, Double (or other Number), or Boolean object
+	 * @return a Variant that holds the value, or null if the value is null (i.e., empty)
+	 */
+	private static Variant toVariant(Object value){
+
+		if(value==null)
+			return null;
+		if(value instanceof Boolean)
+			return new Variant(((Boolean) value).booleanValue());
+		if(value instanceof Integer || value instanceof Short)
+			return new Variant(((Number) value).intValue());
+		if(value instanceof Long)
+			return new Variant(((Long) value).longValue());
+		if(value instanceof Number)
+			return new Variant(((Number) value).doubleValue());
+		return new Variant(value.toString());
+	}
+}
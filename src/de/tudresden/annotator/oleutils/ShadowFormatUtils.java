@@ -19,7 +19,7 @@ public class ShadowFormatUtils {
 	 */	
 	public static boolean setShadowSize(OleAutomation shadowAutomation, int size ){
 		
-		int sizePropertyIds[] = shadowAutomation.getIDsOfNames(new String[] {"Size"});
+		int sizePropertyIds[] = DispatchIdCache.getIds(shadowAutomation, "ShadowFormat", "Size");
 		Variant sizeVariant = new Variant(size); 
 		boolean isSuccess = shadowAutomation.setProperty(sizePropertyIds[0], sizeVariant);
 		sizeVariant.dispose();
@@ -35,7 +35,7 @@ public class ShadowFormatUtils {
 	 */	
 	public static boolean setShadowOffsetX(OleAutomation shadowAutomation, int offsetX ){
 		
-		int offsetXPropertyIds[] = shadowAutomation.getIDsOfNames(new String[] {"OffsetX"});
+		int offsetXPropertyIds[] = DispatchIdCache.getIds(shadowAutomation, "ShadowFormat", "OffsetX");
 		Variant offsetXVariant = new Variant(offsetX); 
 		boolean isSuccess = shadowAutomation.setProperty(offsetXPropertyIds[0], offsetXVariant);
 		offsetXVariant.dispose();
@@ -51,7 +51,7 @@ public class ShadowFormatUtils {
 	 */	
 	public static boolean setShadowOffsetY(OleAutomation shadowAutomation, int offsetY ){
 		
-		int offsetYPropertyIds[] = shadowAutomation.getIDsOfNames(new String[] {"OffsetY"});
+		int offsetYPropertyIds[] = DispatchIdCache.getIds(shadowAutomation, "ShadowFormat", "OffsetY");
 		Variant offsetYVariant = new Variant(offsetY); 
 		boolean isSuccess = shadowAutomation.setProperty(offsetYPropertyIds[0], offsetYVariant);
 		offsetYVariant.dispose();
@@ -68,7 +68,7 @@ public class ShadowFormatUtils {
 	 */	
 	public static boolean setShadowStyle(OleAutomation shadowAutomation, int style ){
 		
-		int stylePropertyIds[] = shadowAutomation.getIDsOfNames(new String[] {"Style"});
+		int stylePropertyIds[] = DispatchIdCache.getIds(shadowAutomation, "ShadowFormat", "Style");
 		Variant styleVariant = new Variant(style); 
 		boolean isSuccess = shadowAutomation.setProperty(stylePropertyIds[0], styleVariant);
 		styleVariant.dispose();
@@ -85,7 +85,7 @@ public class ShadowFormatUtils {
 	 */	
 	public static boolean setShadowType(OleAutomation shadowAutomation, int type ){
 		
-		int typePropertyIds[] = shadowAutomation.getIDsOfNames(new String[] {"Type"});
+		int typePropertyIds[] = DispatchIdCache.getIds(shadowAutomation, "ShadowFormat", "Type");
 		Variant typeVariant = new Variant(type); 
 		boolean isSuccess = shadowAutomation.setProperty(typePropertyIds[0], typeVariant);
 		typeVariant.dispose();
@@ -102,7 +102,7 @@ public class ShadowFormatUtils {
 	 */	
 	public static boolean setShadowBlur(OleAutomation shadowAutomation, int blur ){
 		
-		int blurPropertyIds[] = shadowAutomation.getIDsOfNames(new String[] {"Blur"});
+		int blurPropertyIds[] = DispatchIdCache.getIds(shadowAutomation, "ShadowFormat", "Blur");
 		Variant blurVariant = new Variant(blur); 
 		boolean isSuccess = shadowAutomation.setProperty(blurPropertyIds[0], blurVariant);
 		blurVariant.dispose();
@@ -119,7 +119,7 @@ public class ShadowFormatUtils {
 	 */	
 	public static boolean setShadowTransparency(OleAutomation shadowAutomation, double transparency ){
 		
-		int transparencyPropertyIds[] = shadowAutomation.getIDsOfNames(new String[] {"Transparency"});
+		int transparencyPropertyIds[] = DispatchIdCache.getIds(shadowAutomation, "ShadowFormat", "Transparency");
 		Variant transparencyVariant = new Variant(transparency); 
 		boolean isSuccess = shadowAutomation.setProperty(transparencyPropertyIds[0], transparencyVariant);
 		transparencyVariant.dispose();
@@ -136,7 +136,7 @@ public class ShadowFormatUtils {
 	 */	
 	public static boolean setShadowVisibility(OleAutomation shadowAutomation, boolean visible ){
 		
-		int visiblePropertyIds[] = shadowAutomation.getIDsOfNames(new String[] {"Visible"});
+		int visiblePropertyIds[] = DispatchIdCache.getIds(shadowAutomation, "ShadowFormat", "Visible");
 		Variant visibleVariant = new Variant(visible); 
 		boolean isSuccess = shadowAutomation.setProperty(visiblePropertyIds[0], visibleVariant);
 		visibleVariant.dispose();
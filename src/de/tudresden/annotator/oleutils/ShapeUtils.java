@@ -28,7 +28,7 @@ public class ShapeUtils {
 		
 		logger.debug("Is Shapes OleAutomation null? ".concat(String.valueOf(shapesAutomation==null)));
 		
-		int[] addTextboxMethodIds = shapesAutomation.getIDsOfNames(new String[]{"AddTextbox", "Orientation", "Left", "Top", "Width", "Height"}); 
+		int[] addTextboxMethodIds = DispatchIdCache.getIds(shapesAutomation, "Shapes", "AddTextbox", "Orientation", "Left", "Top", "Width", "Height"); 
 		if(addTextboxMethodIds==null)
 			logger.error("Could not get ids of the method \"AddTextbox\" for the \"Shapes\" ole object");
 				
@@ -72,7 +72,7 @@ public class ShapeUtils {
 		
 		logger.debug("Is Shapes OleAutomation null? ".concat(String.valueOf(shapesAutomation==null)));
 		
-		int[] addShapeMethodIds = shapesAutomation.getIDsOfNames(new String[]{"AddShape", "Type", "Left", "Top", "Width", "Height"}); 
+		int[] addShapeMethodIds = DispatchIdCache.getIds(shapesAutomation, "Shapes", "AddShape", "Type", "Left", "Top", "Width", "Height"); 
 		if(addShapeMethodIds==null)
 			logger.error("Could not get ids of the method \"AddShape\" for the \"Shapes\" ole object");
 		
@@ -111,7 +111,7 @@ public class ShapeUtils {
 		
 		logger.debug("Is Shape OleAutomation null? ".concat(String.valueOf(shapeAutomation==null)));
 		
-		int[] titlePropertyIds = shapeAutomation.getIDsOfNames(new String[]{"Title"}); 
+		int[] titlePropertyIds = DispatchIdCache.getIds(shapeAutomation, "Shape", "Title"); 
 		
 		if(titlePropertyIds==null)
 			logger.error("Could not get id of property \"Title\" for \"Shape\" ole object");
@@ -136,7 +136,7 @@ public class ShapeUtils {
 		
 		logger.debug("Is Shape OleAutomation null? ".concat(String.valueOf(shapeAutomation==null)));
 		
-		int[] titlePropertyIds = shapeAutomation.getIDsOfNames(new String[]{"Title"}); 
+		int[] titlePropertyIds = DispatchIdCache.getIds(shapeAutomation, "Shape", "Title"); 
 		if(titlePropertyIds==null)
 			logger.error("Could not get id of property \"Title\" for \"Shape\" ole object");
 		
@@ -161,7 +161,7 @@ public class ShapeUtils {
 		
 		logger.debug("Is Shape OleAutomation null? ".concat(String.valueOf(shapeAutomation==null)));
 		
-		int[] namePropertyIds = shapeAutomation.getIDsOfNames(new String[]{"Name"}); 
+		int[] namePropertyIds = DispatchIdCache.getIds(shapeAutomation, "Shape", "Name"); 
 		if(namePropertyIds==null)
 			logger.error("Could not get id of property \"Name\" for \"Shape\" ole object");
 		
@@ -187,7 +187,7 @@ public class ShapeUtils {
 		
 		logger.debug("Is Shape OleAutomation null? ".concat(String.valueOf(shapeAutomation==null)));
 		
-		int[] namePropertyIds = shapeAutomation.getIDsOfNames(new String[]{"Name"}); 
+		int[] namePropertyIds = DispatchIdCache.getIds(shapeAutomation, "Shape", "Name"); 
 		if(namePropertyIds==null)
 			logger.error("Could not get id of property \"Name\" for \"Shape\" ole object");
 	
@@ -212,7 +212,7 @@ public class ShapeUtils {
 		
 		logger.debug("Is Shape OleAutomation null? ".concat(String.valueOf(shapeAutomation==null)));
 		
-		int[] shapeIdPropertyIds = shapeAutomation.getIDsOfNames(new String[]{"ID"}); 
+		int[] shapeIdPropertyIds = DispatchIdCache.getIds(shapeAutomation, "Shape", "ID"); 
 		if(shapeIdPropertyIds==null)
 			logger.error("Could not get the id of the property \"ID\" for the \"Shape\" ole object");
 		
@@ -234,7 +234,7 @@ public class ShapeUtils {
 		
 		logger.debug("Is Shape OleAutomation null? ".concat(String.valueOf(shapeAutomation==null)));
 		
-		int[] copyMethodIds = shapeAutomation.getIDsOfNames(new String[]{"Copy"}); 
+		int[] copyMethodIds = DispatchIdCache.getIds(shapeAutomation, "Shape", "Copy"); 
 		if(copyMethodIds==null)
 			logger.error("Could not get the ids of the method \"Copy\" for the \"Shape\" ole object");
 		
@@ -260,7 +260,7 @@ public class ShapeUtils {
 		
 		logger.debug("Is Shape OleAutomation null? ".concat(String.valueOf(shapeAutomation==null)));
 		
-		int[] duplicateMethodIds = shapeAutomation.getIDsOfNames(new String[]{"Duplicate"}); 
+		int[] duplicateMethodIds = DispatchIdCache.getIds(shapeAutomation, "Shape", "Duplicate"); 
 		if(duplicateMethodIds==null)
 			logger.error("Could not get the ids of the method \"Duplicate\" for the \"Shape\" ole object");
 		
@@ -286,7 +286,7 @@ public class ShapeUtils {
 		
 		logger.debug("Is Shape OleAutomation null? ".concat(String.valueOf(shapeAutomation==null)));
 		
-		int[] leftPropertyIds = shapeAutomation.getIDsOfNames(new String[]{"Left"});
+		int[] leftPropertyIds = DispatchIdCache.getIds(shapeAutomation, "Shape", "Left");
 		if(leftPropertyIds==null)
 			logger.error("Could not get the id of the property \"Left\" for the \"Shape\" ole object");
 		
@@ -308,7 +308,7 @@ public class ShapeUtils {
 		
 		logger.debug("Is Shape OleAutomation null? ".concat(String.valueOf(shapeAutomation==null)));
 		
-		int[] topPropertyIds = shapeAutomation.getIDsOfNames(new String[]{"Top"});
+		int[] topPropertyIds = DispatchIdCache.getIds(shapeAutomation, "Shape", "Top");
 		if(topPropertyIds==null)
 			logger.error("Could not get the id of the property \"Top\" for the \"Shape\" ole object");
 		
@@ -330,7 +330,7 @@ public class ShapeUtils {
 		
 		logger.debug("Is Shape OleAutomation null? ".concat(String.valueOf(shapeAutomation==null)));
 		
-		int[] heightPropertyIds = shapeAutomation.getIDsOfNames(new String[]{"Height"});
+		int[] heightPropertyIds = DispatchIdCache.getIds(shapeAutomation, "Shape", "Height");
 		if(heightPropertyIds==null)
 			logger.error("Could not get the id of the property \"Height\" for the \"Shape\" ole object");
 		
@@ -353,7 +353,7 @@ public class ShapeUtils {
 		
 		logger.debug("Is Shape OleAutomation null? ".concat(String.valueOf(shapeAutomation==null)));
 		
-		int[] widthPropertyIds = shapeAutomation.getIDsOfNames(new String[]{"Width"});
+		int[] widthPropertyIds = DispatchIdCache.getIds(shapeAutomation, "Shape", "Width");
 		if(widthPropertyIds==null)
 			logger.error("Could not get the id of the property \"Width\" for the \"Shape\" ole object");
 		
@@ -376,7 +376,7 @@ public class ShapeUtils {
 		
 		logger.debug("Is Shape OleAutomation null? ".concat(String.valueOf(shapeAutomation==null)));
 		
-		int[] visiblePropertyIds = shapeAutomation.getIDsOfNames(new String[]{"Visible"});
+		int[] visiblePropertyIds = DispatchIdCache.getIds(shapeAutomation, "Shape", "Visible");
 		if(visiblePropertyIds==null)
 			logger.error("Could not get the id of the property \"Visible\" for the \"Shape\" ole object");
 		
@@ -397,7 +397,7 @@ public class ShapeUtils {
 		
 		logger.debug("Is Shape OleAutomation null? ".concat(String.valueOf(shapeAutomation==null)));
 		
-		int[] fillPropertyIds = shapeAutomation.getIDsOfNames(new String[]{"Fill"}); 
+		int[] fillPropertyIds = DispatchIdCache.getIds(shapeAutomation, "Shape", "Fill"); 
 		if(fillPropertyIds==null)
 			logger.error("Could not get the id of the property \"Fill\" for the \"Shape\" ole object");
 		
@@ -420,7 +420,7 @@ public class ShapeUtils {
 		
 		logger.debug("Is Shape OleAutomation null? ".concat(String.valueOf(shapeAutomation==null)));
 		
-		int[] textFramePropertyIds = shapeAutomation.getIDsOfNames(new String[]{"TextFrame"}); 
+		int[] textFramePropertyIds = DispatchIdCache.getIds(shapeAutomation, "Shape", "TextFrame"); 
 		if(textFramePropertyIds==null)
 			logger.error("Could not get the id of the property \"TextFrame\" for the \"Shape\" ole object");
 
@@ -443,7 +443,7 @@ public class ShapeUtils {
 		
 		logger.debug("Is Shape OleAutomation null? ".concat(String.valueOf(shapeAutomation==null)));
 		
-		int[] lineFormatPropertyIds = shapeAutomation.getIDsOfNames(new String[]{"Line"}); 
+		int[] lineFormatPropertyIds = DispatchIdCache.getIds(shapeAutomation, "Shape", "Line"); 
 		if(lineFormatPropertyIds==null)
 			logger.error("Could not get the id of the property \"Line\" for the \"Shape\" ole object");
 		
@@ -465,7 +465,7 @@ public class ShapeUtils {
 		
 		logger.debug("Is Shape OleAutomation null? ".concat(String.valueOf(shapeAutomation==null)));
 		
-		int[] shadowFormatPropertyIds = shapeAutomation.getIDsOfNames(new String[]{"Shadow"}); 
+		int[] shadowFormatPropertyIds = DispatchIdCache.getIds(shapeAutomation, "Shape", "Shadow"); 
 		if(shadowFormatPropertyIds==null)
 			logger.error("Could not get the id of the property \"Shadow\" for the \"Shape\" ole object");
 		
@@ -486,7 +486,7 @@ public class ShapeUtils {
 		
 		logger.debug("Is Shape OleAutomation null? ".concat(String.valueOf(shapeAutomation==null)));
 		
-		int[] deleteMethodIds = shapeAutomation.getIDsOfNames(new String[]{"Delete"}); 
+		int[] deleteMethodIds = DispatchIdCache.getIds(shapeAutomation, "Shape", "Delete"); 
 		if(deleteMethodIds==null)
 			logger.error("Could not get the ids of the method \"Delete\" for the \"Shape\" ole object");
 		
@@ -500,4 +500,85 @@ public class ShapeUtils {
 		result.dispose();
 		return true;
 	}
+	
+	/**
+	 * Get a subset of the shapes in the collection, that have the given names 
+	 * @param shapesAutomation an OleAutomation that provides access to the "Shapes" Ole object. It represents a collection of shapes.
+	 * @param shapeNames the names of the shapes to include in the range 
+	 * @return an OleAutomation that provides access to the "ShapeRange" Ole object, or null if the range could not be retrieved
+	 * (e.g., one of the names does not exist in the collection)
+	 */
+	public static OleAutomation getShapeRange(OleAutomation shapesAutomation, String[] shapeNames){
+		
+		logger.debug("Is Shapes OleAutomation null? ".concat(String.valueOf(shapesAutomation==null)));
+		
+		int[] rangeMethodIds = DispatchIdCache.getIds(shapesAutomation, "Shapes", "Range"); 
+		if(rangeMethodIds==null){
+			logger.error("Could not get the ids of the method \"Range\" for the \"Shapes\" ole object");
+			return null;
+		}
+		
+		// the names are passed with one call, as an array 
+		Variant result = SafeArrayUtils.invoke1D(shapesAutomation, rangeMethodIds[0], shapeNames);
+		logger.debug("Invoking the method \"Range\" for the \"Shapes\" ole object returned variant: "+result);
+		
+		if(result==null){
+			return null;
+		}
+		
+		OleAutomation shapeRangeAutomation = result.getAutomation();
+		result.dispose();
+		
+		return shapeRangeAutomation;
+	}
+	
+	/**
+	 * Set the visibility of all the shapes in the given range
+	 * @param shapeRangeAutomation an OleAutomation that provides access to the "ShapeRange" Ole object. It represents a subset of shapes.
+	 * @param visible true if the shapes should be shown, false to hide them
+	 * @return if the operation was successful the method will return true, otherwise it will return false
+	 */
+	public static boolean setShapeRangeVisibility(OleAutomation shapeRangeAutomation, boolean visible){
+		
+		logger.debug("Is ShapeRange OleAutomation null? ".concat(String.valueOf(shapeRangeAutomation==null)));
+		
+		int[] visiblePropertyIds = DispatchIdCache.getIds(shapeRangeAutomation, "ShapeRange", "Visible");
+		if(visiblePropertyIds==null){
+			logger.error("Could not get the id of the property \"Visible\" for the \"ShapeRange\" ole object");
+			return false;
+		}
+		
+		Variant visibilityVariant = new Variant(visible);
+		boolean isSuccess = shapeRangeAutomation.setProperty(visiblePropertyIds[0], visibilityVariant);
+		logger.debug("Invoking set property \"Visible\" for the \"ShapeRange\" ole object returned: "+isSuccess);
+		visibilityVariant.dispose();
+		
+		return isSuccess;
+	}
+	
+	/**
+	 * Delete all the shapes in the given range 
+	 * @param shapeRangeAutomation an OleAutomation that provides access to the "ShapeRange" Ole object. It represents a subset of shapes.
+	 * @return true if the shapes were deleted, false otherwise
+	 */
+	public static boolean deleteShapeRange(OleAutomation shapeRangeAutomation){
+		
+		logger.debug("Is ShapeRange OleAutomation null? ".concat(String.valueOf(shapeRangeAutomation==null)));
+		
+		int[] deleteMethodIds = DispatchIdCache.getIds(shapeRangeAutomation, "ShapeRange", "Delete"); 
+		if(deleteMethodIds==null){
+			logger.error("Could not get the ids of the method \"Delete\" for the \"ShapeRange\" ole object");
+			return false;
+		}
+		
+		Variant result = shapeRangeAutomation.invoke(deleteMethodIds[0]);
+		logger.debug("Invoking the method \"Delete\" for the \"ShapeRange\" ole object returned variant: "+result);
+		
+		if(result==null){
+			return false;
+		}
+		
+		result.dispose();
+		return true;
+	}
 }
@@ -25,7 +25,7 @@ public class TextFrameUtils {
 		
 		logger.debug("Is TextFrame oleautomation null? ".concat(String.valueOf(textFrameAutomation==null)));
 		
-		int[] verticalAlignmentPropertyIds = textFrameAutomation.getIDsOfNames(new String[]{"VerticalAlignment"});
+		int[] verticalAlignmentPropertyIds = DispatchIdCache.getIds(textFrameAutomation, "TextFrame", "VerticalAlignment");
 		if(verticalAlignmentPropertyIds==null)
 			logger.error("Could not get id of property \"VerticalAlignment\" for \"TextFrame\" ole object");
 		
@@ -43,7 +43,7 @@ public class TextFrameUtils {
 		
 		logger.debug("Is TextFrame oleautomation null? ".concat(String.valueOf(textFrameAutomation==null)));
 		
-		int[] horizontalAlignmentPropertyIds = textFrameAutomation.getIDsOfNames(new String[]{"HorizontalAlignment"});
+		int[] horizontalAlignmentPropertyIds = DispatchIdCache.getIds(textFrameAutomation, "TextFrame", "HorizontalAlignment");
 		if(horizontalAlignmentPropertyIds==null)
 			logger.error("Could not get id of property \"HorizontalAlignment\" for \"TextFrame\" ole object");
 		
@@ -60,7 +60,7 @@ public class TextFrameUtils {
 		
 		logger.debug("Is TextFrame oleautomation null? ".concat(String.valueOf(textFrameAutomation==null)));
 		
-		int[] charactersMethodIds = textFrameAutomation.getIDsOfNames(new String[]{"Characters"});
+		int[] charactersMethodIds = DispatchIdCache.getIds(textFrameAutomation, "TextFrame", "Characters");
 		if(charactersMethodIds==null)
 			logger.error("Could not get ids of method \"Characters\" for \"TextFrame\" ole object");
 		
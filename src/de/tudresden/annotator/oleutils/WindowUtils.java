@@ -26,7 +26,7 @@ public class WindowUtils {
 			logger.error("Method setScrollRow received null windowAutomation object");
 		}
 		
-		int[] scrollRowPropertyIds = windowAutomation.getIDsOfNames(new String[]{"ScrollRow"});	
+		int[] scrollRowPropertyIds = DispatchIdCache.getIds(windowAutomation, "Window", "ScrollRow");	
 		
 		if(scrollRowPropertyIds==null){
 			logger.error("Could not get \"ScrollRow\" property ids for \"Window\" ole object!");
@@ -54,7 +54,7 @@ public class WindowUtils {
 			logger.error("Method setScrollColumn received null windowAutomation object");
 		}
 		
-		int[] scrollColumnPropertyIds = windowAutomation.getIDsOfNames(new String[]{"ScrollColumn"});	
+		int[] scrollColumnPropertyIds = DispatchIdCache.getIds(windowAutomation, "Window", "ScrollColumn");	
 		
 		if(scrollColumnPropertyIds==null){
 			logger.error("Could not get \"ScrollColumn\" property ids for \"Window\" ole object!");
@@ -82,7 +82,7 @@ public class WindowUtils {
 			logger.error("Method setDisplayFormulas received null windowAutomation object");
 		}
 		
-		int[] displayFormulasPropertyIds = windowAutomation.getIDsOfNames(new String[]{"DisplayFormulas"});	
+		int[] displayFormulasPropertyIds = DispatchIdCache.getIds(windowAutomation, "Window", "DisplayFormulas");	
 		
 		if(displayFormulasPropertyIds==null){
 			logger.error("Could not get \"DisplayFormulas\" property ids for \"Window\" ole object!");
@@ -110,7 +110,7 @@ public class WindowUtils {
 			logger.error("Method getDisplayFormulas received null windowAutomation object");
 		}
 		
-		int[] displayFormulasPropertyIds = windowAutomation.getIDsOfNames(new String[]{"DisplayFormulas"});	
+		int[] displayFormulasPropertyIds = DispatchIdCache.getIds(windowAutomation, "Window", "DisplayFormulas");	
 		
 		if(displayFormulasPropertyIds==null){
 			logger.error("Could not get \"DisplayFormulas\" property ids for \"Window\" ole object!");
@@ -140,7 +140,7 @@ public class WindowUtils {
 			logger.error("Method getDisplayFormulas received null windowAutomation object");
 		}
 		
-		int[] zooomPropertyIds = windowAutomation.getIDsOfNames(new String[]{"Zoom"});	
+		int[] zooomPropertyIds = DispatchIdCache.getIds(windowAutomation, "Window", "Zoom");	
 		
 		if(zooomPropertyIds==null){
 			logger.error("Could not get \"Zoom\" property ids for \"Window\" ole object!");
@@ -170,7 +170,7 @@ public class WindowUtils {
 			logger.error("Method getDisplayFormulas received null windowAutomation object");
 		}
 		
-		int[] zooomPropertyIds = windowAutomation.getIDsOfNames(new String[]{"Zoom"});	
+		int[] zooomPropertyIds = DispatchIdCache.getIds(windowAutomation, "Window", "Zoom");	
 		
 		if(zooomPropertyIds==null){
 			logger.error("Could not get \"Zoom\" property ids for \"Window\" ole object!");
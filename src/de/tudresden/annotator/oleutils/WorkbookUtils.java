@@ -27,7 +27,7 @@ public class WorkbookUtils {
 		
 		logger.debug("Is workbook automation null? "+String.valueOf(workbookAutomation==null));
 		
-		int[] namePropertyIds = workbookAutomation.getIDsOfNames(new String[]{"Name"});			
+		int[] namePropertyIds = DispatchIdCache.getIds(workbookAutomation, "Workbook", "Name");			
 		Variant nameVariant = workbookAutomation.getProperty(namePropertyIds[0]);
 		String workbookName = nameVariant.getString();
 		nameVariant.dispose();
@@ -45,7 +45,7 @@ public class WorkbookUtils {
 		logger.debug("Is workbook automation null? "+String.valueOf(workbookAutomation==null));
 		
 		// invoke the "Protect" method for the given workbook
-		int[] protectMethodIds = workbookAutomation.getIDsOfNames(new String[]{"Protect", "Structure", "Windows"});
+		int[] protectMethodIds = DispatchIdCache.getIds(workbookAutomation, "Workbook", "Protect", "Structure", "Windows");
 		if (protectMethodIds == null) {			
 			logger.error("Could not get ids of method \"Protect\" for \"Workbook\" object!");
 			return false;
@@ -83,7 +83,7 @@ public class WorkbookUtils {
 		logger.debug("Is workbook automation null? "+String.valueOf(workbookAutomation==null));
 		
 		// invoke the "Unprotect" method for the given workbook
-		int[] unprotectMethodIds = workbookAutomation.getIDsOfNames(new String[]{"Unprotect"});
+		int[] unprotectMethodIds = DispatchIdCache.getIds(workbookAutomation, "Workbook", "Unprotect");
 		if (unprotectMethodIds == null) {
 			logger.error("Could not get the ids of the \"Unprotect\" method for the \"Workbook\" object");
 			return false;
@@ -110,7 +110,7 @@ public class WorkbookUtils {
 		
 		logger.debug("Is workbook automation null? "+String.valueOf(workbookAutomation==null));
 		
-		int[] applicationPropertyIds = workbookAutomation.getIDsOfNames(new String[]{"Application"}); 
+		int[] applicationPropertyIds = DispatchIdCache.getIds(workbookAutomation, "Workbook", "Application"); 
 		Variant applicationVariant =  workbookAutomation.getProperty(applicationPropertyIds[0]);
 		OleAutomation applicationAutomation = applicationVariant.getAutomation();
 		applicationVariant.dispose();
@@ -127,7 +127,7 @@ public class WorkbookUtils {
 		
 		logger.debug("Is workbook automation null? "+String.valueOf(workbookAutomation==null));
 		
-		int[] worksheetsObjectIds = workbookAutomation.getIDsOfNames(new String[]{"Worksheets"}); 
+		int[] worksheetsObjectIds = DispatchIdCache.getIds(workbookAutomation, "Workbook", "Worksheets"); 
 		Variant worksheetsVariant =  workbookAutomation.getProperty(worksheetsObjectIds[0]);
 		OleAutomation worksheetsAutomation = worksheetsVariant.getAutomation();
 		worksheetsVariant.dispose();
@@ -144,7 +144,7 @@ public class WorkbookUtils {
 		
 		logger.debug("Is workbook automation null? "+String.valueOf(workbookAutomation==null));
 		
-		int[] worksheetIds = workbookAutomation.getIDsOfNames(new String[]{"ActiveSheet"});		
+		int[] worksheetIds = DispatchIdCache.getIds(workbookAutomation, "Workbook", "ActiveSheet");		
 		Variant worksheetVariant = workbookAutomation.getProperty(worksheetIds[0]);
 		OleAutomation worksheetAutomation = worksheetVariant.getAutomation();
 		worksheetVariant.dispose();
@@ -217,7 +217,7 @@ public class WorkbookUtils {
 		int count = CollectionsUtils.countItemsInCollection(worksheetsAutomation);
 		OleAutomation lastSheet = getWorksheetAutomationByIndex(workbookAutomation, count); 
 		
-		int[] addMethodIds = worksheetsAutomation.getIDsOfNames(new String[]{"Add", "After"});	
+		int[] addMethodIds = DispatchIdCache.getIds(worksheetsAutomation, "Sheets", "Add", "After");	
 		Variant[] params = new Variant[1];
 		params[0] = new Variant(lastSheet);
 		int paramsIds[] = Arrays.copyOfRange(addMethodIds, 1, addMethodIds.length);
@@ -232,93 +232,6 @@ public class WorkbookUtils {
 		return newWorksheet;
 	}
 	
-	/**
-	 * Protect all worksheets that are part of the given workbook
-	 * @param workbookAutomation an OleAutomation that provides access to the functionalities of a Workbook OLE object
-	 * @return true if operation succeeded, false otherwise
-	 */
-	public static boolean protectAllWorksheets(OleAutomation workbookAutomation){	
-		
-		logger.debug("Is workbook automation null? "+String.valueOf(workbookAutomation==null));
-		
-		OleAutomation worksheetsAutomation = getWorksheetsAutomation(workbookAutomation);
-		
-		int count = CollectionsUtils.countItemsInCollection(worksheetsAutomation);
-		
-		int i; 
-		boolean isSuccess=true; 
-		for (i = 1; i <= count; i++) {
-		
-			OleAutomation nextWorksheetAutomation = CollectionsUtils.getItemByIndex(worksheetsAutomation, i, false);					
-			if(!WorksheetUtils.protectWorksheet(nextWorksheetAutomation)){			
-				String  name = WorksheetUtils.getWorksheetName(nextWorksheetAutomation);
-				logger.debug("Could not protect sheet \""+name+"\"");
-				isSuccess=false;			
-			}	
-			nextWorksheetAutomation.dispose();	
-			if(!isSuccess){
-				break;
-			}
-		}	
-		
-		if(!isSuccess){
-			for(int j=1; j<i;j++){
-				OleAutomation nextWorksheetAutomation =  CollectionsUtils.getItemByIndex(worksheetsAutomation, j, false);
-				WorksheetUtils.unprotectWorksheet(nextWorksheetAutomation);
-				nextWorksheetAutomation.dispose();
-			}
-			worksheetsAutomation.dispose();
-			return false;
-		}
-		
-		worksheetsAutomation.dispose();
-		return true;
-	}
-	
-	
-	/**
-	 * Unprotect all worksheets that are part of the given workbook
-	 * @param workbookAutomation an OleAutomation that provides access to the functionalities of a Workbook OLE object
-	 * @return true if operation succeeded, false otherwise
-	 */
-	public static boolean unprotectAllWorksheets(OleAutomation workbookAutomation){	
-		
-		logger.debug("Is workbook automation null? "+String.valueOf(workbookAutomation==null));
-		
-		OleAutomation worksheetsAutomation = getWorksheetsAutomation(workbookAutomation);
-		
-		int count = CollectionsUtils.countItemsInCollection(worksheetsAutomation);
-		
-		int i; 
-		boolean isSuccess=true; 
-		for (i = 1; i <= count; i++) {
-		
-			OleAutomation nextWorksheetAutomation = CollectionsUtils.getItemByIndex(worksheetsAutomation, i, false);					
-			if(!WorksheetUtils.unprotectWorksheet(nextWorksheetAutomation)){
-				String  name = WorksheetUtils.getWorksheetName(nextWorksheetAutomation);
-				logger.debug("Could not unprotect sheet \""+name+"\"");
-				isSuccess = false;
-			}	
-			nextWorksheetAutomation.dispose();	
-			if(!isSuccess){
-				break;
-			}
-		}	
-		
-		if(!isSuccess){
-			for(int j=1; j<i;j++){
-				OleAutomation nextWorksheetAutomation =  CollectionsUtils.getItemByIndex(worksheetsAutomation, j, false);
-				WorksheetUtils.protectWorksheet(nextWorksheetAutomation);
-				nextWorksheetAutomation.dispose();
-			}
-			worksheetsAutomation.dispose();
-			return false;
-		}
-		
-		worksheetsAutomation.dispose();
-		return true;
-	}
-		
 	/**
 	 * Save the embedded workbook
 	 * @param workbookAutomation an OleAutomation that provides access to the functionalities of a Workbook OLE object
@@ -328,7 +241,7 @@ public class WorkbookUtils {
 		
 		logger.debug("Is workbook automation null? "+String.valueOf(workbookAutomation==null));
 		
-		int[] saveMethodIds = workbookAutomation.getIDsOfNames(new String[]{"Save"});	
+		int[] saveMethodIds = DispatchIdCache.getIds(workbookAutomation, "Workbook", "Save");	
 		Variant result = workbookAutomation.invoke(saveMethodIds[0]);
 		
 		if(result==null)
@@ -348,7 +261,7 @@ public class WorkbookUtils {
 		
 		logger.debug("Is workbook automation null? "+String.valueOf(workbookAutomation==null));
 		
-		int[] savedMethodIds = workbookAutomation.getIDsOfNames(new String[]{"Saved"});	
+		int[] savedMethodIds = DispatchIdCache.getIds(workbookAutomation, "Workbook", "Saved");	
 		Variant result = workbookAutomation.getProperty(savedMethodIds[0]);
 		boolean isSaved = result.getBoolean();
 		result.dispose();
@@ -368,7 +281,7 @@ public class WorkbookUtils {
 		
 		logger.debug("Is workbook automation null? "+String.valueOf(workbookAutomation==null));
 		
-		int[] saveMethodIds = workbookAutomation.getIDsOfNames(new String[] { "SaveAs", "FileName", "FileFormat"});
+		int[] saveMethodIds = DispatchIdCache.getIds(workbookAutomation, "Workbook", "SaveAs", "FileName", "FileFormat");
 
 		Variant[] args ;
 		int[] argsIds ;
@@ -413,7 +326,7 @@ public class WorkbookUtils {
 		}		
 		
 		//TODO: implement when saveChanges = true
-		int[] closeMethodIds = workbookAutomation.getIDsOfNames(new String[]{"Close","SaveChanges"}); //"Filename"	
+		int[] closeMethodIds = DispatchIdCache.getIds(workbookAutomation, "Workbook", "Close", "SaveChanges"); //"Filename"	
 		if (closeMethodIds == null){			
 			logger.error("Could not get the ids of the \"Close\" method for the \"Workbook\" object");
 			return false;
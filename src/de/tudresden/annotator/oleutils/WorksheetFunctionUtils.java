@@ -20,7 +20,7 @@ public class WorksheetFunctionUtils {
 	 */
 	public static Variant callFunction(OleAutomation worksheetFunction, String name, Variant[] args){
 		
-		int[] methodIds = worksheetFunction.getIDsOfNames(new String[]{name});
+		int[] methodIds = DispatchIdCache.getIds(worksheetFunction, "WorksheetFunction", name);
 		if(methodIds==null){
 			System.out.println("Method \""+name+"\" is not found for \"WorksheetFunction\" OLE Object!");
 			return null;
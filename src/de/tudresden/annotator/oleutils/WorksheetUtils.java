@@ -12,6 +12,7 @@ import org.eclipse.swt.ole.win32.OleAutomation;
 import org.eclipse.swt.ole.win32.Variant;
 import org.eclipse.swt.widgets.MessageBox;
 
+import de.tudresden.annotator.annotations.CellRange;
 import de.tudresden.annotator.main.Launcher;
 
 /**
@@ -21,6 +22,11 @@ public class WorksheetUtils {
 		
 	private static final Logger logger = LogManager.getLogger(WorksheetUtils.class.getName());
 	
+	/*
+	 * The maximum number of rows that are written with a single call. Larger blocks are written in chunks.
+	 */
+	private static final int MAX_ROWS_PER_WRITE = 2000;
+	
 	/**
 	 * Get the name of the given worksheet
 	 * @param worksheetAutomation an OleAutomation for accessing the Worksheet OLE object
@@ -30,7 +36,7 @@ public class WorksheetUtils {
 		
 		logger.debug("Is sheet automation null? ".concat(String.valueOf(worksheetAutomation==null)));
 		
-		int[] namePropertyIds = worksheetAutomation.getIDsOfNames(new String[]{"Name"});	
+		int[] namePropertyIds = DispatchIdCache.getIds(worksheetAutomation, "Worksheet", "Name");	
 		if (namePropertyIds == null){			
 			logger.error("Could not get ids of property \"Name\" for \"Worksheet\" ole object!");
 			return null;
@@ -61,7 +67,7 @@ public class WorksheetUtils {
 		
 		logger.debug("Is sheet automation null? ".concat(String.valueOf(worksheetAutomation==null)));
 		
-		int[] namePropertyIds = worksheetAutomation.getIDsOfNames(new String[]{"Name"});	
+		int[] namePropertyIds = DispatchIdCache.getIds(worksheetAutomation, "Worksheet", "Name");	
 		if (namePropertyIds == null){			
 			logger.error("Could not get ids of property \"Name\" for \"Worksheet\" ole object!");
 			return false;
@@ -86,7 +92,7 @@ public class WorksheetUtils {
 		
 		logger.debug("Is sheet automation null? ".concat(String.valueOf(worksheetAutomation==null)));
 		
-		int[] indexPropertyIds = worksheetAutomation.getIDsOfNames(new String[]{"Index"});	
+		int[] indexPropertyIds = DispatchIdCache.getIds(worksheetAutomation, "Worksheet", "Index");	
 		if (indexPropertyIds == null){		
 			logger.error("Could not get ids of property \"Index\" for \"Worksheet\" ole object!");
 			return 0;
@@ -120,7 +126,7 @@ public class WorksheetUtils {
 		if(worksheetAutomation==null)
 			return false;
 		
-		int[] visiblePropertyIds = worksheetAutomation.getIDsOfNames(new String[]{"Visible"});			
+		int[] visiblePropertyIds = DispatchIdCache.getIds(worksheetAutomation, "Worksheet", "Visible");			
 		Variant visiblePropertyVariant = new Variant(visible); 
 		boolean isSuccess = worksheetAutomation.setProperty(visiblePropertyIds[0], visiblePropertyVariant);
 		visiblePropertyVariant.dispose();
@@ -138,7 +144,7 @@ public class WorksheetUtils {
 		
 		logger.debug("Is sheet automation null? ".concat(String.valueOf(worksheetAutomation==null)));
 		
-		int[] activateMethodsIds = worksheetAutomation.getIDsOfNames(new String[]{"Activate"});	
+		int[] activateMethodsIds = DispatchIdCache.getIds(worksheetAutomation, "Worksheet", "Activate");	
 		if (activateMethodsIds == null){			
 			logger.error("Could not get ids of method \"Activate\" for \"Worksheet\" ole object! "+
 					"The worksheet name is "+WorksheetUtils.getWorksheetName(worksheetAutomation));
@@ -167,7 +173,7 @@ public class WorksheetUtils {
 		
 		logger.debug("Is sheet automation null? ".concat(String.valueOf(worksheetAutomation==null)));
 		
-		int[] showAllDataMethodsIds = worksheetAutomation.getIDsOfNames(new String[]{"ShowAllData"});	
+		int[] showAllDataMethodsIds = DispatchIdCache.getIds(worksheetAutomation, "Worksheet", "ShowAllData");	
 		if (showAllDataMethodsIds == null){			
 			logger.error("Could not get ids of method \"ShowAllData\" for \"Worksheet\" ole object! "+
 					"The worksheet name is "+WorksheetUtils.getWorksheetName(worksheetAutomation));
@@ -196,7 +202,7 @@ public class WorksheetUtils {
 		
 		logger.debug("Is sheet automation null? "+sheetAutomation==null);
 		
-		int[] applicationPropertyIds = sheetAutomation.getIDsOfNames(new String[]{"Application"}); 
+		int[] applicationPropertyIds = DispatchIdCache.getIdsByTypeInfo(sheetAutomation, "Application"); 
 		Variant applicationVariant =  sheetAutomation.getProperty(applicationPropertyIds[0]);
 		OleAutomation applicationAutomation = applicationVariant.getAutomation();
 		applicationVariant.dispose();
@@ -217,7 +223,7 @@ public class WorksheetUtils {
 		logger.debug("Is sheet automation null? ".concat(String.valueOf(worksheetAutomation==null)));
 		
 		// get the OleAutomation object for the selected range 
-		int[] rangePropertyIds = worksheetAutomation.getIDsOfNames(new String[]{"Range"});
+		int[] rangePropertyIds = DispatchIdCache.getIds(worksheetAutomation, "Worksheet", "Range");
 		
 		Variant[] args;
 		if(downRightCell!=null && downRightCell.length()>1){
@@ -277,7 +283,7 @@ public class WorksheetUtils {
 		logger.debug("Is sheet automation null? ".concat(String.valueOf(worksheetAutomation==null)));
 		
 		// get the OleAutomation object for the multi-selection (multi-area) range 
-		int[] rangePropertyIds = worksheetAutomation.getIDsOfNames(new String[]{"Range"});
+		int[] rangePropertyIds = DispatchIdCache.getIds(worksheetAutomation, "Worksheet", "Range");
 		
 		Variant[] args = new Variant[1];
 		args[0] = new Variant(multiSelectionRange);
@@ -303,7 +309,7 @@ public class WorksheetUtils {
 		
 		logger.debug("Is sheet automation null? ".concat(String.valueOf(worksheetAutomation==null)));
 		
-		int[] usedRangePropertyIds = worksheetAutomation.getIDsOfNames(new String[]{"UsedRange"});	
+		int[] usedRangePropertyIds = DispatchIdCache.getIds(worksheetAutomation, "Worksheet", "UsedRange");	
 		Variant usedRangeVariant = worksheetAutomation.getProperty(usedRangePropertyIds[0]);
 		OleAutomation usedRangeAutomation = usedRangeVariant.getAutomation();
 		usedRangeVariant.dispose();
@@ -323,7 +329,7 @@ public class WorksheetUtils {
 		
 		logger.debug("Is sheet automation null? ".concat(String.valueOf(worksheetAutomation==null)));
 		
-		int[] cellsPropertyIds = worksheetAutomation.getIDsOfNames(new String[]{"Cells"}); 
+		int[] cellsPropertyIds = DispatchIdCache.getIds(worksheetAutomation, "Worksheet", "Cells"); 
 		
 		Variant[] args = new Variant[2];
 		args[0] = new Variant(row);
@@ -338,6 +344,69 @@ public class WorksheetUtils {
 		
 		return cellAutomation; 
 	}
+	
+	
+	/**
+	 * Write a block of values to the worksheet. The values are assigned to the "Value2" of the target range with a few calls 
+	 * (one per chunk of rows), rather than one call per cell. 
+	 * The target columns are formatted once, before the values are written. 
+	 * @param worksheetAutomation an OleAutomation to access the worksheet
+	 * @param topRow an integer that represents the index of the first row of the block
+	 * @param leftColumn an integer that represents the index of the first column of the block
+	 * @param values a 2D array of values (strings, numbers, booleans, or null for empty), indexed by [row][column]. 
+	 * All the rows have to be of the same length.
+	 * @param columnFormats the number format (e.g., "@" for text) for each column of the block, null to keep the existing format. 
+	 * This argument can be null, if none of the columns has to be formatted. 
+	 * @return true if the operation was successful, false otherwise
+	 */
+	public static boolean writeValues(OleAutomation worksheetAutomation, int topRow, int leftColumn, 
+																		Object[][] values, String[] columnFormats){
+		
+		logger.debug("Is sheet automation null? ".concat(String.valueOf(worksheetAutomation==null)));
+		
+		int countRows = values.length;
+		int countColumns = countRows > 0 ? values[0].length : 0;
+		if(countRows==0 || countColumns==0)
+			return true;
+		
+		int bottomRow = topRow + countRows - 1;
+		boolean isSuccess = true;
+		
+		// format each group of consecutive columns that have the same format with a single call
+		if(columnFormats!=null){
+			int c = 0;
+			while(c<countColumns){
+				int end = c;
+				while(end+1<countColumns && columnFormats[c]!=null && columnFormats[c].equals(columnFormats[end+1])){
+					end++;
+				}
+				
+				if(columnFormats[c]!=null){
+					OleAutomation columnsAutomation = getRangeAutomation(worksheetAutomation, 
+							CellRange.getColumnLetters(leftColumn+c)+topRow, CellRange.getColumnLetters(leftColumn+end)+bottomRow);
+					isSuccess &= RangeUtils.formatCells(columnsAutomation, columnFormats[c]);
+					columnsAutomation.dispose();
+				}
+				c = end + 1;
+			}
+		}
+		
+		// write the values in chunks of rows
+		String leftColumnLetters = CellRange.getColumnLetters(leftColumn);
+		String rightColumnLetters = CellRange.getColumnLetters(leftColumn+countColumns-1);
+		for (int start = 0; start < countRows; start+=MAX_ROWS_PER_WRITE) {
+			
+			int end = Math.min(start+MAX_ROWS_PER_WRITE, countRows);
+			Object[][] chunk = start==0 && end==countRows ? values : Arrays.copyOfRange(values, start, end); 
+			
+			OleAutomation rangeAutomation = getRangeAutomation(worksheetAutomation, 
+					leftColumnLetters+(topRow+start), rightColumnLetters+(topRow+end-1));
+			isSuccess &= RangeUtils.setRangeValues2D(rangeAutomation, chunk);
+			rangeAutomation.dispose();
+		}
+		
+		return isSuccess;
+	}
 		
 	/**
 	 * Get a all cells from the specified sheet 
@@ -348,7 +417,7 @@ public class WorksheetUtils {
 		
 		logger.debug("Is sheet automation null? ".concat(String.valueOf(worksheetAutomation==null)));
 		
-		int[] cellsPropertyIds = worksheetAutomation.getIDsOfNames(new String[]{"Cells"}); 
+		int[] cellsPropertyIds = DispatchIdCache.getIds(worksheetAutomation, "Worksheet", "Cells"); 
 		
 		Variant cellsVariant = worksheetAutomation.getProperty(cellsPropertyIds[0]);
 		
@@ -372,7 +441,7 @@ public class WorksheetUtils {
 		
 		logger.debug("Is sheet automation null? ".concat(String.valueOf(worksheetAutomation==null)));
 		
-		int[] columnsPropertyIds = worksheetAutomation.getIDsOfNames(new String[]{"Columns"}); 
+		int[] columnsPropertyIds = DispatchIdCache.getIds(worksheetAutomation, "Worksheet", "Columns"); 
 		Variant columnsPropertyVariant = worksheetAutomation.getProperty(columnsPropertyIds[0]);	
 		
 		OleAutomation columnsAutomation =  columnsPropertyVariant.getAutomation();
@@ -391,7 +460,7 @@ public class WorksheetUtils {
 		
 		logger.debug("Is sheet automation null? ".concat(String.valueOf(worksheetAutomation==null)));
 		
-		int[] columnsPropertyIds = worksheetAutomation.getIDsOfNames(new String[]{"Columns"}); 
+		int[] columnsPropertyIds = DispatchIdCache.getIds(worksheetAutomation, "Worksheet", "Columns"); 
 		
 		Variant[] args= new Variant[1];
 		args[0] = new Variant(column);
@@ -415,7 +484,7 @@ public class WorksheetUtils {
 		
 		logger.debug("Is sheet automation null? ".concat(String.valueOf(worksheetAutomation==null)));
 		
-		int[] rowsPropertyIds = worksheetAutomation.getIDsOfNames(new String[]{"Rows"}); 
+		int[] rowsPropertyIds = DispatchIdCache.getIds(worksheetAutomation, "Worksheet", "Rows"); 
 		Variant rowsPropertyVariant = worksheetAutomation.getProperty(rowsPropertyIds[0]);	
 		OleAutomation rowsAutomation = rowsPropertyVariant.getAutomation();
 		rowsPropertyVariant.dispose();
@@ -433,7 +502,7 @@ public class WorksheetUtils {
 		
 		logger.debug("Is sheet automation null? ".concat(String.valueOf(worksheetAutomation==null)));
 		
-		int[] rowsPropertyIds = worksheetAutomation.getIDsOfNames(new String[]{"Rows"}); 
+		int[] rowsPropertyIds = DispatchIdCache.getIds(worksheetAutomation, "Worksheet", "Rows"); 
 
 		Variant[] args= new Variant[1];
 		args[0] = new Variant(row);
@@ -457,7 +526,7 @@ public class WorksheetUtils {
 		
 		logger.debug("Is sheet automation null? ".concat(String.valueOf(worksheetAutomation==null)));
 		
-		int[] shapesPropertyIds = worksheetAutomation.getIDsOfNames(new String[]{"Shapes"});	
+		int[] shapesPropertyIds = DispatchIdCache.getIds(worksheetAutomation, "Worksheet", "Shapes");	
 		if (shapesPropertyIds == null){		
 			logger.error("Could not get the id of the \"Shapes\" property for \"Worksheet\" ole object. "+
 					"The worksheet name is "+WorksheetUtils.getWorksheetName(worksheetAutomation));			
@@ -490,8 +559,8 @@ public class WorksheetUtils {
 		// get the id of the "Protect" method and the considered parameters
 		// you can find the documentation of this OLE method at 
 		// https://msdn.microsoft.com/EN-US/library/ff840611.aspx
-		int[] protectMethodIds = worksheetAutomation.getIDsOfNames(new String[]{"Protect", 
-				"AllowFormattingColumns", "AllowFormattingRows"});
+		int[] protectMethodIds = DispatchIdCache.getIds(worksheetAutomation, "Worksheet", "Protect", 
+				"AllowFormattingColumns", "AllowFormattingRows");
 		
 		if (protectMethodIds == null) {
 			logger.fatal("Could not get the ids of the \"Protect\" method for \"Worksheet\" ole object. "+
@@ -538,7 +607,7 @@ public class WorksheetUtils {
 	public static boolean unprotectWorksheet(OleAutomation worksheetAutomation){
 		
 		// get the id of the "Unprotect" method for worksheet OLE object 
-		int[] unprotectMethodIds = worksheetAutomation.getIDsOfNames(new String[]{"Unprotect"});
+		int[] unprotectMethodIds = DispatchIdCache.getIds(worksheetAutomation, "Worksheet", "Unprotect");
 		if(unprotectMethodIds==null){
 			logger.error("Could not get the ids of the \"Unprotect\" method for \"Worksheet\" ole object "+
 					"The worksheet name is "+WorksheetUtils.getWorksheetName(worksheetAutomation));
@@ -573,7 +642,7 @@ public class WorksheetUtils {
 	 */
 	public static boolean saveAsCSV(OleAutomation worksheetAutomation, String filePath){
 		
-		int[] saveAsMethodIds = worksheetAutomation.getIDsOfNames(new String[]{"SaveAs", "FileName", "FileFormat"});	
+		int[] saveAsMethodIds = DispatchIdCache.getIds(worksheetAutomation, "Worksheet", "SaveAs", "FileName", "FileFormat");	
 		
 		Variant[] args = new Variant[2];
 		args[0] = new Variant(filePath);
@@ -602,7 +671,7 @@ public class WorksheetUtils {
 	public static boolean deleteWorksheet(OleAutomation worksheetAutomation){
 		
 		// get the id of the "Unprotect" method for worksheet OLE object 
-		int[] deleteMethodIds = worksheetAutomation.getIDsOfNames(new String[]{"Delete"});
+		int[] deleteMethodIds = DispatchIdCache.getIds(worksheetAutomation, "Worksheet", "Delete");
 		if(deleteMethodIds==null){
 			logger.error("Could not get the ids of the \"Delete\" method for \"Worksheet\" ole object "+
 					"The worksheet name is "+WorksheetUtils.getWorksheetName(worksheetAutomation));
@@ -0,0 +1,115 @@
+/**
+ * 
+ */
+package de.tudresden.annotator.annotations;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.function.Predicate;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that the containment tree of the WorkbookAnnotation stays consistent, when containers are removed
+ * 
+ * @author Elvis Koci
+ */
+public class WorkbookAnnotationTest {
+	
+	private static final String SHEET = "Sheet1";
+	
+	private AnnotationClass tableClass;
+	private AnnotationClass headerClass;
+	private AnnotationClass noteClass;
+	
+	private WorkbookAnnotation workbookAnnotation;
+	
+	@Before
+	public void setUp() {
+		
+		tableClass = new AnnotationClass("Table", AnnotationTool.SHAPE, 0);
+		tableClass.setOrdinal(0);
+		tableClass.setIsContainer(true);
+		tableClass.setCanBeContained(true);
+		
+		headerClass = new AnnotationClass("Header", AnnotationTool.SHAPE, 0);
+		headerClass.setOrdinal(1);
+		headerClass.setIsDependent(true, tableClass);
+		
+		noteClass = new AnnotationClass("Note", AnnotationTool.SHAPE, 0);
+		noteClass.setOrdinal(2);
+		noteClass.setCanBeContained(true);
+		
+		workbookAnnotation = new WorkbookAnnotation("Book1");
+	}
+	
+	@Test
+	public void removingContainerRemovesItsDependents() {
+		
+		RangeAnnotation table = add(tableClass, "Table_1", "$A$1:$D$10");
+		RangeAnnotation header = add(headerClass, "Header_1", "$A$1:$D$1");
+		RangeAnnotation note = add(noteClass, "Note_1", "$B$5");
+		assertSame(table, header.getParent());
+		assertSame(table, note.getParent());
+		
+		workbookAnnotation.removeRangeAnnotation(table);
+		
+		WorksheetAnnotation sheetAnnotation = workbookAnnotation.getWorksheetAnnotation(SHEET);
+		assertNull(sheetAnnotation.getAnnotation(header.getName()));
+		assertNull(header.getParent());
+		
+		// the annotations that do not depend on the container are moved to the sheet
+		assertSame(note, sheetAnnotation.getAnnotation(note.getName()));
+		assertSame(sheetAnnotation, note.getParent());
+		assertEquals(1, sheetAnnotation.getAllAnnotations().size());
+		assertTrue(sheetAnnotation.getTopLevelAnnotations().contains(note));
+	}
+	
+	@Test
+	public void dependentsMoveToAncestorOfTheirContainerClass() {
+		
+		RangeAnnotation outer = add(tableClass, "Table_1", "$A$1:$H$20");
+		RangeAnnotation inner = add(tableClass, "Table_2", "$B$2:$D$10");
+		RangeAnnotation header = add(headerClass, "Header_1", "$B$2:$D$2");
+		assertSame(inner, header.getParent());
+		
+		workbookAnnotation.removeRangeAnnotation(inner);
+		
+		WorksheetAnnotation sheetAnnotation = workbookAnnotation.getWorksheetAnnotation(SHEET);
+		assertSame(header, sheetAnnotation.getAnnotation(header.getName()));
+		assertSame(outer, header.getParent());
+		assertSame(header, outer.getAnnotation(header.getName()));
+	}
+	
+	@Test
+	public void batchRemovalCascadesThroughRemovedChildren() {
+		
+		RangeAnnotation table = add(tableClass, "Table_1", "$A$1:$D$10");
+		RangeAnnotation header = add(headerClass, "Header_1", "$A$1:$D$1");
+		RangeAnnotation note = add(noteClass, "Note_1", "$B$5");
+		
+		int removed = workbookAnnotation.removeRangeAnnotations(new Predicate<RangeAnnotation>() {
+			@Override
+			public boolean test(RangeAnnotation ra) {
+				return ra.getAnnotationClass()==tableClass;
+			}
+		});
+		
+		assertEquals(2, removed);
+		WorksheetAnnotation sheetAnnotation = workbookAnnotation.getWorksheetAnnotation(SHEET);
+		assertNull(sheetAnnotation.getAnnotation(table.getName()));
+		assertNull(sheetAnnotation.getAnnotation(header.getName()));
+		assertSame(sheetAnnotation, note.getParent());
+		assertEquals(1, workbookAnnotation.getAllAnnotations().size());
+	}
+	
+	private RangeAnnotation add(AnnotationClass annotationClass, String name, String rangeAddress) {
+		RangeAnnotation rangeAnnotation = new RangeAnnotation(SHEET, 1, annotationClass, name, rangeAddress);
+		workbookAnnotation.addRangeAnnotation(rangeAnnotation);
+		return rangeAnnotation;
+	}
+}
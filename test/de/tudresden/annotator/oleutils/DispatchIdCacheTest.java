@@ -0,0 +1,148 @@
+/**
+ * 
+ */
+package de.tudresden.annotator.oleutils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the keying of the DispatchIdCache, using a fake DispatchTarget instead of an OLE object
+ * 
+ * @author Elvis Koci
+ */
+public class DispatchIdCacheTest {
+	
+	@Before
+	public void setUp() {
+		DispatchIdCache.clear();
+	}
+	
+	@After
+	public void tearDown() {
+		DispatchIdCache.clear();
+	}
+	
+	@Test
+	public void looksUpOncePerInterfaceAndNames() {
+		
+		FakeDispatchTarget range = new FakeDispatchTarget("Range");
+		int[] first = DispatchIdCache.getIds(range, "Range", "Value");
+		int[] second = DispatchIdCache.getIds(range, "Range", "Value");
+		
+		assertEquals(1, range.getLookups());
+		assertSame(first, second);
+		assertEquals(1, DispatchIdCache.size());
+		
+		// the same names on a different interface are a different key
+		FakeDispatchTarget font = new FakeDispatchTarget("Font");
+		DispatchIdCache.getIds(font, "Font", "Value");
+		assertEquals(1, font.getLookups());
+		assertEquals(2, DispatchIdCache.size());
+		
+		// another object of a cached interface reuses the ids
+		FakeDispatchTarget otherRange = new FakeDispatchTarget("Range");
+		assertSame(first, DispatchIdCache.getIdsByTypeInfo(otherRange, "Value"));
+		assertEquals(0, otherRange.getLookups());
+	}
+	
+	@Test
+	public void doesNotCacheFailedLookups() {
+		
+		FakeDispatchTarget range = new FakeDispatchTarget("Range");
+		range.setFailing(true);
+		assertNull(DispatchIdCache.getIds(range, "Range", "Value"));
+		assertEquals(0, DispatchIdCache.size());
+		
+		range.setFailing(false);
+		int[] dispIds = DispatchIdCache.getIds(range, "Range", "Value");
+		assertArrayEquals(new int[]{range.getId("Value")}, dispIds);
+		assertEquals(2, range.getLookups());
+		assertEquals(1, DispatchIdCache.size());
+	}
+	
+	@Test
+	public void keysNamedArgumentTuplesSeparately() {
+		
+		FakeDispatchTarget workbook = new FakeDispatchTarget("Workbook");
+		int[] protect = DispatchIdCache.getIds(workbook, "Workbook", "Protect");
+		int[] protectWithArguments = DispatchIdCache.getIds(workbook, "Workbook", "Protect", "Structure", "Windows");
+		int[] protectWithOtherArguments = DispatchIdCache.getIds(workbook, "Workbook", "Protect", "Windows", "Structure");
+		
+		assertEquals(3, workbook.getLookups());
+		assertEquals(3, DispatchIdCache.size());
+		assertEquals(1, protect.length);
+		assertArrayEquals(new int[]{workbook.getId("Protect"), workbook.getId("Structure"), workbook.getId("Windows")}, protectWithArguments);
+		assertArrayEquals(new int[]{workbook.getId("Protect"), workbook.getId("Windows"), workbook.getId("Structure")}, protectWithOtherArguments);
+		
+		assertSame(protectWithArguments, DispatchIdCache.getIds(workbook, "Workbook", "Protect", "Structure", "Windows"));
+		assertEquals(3, workbook.getLookups());
+	}
+	
+	@Test
+	public void doesNotCacheWithoutInterfaceName() {
+		
+		FakeDispatchTarget unknown = new FakeDispatchTarget(null);
+		DispatchIdCache.getIdsByTypeInfo(unknown, "Item");
+		DispatchIdCache.getIdsByTypeInfo(unknown, "Item");
+		
+		assertEquals(2, unknown.getLookups());
+		assertEquals(0, DispatchIdCache.size());
+	}
+	
+	
+	/**
+	 * A DispatchTarget that assigns a fixed id to every name, and counts the look ups
+	 */
+	private static final class FakeDispatchTarget implements DispatchTarget {
+		
+		private final String interfaceName;
+		private final List<String> knownNames = new ArrayList<String>(Arrays.asList("Value", "Item", "Protect", "Structure", "Windows"));
+		private boolean failing = false;
+		private int lookups = 0;
+		
+		private FakeDispatchTarget(String interfaceName) {
+			this.interfaceName = interfaceName;
+		}
+		
+		@Override
+		public int[] getIDsOfNames(String... names) {
+			lookups++;
+			if(failing)
+				return null;
+			
+			int[] dispIds = new int[names.length];
+			for (int i = 0; i < names.length; i++) {
+				dispIds[i] = getId(names[i]);
+			}
+			return dispIds;
+		}
+		
+		@Override
+		public String getInterfaceName() {
+			return interfaceName;
+		}
+		
+		private int getId(String name) {
+			return knownNames.indexOf(name) + 1;
+		}
+		
+		private int getLookups() {
+			return lookups;
+		}
+		
+		private void setFailing(boolean failing) {
+			this.failing = failing;
+		}
+	}
+}